@@ -0,0 +1,510 @@
+package simpledb;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * BTreeFile is a DbFile that stores the tuples of a table in a B+ tree
+ * ordered by one of its fields, the key. The tuples themselves sit in the
+ * leaves, which are chained left to right, so a lookup or range scan on
+ * the key reads the pages on the way down from the root and then only the
+ * leaves holding the tuples it returns: O(log n) pages for a point lookup
+ * instead of the whole table.
+ * <p>
+ * Page 0 is a {@link BTreeRootPtrPage} naming the root. The other pages
+ * are {@link BTreeInternalPage}s and {@link BTreeLeafPage}s, read and
+ * written through the BufferPool like the pages of a HeapFile, and named
+ * by HeapPageIds. Keys may repeat.
+ * <p>
+ * Inserts take read locks on the way down and a write lock on the leaf,
+ * and upgrade the locks on the pages above only when a split reaches
+ * them. Pages are never freed: deletes leave leaves underfull, or empty,
+ * and later inserts fill them again.
+ *
+ * @see BTreeFile#indexIterator
+ * @see IndexScan
+ */
+public class BTreeFile implements DbFile {
+
+    /** The file backing this tree. */
+    private final File f;
+
+    /** The schema of the tuples in the tree. */
+    private final TupleDesc td;
+
+    /** The field the tuples are ordered by. */
+    private final int keyField;
+
+    /** Channel on f, opened on first use. */
+    private volatile FileChannel channel;
+
+    /** Number of pages in the file, or -1 until first counted. */
+    private final AtomicInteger pageCount;
+
+    /**
+     * Constructs a B+ tree file backed by the specified file.
+     *
+     * @param f the file that stores the tree
+     * @param keyField the index in td of the field the tuples are ordered by
+     * @param td the schema of the tuples
+     */
+    public BTreeFile(File f, int keyField, TupleDesc td) {
+        this.f = f;
+        this.keyField = keyField;
+        this.td = td;
+        this.pageCount = new AtomicInteger(-1);
+    }
+
+    /** @return the File backing this tree on disk */
+    public File getFile() {
+        return f;
+    }
+
+    /** @return the index of the key field in the TupleDesc */
+    public int getKeyField() {
+        return keyField;
+    }
+
+    public int getId() {
+        return f.getAbsoluteFile().hashCode();
+    }
+
+    public TupleDesc getTupleDesc() {
+        return td;
+    }
+
+    /** @return the id of the root pointer page */
+    private HeapPageId rootPtrId() {
+        return new HeapPageId(getId(), 0);
+    }
+
+    // see DbFile.java for javadocs
+    public Page readPage(PageId pid) {
+        try {
+            int pgSz = BufferPool.getPageSize();
+            long off = (long) pid.getPageNumber() * pgSz;
+
+            // past the end of the file the page is 0, an empty root pointer
+            ByteBuffer dst = ByteBuffer.allocate(pgSz);
+            FileChannel ch = channel();
+            while (dst.hasRemaining()) {
+                if (ch.read(dst, off + dst.position()) < 0) {
+                    break;
+                }
+            }
+            return BTreePage.create((HeapPageId) pid, td, keyField, dst.array());
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    // see DbFile.java for javadocs
+    public void writePage(Page page) throws IOException {
+        int pageNo = page.getId().getPageNumber();
+        long offset = (long) pageNo * BufferPool.getPageSize();
+
+        ByteBuffer src = ByteBuffer.wrap(page.getPageData());
+        FileChannel ch = channel();
+        while (src.hasRemaining()) {
+            ch.write(src, offset + src.position());
+        }
+        pageCount.accumulateAndGet(pageNo + 1, Math::max);
+    }
+
+    /**
+     * Returns the number of pages in this file, including the root
+     * pointer page.
+     */
+    public int numPages() {
+        int n = 0;
+        // don't create the file just to find out it is empty
+        if (channel != null || f.exists()) {
+            try {
+                long size = channel().size();
+                n = (int) ((size + BufferPool.getPageSize() - 1) / BufferPool.getPageSize());
+            } catch (IOException e) {
+                // a file that cannot be opened has no pages
+            }
+        }
+        final int onDisk = n;
+        return pageCount.updateAndGet(c -> Math.max(c, onDisk));
+    }
+
+    /** @return the channel on the backing file, opening it if need be */
+    private FileChannel channel() throws IOException {
+        FileChannel ch = channel;
+        if (ch == null) {
+            synchronized (this) {
+                ch = channel;
+                if (ch == null) {
+                    try {
+                        ch = FileChannel.open(f.toPath(), StandardOpenOption.READ,
+                                StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+                    } catch (AccessDeniedException e) {
+                        ch = FileChannel.open(f.toPath(), StandardOpenOption.READ);
+                    }
+                    channel = ch;
+                }
+            }
+        }
+        return ch;
+    }
+
+    /**
+     * Closes the channel on the backing file. The file can still be used;
+     * the channel is opened again when next needed.
+     */
+    public synchronized void close() {
+        FileChannel ch = channel;
+        channel = null;
+        if (ch != null) {
+            try {
+                ch.close();
+            } catch (IOException e) {
+                // writes go straight to the channel, so nothing is lost
+            }
+        }
+    }
+
+    /**
+     * Appends a new page to the file and returns it locked for writing. The
+     * page is written out first, so that the BufferPool can read it.
+     */
+    private BTreePage appendPage(Access a, boolean leaf) throws DbException,
+            IOException, TransactionAbortedException {
+        HeapPageId hid;
+        synchronized (this) {
+            hid = new HeapPageId(getId(), Math.max(numPages(), 1));
+            writePage(leaf ? BTreeLeafPage.createEmpty(hid, td, keyField)
+                    : BTreeInternalPage.createEmpty(hid, td, keyField, 0));
+        }
+        return a.get(hid.getPageNumber(), Permissions.READ_WRITE);
+    }
+
+    // see DbFile.java for javadocs
+    public ArrayList<Page> insertTuple(TransactionId tid, Tuple t)
+            throws DbException, IOException, TransactionAbortedException {
+        if (!t.getTupleDesc().equals(td)) {
+            throw new DbException("tupledesc is mismatch");
+        }
+        Access a = new Access(tid);
+        Field key = t.getField(keyField);
+
+        BTreeRootPtrPage rootPtr = (BTreeRootPtrPage) a.get(0, Permissions.READ_ONLY);
+        if (rootPtr.getRoot() == 0) {
+            // the first tuple: the tree becomes a single leaf
+            rootPtr = (BTreeRootPtrPage) a.get(0, Permissions.READ_WRITE);
+            if (rootPtr.getRoot() == 0) {
+                BTreePage leaf = appendPage(a, true);
+                rootPtr.setRoot(leaf.getPageNumber());
+                a.dirtied(rootPtr);
+            }
+        }
+
+        // go down to the leaf, remembering the way
+        ArrayList<Integer> path = new ArrayList<Integer>();
+        int pgNo = rootPtr.getRoot();
+        BTreePage pg = a.get(pgNo, Permissions.READ_ONLY);
+        while (pg instanceof BTreeInternalPage) {
+            path.add(pgNo);
+            BTreeInternalPage in = (BTreeInternalPage) pg;
+            pgNo = in.getChild(in.findChildForInsert(key));
+            pg = a.get(pgNo, Permissions.READ_ONLY);
+        }
+        BTreeLeafPage leaf = (BTreeLeafPage) a.get(pgNo, Permissions.READ_WRITE);
+        int pos = leaf.upperBound(key);
+        if (!leaf.isFull()) {
+            leaf.insertAt(pos, t);
+            a.dirtied(leaf);
+            return a.finish();
+        }
+
+        // split the leaf, and put the tuple in the half it belongs to
+        BTreeLeafPage right = (BTreeLeafPage) appendPage(a, true);
+        leaf.moveUpperHalfTo(right);
+        int left = leaf.getNumTuples();
+        if (pos <= left) {
+            leaf.insertAt(pos, t);
+        } else {
+            right.insertAt(pos - left, t);
+        }
+        a.dirtied(leaf);
+        a.dirtied(right);
+        insertIntoParent(a, path, leaf.getPageNumber(), right.getKey(0), right.getPageNumber());
+        return a.finish();
+    }
+
+    /**
+     * Adds a key and the new page to its right to the parent of a page that
+     * was split, splitting the parent in turn if it is full.
+     *
+     * @param path the internal pages from the root down to the parent
+     */
+    private void insertIntoParent(Access a, ArrayList<Integer> path, int leftPgNo,
+            Field key, int rightPgNo)
+            throws DbException, IOException, TransactionAbortedException {
+        if (path.isEmpty()) {
+            // the root was split, so the tree grows a level
+            BTreeInternalPage root = (BTreeInternalPage) appendPage(a, false);
+            root.setChild(0, leftPgNo);
+            root.insertEntry(0, key, rightPgNo);
+            a.dirtied(root);
+            BTreeRootPtrPage rootPtr = (BTreeRootPtrPage) a.get(0, Permissions.READ_WRITE);
+            rootPtr.setRoot(root.getPageNumber());
+            a.dirtied(rootPtr);
+            return;
+        }
+
+        int parentPgNo = path.remove(path.size() - 1);
+        BTreeInternalPage parent = (BTreeInternalPage) a.get(parentPgNo, Permissions.READ_WRITE);
+        int i = parent.indexOfChild(leftPgNo);
+        if (i < 0) {
+            throw new DbException("page " + leftPgNo + " is not a child of page " + parentPgNo);
+        }
+        a.dirtied(parent);
+        if (!parent.isFull()) {
+            parent.insertEntry(i, key, rightPgNo);
+            return;
+        }
+
+        BTreeInternalPage sibling = (BTreeInternalPage) appendPage(a, false);
+        Field up = parent.moveUpperHalfTo(sibling);
+        int left = parent.getNumKeys();
+        if (i <= left) {
+            parent.insertEntry(i, key, rightPgNo);
+        } else {
+            sibling.insertEntry(i - left - 1, key, rightPgNo);
+        }
+        a.dirtied(sibling);
+        insertIntoParent(a, path, parentPgNo, up, sibling.getPageNumber());
+    }
+
+    // see DbFile.java for javadocs
+    public ArrayList<Page> deleteTuple(TransactionId tid, Tuple t)
+            throws DbException, IOException, TransactionAbortedException {
+        Access a = new Access(tid);
+
+        // the RecordId is right unless the leaf changed since t was read
+        RecordId rid = t.getRecordId();
+        if (rid != null && rid.getPageId().getPageNumber() > 0
+                && rid.getPageId().getPageNumber() < numPages()) {
+            BTreePage pg = a.get(rid.getPageId().getPageNumber(), Permissions.READ_WRITE);
+            int slot = rid.getTupleNumber();
+            if (pg instanceof BTreeLeafPage && slot < ((BTreeLeafPage) pg).getNumTuples()
+                    && sameTuple(((BTreeLeafPage) pg).getTuple(slot), t)) {
+                ((BTreeLeafPage) pg).deleteAt(slot);
+                a.dirtied(pg);
+                return a.finish();
+            }
+        }
+
+        // otherwise look for it among the tuples with its key
+        Field key = t.getField(keyField);
+        BTreeRootPtrPage rootPtr = (BTreeRootPtrPage) a.get(0, Permissions.READ_ONLY);
+        int pgNo = rootPtr.getRoot();
+        BTreePage pg = pgNo == 0 ? null : a.get(pgNo, Permissions.READ_ONLY);
+        while (pg instanceof BTreeInternalPage) {
+            BTreeInternalPage in = (BTreeInternalPage) pg;
+            pgNo = in.getChild(in.findChild(key));
+            pg = a.get(pgNo, Permissions.READ_ONLY);
+        }
+        while (pg != null) {
+            BTreeLeafPage leaf = (BTreeLeafPage) pg;
+            for (int i = leaf.lowerBound(key); i < leaf.getNumTuples(); i++) {
+                if (!leaf.getKey(i).equals(key)) {
+                    throw new DbException("tuple absent");
+                }
+                if (sameTuple(leaf.getTuple(i), t)) {
+                    leaf = (BTreeLeafPage) a.get(leaf.getPageNumber(), Permissions.READ_WRITE);
+                    leaf.deleteAt(i);
+                    a.dirtied(leaf);
+                    return a.finish();
+                }
+            }
+            pgNo = leaf.getRightSibling();
+            pg = pgNo == 0 ? null : a.get(pgNo, Permissions.READ_ONLY);
+        }
+        throw new DbException("tuple absent");
+    }
+
+    /** @return true if two tuples have equal fields */
+    private boolean sameTuple(Tuple a, Tuple b) {
+        for (int i = 0; i < td.numFields(); i++) {
+            if (!a.getField(i).equals(b.getField(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns an iterator over all the tuples of the tree, in key order.
+     */
+    public DbFileIterator iterator(TransactionId tid) {
+        return new BTreeFileIterator(tid, null, null);
+    }
+
+    /**
+     * Returns an iterator over the tuples whose key satisfies a comparison
+     * with a value, in key order. Equality and greater-than comparisons
+     * start at the first leaf that may hold a match; equality and
+     * less-than comparisons stop at the first key past the last match.
+     *
+     * @param tid the transaction reading the tree
+     * @param op the comparison, with the key on its left
+     * @param operand the value the key is compared with
+     */
+    public DbFileIterator indexIterator(TransactionId tid, Predicate.Op op, Field operand) {
+        return new BTreeFileIterator(tid, op, operand);
+    }
+
+    private class BTreeFileIterator extends AbstractDbFileIterator {
+        private final TransactionId tid;
+        private final Predicate.Op op;
+        private final Field operand;
+
+        /** The leaf the next tuple comes from, pinned, or null when done. */
+        private BTreeLeafPage leaf;
+        private int next;
+
+        BTreeFileIterator(TransactionId tid, Predicate.Op op, Field operand) {
+            this.tid = tid;
+            this.op = op;
+            this.operand = operand;
+        }
+
+        /** @return true if the search starts at the key rather than the first leaf */
+        private boolean seeks() {
+            return op == Predicate.Op.EQUALS || op == Predicate.Op.GREATER_THAN
+                    || op == Predicate.Op.GREATER_THAN_OR_EQ;
+        }
+
+        public void open() throws DbException, TransactionAbortedException {
+            close();
+            BufferPool bp = Database.getBufferPool();
+            BTreeRootPtrPage rootPtr = (BTreeRootPtrPage) bp.getPage(tid, rootPtrId(),
+                    Permissions.READ_ONLY);
+            int pgNo = rootPtr.getRoot();
+            bp.unpinPage(tid, rootPtr.getId());
+            if (pgNo == 0) {
+                return;
+            }
+            BTreePage pg = (BTreePage) bp.getPage(tid, new HeapPageId(getId(), pgNo),
+                    Permissions.READ_ONLY);
+            while (pg instanceof BTreeInternalPage) {
+                BTreeInternalPage in = (BTreeInternalPage) pg;
+                pgNo = in.getChild(seeks() ? in.findChild(operand) : 0);
+                bp.unpinPage(tid, in.getId());
+                pg = (BTreePage) bp.getPage(tid, new HeapPageId(getId(), pgNo),
+                        Permissions.READ_ONLY);
+            }
+            leaf = (BTreeLeafPage) pg;
+            if (op == Predicate.Op.GREATER_THAN) {
+                next = leaf.upperBound(operand);
+            } else if (seeks()) {
+                next = leaf.lowerBound(operand);
+            } else {
+                next = 0;
+            }
+        }
+
+        @Override
+        protected Tuple readNext() throws DbException, TransactionAbortedException {
+            while (leaf != null) {
+                if (next >= leaf.getNumTuples()) {
+                    nextLeaf();
+                    continue;
+                }
+                Tuple t = leaf.getTuple(next++);
+                if (op == null || t.getField(keyField).compare(op, operand)) {
+                    return t;
+                }
+                // keys are in order, so once these fail no later key passes
+                if (op == Predicate.Op.EQUALS || op == Predicate.Op.LESS_THAN
+                        || op == Predicate.Op.LESS_THAN_OR_EQ) {
+                    close();
+                    return null;
+                }
+            }
+            return null;
+        }
+
+        /** Moves on to the right sibling of the current leaf, if any. */
+        private void nextLeaf() throws DbException, TransactionAbortedException {
+            int right = leaf.getRightSibling();
+            unpinLeaf();
+            if (right != 0) {
+                leaf = (BTreeLeafPage) Database.getBufferPool().getPage(tid,
+                        new HeapPageId(getId(), right), Permissions.READ_ONLY);
+                next = 0;
+            }
+        }
+
+        private void unpinLeaf() {
+            if (leaf != null) {
+                Database.getBufferPool().unpinPage(tid, leaf.getId());
+                leaf = null;
+            }
+        }
+
+        public void rewind() throws DbException, TransactionAbortedException {
+            open();
+        }
+
+        @Override
+        public void close() {
+            super.close();
+            unpinLeaf();
+        }
+    }
+
+    /**
+     * The pages one insert or delete has fetched. Each page is pinned once
+     * however often it is asked for. Pages changed are handed back to the
+     * BufferPool, which unpins them; the others are unpinned by finish.
+     */
+    private class Access {
+        private final TransactionId tid;
+        private final LinkedHashMap<Integer, BTreePage> pinned = new LinkedHashMap<>();
+        private final LinkedHashSet<Integer> dirty = new LinkedHashSet<>();
+
+        Access(TransactionId tid) {
+            this.tid = tid;
+        }
+
+        BTreePage get(int pgNo, Permissions perm) throws DbException,
+                TransactionAbortedException {
+            BufferPool bp = Database.getBufferPool();
+            HeapPageId hid = new HeapPageId(getId(), pgNo);
+            BTreePage pg = (BTreePage) bp.getPage(tid, hid, perm);
+            if (pinned.containsKey(pgNo)) {
+                // locked, maybe more strongly now, but pinned already
+                bp.unpinPage(tid, hid);
+            }
+            pinned.put(pgNo, pg);
+            return pg;
+        }
+
+        void dirtied(BTreePage pg) {
+            dirty.add(pg.getPageNumber());
+        }
+
+        ArrayList<Page> finish() {
+            ArrayList<Page> pages = new ArrayList<Page>();
+            for (Map.Entry<Integer, BTreePage> e : pinned.entrySet()) {
+                if (dirty.contains(e.getKey())) {
+                    pages.add(e.getValue());
+                } else {
+                    Database.getBufferPool().unpinPage(tid, e.getValue().getId());
+                }
+            }
+            return pages;
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package simpledb;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+
+/**
+ * BTreeInternalPage holds the keys and child pointers of an inner node of
+ * a {@link BTreeFile}. Its format is:
+ * <pre>
+ *   byte 0:        INTERNAL
+ *   bytes 4-7:     the number of keys n
+ *   from byte 8:   maxKeys + 1 child page numbers, of which n + 1 are used
+ *   then:          maxKeys keys of the key field's size, of which n are used
+ * </pre>
+ * Keys are sorted. Every key under child i lies between key i - 1 and key
+ * i, both included, so equal keys may be found on either side of a key
+ * equal to them.
+ *
+ * @see BTreeFile
+ */
+public class BTreeInternalPage extends BTreePage {
+
+    private static final int COUNT = 4;
+    private static final int CHILDREN = 8;
+
+    private final int maxKeys;
+    private final int keysOffset;
+
+    /**
+     * Creates an internal page of a B+ tree file in the catalog from a copy
+     * of its bytes.
+     */
+    public BTreeInternalPage(HeapPageId id, byte[] data) throws IOException {
+        this(id, fileOf(id).getTupleDesc(), fileOf(id).getKeyField(), copyPage(data));
+    }
+
+    BTreeInternalPage(HeapPageId id, TupleDesc td, int keyField, ByteBuffer page) {
+        super(id, td, keyField, page);
+        this.maxKeys = getMaxKeys(td, keyField, page.capacity());
+        this.keysOffset = CHILDREN + (maxKeys + 1) * 4;
+    }
+
+    /** @return an internal page with a single child and no keys */
+    static BTreeInternalPage createEmpty(HeapPageId id, TupleDesc td, int keyField,
+            int firstChild) {
+        ByteBuffer page = ByteBuffer.allocate(BufferPool.getPageSize());
+        page.put(0, (byte) INTERNAL);
+        page.putInt(CHILDREN, firstChild);
+        return new BTreeInternalPage(id, td, keyField, page);
+    }
+
+    /** @return the number of keys an internal page of the given size holds */
+    public static int getMaxKeys(TupleDesc td, int keyField, int pageSize) {
+        int keyLen = td.getFieldType(keyField).getLen(td.getFieldWidth(keyField));
+        return (pageSize - CHILDREN - 4) / (keyLen + 4);
+    }
+
+    /** @return the number of keys on this page, one less than its children */
+    public int getNumKeys() {
+        return data.getInt(COUNT);
+    }
+
+    /** @return true if no key can be added to this page */
+    public boolean isFull() {
+        return getNumKeys() >= maxKeys;
+    }
+
+    /** @return the i-th key */
+    public Field getKey(int i) {
+        return readKey(keysOffset + i * keyLen());
+    }
+
+    /** @return the page number of the i-th child */
+    public int getChild(int i) {
+        return data.getInt(CHILDREN + i * 4);
+    }
+
+    /** Sets the page number of the i-th child. */
+    void setChild(int i, int pgNo) {
+        saveBeforeImage();
+        data.putInt(CHILDREN + i * 4, pgNo);
+    }
+
+    /** @return the index of a child, or -1 if it is not a child of this page */
+    public int indexOfChild(int pgNo) {
+        for (int i = 0; i <= getNumKeys(); i++) {
+            if (getChild(i) == pgNo) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the index of the leftmost child that may hold the given key,
+     *     where searches for it start
+     */
+    public int findChild(Field key) {
+        int lo = 0;
+        int hi = getNumKeys();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (getKey(mid).compare(Predicate.Op.LESS_THAN, key)) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * @return the index of the rightmost child that may hold the given key,
+     *     where inserts of it go
+     */
+    public int findChildForInsert(Field key) {
+        int lo = 0;
+        int hi = getNumKeys();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (getKey(mid).compare(Predicate.Op.LESS_THAN_OR_EQ, key)) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Adds a key right after the i-th child, with a new child to its right,
+     * moving the later keys and children along.
+     *
+     * @throws DbException if the page is full
+     */
+    void insertEntry(int i, Field key, int rightChild) throws DbException {
+        int n = getNumKeys();
+        if (n >= maxKeys) {
+            throw new DbException("page is full");
+        }
+        saveBeforeImage();
+        int keyLen = keyLen();
+        move(keysOffset + i * keyLen, keysOffset + (i + 1) * keyLen, (n - i) * keyLen);
+        move(CHILDREN + (i + 1) * 4, CHILDREN + (i + 2) * 4, (n - i) * 4);
+        writeKey(keysOffset + i * keyLen, key);
+        data.putInt(CHILDREN + (i + 1) * 4, rightChild);
+        data.putInt(COUNT, n + 1);
+    }
+
+    /**
+     * Moves the keys and children after the middle key of this page to an
+     * empty page, and removes the middle key, which is to go up to the
+     * parent between this page and the new one.
+     *
+     * @return the middle key
+     */
+    Field moveUpperHalfTo(BTreeInternalPage right) {
+        int n = getNumKeys();
+        int mid = n / 2;
+        int keyLen = keyLen();
+        Field up = getKey(mid);
+        saveBeforeImage();
+        right.saveBeforeImage();
+        int moved = n - mid - 1;
+        for (int j = 0; j <= moved; j++) {
+            right.data.putInt(CHILDREN + j * 4, getChild(mid + 1 + j));
+        }
+        for (int j = 0; j < moved; j++) {
+            right.writeKey(keysOffset + j * keyLen, getKey(mid + 1 + j));
+        }
+        right.data.putInt(COUNT, moved);
+        for (int b = keysOffset + mid * keyLen; b < keysOffset + n * keyLen; b++) {
+            data.put(b, (byte) 0);
+        }
+        for (int b = CHILDREN + (mid + 1) * 4; b < CHILDREN + (n + 1) * 4; b++) {
+            data.put(b, (byte) 0);
+        }
+        data.putInt(COUNT, mid);
+        return up;
+    }
+}
@@ -0,0 +1,195 @@
+package simpledb;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+
+/**
+ * BTreeLeafPage holds tuples of a {@link BTreeFile} in key order. Its
+ * format is:
+ * <pre>
+ *   byte 0:        LEAF
+ *   bytes 4-7:     the number of the next leaf to the right, or 0
+ *   bytes 8-11:    the number of tuples n
+ *   from byte 12:  n tuples of the table's tuple size, encoded as in a
+ *                  HeapPage, sorted by key
+ * </pre>
+ * Tuples are moved along to keep them in order, so the slot in a tuple's
+ * RecordId is only good until the next change to the page.
+ *
+ * @see BTreeFile
+ */
+public class BTreeLeafPage extends BTreePage {
+
+    private static final int RIGHT = 4;
+    private static final int COUNT = 8;
+    private static final int TUPLES = 12;
+
+    private final int tupleSize;
+    private final int maxTuples;
+
+    /**
+     * Creates a leaf page of a B+ tree file in the catalog from a copy of
+     * its bytes.
+     */
+    public BTreeLeafPage(HeapPageId id, byte[] data) throws IOException {
+        this(id, fileOf(id).getTupleDesc(), fileOf(id).getKeyField(), copyPage(data));
+    }
+
+    BTreeLeafPage(HeapPageId id, TupleDesc td, int keyField, ByteBuffer page) {
+        super(id, td, keyField, page);
+        this.tupleSize = td.getSize();
+        this.maxTuples = getMaxTuples(td, page.capacity());
+    }
+
+    /** @return an empty leaf page of the given schema */
+    static BTreeLeafPage createEmpty(HeapPageId id, TupleDesc td, int keyField) {
+        ByteBuffer page = ByteBuffer.allocate(BufferPool.getPageSize());
+        page.put(0, (byte) LEAF);
+        return new BTreeLeafPage(id, td, keyField, page);
+    }
+
+    /** @return the number of tuples a leaf page of the given size holds */
+    public static int getMaxTuples(TupleDesc td, int pageSize) {
+        return (pageSize - TUPLES) / td.getSize();
+    }
+
+    /** @return the number of tuples on this page */
+    public int getNumTuples() {
+        return data.getInt(COUNT);
+    }
+
+    /** @return true if no tuple can be added to this page */
+    public boolean isFull() {
+        return getNumTuples() >= maxTuples;
+    }
+
+    /** @return the number of the next leaf to the right, or 0 */
+    public int getRightSibling() {
+        return data.getInt(RIGHT);
+    }
+
+    void setRightSibling(int pgNo) {
+        saveBeforeImage();
+        data.putInt(RIGHT, pgNo);
+    }
+
+    private int offset(int i) {
+        return TUPLES + i * tupleSize;
+    }
+
+    /** @return the key of the i-th tuple */
+    public Field getKey(int i) {
+        return readKey(offset(i) + td.getOffset(keyField));
+    }
+
+    /** @return a copy of the i-th tuple, whose RecordId names its slot */
+    public Tuple getTuple(int i) {
+        byte[] raw = new byte[tupleSize];
+        ByteBuffer buf = data.duplicate();
+        buf.position(offset(i));
+        buf.get(raw);
+        Tuple t = new Tuple(td, raw);
+        t.setRecordId(new RecordId(pid, i));
+        return t;
+    }
+
+    /**
+     * @return the index of the first tuple whose key is at least the given
+     *     one, or the number of tuples
+     */
+    public int lowerBound(Field key) {
+        int lo = 0;
+        int hi = getNumTuples();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (getKey(mid).compare(Predicate.Op.LESS_THAN, key)) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * @return the index of the first tuple whose key is greater than the
+     *     given one, or the number of tuples
+     */
+    public int upperBound(Field key) {
+        int lo = 0;
+        int hi = getNumTuples();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (getKey(mid).compare(Predicate.Op.LESS_THAN_OR_EQ, key)) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Puts a tuple at index i, moving the tuples from i on along by one.
+     * The caller keeps the tuples in key order.
+     *
+     * @throws DbException if the page is full or the tupledesc is mismatch
+     */
+    void insertAt(int i, Tuple t) throws DbException {
+        if (!t.getTupleDesc().equals(td)) {
+            throw new DbException("tupledesc is mismatch");
+        }
+        int n = getNumTuples();
+        if (n >= maxTuples) {
+            throw new DbException("page is full");
+        }
+        byte[] row = new byte[tupleSize];
+        for (int j = 0; j < td.numFields(); j++) {
+            byte[] f = encode(t.getField(j), td.getFieldWidth(j));
+            System.arraycopy(f, 0, row, td.getOffset(j),
+                    td.getFieldType(j).getLen(td.getFieldWidth(j)));
+        }
+        saveBeforeImage();
+        move(offset(i), offset(i + 1), (n - i) * tupleSize);
+        ByteBuffer buf = data.duplicate();
+        buf.position(offset(i));
+        buf.put(row);
+        data.putInt(COUNT, n + 1);
+        t.setRecordId(new RecordId(pid, i));
+    }
+
+    /** Removes the tuple at index i, moving the later ones back by one. */
+    void deleteAt(int i) {
+        int n = getNumTuples();
+        saveBeforeImage();
+        move(offset(i + 1), offset(i), (n - i - 1) * tupleSize);
+        for (int b = offset(n - 1); b < offset(n); b++) {
+            data.put(b, (byte) 0);
+        }
+        data.putInt(COUNT, n - 1);
+    }
+
+    /**
+     * Moves the upper half of this page's tuples to an empty page, which
+     * becomes this page's right sibling.
+     */
+    void moveUpperHalfTo(BTreeLeafPage right) {
+        int n = getNumTuples();
+        int keep = n / 2;
+        saveBeforeImage();
+        right.saveBeforeImage();
+        ByteBuffer src = data.duplicate();
+        src.position(offset(keep));
+        src.limit(offset(n));
+        ByteBuffer dst = right.data.duplicate();
+        dst.position(TUPLES);
+        dst.put(src);
+        for (int b = offset(keep); b < offset(n); b++) {
+            data.put(b, (byte) 0);
+        }
+        data.putInt(COUNT, keep);
+        right.data.putInt(COUNT, n - keep);
+        right.data.putInt(RIGHT, getRightSibling());
+        data.putInt(RIGHT, right.getPageNumber());
+    }
+}
@@ -0,0 +1,175 @@
+package simpledb;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+
+/**
+ * BTreePage is the base of the pages of a {@link BTreeFile}. Page 0 of the
+ * file is a {@link BTreeRootPtrPage}; every other page is a
+ * {@link BTreeInternalPage} or a {@link BTreeLeafPage}, and says which in
+ * its first byte. Like a HeapPage, a page keeps only its bytes, reads and
+ * writes them in place, and saves its before image on its first change.
+ *
+ * @see BTreeFile
+ */
+public abstract class BTreePage implements Page {
+
+    /** First byte of an internal page. */
+    static final int INTERNAL = 1;
+
+    /** First byte of a leaf page. */
+    static final int LEAF = 2;
+
+    final HeapPageId pid;
+    final TupleDesc td;
+    final int keyField;
+
+    /** The page, from position 0 to the page size. Only accessed by index. */
+    final ByteBuffer data;
+
+    // Dirtying transaction
+    private TransactionId tid;
+
+    /** What the page was before its first change since setBeforeImage. */
+    private final BeforeImage beforeImage = new BeforeImage();
+
+    BTreePage(HeapPageId id, TupleDesc td, int keyField, ByteBuffer page) {
+        this.pid = id;
+        this.td = td;
+        this.keyField = keyField;
+        this.data = page;
+    }
+
+    /**
+     * Creates the page of a B+ tree file with the given bytes, of the kind
+     * its page number and first byte call for. The bytes are copied.
+     *
+     * @throws IOException if the page is not a page of a B+ tree
+     */
+    static BTreePage create(HeapPageId id, TupleDesc td, int keyField, byte[] bytes)
+            throws IOException {
+        ByteBuffer page = copyPage(bytes);
+        if (id.getPageNumber() == 0) {
+            return new BTreeRootPtrPage(id, td, keyField, page);
+        }
+        switch (page.get(0)) {
+        case INTERNAL:
+            return new BTreeInternalPage(id, td, keyField, page);
+        case LEAF:
+            return new BTreeLeafPage(id, td, keyField, page);
+        default:
+            throw new IOException("page " + id.getPageNumber() + " is not a B+ tree page");
+        }
+    }
+
+    /** @return a new heap buffer of page size starting with the given bytes */
+    static ByteBuffer copyPage(byte[] bytes) {
+        return BeforeImage.copyPage(ByteBuffer.wrap(bytes));
+    }
+
+    /**
+     * @return the file the page with the given id belongs to, which must be
+     *     a BTreeFile in the catalog
+     */
+    static BTreeFile fileOf(HeapPageId id) {
+        return (BTreeFile) Database.getCatalog().getDatabaseFile(id.getTableId());
+    }
+
+    public HeapPageId getId() {
+        return pid;
+    }
+
+    /** @return the number of this page in its file */
+    public int getPageNumber() {
+        return pid.getPageNumber();
+    }
+
+    /** @return the number of bytes of a key */
+    int keyLen() {
+        return td.getFieldType(keyField).getLen(td.getFieldWidth(keyField));
+    }
+
+    /** Decodes a key stored at an offset of the page. */
+    Field readKey(int offset) {
+        ByteBuffer buf = data.duplicate();
+        buf.position(offset);
+        try {
+            return td.getFieldType(keyField).parse(buf, td.getFieldWidth(keyField));
+        } catch (java.text.ParseException e) {
+            throw new IllegalStateException("corrupt key at " + offset + " of page "
+                    + pid.getPageNumber(), e);
+        }
+    }
+
+    /** Encodes a key at an offset of the page. */
+    void writeKey(int offset, Field key) {
+        byte[] bytes = encode(key, td.getFieldWidth(keyField));
+        ByteBuffer buf = data.duplicate();
+        buf.position(offset);
+        buf.put(bytes, 0, keyLen());
+    }
+
+    /** @return the on-disk encoding of a field, strings at the given width */
+    static byte[] encode(Field f, int width) {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        DataOutputStream dos = new DataOutputStream(baos);
+        try {
+            if (f instanceof StringField) {
+                ((StringField) f).serialize(dos, width);
+            } else {
+                f.serialize(dos);
+            }
+            dos.flush();
+        } catch (IOException e) {
+            // this really shouldn't happen
+            e.printStackTrace();
+        }
+        return baos.toByteArray();
+    }
+
+    /** Moves bytes [from, from + len) of the page to start at to. */
+    void move(int from, int to, int len) {
+        if (len <= 0 || from == to) {
+            return;
+        }
+        byte[] tmp = new byte[len];
+        ByteBuffer buf = data.duplicate();
+        buf.position(from);
+        buf.get(tmp);
+        buf.position(to);
+        buf.put(tmp);
+    }
+
+    public byte[] getPageData() {
+        byte[] out = new byte[data.capacity()];
+        data.duplicate().get(out);
+        return out;
+    }
+
+    public void markDirty(boolean dirty, TransactionId tid) {
+        this.tid = dirty ? tid : null;
+    }
+
+    public TransactionId isDirty() {
+        return tid;
+    }
+
+    public BTreePage getBeforeImage() {
+        byte[] before = beforeImage.get(this);
+        try {
+            return create(pid, td, keyField, before);
+        } catch (IOException e) {
+            // we parsed it OK before
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public void setBeforeImage() {
+        beforeImage.set();
+    }
+
+    /** Saves the before image, if it is not saved yet, ahead of a change. */
+    void saveBeforeImage() {
+        beforeImage.save(this);
+    }
+}
@@ -0,0 +1,38 @@
+package simpledb;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+
+/**
+ * BTreeRootPtrPage is page 0 of a {@link BTreeFile}. It holds the number of
+ * the root page of the tree in its first four bytes, or 0 while the tree
+ * is empty. A page of zeros is therefore the root pointer of an empty
+ * tree.
+ *
+ * @see BTreeFile
+ */
+public class BTreeRootPtrPage extends BTreePage {
+
+    /**
+     * Creates the root pointer page of a B+ tree file in the catalog from
+     * a copy of its bytes.
+     */
+    public BTreeRootPtrPage(HeapPageId id, byte[] data) throws IOException {
+        this(id, fileOf(id).getTupleDesc(), fileOf(id).getKeyField(), copyPage(data));
+    }
+
+    BTreeRootPtrPage(HeapPageId id, TupleDesc td, int keyField, ByteBuffer page) {
+        super(id, td, keyField, page);
+    }
+
+    /** @return the number of the root page, or 0 if the tree is empty */
+    public int getRoot() {
+        return data.getInt(0);
+    }
+
+    /** Makes the given page the root of the tree. */
+    public void setRoot(int pgNo) {
+        saveBeforeImage();
+        data.putInt(0, pgNo);
+    }
+}
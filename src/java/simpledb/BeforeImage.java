@@ -0,0 +1,55 @@
+package simpledb;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The before image of a page, which every kind of page keeps one of.
+ * Setting it copies nothing: the page's bytes are saved just ahead of its
+ * first change after that, so pages that are only read are never copied.
+ * <p>
+ * Pages also make the copies of the bytes they are built from with
+ * {@link #copyPage}.
+ *
+ * @Threadsafe
+ */
+final class BeforeImage {
+
+    /** The page before its first change since set, or null if unchanged. Guarded by this. */
+    private byte[] saved;
+
+    /** Makes the current contents of the page the before image. */
+    synchronized void set() {
+        saved = null;
+    }
+
+    /**
+     * Saves the bytes of a page about to be changed, unless they have been
+     * saved since the image was last set.
+     */
+    synchronized void save(Page page) {
+        if (saved == null) {
+            saved = page.getPageData();
+        }
+    }
+
+    /** @return the bytes of the page as of when the image was last set */
+    byte[] get(Page page) {
+        byte[] before;
+        synchronized (this) {
+            before = saved;
+        }
+        return before != null ? before : page.getPageData();
+    }
+
+    /** @return a new heap buffer of page size starting with the remaining bytes of src */
+    static ByteBuffer copyPage(ByteBuffer src) {
+        ByteBuffer page = ByteBuffer.allocate(BufferPool.getPageSize());
+        ByteBuffer from = src.duplicate();
+        if (from.remaining() > page.capacity()) {
+            from.limit(from.position() + page.capacity());
+        }
+        page.put(from);
+        page.clear();
+        return page;
+    }
+}
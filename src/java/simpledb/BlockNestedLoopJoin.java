@@ -0,0 +1,179 @@
+package simpledb;
+
+import java.util.*;
+
+/**
+ * The BlockNestedLoopJoin operator evaluates a join on any predicate by
+ * reading child1 a block of tuples at a time, a given number of pages'
+ * worth, and comparing each block with every tuple of one pass over child2.
+ * Where {@link Join} reads child2 once for every child1 tuple, this reads
+ * it once for every block.
+ * <p>
+ * As for Join, results are the concatenation of a tuple of child1 and a
+ * tuple of child2.
+ */
+public class BlockNestedLoopJoin extends Operator {
+
+    private static final long serialVersionUID = 1L;
+
+    /** Default number of pages of child1 tuples held in a block */
+    public static final int DEFAULT_BLOCK_PAGES = 100;
+
+    private static int blockPages = DEFAULT_BLOCK_PAGES;
+
+    private JoinPredicate p;
+    private OpIterator child1;
+    private OpIterator child2;
+    private final int pages;
+
+    /** The child1 tuples of the current block, or null before the first */
+    private transient ArrayList<Tuple> block;
+    /** The child2 tuple being compared with the block, and the next block index */
+    private Tuple inner;
+    private int idx;
+
+    /**
+     * Constructor. Accepts two children to join and the predicate to join them
+     * on, and holds blocks of the pages of tuples set by setBlockPages.
+     *
+     * @param p
+     *            The predicate to use to join the children
+     * @param child1
+     *            Iterator for the left(outer) relation to join
+     * @param child2
+     *            Iterator for the right(inner) relation to join
+     */
+    public BlockNestedLoopJoin(JoinPredicate p, OpIterator child1, OpIterator child2) {
+        this(p, child1, child2, blockPages);
+    }
+
+    /**
+     * Constructor for a join with its own block size.
+     *
+     * @param blockPages
+     *            The number of pages' worth of child1 tuples in a block
+     */
+    public BlockNestedLoopJoin(JoinPredicate p, OpIterator child1, OpIterator child2,
+            int blockPages) {
+        if (blockPages < 1) {
+            throw new IllegalArgumentException("a block needs at least a page");
+        }
+        this.p = p;
+        this.child1 = child1;
+        this.child2 = child2;
+        this.pages = blockPages;
+    }
+
+    /**
+     * Sets the number of pages of child1 tuples in the blocks of joins made
+     * from now on.
+     */
+    public static void setBlockPages(int pages) {
+        blockPages = pages;
+    }
+
+    /** Puts the block size of joins made from now on back to the default. */
+    public static void resetBlockPages() {
+        blockPages = DEFAULT_BLOCK_PAGES;
+    }
+
+    /** @return the number of pages of tuples in the blocks of joins made now */
+    public static int getBlockPages() {
+        return blockPages;
+    }
+
+    public JoinPredicate getJoinPredicate() {
+        return this.p;
+    }
+
+    public TupleDesc getTupleDesc() {
+        return TupleDesc.merge(child1.getTupleDesc(), child2.getTupleDesc());
+    }
+
+    public void open() throws DbException, NoSuchElementException,
+            TransactionAbortedException {
+        child1.open();
+        child2.open();
+        super.open();
+    }
+
+    public void close() {
+        super.close();
+        child1.close();
+        child2.close();
+        block = null;
+        inner = null;
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException {
+        child1.rewind();
+        child2.rewind();
+        block = null;
+        inner = null;
+    }
+
+    /**
+     * Reads the next block of child1 tuples, rewinding child2 for it unless
+     * it is the first.
+     *
+     * @return false if child1 has no tuples left
+     */
+    private boolean nextBlock() throws DbException, TransactionAbortedException {
+        boolean first = block == null;
+        int size = Math.max(1, pages * BufferPool.getPageSize() / child1.getTupleDesc().getSize());
+        block = new ArrayList<Tuple>(Math.min(size, 1024));
+        while (block.size() < size && child1.hasNext()) {
+            block.add(child1.next());
+        }
+        if (block.isEmpty()) {
+            return false;
+        }
+        if (!first) {
+            child2.rewind();
+        }
+        return true;
+    }
+
+    /**
+     * Returns the next tuple generated by the join, or null if there are no
+     * more tuples.
+     *
+     * @return The next matching tuple.
+     */
+    protected Tuple fetchNext() throws TransactionAbortedException, DbException {
+        if ((block == null && !nextBlock()) || block.isEmpty()) {
+            return null;
+        }
+        while (true) {
+            if (inner != null) {
+                while (idx < block.size()) {
+                    Tuple outer = block.get(idx++);
+                    if (p.filter(outer, inner)) {
+                        return Join.combine(getTupleDesc(), outer, inner);
+                    }
+                }
+            }
+            if (child2.hasNext()) {
+                inner = child2.next();
+                idx = 0;
+                continue;
+            }
+            inner = null;
+            if (!nextBlock()) {
+                return null;
+            }
+        }
+    }
+
+    @Override
+    public OpIterator[] getChildren() {
+        return new OpIterator[]{child1, child2};
+    }
+
+    @Override
+    public void setChildren(OpIterator[] children) {
+        this.child1 = children[0];
+        this.child2 = children[1];
+    }
+
+}
@@ -3,10 +3,12 @@ package simpledb;
 import java.io.*;
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
-import java.util.Random;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * BufferPool manages the reading and writing of pages into memory from
@@ -15,7 +17,26 @@ import java.util.concurrent.ConcurrentHashMap;
  * <p>
  * The BufferPool is also responsible for locking;  when a transaction fetches
  * a page, BufferPool checks that the transaction has the appropriate
- * locks to read/write the page.
+ * locks to read/write the page. Locks come from a {@link LockManager} and are
+ * held until the transaction completes. Pages are only written back when a
+ * transaction commits, and never evicted while dirty (NO STEAL / FORCE).
+ * <p>
+ * The page table is a ConcurrentHashMap, so lookups of cached pages never
+ * block. Misses, evictions and other changes to the table are serialized per
+ * lock stripe, chosen by the hash of the PageId, so threads working on
+ * unrelated pages do not contend on a single monitor. Which page to evict
+ * when the pool is full is up to a pluggable {@link ReplacementPolicy}.
+ * <p>
+ * Every page returned by getPage is pinned, and a pinned page is never
+ * evicted. Callers unpin a page with {@link #unpinPage} (or releasePage) once
+ * they no longer hold a reference to it; any pins a transaction still holds
+ * are dropped when it completes.
+ * <p>
+ * In off-heap mode the pool reads pages into the frames of a {@link PageArena}
+ * of direct buffers, allocated once for its whole size, so cached pages keep
+ * only a small object on the Java heap. A page read this way may be reused
+ * for another page as soon as it is unpinned. The default pool is off-heap
+ * if the system property {@value #OFF_HEAP_PROPERTY} is true.
  * 
  * @Threadsafe, all fields are final
  */
@@ -30,25 +51,193 @@ public class BufferPool {
     constructor instead. */
     public static final int DEFAULT_PAGES = 50;
 
+    /** System property that puts the default pool in off-heap mode. */
+    public static final String OFF_HEAP_PROPERTY = "simpledb.offheap";
+
+    /** Number of lock stripes guarding misses and evictions. Power of two. */
+    private static final int NUM_STRIPES = 64;
+
+    /** Number of policy sweeps made before giving up on an eviction. */
+    private static final int EVICTION_ATTEMPTS = 3;
+
+    /** Longest wait for the stripe of a victim another thread is using. */
+    private static final long EVICTION_WAIT_MS = 100;
+
     /** Non-default (constructor) value. */
-    private int numPages;
+    private final int numPages;
+
+    /**
+     * A slot of the page table: the cached version of a page, the number of
+     * pins on it and the arena frame it was read into, if any. A frame that
+     * has been evicted has a pin count of -1 and can no longer be pinned.
+     */
+    private static class Frame {
+        volatile Page page;
+        final AtomicInteger pins;
+        /** Slot in the arena, or -1. */
+        final int slot;
+
+        Frame(Page page, int slot) {
+            this.page = page;
+            this.pins = new AtomicInteger(0);
+            this.slot = slot;
+        }
+
+        /** @return false if the frame has been evicted */
+        boolean tryPin() {
+            while (true) {
+                int n = pins.get();
+                if (n < 0) {
+                    return false;
+                }
+                if (pins.compareAndSet(n, n + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        void unpin() {
+            while (true) {
+                int n = pins.get();
+                if (n <= 0 || pins.compareAndSet(n, n - 1)) {
+                    return;
+                }
+            }
+        }
+
+        /** Marks an unpinned frame as evicted. @return true on success */
+        boolean tryRetire() {
+            return pins.compareAndSet(0, -1);
+        }
+    }
+
+    /** Pins a transaction holds on one frame. */
+    private static class PinRecord {
+        final Frame frame;
+        int count;
+
+        PinRecord(Frame frame) {
+            this.frame = frame;
+        }
+    }
 
     /** The pages */
-    private Map<PageId, Page> buf;
+    private final ConcurrentHashMap<PageId, Frame> buf;
+
+    /** Page-level locks of running transactions. */
+    private final LockManager lockManager;
+
+    /** The pins held by each transaction, so they can be dropped at the end. */
+    private final ConcurrentHashMap<TransactionId, Map<PageId, PinRecord>> pinsByTxn;
+
+    /** Locks serializing changes to the pages whose ids hash to each stripe. */
+    private final ReentrantLock[] stripes;
+
+    /** Number of frames in use, including ones reserved for in-flight reads. */
+    private final AtomicInteger usedFrames;
+
+    /** Chooses the pages to evict. */
+    private final ReplacementPolicy policy;
+
+    /** Number of getPage calls served from, and not from, the cache. */
+    private final LongAdder hits;
+    private final LongAdder misses;
+
+    /** Number of pages read ahead of use. */
+    private final LongAdder prefetches;
+
+    /** Prefetches pages for sequential scans. */
+    private final ReadAhead readAhead;
+
+    /** Off-heap frames holding the cached pages, or null for an on-heap pool. */
+    private final PageArena arena;
 
     /**
-     * Creates a BufferPool that caches up to numPages pages.
+     * Creates a BufferPool that caches up to numPages pages, evicting them
+     * with the CLOCK policy.
      *
      * @param numPages maximum number of pages in this buffer pool.
      */
     public BufferPool(int numPages) {
+        this(numPages, new ClockPolicy());
+    }
+
+    /**
+     * Creates a BufferPool that caches up to numPages pages.
+     *
+     * @param numPages maximum number of pages in this buffer pool.
+     * @param policy the replacement policy choosing pages to evict; must not
+     *     be shared with another pool.
+     */
+    public BufferPool(int numPages, ReplacementPolicy policy) {
+        this(numPages, policy, false);
+    }
+
+    /**
+     * Creates a BufferPool that caches up to numPages pages, on or off the
+     * Java heap. An off-heap pool allocates all its frames up front.
+     *
+     * @param numPages maximum number of pages in this buffer pool.
+     * @param policy the replacement policy choosing pages to evict; must not
+     *     be shared with another pool.
+     * @param offHeap true to keep pages in an arena of direct buffers
+     */
+    public BufferPool(int numPages, ReplacementPolicy policy, boolean offHeap) {
         this.numPages = numPages;
-        this.buf = new HashMap<>();
+        this.policy = policy;
+        this.hits = new LongAdder();
+        this.misses = new LongAdder();
+        this.prefetches = new LongAdder();
+        this.buf = new ConcurrentHashMap<>(numPages * 2, 0.75f, NUM_STRIPES);
+        this.stripes = new ReentrantLock[NUM_STRIPES];
+        for (int i = 0; i < NUM_STRIPES; i++) {
+            this.stripes[i] = new ReentrantLock();
+        }
+        this.usedFrames = new AtomicInteger(0);
+        this.pinsByTxn = new ConcurrentHashMap<>();
+        this.lockManager = new LockManager();
+        this.readAhead = new ReadAhead(this);
+        this.arena = offHeap ? new PageArena(numPages) : null;
     }
     
     public static int getPageSize() {
       return pageSize;
     }
+
+    /** @return the number of getPage calls served from the cache */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /** @return the number of getPage calls that had to read from disk */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /** @return the number of pages read into the pool ahead of use */
+    public long getPrefetchCount() {
+        return prefetches.sum();
+    }
+
+    /** @return the read-ahead stage that prefetches pages for scans */
+    public ReadAhead getReadAhead() {
+        return readAhead;
+    }
+
+    /** @return the maximum number of pages in this buffer pool */
+    public int getNumPages() {
+        return numPages;
+    }
+
+    /** @return true if the pool keeps its pages off the Java heap */
+    public boolean isOffHeap() {
+        return arena != null;
+    }
+
+    /** @return the arena holding the pages of an off-heap pool, or null */
+    PageArena getArena() {
+        return arena;
+    }
     
     // THIS FUNCTION SHOULD ONLY BE USED FOR TESTING!!
     public static void setPageSize(int pageSize) {
@@ -78,23 +267,214 @@ public class BufferPool {
     public  Page getPage(TransactionId tid, PageId pid, Permissions perm)
         throws TransactionAbortedException, DbException {
 
-        // Found the page
-        if (buf.containsKey(pid)) {
-            return buf.get(pid);
+        // blocks until the lock is granted, or throws if that would deadlock
+        if (tid != null) {
+            lockManager.acquire(tid, pid, perm);
+        }
+
+        // Found the page, no stripe locking needed
+        Frame frame = buf.get(pid);
+        if (frame != null && frame.tryPin()) {
+            hits.increment();
+            policy.pageAccessed(pid);
+            recordPin(tid, pid, frame);
+            return frame.page;
+        }
+
+        ReentrantLock stripe = stripeFor(pid);
+        stripe.lock();
+        try {
+            // someone else may have read it in while we waited
+            frame = buf.get(pid);
+            if (frame != null && frame.tryPin()) {
+                hits.increment();
+                policy.pageAccessed(pid);
+                recordPin(tid, pid, frame);
+                return frame.page;
+            }
+
+            // Read new page into the buffer, evicting if full, and return it
+            Page page = null;
+            reserveFrame();
+            int slot = allocateSlot();
+            try {
+                page = readPage(pid, slot);
+            } finally {
+                if (page == null) {
+                    releaseFrame(slot);
+                }
+            }
+            if (page == null) {
+                throw new DbException("could not read page " + pid.getPageNumber()
+                        + " of table " + pid.getTableId());
+            }
+            misses.increment();
+            frame = new Frame(page, slot);
+            frame.tryPin();
+            buf.put(pid, frame);
+            policy.pageAdded(pid);
+            recordPin(tid, pid, frame);
+            return page;
+        } finally {
+            stripe.unlock();
+        }
+    }
+
+    /**
+     * Retrieves a page for a large scan without growing the shared page
+     * table. Locks the page like getPage. If the page is already cached it
+     * is pinned and returned from the pool, as getPage would; otherwise it is
+     * read into the scan's ring, where it is not pinned and is never seen by
+     * other transactions. Holding the lock keeps the copy in the ring
+     * current until the transaction completes.
+     *
+     * @param tid the ID of the transaction requesting the page
+     * @param pid the ID of the requested page
+     * @param perm the requested permissions on the page
+     * @param ring the scan's private frames
+     * @see BufferRing#holds
+     */
+    public Page getPageInRing(TransactionId tid, PageId pid, Permissions perm, BufferRing ring)
+        throws TransactionAbortedException, DbException {
+        if (tid != null) {
+            lockManager.acquire(tid, pid, perm);
         }
 
-        // Haven't found page, but must evict since full
-        if (buf.size() == numPages) {
-            evictPage();
+        Frame frame = buf.get(pid);
+        if (frame != null && frame.tryPin()) {
+            hits.increment();
+            policy.pageAccessed(pid);
+            recordPin(tid, pid, frame);
+            return frame.page;
         }
 
-        // Read new page into the buffer, return it
+        Page page = ring.get(pid);
+        if (page != null) {
+            return page;
+        }
         DbFile f = Database.getCatalog().getDatabaseFile(pid.getTableId());
-        Page page = f.readPage(pid);
-        buf.put(pid, page);
+        page = f.readPage(pid);
+        if (page == null) {
+            throw new DbException("could not read page " + pid.getPageNumber()
+                    + " of table " + pid.getTableId());
+        }
+        misses.increment();
+        ring.add(page);
         return page;
     }
 
+    /**
+     * Drops one pin the specified transaction holds on a page, making the
+     * page evictable again once nobody else has it pinned. Does nothing if
+     * the transaction holds no pin on the page.
+     *
+     * @param tid the ID of the transaction that pinned the page
+     * @param pid the ID of the page to unpin
+     */
+    public void unpinPage(TransactionId tid, PageId pid) {
+        if (tid == null) {
+            Frame frame = buf.get(pid);
+            if (frame != null) {
+                frame.unpin();
+            }
+            return;
+        }
+
+        Map<PageId, PinRecord> held = pinsByTxn.get(tid);
+        if (held == null) {
+            return;
+        }
+        synchronized (held) {
+            PinRecord rec = held.get(pid);
+            if (rec == null) {
+                return;
+            }
+            rec.frame.unpin();
+            if (--rec.count == 0) {
+                held.remove(pid);
+            }
+        }
+    }
+
+    /** Notes that tid holds a pin on frame, so it can be dropped later. */
+    private void recordPin(TransactionId tid, PageId pid, Frame frame) {
+        if (tid == null) {
+            return;
+        }
+        Map<PageId, PinRecord> held = pinsByTxn.computeIfAbsent(tid, t -> new HashMap<>());
+        synchronized (held) {
+            PinRecord rec = held.get(pid);
+            if (rec == null || rec.frame != frame) {
+                // the old frame was discarded; its pins went with it
+                rec = new PinRecord(frame);
+                held.put(pid, rec);
+            }
+            rec.count++;
+        }
+    }
+
+    /** Drops every pin the specified transaction still holds. */
+    private void unpinAll(TransactionId tid) {
+        Map<PageId, PinRecord> held = pinsByTxn.remove(tid);
+        if (held == null) {
+            return;
+        }
+        synchronized (held) {
+            for (PinRecord rec : held.values()) {
+                for (int i = 0; i < rec.count; i++) {
+                    rec.frame.unpin();
+                }
+            }
+            held.clear();
+        }
+    }
+
+    /**
+     * Reads a page into the pool ahead of use, without locking or pinning
+     * it. Only the committed version of the page on disk is read, and only
+     * if the page is absent, so this never hides a transaction's changes.
+     * Gives up rather than waiting if no frame can be freed.
+     *
+     * @return true if the page was read
+     */
+    boolean prefetchPage(PageId pid) {
+        if (buf.containsKey(pid)) {
+            return false;
+        }
+        ReentrantLock stripe = stripeFor(pid);
+        stripe.lock();
+        try {
+            if (buf.containsKey(pid) || !tryReserveFrame()) {
+                return false;
+            }
+            int slot = allocateSlot();
+            Page page = null;
+            try {
+                page = readPage(pid, slot);
+            } catch (RuntimeException e) {
+                // the table went away; nothing to prefetch
+            } finally {
+                if (page == null) {
+                    releaseFrame(slot);
+                }
+            }
+            if (page == null) {
+                return false;
+            }
+            prefetches.increment();
+            buf.put(pid, new Frame(page, slot));
+            policy.pagePrefetched(pid);
+            return true;
+        } finally {
+            stripe.unlock();
+        }
+    }
+
+    /** @return true if the page is in the pool */
+    boolean isCached(PageId pid) {
+        return buf.containsKey(pid);
+    }
+
     /**
      * Releases the lock on a page.
      * Calling this is very risky, and may result in wrong behavior. Think hard
@@ -105,8 +485,8 @@ public class BufferPool {
      * @param pid the ID of the page to unlock
      */
     public  void releasePage(TransactionId tid, PageId pid) {
-        // some code goes here
-        // not necessary for lab1|lab2
+        unpinPage(tid, pid);
+        lockManager.release(tid, pid);
     }
 
     /**
@@ -115,15 +495,12 @@ public class BufferPool {
      * @param tid the ID of the transaction requesting the unlock
      */
     public void transactionComplete(TransactionId tid) throws IOException {
-        // some code goes here
-        // not necessary for lab1|lab2
+        transactionComplete(tid, true);
     }
 
     /** Return true if the specified transaction has a lock on the specified page */
     public boolean holdsLock(TransactionId tid, PageId p) {
-        // some code goes here
-        // not necessary for lab1|lab2
-        return false;
+        return lockManager.holdsLock(tid, p);
     }
 
     /**
@@ -135,8 +512,28 @@ public class BufferPool {
      */
     public void transactionComplete(TransactionId tid, boolean commit)
         throws IOException {
-        // some code goes here
-        // not necessary for lab1|lab2
+        try {
+            if (commit) {
+                flushPages(tid);
+                for (PageId pid : lockManager.lockedPages(tid)) {
+                    Frame frame = buf.get(pid);
+                    if (frame != null) {
+                        frame.page.setBeforeImage();
+                    }
+                }
+            } else {
+                // throw away the changes; the next reader gets them from disk
+                for (PageId pid : lockManager.lockedPages(tid)) {
+                    Frame frame = buf.get(pid);
+                    if (frame != null && tid.equals(frame.page.isDirty())) {
+                        discardPage(pid);
+                    }
+                }
+            }
+        } finally {
+            unpinAll(tid);
+            lockManager.releaseAll(tid);
+        }
     }
 
     /**
@@ -159,12 +556,9 @@ public class BufferPool {
         DbFile f = Database.getCatalog().getDatabaseFile(tableId);
         ArrayList<Page> pgs = f.insertTuple(tid, t);
         for (Page pg : pgs) {
-            if (buf.size() > numPages) {
-                evictPage();
-            }
-
             pg.markDirty(true, tid);
-            buf.put(pg.getId(), pg);
+            cachePage(pg);
+            unpinPage(tid, pg.getId());
         }
     }
 
@@ -186,12 +580,35 @@ public class BufferPool {
         DbFile f = Database.getCatalog().getDatabaseFile(t.getRecordId().getPageId().getTableId());
         ArrayList<Page> pgs = f.deleteTuple(tid, t);
         for (Page pg : pgs) {
-            if (buf.size() > numPages) {
-                evictPage();
-            }
-            
             pg.markDirty(true, tid);
-            buf.put(pg.getId(), pg);
+            cachePage(pg);
+            unpinPage(tid, pg.getId());
+        }
+    }
+
+    /**
+     * Puts a page into the cache, replacing any existing version of it; pins
+     * on the old version carry over. Evicts a page first if this takes up a
+     * new frame and the pool is full.
+     */
+    private void cachePage(Page pg) throws DbException {
+        PageId pid = pg.getId();
+        ReentrantLock stripe = stripeFor(pid);
+        stripe.lock();
+        try {
+            // frames in the table are never retired while we hold the stripe
+            Frame frame = buf.get(pid);
+            if (frame != null) {
+                frame.page = pg;
+                policy.pageAccessed(pid);
+            } else {
+                // the page was built elsewhere, so it needs no arena frame
+                reserveFrame();
+                buf.put(pid, new Frame(pg, -1));
+                policy.pageAdded(pid);
+            }
+        } finally {
+            stripe.unlock();
         }
     }
 
@@ -200,7 +617,7 @@ public class BufferPool {
      * NB: Be careful using this routine -- it writes dirty data to disk so will
      *     break simpledb if running in NO STEAL mode.
      */
-    public synchronized void flushAllPages() throws IOException {
+    public void flushAllPages() throws IOException {
         for (PageId pid : buf.keySet()) {
             flushPage(pid);
         }
@@ -214,70 +631,225 @@ public class BufferPool {
         Also used by B+ tree files to ensure that deleted pages
         are removed from the cache so they can be reused safely
     */
-    public synchronized void discardPage(PageId pid) {
-        this.buf.remove(pid);
+    public void discardPage(PageId pid) {
+        ReentrantLock stripe = stripeFor(pid);
+        stripe.lock();
+        try {
+            Frame frame = buf.remove(pid);
+            if (frame != null) {
+                frame.pins.set(-1);
+                policy.pageRemoved(pid);
+                releaseFrame(frame.slot);
+            }
+        } finally {
+            stripe.unlock();
+        }
     }
 
     /**
      * Flushes a certain page to disk
      * @param pid an ID indicating the page to flush
      */
-    private synchronized  void flushPage(PageId pid) throws IOException {
-        DbFile f = Database.getCatalog().getDatabaseFile(pid.getTableId());
-        Page pg = buf.get(pid);
-        if (pg.isDirty() != null) {
-            TransactionId dirt = pg.isDirty();
-            if (dirt != null) {
-                Database.getLogFile().logWrite(dirt, pg.getBeforeImage(), pg);
-                Database.getLogFile().force();
+    private void flushPage(PageId pid) throws IOException {
+        ReentrantLock stripe = stripeFor(pid);
+        stripe.lock();
+        try {
+            Frame frame = buf.get(pid);
+            Page pg = frame == null ? null : frame.page;
+            if (pg == null || pg.isDirty() == null) {
+                return;
             }
 
+            DbFile f = Database.getCatalog().getDatabaseFile(pid.getTableId());
+            TransactionId dirt = pg.isDirty();
+            Database.getLogFile().logWrite(dirt, pg.getBeforeImage(), pg);
+            Database.getLogFile().force();
+
             f.writePage(pg);
             pg.markDirty(false, null);
+        } finally {
+            stripe.unlock();
         }
     }
 
     /** Write all pages of the specified transaction to disk.
      */
-    public synchronized  void flushPages(TransactionId tid) throws IOException {
+    public void flushPages(TransactionId tid) throws IOException {
         // this one seemed easy so i just did it
-        for (PageId pid : buf.keySet()) {
-            if (tid.equals(buf.get(pid).isDirty())) {
-                flushPage(pid);
+        for (Map.Entry<PageId, Frame> e : buf.entrySet()) {
+            if (tid.equals(e.getValue().page.isDirty())) {
+                flushPage(e.getKey());
             }
         }
     }
 
     /**
-     * Discards a page from the buffer pool.
-     * Flushes the page to disk to ensure dirty pages are updated on disk.
+     * Claims a frame for a page about to enter the pool, evicting pages
+     * until one is free.
      */
-    private synchronized  void evictPage() throws DbException {
-        List<PageId> pids = new ArrayList<>(buf.keySet());
-        Random r = new Random();
-        PageId pid = pids.get(r.nextInt(pids.size()));
-        boolean found = false;
-
-        // look for clean page
-        for (PageId tmp : pids) {
-            if (buf.get(tmp).isDirty() == null) {
-                pid = tmp;
-                found = true;
-                break;
+    private void reserveFrame() throws DbException {
+        while (true) {
+            int used = usedFrames.get();
+            if (used < numPages) {
+                if (usedFrames.compareAndSet(used, used + 1)) {
+                    return;
+                }
+            } else {
+                evictPage();
             }
         }
-        
-        if (!found) {
-            throw new DbException("found no dirty pages");
+    }
+
+    /**
+     * Takes an arena frame for a page whose frame was just reserved. There is
+     * one arena frame per page the pool holds, so this always succeeds.
+     *
+     * @return the slot, or -1 for an on-heap pool
+     */
+    private int allocateSlot() {
+        return arena == null ? -1 : arena.allocate();
+    }
+
+    /** Gives back a reserved frame and its arena slot, if it has one. */
+    private void releaseFrame(int slot) {
+        // free the slot first, so whoever reserves the frame finds one
+        if (slot >= 0) {
+            arena.release(slot);
+        }
+        usedFrames.decrementAndGet();
+    }
+
+    /** Reads a page from its file, into the given arena slot if there is one. */
+    private Page readPage(PageId pid, int slot) {
+        DbFile f = Database.getCatalog().getDatabaseFile(pid.getTableId());
+        return slot < 0 ? f.readPage(pid) : f.readPage(pid, arena.frame(slot));
+    }
+
+    /**
+     * Claims a frame like reserveFrame, but makes a single eviction attempt.
+     *
+     * @return false if the pool is full and no page could be evicted
+     */
+    private boolean tryReserveFrame() {
+        while (true) {
+            int used = usedFrames.get();
+            if (used < numPages) {
+                if (usedFrames.compareAndSet(used, used + 1)) {
+                    return true;
+                }
+            } else if (!policy.evict(this::tryEvict)) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Discards a page from the buffer pool, as chosen by the replacement
+     * policy. Only clean, unpinned pages are evicted, so nothing needs to be
+     * written back and nobody is left holding the evicted page.
+     */
+    private void evictPage() throws DbException {
+        // a sweep can come up empty just because other threads held the
+        // victims' stripes, so those victims are then waited for
+        ArrayList<PageId> busy = new ArrayList<>();
+        for (int attempt = 0; attempt < EVICTION_ATTEMPTS; attempt++) {
+            busy.clear();
+            if (policy.evict(victim -> tryEvict(victim, busy))) {
+                return;
+            }
+            for (PageId pid : busy) {
+                if (evictWaiting(pid)) {
+                    return;
+                }
+            }
+            Thread.yield();
+        }
+        throw new DbException("found no clean pages to evict");
+    }
+
+    /** Like {@link #tryEvict(PageId, ArrayList)}, not noting busy victims. */
+    private boolean tryEvict(PageId pid) {
+        return tryEvict(pid, null);
+    }
+
+    /**
+     * Removes a page from the pool if it is clean and unpinned. Victims whose
+     * stripe is busy are skipped rather than waited on, as the policy calls
+     * this holding its own lock, which the stripe's holder may be waiting
+     * for.
+     *
+     * @param busy if not null, where to note victims skipped for a busy stripe
+     * @return true if the page was removed
+     */
+    private boolean tryEvict(PageId pid, ArrayList<PageId> busy) {
+        ReentrantLock stripe = stripeFor(pid);
+        if (!stripe.tryLock()) {
+            if (busy != null) {
+                busy.add(pid);
+            }
+            return false;
+        }
+        try {
+            return evictLocked(pid);
+        } finally {
+            stripe.unlock();
         }
+    }
 
+    /**
+     * Removes a page the policy offered while its stripe was busy, waiting
+     * for the stripe outside the policy's lock. The wait is bounded, since
+     * the stripe's holder may itself be evicting and waiting for ours.
+     *
+     * @return true if the page was removed
+     */
+    private boolean evictWaiting(PageId pid) {
+        ReentrantLock stripe = stripeFor(pid);
         try {
-            flushPage(pid);
-        } catch (IOException e) {
-            throw new RuntimeException();
+            if (!stripe.tryLock(EVICTION_WAIT_MS, TimeUnit.MILLISECONDS)) {
+                return false;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        try {
+            if (!evictLocked(pid)) {
+                return false;
+            }
+            // before the stripe is let go, so the page cannot come back first
+            policy.pageRemoved(pid);
+            return true;
+        } finally {
+            stripe.unlock();
+        }
+    }
+
+    /**
+     * Removes a page from the pool if it is clean and unpinned. The caller
+     * holds the page's stripe.
+     *
+     * @return true if the page was removed
+     */
+    private boolean evictLocked(PageId pid) {
+        Frame frame = buf.get(pid);
+        if (frame == null || frame.page.isDirty() != null) {
+            return false;
+        }
+        // fails if a concurrent hit pinned it
+        if (!frame.tryRetire()) {
+            return false;
         }
- 
         buf.remove(pid);
+        releaseFrame(frame.slot);
+        return true;
+    }
+
+    /** @return the lock guarding changes to the given page's slot in the table */
+    ReentrantLock stripeFor(PageId pid) {
+        int h = pid.hashCode();
+        h ^= (h >>> 16);
+        return stripes[h & (NUM_STRIPES - 1)];
     }
 
 }
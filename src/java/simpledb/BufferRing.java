@@ -0,0 +1,69 @@
+package simpledb;
+
+/**
+ * BufferRing is a small private set of frames a large scan cycles through
+ * instead of the shared page table, so that reading a big table once does
+ * not evict every other query's working set. Pages the scan reads from disk
+ * go into the ring, replacing the oldest one; pages already in the
+ * BufferPool are still used from there.
+ * <p>
+ * A ring belongs to a single scan and is not thread-safe.
+ *
+ * @see BufferPool#getPageInRing
+ */
+public class BufferRing {
+
+    /** Default number of frames in a ring. */
+    public static final int DEFAULT_SIZE = 16;
+
+    private final Page[] frames;
+
+    /** The frame the next page read goes into. */
+    private int next;
+
+    public BufferRing() {
+        this(DEFAULT_SIZE);
+    }
+
+    /**
+     * @param size the number of frames in the ring
+     */
+    public BufferRing(int size) {
+        if (size < 1) {
+            throw new IllegalArgumentException("a ring needs at least one frame");
+        }
+        this.frames = new Page[size];
+        this.next = 0;
+    }
+
+    /** @return the number of frames in the ring */
+    public int size() {
+        return frames.length;
+    }
+
+    /** @return the page with the given id if it is in the ring, else null */
+    public Page get(PageId pid) {
+        for (Page p : frames) {
+            if (p != null && p.getId().equals(pid)) {
+                return p;
+            }
+        }
+        return null;
+    }
+
+    /** @return true if this very page object came from the ring */
+    public boolean holds(Page page) {
+        for (Page p : frames) {
+            if (p == page) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Puts a page into the ring in place of the oldest one. */
+    void add(Page page) {
+        frames[next] = page;
+        next = (next + 1) % frames.length;
+    }
+}
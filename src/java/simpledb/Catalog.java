@@ -133,13 +133,35 @@ public class Catalog {
         return tables.get(id).name;
     }
     
-    /** Delete all tables from the catalog */
+    /** Removes a table, such as a temporary one, from the catalog, and closes its file */
+    public void removeTable(int tableid) {
+        Table t = tables.remove(tableid);
+        if (t != null && Integer.valueOf(tableid).equals(nameIdMap.get(t.name))) {
+            nameIdMap.remove(t.name);
+        }
+        if (t != null) {
+            t.file.close();
+        }
+    }
+
+    /** Delete all tables from the catalog, closing their files */
     public void clear() {
+        for (Table t : tables.values()) {
+            t.file.close();
+        }
         tables.clear();
     }
     
     /**
      * Reads the schema from a file and creates the appropriate tables in the database.
+     * Each line has the format <tt>name (field type [pk], ...) [storage]</tt>,
+     * where a type is "int", "string", or "string(n)" for strings of at
+     * most n characters instead of Type.STRING_LEN, and the optional storage
+     * is "mapped" for a {@link MappedHeapFile}, "slotted" for a
+     * {@link SlottedHeapFile}, "pax" for a {@link PaxHeapFile}, "columnar"
+     * for a {@link ColumnarFile} or "btree" for a {@link BTreeFile} keyed on
+     * the pk field, or the first field if there is none; by default tables
+     * are stored in a {@link HeapFile}.
      * @param catalogFile
      */
     public void loadSchema(String catalogFile) {
@@ -152,22 +174,23 @@ public class Catalog {
                 //assume line is of the format name (field type, field type, ...)
                 String name = line.substring(0, line.indexOf("(")).trim();
                 //System.out.println("TABLE NAME: " + name);
-                String fields = line.substring(line.indexOf("(") + 1, line.indexOf(")")).trim();
+                String fields = line.substring(line.indexOf("(") + 1, line.lastIndexOf(")")).trim();
                 String[] els = fields.split(",");
                 ArrayList<String> names = new ArrayList<String>();
                 ArrayList<Type> types = new ArrayList<Type>();
+                int[] widthAr = new int[els.length];
                 String primaryKey = "";
                 for (String e : els) {
                     String[] els2 = e.trim().split(" ");
                     names.add(els2[0].trim());
-                    if (els2[1].trim().toLowerCase().equals("int"))
-                        types.add(Type.INT_TYPE);
-                    else if (els2[1].trim().toLowerCase().equals("string"))
-                        types.add(Type.STRING_TYPE);
-                    else {
+                    Type type = Type.forName(els2[1]);
+                    if (type == null) {
                         System.out.println("Unknown type " + els2[1]);
                         System.exit(0);
                     }
+                    widthAr[types.size()] = type == Type.STRING_TYPE
+                            ? Type.declaredWidth(els2[1]) : Type.STRING_LEN;
+                    types.add(type);
                     if (els2.length == 3) {
                         if (els2[2].trim().equals("pk"))
                             primaryKey = els2[0].trim();
@@ -179,8 +202,27 @@ public class Catalog {
                 }
                 Type[] typeAr = types.toArray(new Type[0]);
                 String[] namesAr = names.toArray(new String[0]);
-                TupleDesc t = new TupleDesc(typeAr, namesAr);
-                HeapFile tabHf = new HeapFile(new File(baseFolder+"/"+name + ".dat"), t);
+                TupleDesc t = new TupleDesc(typeAr, namesAr, widthAr);
+                File dataFile = new File(baseFolder+"/"+name + ".dat");
+                String storage = line.substring(line.lastIndexOf(")") + 1).trim().toLowerCase();
+                DbFile tabHf;
+                if (storage.isEmpty())
+                    tabHf = new HeapFile(dataFile, t);
+                else if (storage.equals("mapped"))
+                    tabHf = new MappedHeapFile(dataFile, t);
+                else if (storage.equals("slotted"))
+                    tabHf = new SlottedHeapFile(dataFile, t);
+                else if (storage.equals("pax"))
+                    tabHf = new PaxHeapFile(dataFile, t);
+                else if (storage.equals("columnar"))
+                    tabHf = new ColumnarFile(dataFile, t);
+                else if (storage.equals("btree"))
+                    tabHf = new BTreeFile(dataFile, Math.max(names.indexOf(primaryKey), 0), t);
+                else {
+                    System.out.println("Unknown storage " + storage);
+                    System.exit(0);
+                    return;
+                }
                 addTable(tabHf,name,primaryKey);
                 System.out.println("Added table : " + name + " with schema " + t);
             }
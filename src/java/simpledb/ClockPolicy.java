@@ -0,0 +1,129 @@
+package simpledb;
+
+import java.util.ArrayList;
+import java.util.ArrayDeque;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * ClockPolicy implements the CLOCK (second chance) replacement policy. Pages
+ * sit in a circular list of slots, each with a reference bit that is set
+ * whenever the page is accessed. To find a victim, a clock hand sweeps the
+ * slots, clearing set bits and evicting the first page whose bit is already
+ * clear. Every bit the hand clears was paid for by an access, so eviction
+ * takes O(1) amortized time.
+ *
+ * @Threadsafe
+ */
+public class ClockPolicy implements ReplacementPolicy {
+
+    /** A slot on the clock face. */
+    private static class Slot {
+        /** Position of the slot in slots. */
+        final int pos;
+        /** The page in the slot, or null. Guarded by the policy. */
+        PageId pid;
+        volatile boolean referenced;
+
+        Slot(int pos) {
+            this.pos = pos;
+        }
+    }
+
+    /** The slots of the clock, in hand order. Guarded by this. */
+    private final ArrayList<Slot> slots;
+
+    /** Indexes of slots whose page has left the pool. Guarded by this. */
+    private final ArrayDeque<Integer> free;
+
+    /**
+     * The slot of each page in the pool; read without locking on hits,
+     * which only ever touch the slot's volatile reference bit.
+     */
+    private final ConcurrentHashMap<PageId, Slot> index;
+
+    /** Position of the clock hand. Guarded by this. */
+    private int hand;
+
+    public ClockPolicy() {
+        this.slots = new ArrayList<>();
+        this.free = new ArrayDeque<>();
+        this.index = new ConcurrentHashMap<>();
+        this.hand = 0;
+    }
+
+    public synchronized void pageAdded(PageId pid) {
+        if (index.containsKey(pid)) {
+            pageAccessed(pid);
+            return;
+        }
+        add(pid, true);
+    }
+
+    /** A prefetched page starts with its bit clear, so it goes first unless used. */
+    public synchronized void pagePrefetched(PageId pid) {
+        if (!index.containsKey(pid)) {
+            add(pid, false);
+        }
+    }
+
+    private void add(PageId pid, boolean referenced) {
+
+        Slot s;
+        if (free.isEmpty()) {
+            s = new Slot(slots.size());
+            slots.add(s);
+        } else {
+            s = slots.get(free.pop());
+        }
+        s.pid = pid;
+        s.referenced = referenced;
+        index.put(pid, s);
+    }
+
+    public void pageAccessed(PageId pid) {
+        Slot s = index.get(pid);
+        if (s != null) {
+            // a slot reused since the lookup just gets an extra chance,
+            // which is harmless
+            s.referenced = true;
+        }
+    }
+
+    public synchronized void pageRemoved(PageId pid) {
+        Slot s = index.remove(pid);
+        if (s != null) {
+            release(s);
+        }
+    }
+
+    public synchronized boolean evict(Evictor evictor) {
+        // two full sweeps: the first may only clear reference bits
+        int n = slots.size();
+        for (int step = 0; step < 2 * n; step++) {
+            Slot s = slots.get(hand);
+            hand = (hand + 1) % n;
+
+            if (s.pid == null) {
+                continue;
+            }
+            if (s.referenced) {
+                s.referenced = false;
+                continue;
+            }
+            PageId pid = s.pid;
+            if (evictor.tryEvict(pid)) {
+                index.remove(pid);
+                release(s);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Empties a slot so it can be reused. */
+    private void release(Slot s) {
+        s.pid = null;
+        s.referenced = false;
+        free.push(s.pos);
+    }
+}
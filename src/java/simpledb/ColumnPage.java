@@ -0,0 +1,258 @@
+package simpledb;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+
+/**
+ * Each instance of ColumnPage stores the values of one column for a run of
+ * rows of a {@link ColumnarFile}. The format is that of a HeapPage whose
+ * tuples have the single field of the column: a header bitmap of the slots
+ * in use followed by fixed-size value slots, so that a page holds
+ * <p>
+ *          floor((BufferPool.getPageSize()*8) / (value size * 8 + 1))
+ * <p>
+ * values. Slot i of page p holds the value of row p * (values per page) + i.
+ * Like HeapPage, the page keeps only its bytes and decodes a value when it
+ * is read.
+ *
+ * @see ColumnarFile
+ * @see HeapPage
+ */
+public class ColumnPage implements Page {
+
+    final ColumnPageId pid;
+    final Type type;
+    final int width;
+    final int numSlots;
+    final int headerSize;
+    final int valueSize;
+
+    /** The page, from position 0 to the page size. Only accessed by index. */
+    final ByteBuffer data;
+
+    // Dirtying transaction
+    private TransactionId tid;
+
+    /** What the page was before its first change since setBeforeImage. */
+    private final BeforeImage beforeImage = new BeforeImage();
+
+    /**
+     * Create a ColumnPage from a set of bytes of data read from disk. The
+     * column's type and width come from the table's TupleDesc in the
+     * catalog. The bytes are copied.
+     *
+     * @see Catalog#getTupleDesc
+     */
+    public ColumnPage(ColumnPageId id, byte[] data) throws IOException {
+        TupleDesc td = Database.getCatalog().getTupleDesc(id.getTableId());
+        this.pid = id;
+        this.type = td.getFieldType(id.getColumn());
+        this.width = td.getFieldWidth(id.getColumn());
+        this.valueSize = type.getLen(width);
+        this.numSlots = getNumSlots(type, width);
+        this.headerSize = (numSlots + 7) / 8;
+        if (data.length < headerSize) {
+            throw new EOFException("page too short for its header");
+        }
+        this.data = ByteBuffer.allocate(BufferPool.getPageSize());
+        this.data.put(data, 0, Math.min(data.length, this.data.capacity()));
+        this.data.clear();
+    }
+
+    /**
+     * @return the number of values a page of a column with the given type
+     *     and width holds
+     */
+    public static int getNumSlots(Type type, int width) {
+        return (BufferPool.getPageSize() * 8) / (type.getLen(width) * 8 + 1);
+    }
+
+    /**
+     * @return the bytes of an empty page of any column
+     */
+    public static byte[] createEmptyPageData() {
+        return new byte[BufferPool.getPageSize()];
+    }
+
+    /**
+     * @return the PageId associated with this page.
+     */
+    public ColumnPageId getId() {
+        return this.pid;
+    }
+
+    /** @return the number of value slots on this page */
+    public int getNumSlots() {
+        return numSlots;
+    }
+
+    /**
+     * Returns true if associated slot on this page is filled.
+     */
+    public boolean isSlotUsed(int i) {
+        if (i < 0 || i >= numSlots) {
+            return false;
+        }
+        return ((data.get(i / 8) >> (i % 8)) & 1) == 1;
+    }
+
+    /** @return the first used slot at or after the given one, or numSlots */
+    public int nextUsedSlot(int from) {
+        int i = Math.max(from, 0);
+        while (i < numSlots) {
+            // skip whole empty header bytes
+            if (i % 8 == 0 && data.get(i / 8) == 0) {
+                i += 8;
+                continue;
+            }
+            if (isSlotUsed(i)) {
+                return i;
+            }
+            i++;
+        }
+        return numSlots;
+    }
+
+    /** @return the first free slot, or -1 if the page is full */
+    public int firstEmptySlot() {
+        for (int b = 0; b < headerSize; b++) {
+            int bits = data.get(b) & 0xff;
+            if (bits != 0xff) {
+                int i = b * 8 + Integer.numberOfTrailingZeros(~bits);
+                return i < numSlots ? i : -1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the number of empty slots on this page.
+     */
+    public int getNumEmptySlots() {
+        int used = 0;
+        for (int i = 0; i < numSlots; i++) {
+            if (isSlotUsed(i)) {
+                used++;
+            }
+        }
+        return numSlots - used;
+    }
+
+    /**
+     * Decodes the value in a used slot.
+     *
+     * @throws java.util.NoSuchElementException if the slot is not in use
+     */
+    public Field getField(int slot) {
+        if (!isSlotUsed(slot)) {
+            throw new java.util.NoSuchElementException("slot " + slot + " is empty");
+        }
+        ByteBuffer buf = data.duplicate();
+        buf.position(headerSize + slot * valueSize);
+        try {
+            return type.parse(buf, width);
+        } catch (java.text.ParseException e) {
+            throw new IllegalStateException("corrupt value in slot " + slot, e);
+        }
+    }
+
+    /**
+     * Stores a value in a slot and marks the slot used.
+     *
+     * @throws DbException if the value is not of the column's type
+     */
+    public void setField(int slot, Field f) throws DbException {
+        if (f == null || f.getType() != type) {
+            throw new DbException("value does not match the column type " + type);
+        }
+        if (slot < 0 || slot >= numSlots) {
+            throw new DbException("no slot " + slot);
+        }
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(valueSize);
+        DataOutputStream dos = new DataOutputStream(baos);
+        try {
+            if (f instanceof StringField) {
+                ((StringField) f).serialize(dos, width);
+            } else {
+                f.serialize(dos);
+            }
+            dos.flush();
+        } catch (IOException e) {
+            // this really shouldn't happen
+            e.printStackTrace();
+        }
+
+        beforeImage.save(this);
+        ByteBuffer buf = data.duplicate();
+        buf.position(headerSize + slot * valueSize);
+        buf.put(baos.toByteArray(), 0, valueSize);
+        markSlotUsed(slot, true);
+    }
+
+    /**
+     * Frees a slot, zeroing its value.
+     *
+     * @throws DbException if the slot is already free
+     */
+    public void clearSlot(int slot) throws DbException {
+        if (!isSlotUsed(slot)) {
+            throw new DbException("slot already free");
+        }
+        beforeImage.save(this);
+        markSlotUsed(slot, false);
+        int off = headerSize + slot * valueSize;
+        for (int i = off; i < off + valueSize; i++) {
+            data.put(i, (byte) 0);
+        }
+    }
+
+    private void markSlotUsed(int i, boolean value) {
+        byte b = data.get(i / 8);
+        if (value) {
+            b |= (byte) (1 << (i % 8));
+        } else {
+            b &= (byte) ~(1 << (i % 8));
+        }
+        data.put(i / 8, b);
+    }
+
+    /**
+     * Generates a byte array representing the contents of this page.
+     */
+    public byte[] getPageData() {
+        byte[] out = new byte[BufferPool.getPageSize()];
+        data.duplicate().get(out);
+        return out;
+    }
+
+    /**
+     * Marks this page as dirty/not dirty and record that transaction
+     * that did the dirtying
+     */
+    public void markDirty(boolean dirty, TransactionId tid) {
+        this.tid = dirty ? tid : null;
+    }
+
+    /**
+     * Returns the tid of the transaction that last dirtied this page, or null if the page is not dirty
+     */
+    public TransactionId isDirty() {
+        return this.tid;
+    }
+
+    /** Return a view of this page before it was modified
+        -- used by recovery */
+    public ColumnPage getBeforeImage() {
+        byte[] before = beforeImage.get(this);
+        try {
+            return new ColumnPage(pid, before);
+        } catch (IOException e) {
+            // we parsed it OK before
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public void setBeforeImage() {
+        beforeImage.set();
+    }
+}
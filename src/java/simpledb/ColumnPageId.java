@@ -0,0 +1,83 @@
+package simpledb;
+
+/** Unique identifier for ColumnPage objects. */
+public class ColumnPageId implements PageId {
+
+    /** The table being referenced. */
+    private final int tableId;
+
+    /** The column of that table. */
+    private final int column;
+
+    /** The page number in that column. */
+    private final int pgNo;
+
+    /**
+     * Constructor. Create a page id structure for a specific page of a
+     * specific column of a table.
+     *
+     * @param tableId The table that is being referenced
+     * @param column The column of the table
+     * @param pgNo The page number in that column.
+     */
+    public ColumnPageId(int tableId, int column, int pgNo) {
+        this.tableId = tableId;
+        this.column = column;
+        this.pgNo = pgNo;
+    }
+
+    /** @return the table associated with this PageId */
+    public int getTableId() {
+        return this.tableId;
+    }
+
+    /** @return the column of the table the page holds values of */
+    public int getColumn() {
+        return this.column;
+    }
+
+    /**
+     * @return the page number in the column associated with this PageId
+     */
+    public int getPageNumber() {
+        return this.pgNo;
+    }
+
+    /**
+     * @return a hash code for this page, combining the table, column and
+     *   page numbers
+     * @see BufferPool
+     */
+    public int hashCode() {
+        return 31 * (31 * tableId + column) + pgNo;
+    }
+
+    /**
+     * Compares one PageId to another.
+     *
+     * @param o The object to compare against (must be a PageId)
+     * @return true if the objects are equal (e.g., page numbers, columns and
+     *   table ids are the same)
+     */
+    public boolean equals(Object o) {
+        if (! (o instanceof ColumnPageId)) {
+            return false;
+        }
+
+        ColumnPageId other = (ColumnPageId) o;
+        return other.tableId == this.tableId && other.column == this.column
+                && other.pgNo == this.pgNo;
+    }
+
+    /**
+     *  Return a representation of this object as an array of
+     *  integers, for writing to disk.
+     */
+    public int[] serialize() {
+        return new int[]{tableId, column, pgNo};
+    }
+
+    public String toString() {
+        return "ColumnPageId(" + tableId + ", " + column + ", " + pgNo + ")";
+    }
+}
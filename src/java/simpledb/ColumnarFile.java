@@ -0,0 +1,415 @@
+package simpledb;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * ColumnarFile is an implementation of a DbFile that stores each column of
+ * a table in its own sequence of {@link ColumnPage}s, kept in a file of its
+ * own next to the table's file: column i of table file f lives in
+ * {@link #columnFile columnFile(f, i)}. A row is the same slot number in
+ * every column, so row r is slot r % n of page r / n of each column, where
+ * n is the number of values a page of that column holds; the header bits
+ * of all columns agree on which rows are in use.
+ * <p>
+ * Scans that only need some columns read the pages of those columns and
+ * no others, through {@link #iterator(TransactionId, int[])}; the tuples
+ * they return have only the projected fields. A tuple's RecordId names its
+ * page and slot in the first column.
+ *
+ * @see ColumnPage
+ */
+public class ColumnarFile implements DbFile {
+
+    /** The file naming this table; the columns are stored next to it. */
+    private final File f;
+
+    /** The scheme on this file. */
+    private final TupleDesc td;
+
+    /** Values per page of each column. */
+    private final int[] slotsPerPage;
+
+    /** Channel on each column's file, opened on first use. */
+    private final FileChannel[] channels;
+
+    /** Every page of the first column below this one is full. Guarded by this. */
+    private int firstFree;
+
+    /**
+     * Constructs a columnar file whose columns are stored next to the
+     * specified file.
+     *
+     * @param f
+     *            the file naming this table; it is not itself read or written
+     */
+    public ColumnarFile(File f, TupleDesc td) {
+        this.f = f;
+        this.td = td;
+        this.slotsPerPage = new int[td.numFields()];
+        for (int i = 0; i < slotsPerPage.length; i++) {
+            slotsPerPage[i] = ColumnPage.getNumSlots(td.getFieldType(i), td.getFieldWidth(i));
+        }
+        this.channels = new FileChannel[td.numFields()];
+        this.firstFree = 0;
+    }
+
+    /** @return the file holding column col of the table named by f */
+    public static File columnFile(File f, int col) {
+        return new File(f.getPath() + ".col" + col);
+    }
+
+    /**
+     * Returns the File naming this table.
+     */
+    public File getFile() {
+        return this.f;
+    }
+
+    /**
+     * Returns an ID uniquely identifying this ColumnarFile, the hash code
+     * of the absolute name of its file, as for HeapFile.
+     */
+    public int getId() {
+        return f.getAbsoluteFile().hashCode();
+    }
+
+    /**
+     * Returns the TupleDesc of the table stored in this DbFile.
+     */
+    public TupleDesc getTupleDesc() {
+        return this.td;
+    }
+
+    /**
+     * @return the TupleDesc of tuples holding only the given columns, in
+     *     the given order
+     */
+    public TupleDesc getTupleDesc(int[] columns) {
+        Type[] typeAr = new Type[columns.length];
+        String[] fieldAr = new String[columns.length];
+        int[] widthAr = new int[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            typeAr[i] = td.getFieldType(columns[i]);
+            fieldAr[i] = td.getFieldName(columns[i]);
+            widthAr[i] = td.getFieldWidth(columns[i]);
+        }
+        return new TupleDesc(typeAr, fieldAr, widthAr);
+    }
+
+    /** @return the number of values a page of the given column holds */
+    public int getSlotsPerPage(int col) {
+        return slotsPerPage[col];
+    }
+
+    // see DbFile.java for javadocs
+    public Page readPage(PageId pid) {
+        ColumnPageId cid = (ColumnPageId) pid;
+        try {
+            int pgSz = BufferPool.getPageSize();
+            long off = (long) cid.getPageNumber() * pgSz;
+            ByteBuffer dst = ByteBuffer.allocate(pgSz);
+            FileChannel ch = channel(cid.getColumn());
+            while (dst.hasRemaining()) {
+                if (ch.read(dst, off + dst.position()) < 0) {
+                    break;
+                }
+            }
+            // past the end of the file the page is empty
+            return new ColumnPage(cid, dst.array());
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    // see DbFile.java for javadocs
+    public void writePage(Page page) throws IOException {
+        ColumnPageId cid = (ColumnPageId) page.getId();
+        long offset = (long) cid.getPageNumber() * BufferPool.getPageSize();
+        ByteBuffer src = ByteBuffer.wrap(page.getPageData());
+        FileChannel ch = channel(cid.getColumn());
+        while (src.hasRemaining()) {
+            ch.write(src, offset + src.position());
+        }
+    }
+
+    /**
+     * Returns the number of pages of one column.
+     */
+    public int numPages(int col) {
+        if (channels[col] == null && !columnFile(f, col).exists()) {
+            return 0;
+        }
+        try {
+            long size = channel(col).size();
+            return (int) ((size + BufferPool.getPageSize() - 1) / BufferPool.getPageSize());
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Returns the number of pages of all columns together, which is what a
+     * scan of every column reads.
+     */
+    public int numPages() {
+        int n = 0;
+        for (int col = 0; col < td.numFields(); col++) {
+            n += numPages(col);
+        }
+        return n;
+    }
+
+    /** @return the channel on a column's file, opening it if need be */
+    private FileChannel channel(int col) throws IOException {
+        synchronized (channels) {
+            if (channels[col] == null) {
+                Path path = columnFile(f, col).toPath();
+                try {
+                    channels[col] = FileChannel.open(path, StandardOpenOption.READ,
+                            StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+                } catch (AccessDeniedException e) {
+                    channels[col] = FileChannel.open(path, StandardOpenOption.READ);
+                }
+            }
+            return channels[col];
+        }
+    }
+
+    /**
+     * Closes the channels on the column files. The file can still be used;
+     * they are opened again when next needed.
+     */
+    public void close() {
+        synchronized (channels) {
+            for (int col = 0; col < channels.length; col++) {
+                if (channels[col] != null) {
+                    try {
+                        channels[col].close();
+                    } catch (IOException e) {
+                        // writes go straight to the channel, so nothing is lost
+                    }
+                    channels[col] = null;
+                }
+            }
+        }
+    }
+
+    /** Appends empty pages to a column until it has page pgNo. */
+    private synchronized void extendColumn(int col, int pgNo) throws IOException {
+        for (int p = numPages(col); p <= pgNo; p++) {
+            ByteBuffer src = ByteBuffer.wrap(ColumnPage.createEmptyPageData());
+            FileChannel ch = channel(col);
+            long offset = (long) p * BufferPool.getPageSize();
+            while (src.hasRemaining()) {
+                ch.write(src, offset + src.position());
+            }
+        }
+    }
+
+    // see DbFile.java for javadocs
+    public ArrayList<Page> insertTuple(TransactionId tid, Tuple t)
+            throws DbException, IOException, TransactionAbortedException {
+        if (!t.getTupleDesc().equals(td)) {
+            throw new DbException("tupledesc is mismatch");
+        }
+        BufferPool bp = Database.getBufferPool();
+        ArrayList<Page> affectedPgs = new ArrayList<>();
+
+        // find a free row through the first column, appending a page to it
+        // when the pages it has are full
+        int row = -1;
+        int p;
+        synchronized (this) {
+            p = firstFree;
+        }
+        for (; row < 0; p++) {
+            if (p >= numPages(0)) {
+                extendColumn(0, p);
+            }
+            ColumnPageId cid = new ColumnPageId(getId(), 0, p);
+            ColumnPage pg = (ColumnPage) bp.getPage(tid, cid, Permissions.READ_ONLY);
+            int free = pg.firstEmptySlot();
+            bp.unpinPage(tid, cid);
+            if (free >= 0) {
+                // look again under the write lock
+                pg = (ColumnPage) bp.getPage(tid, cid, Permissions.READ_WRITE);
+                free = pg.firstEmptySlot();
+                if (free >= 0) {
+                    row = p * slotsPerPage[0] + free;
+                }
+                bp.unpinPage(tid, cid);
+            } else {
+                synchronized (this) {
+                    firstFree = Math.max(firstFree, p + 1);
+                }
+            }
+        }
+
+        // write the value of each column into the row
+        for (int col = 0; col < td.numFields(); col++) {
+            int pgNo = row / slotsPerPage[col];
+            if (pgNo >= numPages(col)) {
+                extendColumn(col, pgNo);
+            }
+            ColumnPageId cid = new ColumnPageId(getId(), col, pgNo);
+            ColumnPage pg = (ColumnPage) bp.getPage(tid, cid, Permissions.READ_WRITE);
+            affectedPgs.add(pg);
+            pg.setField(row % slotsPerPage[col], t.getField(col));
+        }
+        t.setRecordId(new RecordId(new ColumnPageId(getId(), 0, row / slotsPerPage[0]),
+                row % slotsPerPage[0]));
+        return affectedPgs;
+    }
+
+    // see DbFile.java for javadocs
+    public ArrayList<Page> deleteTuple(TransactionId tid, Tuple t) throws DbException,
+            TransactionAbortedException {
+        RecordId rid = t.getRecordId();
+        if (rid == null || !(rid.getPageId() instanceof ColumnPageId)
+                || rid.getPageId().getTableId() != getId()
+                || ((ColumnPageId) rid.getPageId()).getColumn() != 0) {
+            throw new DbException("tuple is not in this file");
+        }
+        BufferPool bp = Database.getBufferPool();
+        ArrayList<Page> affectedPgs = new ArrayList<>();
+        int row = rid.getPageId().getPageNumber() * slotsPerPage[0] + rid.getTupleNumber();
+        for (int col = 0; col < td.numFields(); col++) {
+            ColumnPageId cid = new ColumnPageId(getId(), col, row / slotsPerPage[col]);
+            ColumnPage pg = (ColumnPage) bp.getPage(tid, cid, Permissions.READ_WRITE);
+            affectedPgs.add(pg);
+            pg.clearSlot(row % slotsPerPage[col]);
+        }
+        synchronized (this) {
+            firstFree = Math.min(firstFree, rid.getPageId().getPageNumber());
+        }
+        return affectedPgs;
+    }
+
+    // see DbFile.java for javadocs
+    public DbFileIterator iterator(TransactionId tid) {
+        int[] all = new int[td.numFields()];
+        for (int i = 0; i < all.length; i++) {
+            all[i] = i;
+        }
+        return iterator(tid, all);
+    }
+
+    /**
+     * Returns an iterator over the rows of the table that reads only the
+     * pages of the given columns. Its tuples hold those columns, in the
+     * given order, as described by {@link #getTupleDesc(int[])}.
+     *
+     * @param tid the transaction scanning the file
+     * @param columns the columns to read, at least one
+     */
+    public DbFileIterator iterator(TransactionId tid, int[] columns) {
+        if (columns.length == 0) {
+            throw new IllegalArgumentException("a scan reads at least one column");
+        }
+        return new ColumnarFileIterator(tid, columns.clone());
+    }
+
+    private class ColumnarFileIterator extends AbstractDbFileIterator {
+        private final TransactionId tid;
+        private final int[] columns;
+        private final TupleDesc outTd;
+
+        /** The pinned page of each projected column holding the current row. */
+        private final ColumnPage[] pages;
+        private boolean open;
+        private int row;
+        private int numRows;
+
+        private ColumnarFileIterator(TransactionId tid, int[] columns) {
+            this.tid = tid;
+            this.columns = columns;
+            this.outTd = getTupleDesc(columns);
+            this.pages = new ColumnPage[columns.length];
+        }
+
+        @Override
+        public void open() throws DbException, TransactionAbortedException {
+            unpinAll();
+            this.open = true;
+            this.row = 0;
+            // rows are counted by the first projected column
+            int lead = columns[0];
+            this.numRows = numPages(lead) * slotsPerPage[lead];
+        }
+
+        @Override
+        public void rewind() throws DbException, TransactionAbortedException {
+            open();
+        }
+
+        public void close() {
+            super.close();
+            unpinAll();
+            open = false;
+        }
+
+        /** @return the page of projected column i holding row, pinning it */
+        private ColumnPage pageFor(int i, int row)
+                throws DbException, TransactionAbortedException {
+            int col = columns[i];
+            int pgNo = row / slotsPerPage[col];
+            ColumnPage pg = pages[i];
+            if (pg == null || pg.getId().getPageNumber() != pgNo) {
+                if (pg != null) {
+                    Database.getBufferPool().unpinPage(tid, pg.getId());
+                    pages[i] = null;
+                }
+                pg = (ColumnPage) Database.getBufferPool().getPage(tid,
+                        new ColumnPageId(getId(), col, pgNo), Permissions.READ_ONLY);
+                pages[i] = pg;
+            }
+            return pg;
+        }
+
+        private void unpinAll() {
+            for (int i = 0; i < pages.length; i++) {
+                if (pages[i] != null) {
+                    Database.getBufferPool().unpinPage(tid, pages[i].getId());
+                    pages[i] = null;
+                }
+            }
+        }
+
+        @Override
+        protected Tuple readNext() throws DbException, TransactionAbortedException {
+            if (!open) {
+                return null;
+            }
+            int lead = columns[0];
+            while (row < numRows) {
+                // skip to the next used row on the lead column's page
+                ColumnPage leadPage = pageFor(0, row);
+                int base = leadPage.getId().getPageNumber() * slotsPerPage[lead];
+                int slot = leadPage.nextUsedSlot(row - base);
+                if (slot >= leadPage.getNumSlots()) {
+                    row = base + slotsPerPage[lead];
+                    continue;
+                }
+                row = base + slot;
+
+                Tuple t = new Tuple(outTd);
+                for (int i = 0; i < columns.length; i++) {
+                    int col = columns[i];
+                    t.setField(i, pageFor(i, row).getField(row % slotsPerPage[col]));
+                }
+                t.setRecordId(new RecordId(new ColumnPageId(getId(), 0,
+                        row / slotsPerPage[0]), row % slotsPerPage[0]));
+                row++;
+                return t;
+            }
+            return null;
+        }
+    }
+}
@@ -3,6 +3,7 @@ package simpledb;
 
 import java.util.*;
 import java.io.*;
+import java.nio.ByteBuffer;
 
 /**
  * The interface for database files on disk. Each table is represented by a
@@ -19,6 +20,19 @@ public interface DbFile {
      */
     public Page readPage(PageId id);
 
+    /**
+     * Read the specified page from disk into a frame provided by the caller,
+     * such as one of the BufferPool's off-heap frames, and return a page
+     * backed by it. Files that cannot keep a page in a frame may ignore it
+     * and return a page of their own, which is what this default does.
+     *
+     * @param frame a writable buffer with room for one page from its position
+     * @throws IllegalArgumentException if the page does not exist in this file.
+     */
+    public default Page readPage(PageId id, ByteBuffer frame) {
+        return readPage(id);
+    }
+
     /**
      * Push the specified page to disk.
      *
@@ -88,4 +102,12 @@ public interface DbFile {
      * @return TupleDesc of this DbFile.
      */
     public TupleDesc getTupleDesc();
+
+    /**
+     * Releases what the file holds open, such as channels on its files.
+     * The file may still be used afterwards, opening them again as needed.
+     * The Catalog calls this when it drops a table. Does nothing by default.
+     */
+    public default void close() {
+    }
 }
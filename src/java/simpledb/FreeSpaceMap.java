@@ -0,0 +1,221 @@
+package simpledb;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * FreeSpaceMap records roughly how much free space each page of a HeapFile
+ * has, so that inserts can go straight to a page with room instead of
+ * reading every page of the file. It keeps one byte per page: the free
+ * space in the unit of the file's {@link TuplePage}s (free slots of a
+ * HeapPage), capped at {@link #MAX_FREE}, or {@link #UNKNOWN} for pages it
+ * has not seen yet.
+ * <p>
+ * The map is only a hint. Callers must check the page itself, and report
+ * what they find with {@link #update}; inserts and deletes report their
+ * changes as they make them, and the file reports every page it reads or
+ * writes, so the map catches up after aborts and external changes. Counts
+ * of written pages are also stored in a side file next to the data file,
+ * one byte per page, so a reopened file starts with them.
+ * <p>
+ * Finding a page is amortized O(1): a cursor marks the lowest page that
+ * may have any room, every page below it being full, and only moves back
+ * when a page below it gains room.
+ *
+ * @Threadsafe
+ */
+public class FreeSpaceMap {
+
+    /** Entry of a page whose free space is not known. */
+    static final int UNKNOWN = 0xff;
+
+    /** Largest amount of free space an entry holds. */
+    static final int MAX_FREE = 0xfe;
+
+    /** Suffix appended to the data file's name to name the side file. */
+    public static final String SUFFIX = ".fsm";
+
+    private final File file;
+
+    /** Entry of each page, as unsigned bytes. Guarded by this. */
+    private byte[] entries;
+
+    /** Number of pages with entries. Guarded by this. */
+    private int numPages;
+
+    /** Every page below the cursor is full. Guarded by this. */
+    private int cursor;
+
+    /** Channel on the side file, or null until first written. Guarded by this. */
+    private FileChannel channel;
+
+    /** Set once writing the side file failed, after which it is left alone. */
+    private boolean readOnly;
+
+    /**
+     * Opens the free-space map kept in the given side file, reading the
+     * stored entries if the file exists. Entries past the end of the data
+     * file are left over from before it was truncated and are ignored.
+     *
+     * @param file the side file
+     * @param filePages the number of pages in the data file
+     */
+    public FreeSpaceMap(File file, int filePages) {
+        this.file = file;
+        this.entries = new byte[0];
+        this.numPages = 0;
+        this.cursor = 0;
+        this.readOnly = false;
+        load(filePages);
+    }
+
+    /** @return the side file holding the map of the given data file */
+    public static File sideFile(File dataFile) {
+        return new File(dataFile.getPath() + SUFFIX);
+    }
+
+    private void load(int filePages) {
+        if (!file.exists()) {
+            return;
+        }
+        try (FileInputStream in = new FileInputStream(file)) {
+            byte[] stored = new byte[(int) file.length()];
+            int n = 0;
+            while (n < stored.length) {
+                int r = in.read(stored, n, stored.length - n);
+                if (r < 0) {
+                    break;
+                }
+                n += r;
+            }
+            n = Math.min(n, filePages);
+            entries = Arrays.copyOf(stored, Math.max(n, 16));
+            numPages = n;
+        } catch (IOException e) {
+            // start from nothing; pages are learned as they are read
+            entries = new byte[0];
+            numPages = 0;
+        }
+    }
+
+    /**
+     * Records how much free space a page has, as found by looking at it.
+     *
+     * @param pgNo the page number
+     * @param free the free space on the page
+     */
+    public synchronized void update(int pgNo, int free) {
+        grow(pgNo + 1);
+        entries[pgNo] = (byte) Math.min(free, MAX_FREE);
+        if (free > 0 && pgNo < cursor) {
+            cursor = pgNo;
+        }
+    }
+
+    /**
+     * Records the free space of a page that was just written to the data
+     * file, and stores the entry in the side file.
+     *
+     * @param pgNo the page number
+     * @param free the free space on the page
+     */
+    public synchronized void updateStored(int pgNo, int free) {
+        update(pgNo, free);
+        if (readOnly) {
+            return;
+        }
+        try {
+            // write any unknown entries between the stored ones and this
+            // one too; entries sit at their page number in the file
+            int start = (int) Math.min(channel().size(), pgNo);
+            ByteBuffer b = ByteBuffer.wrap(entries, start, pgNo + 1 - start);
+            while (b.hasRemaining()) {
+                channel.write(b, b.position());
+            }
+        } catch (IOException e) {
+            // the map still works in memory, it just starts over next time
+            readOnly = true;
+        }
+    }
+
+    /**
+     * Finds a page that may have the given room, starting from the lowest
+     * such page at or after the given one. Pages not known to the map count
+     * as having room, and so do pages with MAX_FREE.
+     *
+     * @param from the first page to consider
+     * @param filePages the number of pages in the file
+     * @param needed the free space wanted, at least 1
+     * @return a page number below filePages, or -1 if no page from the
+     *     given one on has the room
+     */
+    public synchronized int findPage(int from, int filePages, int needed) {
+        grow(filePages);
+        needed = Math.max(1, Math.min(needed, MAX_FREE));
+        int pg = Math.max(from, cursor);
+        boolean skipping = pg == cursor;
+        for (; pg < filePages; pg++) {
+            int free = entries[pg] & 0xff;
+            if (free >= needed) {
+                return pg;
+            }
+            if (free != 0) {
+                skipping = false;
+            }
+            if (skipping) {
+                cursor = pg + 1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the free slots recorded for a page, capped at MAX_FREE, or
+     *     UNKNOWN
+     */
+    public synchronized int getFree(int pgNo) {
+        if (pgNo >= numPages) {
+            return UNKNOWN;
+        }
+        return entries[pgNo] & 0xff;
+    }
+
+    /** Extends the map with unknown entries to cover n pages. */
+    private void grow(int n) {
+        if (n <= numPages) {
+            return;
+        }
+        if (n > entries.length) {
+            entries = Arrays.copyOf(entries, Math.max(n, entries.length * 2));
+        }
+        Arrays.fill(entries, numPages, n, (byte) UNKNOWN);
+        numPages = n;
+    }
+
+    /**
+     * Closes the channel on the side file, if it is open. It is opened
+     * again by the next write.
+     */
+    public synchronized void close() {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // nothing is buffered, so nothing is lost
+            }
+            channel = null;
+        }
+    }
+
+    /** @return the channel on the side file, opening it if need be */
+    private FileChannel channel() throws IOException {
+        if (channel == null) {
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.READ,
+                    StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+        }
+        return channel;
+    }
+}
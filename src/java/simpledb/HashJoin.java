@@ -0,0 +1,452 @@
+package simpledb;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * The HashJoin operator implements an equality join by building a hash
+ * table on the join field of the smaller input and probing it with each
+ * tuple of the larger one, reading each input once.
+ * <p>
+ * Which input is smaller is found out when the join starts, by reading
+ * both a tuple at a time in turn until one runs out. That one is hashed,
+ * and the tuples already read from the other are probed before the rest
+ * of it is streamed. Either way, results are the concatenation of a tuple
+ * of child1 and a tuple of child2, as for {@link Join}.
+ * <p>
+ * The join holds at most a given number of pages' worth of tuples in
+ * memory, counting the probe tuples read while sizing the inputs, which
+ * are held until they are probed. When both inputs are larger than that,
+ * the build input is split by hash into partitions, which stay in memory
+ * until they no longer fit, when the largest is written to a
+ * {@link SpillFile}. Probe tuples of the partitions still in memory are
+ * joined straight away, and the others are written out too. Each pair of
+ * spilled partitions is then joined the same way, split by another hash
+ * if it still does not fit.
+ */
+public class HashJoin extends Operator {
+
+    private static final long serialVersionUID = 1L;
+
+    /** Default number of pages of tuples a join holds in memory */
+    public static final int DEFAULT_MEMORY_PAGES = 1000;
+
+    private static int memoryPages = DEFAULT_MEMORY_PAGES;
+
+    /** Number of partitions a build input is split into at each level */
+    static final int FANOUT = 16;
+
+    /**
+     * Partitions this many levels deep are joined in memory whatever their
+     * size, since another split does not help when all their keys are equal
+     */
+    static final int MAX_LEVELS = 4;
+
+    private JoinPredicate p;
+    private OpIterator child1;
+    private OpIterator child2;
+    private final int budgetPages;
+
+    /** True if child1 is hashed and child2 is probed */
+    private boolean buildLeft;
+    /** Tuples of the build input in memory, by join field */
+    private transient HashMap<Field, ArrayList<Tuple>> table;
+    /** The probe tuples of the current pass */
+    private transient Input probeSrc;
+    /** For each partition of the current pass, where its probe tuples go if it was spilled */
+    private transient SpillFile[] probeSpills;
+    private int level;
+    /** The spilled partitions being joined, or null for the first pass */
+    private transient Pass current;
+    /** Spilled partitions left to join, the most recently spilled first */
+    private transient ArrayDeque<Pass> pending;
+    /** Spill files not yet deleted */
+    private transient ArrayList<SpillFile> spills;
+    /** Number of partitions written to disk since the join was opened */
+    private int spillCount;
+
+    /** The tuple being probed and the matches left to return for it */
+    private Tuple probe;
+    private ArrayList<Tuple> matches;
+    private int matchIdx;
+
+    /** A pair of spilled partitions, and the level they were split at */
+    private static class Pass {
+        final SpillFile build;
+        final SpillFile probe;
+        final int level;
+
+        Pass(SpillFile build, SpillFile probe, int level) {
+            this.build = build;
+            this.probe = probe;
+            this.level = level;
+        }
+    }
+
+    /**
+     * Constructor. Accepts two children to join and the predicate to join them
+     * on, and holds at most the pages of tuples set by setMemoryPages.
+     *
+     * @param p
+     *            The predicate to use to join the children, whose operator
+     *            must be EQUALS
+     * @param child1
+     *            Iterator for the left relation to join
+     * @param child2
+     *            Iterator for the right relation to join
+     */
+    public HashJoin(JoinPredicate p, OpIterator child1, OpIterator child2) {
+        this(p, child1, child2, memoryPages);
+    }
+
+    /**
+     * Constructor for a join with its own memory budget.
+     *
+     * @param memoryPages
+     *            The number of pages' worth of tuples the join may hold in
+     *            memory before it writes partitions to disk
+     */
+    public HashJoin(JoinPredicate p, OpIterator child1, OpIterator child2, int memoryPages) {
+        if (p.getOperator() != Predicate.Op.EQUALS) {
+            throw new IllegalArgumentException("hash join needs an equality predicate");
+        }
+        if (memoryPages < 1) {
+            throw new IllegalArgumentException("a join needs at least a page of memory");
+        }
+        this.p = p;
+        this.child1 = child1;
+        this.child2 = child2;
+        this.budgetPages = memoryPages;
+    }
+
+    /**
+     * Sets the number of pages of tuples joins made from now on hold in
+     * memory.
+     */
+    public static void setMemoryPages(int pages) {
+        memoryPages = pages;
+    }
+
+    /** Puts the memory of joins made from now on back to the default. */
+    public static void resetMemoryPages() {
+        memoryPages = DEFAULT_MEMORY_PAGES;
+    }
+
+    /** @return the number of pages of tuples joins made now hold in memory */
+    public static int getMemoryPages() {
+        return memoryPages;
+    }
+
+    public JoinPredicate getJoinPredicate() {
+        return this.p;
+    }
+
+    public TupleDesc getTupleDesc() {
+        return TupleDesc.merge(child1.getTupleDesc(), child2.getTupleDesc());
+    }
+
+    public void open() throws DbException, NoSuchElementException,
+            TransactionAbortedException {
+        child1.open();
+        child2.open();
+        spillCount = 0;
+        super.open();
+    }
+
+    /**
+     * @return the number of partitions, of either input, the join has
+     *     written to disk since it was opened
+     */
+    public int getSpillCount() {
+        return spillCount;
+    }
+
+    public void close() {
+        super.close();
+        child1.close();
+        child2.close();
+        reset();
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException {
+        child1.rewind();
+        child2.rewind();
+        reset();
+    }
+
+    private void reset() {
+        if (probeSrc != null) {
+            probeSrc.close();
+        }
+        if (spills != null) {
+            for (SpillFile s : spills) {
+                s.delete();
+            }
+        }
+        table = null;
+        current = null;
+        probeSrc = null;
+        probeSpills = null;
+        pending = null;
+        spills = null;
+        probe = null;
+        matches = null;
+    }
+
+    /**
+     * Reads both children in turn until one runs out or the memory is full,
+     * and makes the first pass over them, hashing the one that ran out, or
+     * else the one whose tuples are smaller.
+     */
+    private void start() throws DbException, TransactionAbortedException {
+        long budget = (long) budgetPages * BufferPool.getPageSize();
+        int size1 = child1.getTupleDesc().getSize();
+        int size2 = child2.getTupleDesc().getSize();
+        ArrayList<Tuple> left = new ArrayList<Tuple>();
+        ArrayList<Tuple> right = new ArrayList<Tuple>();
+        long used = 0;
+        while (true) {
+            if (!child1.hasNext()) {
+                buildLeft = true;
+                break;
+            }
+            left.add(child1.next());
+            if (!child2.hasNext()) {
+                buildLeft = false;
+                break;
+            }
+            right.add(child2.next());
+            used += size1 + size2;
+            if (used > budget) {
+                buildLeft = size1 < size2;
+                break;
+            }
+        }
+        pending = new ArrayDeque<Pass>();
+        spills = new ArrayList<SpillFile>();
+        ArrayList<Tuple> probeRead = buildLeft ? right : left;
+        pass(new Input(buildLeft ? left : right, buildLeft ? child1 : child2),
+                new Input(probeRead, buildLeft ? child2 : child1), 0,
+                (long) probeRead.size() * (buildLeft ? size2 : size1));
+    }
+
+    /**
+     * Hashes the build tuples of a pass, spilling partitions that do not fit,
+     * and sets up the probe tuples to be read.
+     *
+     * @param held bytes of probe tuples already in memory, which the build
+     *     tuples have to fit beside
+     */
+    private void pass(Input build, Input probe, int level, long held)
+            throws DbException, TransactionAbortedException {
+        OpIterator buildChild = buildLeft ? child1 : child2;
+        OpIterator probeChild = buildLeft ? child2 : child1;
+        int buildField = buildLeft ? p.getField1() : p.getField2();
+        long budget = (long) budgetPages * BufferPool.getPageSize() - held;
+        int tupleSize = buildChild.getTupleDesc().getSize();
+
+        @SuppressWarnings("unchecked")
+        ArrayList<Tuple>[] parts = new ArrayList[FANOUT];
+        SpillFile[] buildSpills = new SpillFile[FANOUT];
+        for (int i = 0; i < FANOUT; i++) {
+            parts[i] = new ArrayList<Tuple>();
+        }
+        long resident = 0;
+        try {
+            while (build.hasNext()) {
+                Tuple t = build.next();
+                int q = partition(t.getField(buildField), level);
+                if (buildSpills[q] != null) {
+                    buildSpills[q].add(t);
+                    continue;
+                }
+                parts[q].add(t);
+                resident += tupleSize;
+                if (resident > budget && level < MAX_LEVELS) {
+                    // write out the largest partition still in memory
+                    int v = q;
+                    for (int i = 0; i < FANOUT; i++) {
+                        if (buildSpills[i] == null && parts[i].size() > parts[v].size()) {
+                            v = i;
+                        }
+                    }
+                    buildSpills[v] = spill(buildChild.getTupleDesc());
+                    for (Tuple s : parts[v]) {
+                        buildSpills[v].add(s);
+                    }
+                    resident -= (long) parts[v].size() * tupleSize;
+                    parts[v] = new ArrayList<Tuple>();
+                }
+            }
+            build.close();
+
+            table = new HashMap<Field, ArrayList<Tuple>>();
+            probeSpills = new SpillFile[FANOUT];
+            for (int i = 0; i < FANOUT; i++) {
+                if (buildSpills[i] != null) {
+                    probeSpills[i] = spill(probeChild.getTupleDesc());
+                    pending.push(new Pass(buildSpills[i], probeSpills[i], level + 1));
+                    continue;
+                }
+                for (Tuple t : parts[i]) {
+                    ArrayList<Tuple> l = table.get(t.getField(buildField));
+                    if (l == null) {
+                        l = new ArrayList<Tuple>(1);
+                        table.put(t.getField(buildField), l);
+                    }
+                    l.add(t);
+                }
+            }
+        } catch (IOException e) {
+            throw new DbException("could not spill join partition: " + e.getMessage());
+        }
+        this.level = level;
+        this.probeSrc = probe;
+    }
+
+    private SpillFile spill(TupleDesc td) throws IOException {
+        SpillFile s = new SpillFile(td);
+        spills.add(s);
+        spillCount++;
+        return s;
+    }
+
+    private void discard(SpillFile s) {
+        s.delete();
+        spills.remove(s);
+    }
+
+    /** @return the partition of a key at the given level of splitting */
+    private static int partition(Field key, int level) {
+        int h = key.hashCode() + level * 0x9E3779B9;
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        return Math.floorMod(h, FANOUT);
+    }
+
+    /**
+     * Starts on the next pair of spilled partitions with probe tuples.
+     *
+     * @return false if none is left
+     */
+    private boolean nextPass() throws DbException, TransactionAbortedException {
+        if (current != null) {
+            discard(current.build);
+            discard(current.probe);
+            current = null;
+        }
+        while (!pending.isEmpty()) {
+            Pass next = pending.pop();
+            if (next.build.numTuples() == 0 || next.probe.numTuples() == 0) {
+                discard(next.build);
+                discard(next.probe);
+                continue;
+            }
+            current = next;
+            try {
+                pass(new Input(next.build.iterator()), new Input(next.probe.iterator()),
+                        next.level, 0);
+            } catch (IOException e) {
+                throw new DbException("could not read join partition: " + e.getMessage());
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns the next tuple generated by the join, or null if there are no
+     * more tuples.
+     *
+     * @return The next matching tuple.
+     */
+    protected Tuple fetchNext() throws TransactionAbortedException, DbException {
+        if (table == null) {
+            start();
+        }
+        int probeField = buildLeft ? p.getField2() : p.getField1();
+        while (true) {
+            if (matches != null && matchIdx < matches.size()) {
+                Tuple m = matches.get(matchIdx++);
+                return buildLeft ? Join.combine(getTupleDesc(), m, probe)
+                        : Join.combine(getTupleDesc(), probe, m);
+            }
+            matches = null;
+            if (!probeSrc.hasNext()) {
+                probeSrc.close();
+                if (!nextPass()) {
+                    return null;
+                }
+                continue;
+            }
+            Tuple t = probeSrc.next();
+            Field key = t.getField(probeField);
+            SpillFile out = probeSpills[partition(key, level)];
+            if (out != null) {
+                try {
+                    out.add(t);
+                } catch (IOException e) {
+                    throw new DbException("could not spill join partition: " + e.getMessage());
+                }
+                continue;
+            }
+            probe = t;
+            matches = table.get(key);
+            matchIdx = 0;
+        }
+    }
+
+    /**
+     * The tuples a pass reads: those read from a child while sizing the
+     * inputs followed by the rest of the child, which the join opens and
+     * closes, or the tuples of a spilled partition.
+     */
+    private static class Input {
+        private final Iterator<Tuple> buffered;
+        private final OpIterator child;
+        private final DbFileIterator spilled;
+
+        Input(List<Tuple> buffered, OpIterator child) {
+            this.buffered = buffered.iterator();
+            this.child = child;
+            this.spilled = null;
+        }
+
+        Input(DbFileIterator spilled) throws DbException, TransactionAbortedException {
+            this.buffered = Collections.emptyIterator();
+            this.child = null;
+            this.spilled = spilled;
+            spilled.open();
+        }
+
+        boolean hasNext() throws DbException, TransactionAbortedException {
+            return buffered.hasNext() || (child != null ? child.hasNext() : spilled.hasNext());
+        }
+
+        Tuple next() throws DbException, TransactionAbortedException {
+            if (buffered.hasNext()) {
+                return buffered.next();
+            }
+            return child != null ? child.next() : spilled.next();
+        }
+
+        void close() {
+            if (spilled != null) {
+                spilled.close();
+            }
+        }
+    }
+
+    @Override
+    public OpIterator[] getChildren() {
+        return new OpIterator[]{child1, child2};
+    }
+
+    @Override
+    public void setChildren(OpIterator[] children) {
+        this.child1 = children[0];
+        this.child2 = children[1];
+    }
+
+}
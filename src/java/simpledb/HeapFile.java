@@ -1,14 +1,31 @@
 package simpledb;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * HeapFile is an implementation of a DbFile that stores a collection of tuples
  * in no particular order. Tuples are stored on pages, each of which is a fixed
  * size, and the file is simply a collection of those pages. HeapFile works
  * closely with HeapPage. The format of HeapPages is described in the HeapPage
- * constructor.
+ * constructor. Subclasses may store their tuples on other kinds of
+ * {@link TuplePage} by overriding {@link #newPage}.
+ * <p>
+ * The file is opened on first use and kept open. Pages are read and written
+ * with positional I/O on a single FileChannel, so threads share it without
+ * seeking, and the number of pages is tracked in memory.
+ * <p>
+ * Inserts find a page with room through a {@link FreeSpaceMap}, kept in a
+ * side file next to the data file, rather than by reading every page.
+ * <p>
+ * A {@link ZoneMap}, kept in another side file, records the range of each
+ * int field on each page. Scans given predicates skip the pages whose
+ * ranges cannot satisfy them.
  * 
  * @see simpledb.HeapPage#HeapPage
  * @author Sam Madden
@@ -21,6 +38,18 @@ public class HeapFile implements DbFile {
     /** The scheme on this file. */
     private final TupleDesc td;
 
+    /** Channel on f, opened on first use. */
+    private volatile FileChannel channel;
+
+    /** Number of pages in the file, or -1 until first counted. */
+    private final AtomicInteger pageCount;
+
+    /** Free slots per page, loaded on first use. */
+    private volatile FreeSpaceMap fsm;
+
+    /** Range of each int field per page, loaded on first use. */
+    private volatile ZoneMap zm;
+
     /**
      * Constructs a heap file backed by the specified file.
      * 
@@ -31,6 +60,7 @@ public class HeapFile implements DbFile {
     public HeapFile(File f, TupleDesc td) {
         this.f = f;
         this.td = td;
+        this.pageCount = new AtomicInteger(-1);
     }
 
     /**
@@ -66,22 +96,32 @@ public class HeapFile implements DbFile {
 
     // see DbFile.java for javadocs
     public Page readPage(PageId pid) {
+        return readPage(pid, ByteBuffer.allocate(BufferPool.getPageSize()));
+    }
+
+    // see DbFile.java for javadocs
+    public Page readPage(PageId pid, ByteBuffer frame) {
         try {
-            int pgNo = pid.getPageNumber();
             int pgSz = BufferPool.getPageSize();
-
-            // Find start of page
-            int off = pgNo * pgSz;
-
-            // Store the bytes of the page
-            byte[] data = new byte[pgSz];
-            RandomAccessFile rf = new RandomAccessFile(this.f, "r");
-            rf.seek(off);
-            rf.read(data);
-            rf.close();
+            long off = (long) pid.getPageNumber() * pgSz;
+
+            // Read the page straight into the frame; past the end of the file it is 0
+            ByteBuffer dst = frame.duplicate();
+            dst.limit(dst.position() + pgSz);
+            int start = dst.position();
+            FileChannel ch = channel();
+            while (dst.hasRemaining()) {
+                if (ch.read(dst, off + dst.position() - start) < 0) {
+                    break;
+                }
+            }
+            while (dst.hasRemaining()) {
+                dst.put((byte) 0);
+            }
 
             // Then we can construct the page
-            HeapPage pg = new HeapPage((HeapPageId) pid, data);
+            TuplePage pg = newPage((HeapPageId) pid, frame);
+            pageRead(pg);
             return pg;
         } catch (Exception e) {
             e.printStackTrace();
@@ -91,23 +131,141 @@ public class HeapFile implements DbFile {
 
     // see DbFile.java for javadocs
     public void writePage(Page page) throws IOException {
-        // get offset
         int pageNo = page.getId().getPageNumber();
-        int pageSz = BufferPool.getPageSize();
-        int offset = pageNo * pageSz;
+        long offset = (long) pageNo * BufferPool.getPageSize();
+
+        ByteBuffer src = ByteBuffer.wrap(page.getPageData());
+        FileChannel ch = channel();
+        while (src.hasRemaining()) {
+            ch.write(src, offset + src.position());
+        }
+        pageCount.accumulateAndGet(pageNo + 1, Math::max);
+        if (page instanceof TuplePage) {
+            freeSpace().updateStored(pageNo, ((TuplePage) page).getFreeSpace());
+            zones().updateStored(pageNo, ((TuplePage) page).iterator());
+        }
+    }
 
-        // write
-        RandomAccessFile rf = new RandomAccessFile(this.f, "rw");
-        rf.seek(offset);
-        rf.write(page.getPageData());
-        rf.close();
+    /**
+     * Brings the free-space map up to date with a page just read from the
+     * file. Zones are left to writes and to scans with predicates, so that
+     * reading a page does not decode its tuples.
+     */
+    protected void pageRead(TuplePage pg) {
+        freeSpace().update(pg.getId().getPageNumber(), pg.getFreeSpace());
     }
 
     /**
-     * Returns the number of pages in this HeapFile.
+     * Returns the number of pages in this HeapFile. This asks the file
+     * system, so it also sees pages appended by others; loops should use the
+     * count kept in memory instead.
      */
     public int numPages() {
-        return (int) Math.ceil((double) this.f.length() / BufferPool.getPageSize());
+        int n = 0;
+        // don't create the file just to find out it is empty
+        if (channel != null || f.exists()) {
+            try {
+                long size = channel().size();
+                n = (int) ((size + BufferPool.getPageSize() - 1) / BufferPool.getPageSize());
+            } catch (IOException e) {
+                // a file that cannot be opened has no pages
+            }
+        }
+        final int onDisk = n;
+        return pageCount.updateAndGet(c -> Math.max(c, onDisk));
+    }
+
+    /** @return the number of pages, counting them only the first time */
+    private int cachedNumPages() {
+        int n = pageCount.get();
+        return n >= 0 ? n : numPages();
+    }
+
+    /**
+     * Creates a page of this file on a buffer holding its bytes, which the
+     * page reads and writes in place. Subclasses storing another page
+     * format override this.
+     *
+     * @param frame a writable buffer with a page of room from its position
+     */
+    protected TuplePage newPage(HeapPageId pid, ByteBuffer frame) throws IOException {
+        return HeapPage.wrap(pid, frame);
+    }
+
+    /** @return the free-space map of this file, loading it if need be */
+    protected FreeSpaceMap freeSpace() {
+        FreeSpaceMap m = fsm;
+        if (m == null) {
+            synchronized (this) {
+                m = fsm;
+                if (m == null) {
+                    m = new FreeSpaceMap(FreeSpaceMap.sideFile(f), numPages());
+                    fsm = m;
+                }
+            }
+        }
+        return m;
+    }
+
+    /** @return the zone map of this file, loading it if need be */
+    protected ZoneMap zones() {
+        ZoneMap m = zm;
+        if (m == null) {
+            synchronized (this) {
+                m = zm;
+                if (m == null) {
+                    m = new ZoneMap(f, td, numPages());
+                    zm = m;
+                }
+            }
+        }
+        return m;
+    }
+
+    /** @return the channel on the backing file, opening it if need be */
+    protected FileChannel channel() throws IOException {
+        FileChannel ch = channel;
+        if (ch == null) {
+            synchronized (this) {
+                ch = channel;
+                if (ch == null) {
+                    try {
+                        ch = FileChannel.open(f.toPath(), StandardOpenOption.READ,
+                                StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+                    } catch (AccessDeniedException e) {
+                        ch = FileChannel.open(f.toPath(), StandardOpenOption.READ);
+                    }
+                    channel = ch;
+                }
+            }
+        }
+        return ch;
+    }
+
+    /**
+     * Closes the channels on the backing file and its side files. The file
+     * can still be used; they are opened again when next needed.
+     */
+    public void close() {
+        synchronized (this) {
+            FileChannel ch = channel;
+            channel = null;
+            if (ch != null) {
+                try {
+                    ch.close();
+                } catch (IOException e) {
+                    // writes go straight to the channel, so nothing is lost
+                }
+            }
+        }
+        FreeSpaceMap m = fsm;
+        if (m != null) {
+            m.close();
+        }
+        ZoneMap z = zm;
+        if (z != null) {
+            z.close();
+        }
     }
 
     // see DbFile.java for javadocs
@@ -117,26 +275,42 @@ public class HeapFile implements DbFile {
         BufferPool bp = Database.getBufferPool();
         ArrayList<Page> affectedPgs = new ArrayList<>();
     
-        // look for empty page
-        for (int i = 0; i < numPages(); i++) {
+        // look for a page with room, as far as the free-space map knows
+        FreeSpaceMap space = freeSpace();
+        int n = cachedNumPages();
+        int needed = 1;
+        for (int i = space.findPage(0, n, needed); i >= 0;
+                i = space.findPage(i + 1, n, needed)) {
             HeapPageId hid = new HeapPageId(getId(), i);
-            HeapPage pg = (HeapPage) bp.getPage(tid, hid, Permissions.READ_ONLY);
-            
-            // found, so insert
-            if (pg.getNumEmptySlots() > 0) {
-                pg = (HeapPage) bp.getPage(tid, hid, Permissions.READ_WRITE);
+            TuplePage pg = (TuplePage) bp.getPage(tid, hid, Permissions.READ_ONLY);
+            int free = pg.getFreeSpace();
+            needed = pg.spaceFor(t);
+            bp.unpinPage(tid, hid);
+            space.update(i, free);
+
+            // found, so insert; the caller unpins the page we return
+            if (free >= needed) {
+                pg = (TuplePage) bp.getPage(tid, hid, Permissions.READ_WRITE);
                 affectedPgs.add(pg);
+                // widen first, so that no scan skips the page once t is on it
+                zones().widen(i, t);
                 pg.insertTuple(t);
+                space.update(i, pg.getFreeSpace());
                 return affectedPgs;
             }
         }
     
-        // no room, make new page
-        HeapPageId hid = new HeapPageId(getId(), numPages());
-        HeapPage pg = new HeapPage(hid, HeapPage.createEmptyPageData());
+        // no room, so append an empty page and lock it like any other
+        HeapPageId hid;
+        synchronized (this) {
+            hid = new HeapPageId(getId(), cachedNumPages());
+            writePage(newPage(hid, ByteBuffer.allocate(BufferPool.getPageSize())));
+        }
+        TuplePage pg = (TuplePage) bp.getPage(tid, hid, Permissions.READ_WRITE);
         affectedPgs.add(pg);
+        zones().widen(hid.getPageNumber(), t);
         pg.insertTuple(t);
-        writePage(pg);
+        space.update(hid.getPageNumber(), pg.getFreeSpace());
         return affectedPgs;
     }
 
@@ -149,15 +323,47 @@ public class HeapFile implements DbFile {
     
         // find tuple location
         PageId pid = t.getRecordId().getPageId();
-        HeapPage pg = (HeapPage) bp.getPage(tid, pid, Permissions.READ_WRITE);
+        TuplePage pg = (TuplePage) bp.getPage(tid, pid, Permissions.READ_WRITE);
         affectedPgs.add(pg);
         pg.deleteTuple(t);
+        freeSpace().update(pid.getPageNumber(), pg.getFreeSpace());
         return affectedPgs;
     }
 
     // see DbFile.java for javadocs
     public DbFileIterator iterator(TransactionId tid) {
-        return new HeapFileIterator(tid);
+        return new HeapFileIterator(tid, null, null);
+    }
+
+    /**
+     * Returns an iterator that reads the pages not already in the
+     * BufferPool through a private ring of frames, for scans too large to
+     * be worth caching. Such scans do no read-ahead, since prefetched pages
+     * would land in the shared pool.
+     *
+     * @param tid the transaction scanning the file
+     * @param ring the frames to cycle through
+     * @see BufferPool#getPageInRing
+     */
+    public DbFileIterator iterator(TransactionId tid, BufferRing ring) {
+        return new HeapFileIterator(tid, ring, null);
+    }
+
+    /**
+     * Returns an iterator that skips the pages on which, by the zone map,
+     * no tuple satisfies all of the given predicates. The tuples of the
+     * pages it reads are all returned, so the caller still has to filter
+     * them.
+     *
+     * @param tid the transaction scanning the file
+     * @param ring the frames to cycle through, or null to read through the
+     *     BufferPool
+     * @param preds predicates on the fields of this file's TupleDesc
+     * @see #iterator(TransactionId, BufferRing)
+     */
+    public DbFileIterator iterator(TransactionId tid, BufferRing ring, List<Predicate> preds) {
+        return new HeapFileIterator(tid, ring,
+                preds == null || preds.isEmpty() ? null : new ArrayList<>(preds));
     }
 
     public class HeapFileIterator extends AbstractDbFileIterator {
@@ -166,12 +372,19 @@ public class HeapFile implements DbFile {
 
         /** Other internal information. */
         private TransactionId tid;
-        private HeapPage page;
+        private TuplePage page;
         private boolean open;
         private int pgNo;
+        private ReadAhead.Stream readAhead;
+        /** Set for scans that bypass the shared page table. */
+        private final BufferRing ring;
+        /** Set for scans that skip pages by the zone map. */
+        private final List<Predicate> preds;
 
-        private HeapFileIterator(TransactionId tid) {
+        private HeapFileIterator(TransactionId tid, BufferRing ring, List<Predicate> preds) {
             this.tid = tid;
+            this.ring = ring;
+            this.preds = preds;
             this.open = false;
             this.pgNo = 0;
         }
@@ -180,22 +393,23 @@ public class HeapFile implements DbFile {
         public void open() throws DbException, TransactionAbortedException {
             this.open = true;
             this.pgNo = 0;
-
-            HeapPageId hid = new HeapPageId(getId(), pgNo);
-            this.page = (HeapPage) Database.getBufferPool()
-                                        .getPage(tid, hid, Permissions.READ_ONLY);
-
-            this.it = this.page.iterator();
+            // pick up pages appended behind our back; later checks are free
+            numPages();
+            if (readAhead != null) {
+                readAhead.close();
+            }
+            if (ring == null) {
+                readAhead = preds == null
+                        ? Database.getBufferPool().getReadAhead().newStream(getId())
+                        : Database.getBufferPool().getReadAhead().newStream(getId(), this::mayMatch);
+            }
+            fetchPage();
 
             // in case the page is empty
             while (!it.hasNext()) {
                 this.pgNo++;
-                if (pgNo < numPages()) {
-                    hid = new HeapPageId(getId(), pgNo);
-                    this.page = (HeapPage) Database.getBufferPool()
-                                        .getPage(tid, hid, Permissions.READ_ONLY);
-
-                    this.it = page.iterator();
+                if (pgNo < cachedNumPages()) {
+                    fetchPage();
                 } else {
                     return;
                 }
@@ -204,6 +418,11 @@ public class HeapFile implements DbFile {
 
         public void close() {
             super.close();
+            unpinCurrent();
+            if (readAhead != null) {
+                readAhead.close();
+                readAhead = null;
+            }
             open = false;
         }
 
@@ -212,6 +431,64 @@ public class HeapFile implements DbFile {
             this.open();
         }
 
+        /**
+         * Moves onto page pgNo, unpinning the page we were on. Tuples are
+         * only handed out from the pinned page, so it cannot be evicted
+         * from under the scan.
+         */
+        private void fetchPage() throws DbException, TransactionAbortedException {
+            unpinCurrent();
+            if (ring == null) {
+                // skipped pages are still reported, so the scan looks sequential
+                readAhead.accessed(pgNo, cachedNumPages());
+            }
+            if (!mayMatch(pgNo)) {
+                this.it = Collections.emptyIterator();
+                return;
+            }
+            HeapPageId hid = new HeapPageId(getId(), pgNo);
+            if (ring == null) {
+                this.page = (TuplePage) Database.getBufferPool()
+                                            .getPage(tid, hid, Permissions.READ_ONLY);
+            } else {
+                this.page = (TuplePage) Database.getBufferPool()
+                                            .getPageInRing(tid, hid, Permissions.READ_ONLY, ring);
+            }
+            this.it = page.iterator();
+            if (preds != null && page.isDirty() == null) {
+                // a clean page holds what is on disk, so its zone can be learned
+                ZoneMap z = zones();
+                if (z.getState(pgNo) == ZoneMap.UNKNOWN) {
+                    z.update(pgNo, page.iterator());
+                }
+            }
+        }
+
+        /** @return false if the zone map rules out every tuple on a page */
+        private boolean mayMatch(int pgNo) {
+            if (preds == null) {
+                return true;
+            }
+            ZoneMap z = zones();
+            for (Predicate p : preds) {
+                if (!z.mayMatch(pgNo, p)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void unpinCurrent() {
+            if (page != null) {
+                // pages in the ring are not pinned
+                if (ring == null || !ring.holds(page)) {
+                    Database.getBufferPool().unpinPage(tid, page.getId());
+                }
+                page = null;
+                it = null;
+            }
+        }
+
         @Override
         protected Tuple readNext() throws DbException, TransactionAbortedException {
             if (!this.open || it == null) {
@@ -224,12 +501,8 @@ public class HeapFile implements DbFile {
             // in case the page is empty
             while (!it.hasNext()) {
                 this.pgNo++;
-                if (pgNo < numPages()) {
-                    HeapPageId hid = new HeapPageId(getId(), pgNo);
-                    this.page = (HeapPage) Database.getBufferPool()
-                                        .getPage(tid, hid, Permissions.READ_ONLY);
-
-                    this.it = page.iterator();
+                if (pgNo < cachedNumPages()) {
+                    fetchPage();
                 } else {
                     return null;
                 }
@@ -1,7 +1,9 @@
 package simpledb;
 
 import java.io.*;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 
 /**
  * HeapFileEncoder reads a comma delimited text file or accepts
@@ -90,10 +92,24 @@ public class HeapFileEncoder {
   public static void convert(File inFile, File outFile, int npagebytes,
                  int numFields, Type[] typeAr, char fieldSeparator)
       throws IOException {
+      convert(inFile,outFile,npagebytes,numFields,typeAr,null,fieldSeparator);
+  }
+
+   /** Like {@link #convert(File, File, int, int, Type[], char)}, for a
+    * table whose strings are declared with the given widths, each stored
+    * in widthAr[i] characters instead of Type.STRING_LEN.
+    *
+    * @param widthAr the width of each field, or null for the default widths
+    */
+  public static void convert(File inFile, File outFile, int npagebytes,
+                 int numFields, Type[] typeAr, int[] widthAr, char fieldSeparator)
+      throws IOException {
 
+      int[] widths = new int[numFields];
       int nrecbytes = 0;
       for (int i = 0; i < numFields ; i++) {
-          nrecbytes += typeAr[i].getLen();
+          widths[i] = widthAr == null ? Type.STRING_LEN : widthAr[i];
+          nrecbytes += typeAr[i].getLen(widths[i]);
       }
       int nrecords = (npagebytes * 8) /  (nrecbytes * 8 + 1);  //floor comes for free
       
@@ -106,6 +122,9 @@ public class HeapFileEncoder {
 
     BufferedReader br = new BufferedReader(new FileReader(inFile));
     FileOutputStream os = new FileOutputStream(outFile);
+    // the side maps of the file we replace would be wrong
+    FreeSpaceMap.sideFile(outFile).delete();
+    ZoneMap.sideFile(outFile).delete();
 
     // our numbers probably won't be much larger than 1024 digits
     char buf[] = new char[1024];
@@ -147,9 +166,9 @@ public class HeapFileEncoder {
             }
             else   if (typeAr[fieldNo] == Type.STRING_TYPE) {
                 s = s.trim();
-                int overflow = Type.STRING_LEN - s.length();
+                int overflow = widths[fieldNo] - s.length();
                 if (overflow < 0) {
-                    String news = s.substring(0,Type.STRING_LEN);
+                    String news = s.substring(0,widths[fieldNo]);
                     s  = news;
                 }
                 pageStream.writeInt(s.length());
@@ -223,4 +242,335 @@ public class HeapFileEncoder {
     br.close();
     os.close();
   }
+
+  /** Convert the specified input text file into a file of slotted pages,
+   * in the format described in SlottedHeapPage, where each string takes
+   * only as many bytes as it has characters. The input is read as by
+   * {@link #convert(File, File, int, int, Type[], char)}, one tuple per
+   * line.
+   *
+   * @see SlottedHeapPage
+   * @see SlottedHeapFile
+   * @param inFile The input file to read data from
+   * @param outFile The output file to write data to
+   * @param npagebytes The number of bytes per page in the output file
+   * @param numFields the number of fields in each input line/output tuple
+   * @param typeAr the type of each field
+   * @param fieldSeparator the character between fields
+   * @throws IOException if the input/output file can't be opened or a
+   *   malformed input line is encountered
+   */
+  public static void convertSlotted(File inFile, File outFile, int npagebytes,
+                 int numFields, Type[] typeAr, char fieldSeparator)
+      throws IOException {
+      convertSlotted(inFile,outFile,npagebytes,numFields,typeAr,null,fieldSeparator);
+  }
+
+  /** Like {@link #convertSlotted(File, File, int, int, Type[], char)}, for
+   * a table whose strings are declared with the given widths; longer
+   * strings are cut to their width.
+   *
+   * @param widthAr the width of each field, or null for the default widths
+   */
+  public static void convertSlotted(File inFile, File outFile, int npagebytes,
+                 int numFields, Type[] typeAr, int[] widthAr, char fieldSeparator)
+      throws IOException {
+      convertPages(inFile,outFile,npagebytes,numFields,typeAr,widthAr,fieldSeparator,
+              SlottedHeapPage::new);
+  }
+
+  /** Convert the specified input text file into a file of PAX pages, in
+   * the format described in PaxHeapPage, which hold the same tuples as
+   * HeapPages with the values of each field grouped together. The input is
+   * read as by {@link #convert(File, File, int, int, Type[], char)}, one
+   * tuple per line.
+   *
+   * @see PaxHeapPage
+   * @see PaxHeapFile
+   * @param widthAr the width of each field, or null for the default widths
+   */
+  public static void convertPax(File inFile, File outFile, int npagebytes,
+                 int numFields, Type[] typeAr, int[] widthAr, char fieldSeparator)
+      throws IOException {
+      convertPages(inFile,outFile,npagebytes,numFields,typeAr,widthAr,fieldSeparator,
+              PaxHeapPage::new);
+  }
+
+  /** Creates an empty page of a given size for the encoder to fill. */
+  private interface PageMaker {
+      TuplePage newPage(HeapPageId id, TupleDesc td, ByteBuffer page) throws IOException;
+  }
+
+  /** Fills pages made by maker with the tuples of a text file, one tuple
+   * per line, writing each page to outFile when the next tuple does not
+   * fit.
+   */
+  private static void convertPages(File inFile, File outFile, int npagebytes,
+                 int numFields, Type[] typeAr, int[] widthAr, char fieldSeparator,
+                 PageMaker maker)
+      throws IOException {
+      TupleDesc td = new TupleDesc(Arrays.copyOf(typeAr, numFields), new String[numFields],
+              widthAr == null ? null : Arrays.copyOf(widthAr, numFields));
+      String separator = java.util.regex.Pattern.quote(String.valueOf(fieldSeparator));
+
+      BufferedReader br = new BufferedReader(new FileReader(inFile));
+      FileOutputStream os = new FileOutputStream(outFile);
+      // the side maps of the file we replace would be wrong
+      FreeSpaceMap.sideFile(outFile).delete();
+      ZoneMap.sideFile(outFile).delete();
+
+      int npages = 0;
+      TuplePage page = maker.newPage(new HeapPageId(0, npages), td,
+              ByteBuffer.allocate(npagebytes));
+      boolean empty = true;
+      String line;
+      while ((line = br.readLine()) != null) {
+          if (line.trim().isEmpty())
+              continue;
+          Tuple t;
+          try {
+              t = parseTuple(line, td, separator);
+          } catch (IOException e) {
+              br.close();
+              os.close();
+              throw e;
+          }
+
+          try {
+              page.insertTuple(t);
+          } catch (DbException full) {
+              os.write(page.getPageData());
+              npages++;
+              page = maker.newPage(new HeapPageId(0, npages), td,
+                      ByteBuffer.allocate(npagebytes));
+              try {
+                  page.insertTuple(t);
+              } catch (DbException e) {
+                  br.close();
+                  os.close();
+                  throw new IOException("tuple does not fit on a page: " + line);
+              }
+          }
+          empty = false;
+      }
+
+      // like convert, an empty input still makes one empty page
+      if (!empty || npages == 0)
+          os.write(page.getPageData());
+      br.close();
+      os.close();
+  }
+
+  /** Parses a line of text into a tuple of the given schema.
+   *
+   * @param separator the quoted field separator
+   * @throws IOException if the line has the wrong number of fields
+   */
+  private static Tuple parseTuple(String line, TupleDesc td, String separator)
+      throws IOException {
+      String[] values = line.split(separator, -1);
+      if (values.length != td.numFields()) {
+          throw new IOException("BAD LINE : " + line);
+      }
+
+      Tuple t = new Tuple(td);
+      for (int i = 0; i < td.numFields(); i++) {
+          String s = values[i].trim();
+          if (td.getFieldType(i) == Type.INT_TYPE) {
+              try {
+                  t.setField(i, new IntField(Integer.parseInt(s)));
+              } catch (NumberFormatException e) {
+                  System.out.println ("BAD LINE : " + line);
+                  t.setField(i, new IntField(0));
+              }
+          } else {
+              t.setField(i, new StringField(s, td.getFieldWidth(i)));
+          }
+      }
+      return t;
+  }
+
+  /** Convert the specified input text file into a {@link BTreeFile}
+   * ordered by the given key field, in the formats described in
+   * BTreeRootPtrPage, BTreeLeafPage and BTreeInternalPage. The input is
+   * read as by {@link #convert(File, File, int, int, Type[], char)}, one
+   * tuple per line, and sorted on the key. The tree is built bottom up:
+   * full leaves, chained in order from page 1 on, then each level of
+   * internal pages above them, and the root pointer on page 0.
+   *
+   * @see BTreeFile
+   * @param widthAr the width of each field, or null for the default widths
+   * @param keyField the index of the field the tree is ordered by
+   */
+  public static void convertBTree(File inFile, File outFile, int npagebytes,
+                 int numFields, Type[] typeAr, int[] widthAr, int keyField,
+                 char fieldSeparator)
+      throws IOException {
+      TupleDesc td = new TupleDesc(Arrays.copyOf(typeAr, numFields), new String[numFields],
+              widthAr == null ? null : Arrays.copyOf(widthAr, numFields));
+      String separator = java.util.regex.Pattern.quote(String.valueOf(fieldSeparator));
+
+      ArrayList<Tuple> tuples = new ArrayList<Tuple>();
+      try (BufferedReader br = new BufferedReader(new FileReader(inFile))) {
+          String line;
+          while ((line = br.readLine()) != null) {
+              if (!line.trim().isEmpty())
+                  tuples.add(parseTuple(line, td, separator));
+          }
+      }
+      // stable, so tuples with equal keys keep the order of the input
+      tuples.sort((a, b) -> a.getField(keyField).compare(Predicate.Op.LESS_THAN,
+              b.getField(keyField)) ? -1
+              : b.getField(keyField).compare(Predicate.Op.LESS_THAN,
+                      a.getField(keyField)) ? 1 : 0);
+
+      try (RandomAccessFile out = new RandomAccessFile(outFile, "rw")) {
+          out.setLength(0);
+          int perLeaf = BTreeLeafPage.getMaxTuples(td, npagebytes);
+          int numLeaves = (tuples.size() + perLeaf - 1) / perLeaf;
+
+          // the leaves, each with its first key and page number
+          ArrayList<Field> keys = new ArrayList<Field>();
+          ArrayList<Integer> pages = new ArrayList<Integer>();
+          for (int l = 0; l < numLeaves; l++) {
+              int pgNo = 1 + l;
+              ByteBuffer buf = ByteBuffer.allocate(npagebytes);
+              buf.put(0, (byte) BTreePage.LEAF);
+              BTreeLeafPage leaf = new BTreeLeafPage(new HeapPageId(0, pgNo), td,
+                      keyField, buf);
+              int end = Math.min(tuples.size(), (l + 1) * perLeaf);
+              for (int i = l * perLeaf; i < end; i++) {
+                  try {
+                      leaf.insertAt(i - l * perLeaf, tuples.get(i));
+                  } catch (DbException e) {
+                      throw new IOException("tuple does not fit on a page", e);
+                  }
+              }
+              if (l + 1 < numLeaves)
+                  leaf.setRightSibling(pgNo + 1);
+              keys.add(leaf.getKey(0));
+              pages.add(pgNo);
+              writeAt(out, pgNo, leaf.getPageData());
+          }
+
+          // then the levels above them, until one page is left
+          int maxChildren = BTreeInternalPage.getMaxKeys(td, keyField, npagebytes) + 1;
+          int nextPage = 1 + numLeaves;
+          while (pages.size() > 1) {
+              ArrayList<Field> upKeys = new ArrayList<Field>();
+              ArrayList<Integer> upPages = new ArrayList<Integer>();
+              for (int first = 0; first < pages.size(); first += maxChildren) {
+                  int pgNo = nextPage++;
+                  ByteBuffer buf = ByteBuffer.allocate(npagebytes);
+                  buf.put(0, (byte) BTreePage.INTERNAL);
+                  BTreeInternalPage node = new BTreeInternalPage(new HeapPageId(0, pgNo), td,
+                          keyField, buf);
+                  node.setChild(0, pages.get(first));
+                  int end = Math.min(pages.size(), first + maxChildren);
+                  for (int c = first + 1; c < end; c++) {
+                      try {
+                          node.insertEntry(c - first - 1, keys.get(c), pages.get(c));
+                      } catch (DbException e) {
+                          throw new IOException("internal page overflow", e);
+                      }
+                  }
+                  upKeys.add(keys.get(first));
+                  upPages.add(pgNo);
+                  writeAt(out, pgNo, node.getPageData());
+              }
+              keys = upKeys;
+              pages = upPages;
+          }
+
+          ByteBuffer root = ByteBuffer.allocate(npagebytes);
+          root.putInt(0, pages.isEmpty() ? 0 : pages.get(0));
+          writeAt(out, 0, root.array());
+      }
+  }
+
+  private static void writeAt(RandomAccessFile out, int pgNo, byte[] page) throws IOException {
+      out.seek((long) pgNo * page.length);
+      out.write(page);
+  }
+
+  /** Convert the specified input text file into the column files of a
+   * {@link ColumnarFile} named by outFile, one file of ColumnPages per
+   * column, in the format described in ColumnPage. The input is read as by
+   * {@link #convert(File, File, int, int, Type[], char)}, one tuple per
+   * line.
+   *
+   * @see ColumnPage
+   * @see ColumnarFile
+   * @param inFile The input file to read data from
+   * @param outFile The file naming the table; the columns are written next
+   *   to it, to {@link ColumnarFile#columnFile}
+   * @param npagebytes The number of bytes per page in the output files
+   * @param numFields the number of fields in each input line/output tuple
+   * @param typeAr the type of each field
+   * @param widthAr the width of each field, or null for the default widths
+   * @param fieldSeparator the character between fields
+   * @throws IOException if the input/output file can't be opened or a
+   *   malformed input line is encountered
+   */
+  public static void convertColumnar(File inFile, File outFile, int npagebytes,
+                 int numFields, Type[] typeAr, int[] widthAr, char fieldSeparator)
+      throws IOException {
+      TupleDesc td = new TupleDesc(Arrays.copyOf(typeAr, numFields), new String[numFields],
+              widthAr == null ? null : Arrays.copyOf(widthAr, numFields));
+      String separator = java.util.regex.Pattern.quote(String.valueOf(fieldSeparator));
+      int[] valueSize = new int[numFields];
+      int[] slots = new int[numFields];
+      int[] used = new int[numFields];
+      ByteBuffer[] pages = new ByteBuffer[numFields];
+      FileOutputStream[] os = new FileOutputStream[numFields];
+      for (int i = 0; i < numFields; i++) {
+          valueSize[i] = typeAr[i].getLen(td.getFieldWidth(i));
+          slots[i] = (npagebytes * 8) / (valueSize[i] * 8 + 1);
+          pages[i] = ByteBuffer.allocate(npagebytes);
+          os[i] = new FileOutputStream(ColumnarFile.columnFile(outFile, i));
+      }
+
+      BufferedReader br = new BufferedReader(new FileReader(inFile));
+      try {
+          String line;
+          while ((line = br.readLine()) != null) {
+              if (line.trim().isEmpty())
+                  continue;
+              Tuple t = parseTuple(line, td, separator);
+
+              for (int i = 0; i < numFields; i++) {
+                  ByteBuffer page = pages[i];
+                  int headerSize = (slots[i] + 7) / 8;
+                  page.position(headerSize + used[i] * valueSize[i]);
+                  Field f = t.getField(i);
+                  if (f instanceof IntField) {
+                      page.putInt(((IntField) f).getValue());
+                  } else {
+                      String s = ((StringField) f).getValue();
+                      page.putInt(s.length());
+                      // one byte per char, as StringField.serialize writes them
+                      for (int c = 0; c < s.length(); c++)
+                          page.put((byte) s.charAt(c));
+                  }
+                  page.put(used[i] / 8, (byte) (page.get(used[i] / 8) | (1 << (used[i] % 8))));
+                  used[i]++;
+
+                  if (used[i] == slots[i]) {
+                      os[i].write(page.array());
+                      pages[i] = ByteBuffer.allocate(npagebytes);
+                      used[i] = 0;
+                  }
+              }
+          }
+
+          for (int i = 0; i < numFields; i++) {
+              if (used[i] > 0)
+                  os[i].write(pages[i].array());
+          }
+      } finally {
+          br.close();
+          for (FileOutputStream o : os)
+              o.close();
+      }
+  }
 }
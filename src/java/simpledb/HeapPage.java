@@ -1,29 +1,48 @@
 package simpledb;
 
 import java.io.*;
+import java.nio.ByteBuffer;
 import java.util.*;
 
 /**
  * Each instance of HeapPage stores data for one page of HeapFiles and 
  * implements the Page interface that is used by BufferPool.
+ * <p>
+ * A page keeps nothing but its bytes, in the on-disk format, and reads and
+ * writes its header and tuple slots in place, so loading a page costs no
+ * decoding at all. The iterator copies each used slot into a Tuple only
+ * when it is asked for the next one, and the Tuple decodes a field only
+ * when that field is read. {@link #getField} reads a single field without
+ * a Tuple. Tuples are encoded into their slots when they are inserted, so
+ * changing a Tuple handed out by a page does not change the page.
+ * <p>
+ * The bytes may live in a frame of the BufferPool's off-heap arena, in
+ * which case the page must not be used once it is unpinned.
  *
  * @see HeapFile
  * @see BufferPool
  *
  */
-public class HeapPage implements Page {
+public class HeapPage implements TuplePage {
 
     final HeapPageId pid;
     final TupleDesc td;
-    final byte header[];
-    final Tuple tuples[];
     final int numSlots;
+    final int headerSize;
+    final int tupleSize;
+
+    /**
+     * The page, from position 0 to the page size. Only accessed by index. A
+     * read-only buffer, such as a slice of a file mapping, is replaced by a
+     * private copy when the page is first changed.
+     */
+    ByteBuffer data;
 
     // Dirtying transaction
     private TransactionId tid;
 
-    byte[] oldData;
-    private final Byte oldDataLock=new Byte((byte)0);
+    /** What the page was before its first change since setBeforeImage. */
+    private final BeforeImage beforeImage = new BeforeImage();
 
     /**
      * Create a HeapPage from a set of bytes of data read from disk.
@@ -37,32 +56,68 @@ public class HeapPage implements Page {
      * <p>
      *      ceiling(no. tuple slots / 8)
      * <p>
+     * The bytes are copied, so the array may be reused afterwards.
+     *
      * @see Database#getCatalog
      * @see Catalog#getTupleDesc
      * @see BufferPool#getPageSize()
      */
     public HeapPage(HeapPageId id, byte[] data) throws IOException {
+        this(id, ByteBuffer.wrap(data));
+    }
+
+    /**
+     * Create a HeapPage from a copy of the bytes between the position and
+     * limit of a buffer, in the format described above. The buffer's
+     * position is not changed.
+     *
+     * @see #HeapPage(HeapPageId, byte[])
+     */
+    public HeapPage(HeapPageId id, ByteBuffer data) throws IOException {
+        this(id, Database.getCatalog().getTupleDesc(id.getTableId()),
+                BeforeImage.copyPage(data), data.remaining());
+    }
+
+    /**
+     * Create a HeapPage of tuples with the given schema on the given
+     * page-sized buffer, which it takes over.
+     *
+     * @param valid the number of leading bytes that came from the source
+     */
+    private HeapPage(HeapPageId id, TupleDesc td, ByteBuffer page, int valid)
+            throws IOException {
         this.pid = id;
-        this.td = Database.getCatalog().getTupleDesc(id.getTableId());
+        this.td = td;
         this.numSlots = getNumTuples();
-        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(data));
-
-        // allocate and read the header slots of this page
-        header = new byte[getHeaderSize()];
-        for (int i=0; i<header.length; i++)
-            header[i] = dis.readByte();
-        
-        tuples = new Tuple[numSlots];
-        try{
-            // allocate and read the actual records of this page
-            for (int i=0; i<tuples.length; i++)
-                tuples[i] = readNextTuple(dis,i);
-        }catch(NoSuchElementException e){
-            e.printStackTrace();
+        this.headerSize = getHeaderSize();
+        this.tupleSize = td.getSize();
+        if (valid < headerSize) {
+            throw new EOFException("page too short for its header");
         }
-        dis.close();
+        this.data = page;
+    }
 
-        setBeforeImage();
+    /**
+     * Creates a HeapPage that reads and writes a page held in the given
+     * buffer instead of a copy of it. The bytes from the buffer's position
+     * to the page size must already hold the page. If the buffer is
+     * read-only, the page reads it in place until its first change, which
+     * it makes to a copy.
+     *
+     * @param frame a buffer with at least a page of room
+     */
+    static HeapPage wrap(HeapPageId id, ByteBuffer frame) throws IOException {
+        return wrap(id, Database.getCatalog().getTupleDesc(id.getTableId()), frame);
+    }
+
+    /**
+     * Like {@link #wrap(HeapPageId, ByteBuffer)}, for a page of tuples with
+     * the given schema, whose table need not be in the catalog.
+     */
+    static HeapPage wrap(HeapPageId id, TupleDesc td, ByteBuffer frame) throws IOException {
+        ByteBuffer page = frame.duplicate();
+        page.limit(page.position() + BufferPool.getPageSize());
+        return new HeapPage(id, td, page.slice(), BufferPool.getPageSize());
     }
 
     /** Retrieve the number of tuples on this page.
@@ -86,12 +141,9 @@ public class HeapPage implements Page {
         -- used by recovery */
     public HeapPage getBeforeImage(){
         try {
-            byte[] oldDataRef = null;
-            synchronized(oldDataLock)
-            {
-                oldDataRef = oldData;
-            }
-            return new HeapPage(pid,oldDataRef);
+            byte[] oldDataRef = beforeImage.get(this);
+            return new HeapPage(pid, td, BeforeImage.copyPage(ByteBuffer.wrap(oldDataRef)),
+                    oldDataRef.length);
         } catch (IOException e) {
             e.printStackTrace();
             //should never happen -- we parsed it OK before!
@@ -101,9 +153,17 @@ public class HeapPage implements Page {
     }
     
     public void setBeforeImage() {
-        synchronized(oldDataLock)
-        {
-        oldData = getPageData().clone();
+        beforeImage.set();
+    }
+
+    /**
+     * Saves the before image, if it is not saved yet, ahead of a change, and
+     * copies a read-only page so it can be changed.
+     */
+    private void saveBeforeImage() {
+        beforeImage.save(this);
+        if (data.isReadOnly()) {
+            data = BeforeImage.copyPage(data);
         }
     }
 
@@ -114,38 +174,72 @@ public class HeapPage implements Page {
         return this.pid;
     }
 
+    /** @return the offset of a tuple slot in the page */
+    private int slotOffset(int slotId) {
+        return headerSize + slotId * tupleSize;
+    }
+
+    /**
+     * Copies the tuple in a used slot into a Tuple, which decodes its fields
+     * as they are read.
+     */
+    private Tuple readTuple(int slotId) {
+        byte[] raw = new byte[tupleSize];
+        ByteBuffer buf = data.duplicate();
+        buf.position(slotOffset(slotId));
+        buf.get(raw);
+
+        Tuple t = new Tuple(td, raw);
+        t.setRecordId(new RecordId(pid, slotId));
+        return t;
+    }
+
     /**
-     * Suck up tuples from the source file.
+     * Decodes one field of the tuple in a slot, straight from the page.
+     *
+     * @param slotId a used slot
+     * @param i the index of the field in the tuple
+     * @throws NoSuchElementException if the slot is not in use
      */
-    private Tuple readNextTuple(DataInputStream dis, int slotId) throws NoSuchElementException {
-        // if associated bit is not set, read forward to the next tuple, and
-        // return null.
+    public Field getField(int slotId, int i) throws NoSuchElementException {
         if (!isSlotUsed(slotId)) {
-            for (int i=0; i<td.getSize(); i++) {
-                try {
-                    dis.readByte();
-                } catch (IOException e) {
-                    throw new NoSuchElementException("error reading empty tuple");
-                }
-            }
-            return null;
+            throw new NoSuchElementException("slot " + slotId + " is empty");
         }
+        ByteBuffer buf = data.duplicate();
+        buf.position(slotOffset(slotId) + td.getOffset(i));
+        try {
+            return td.getFieldType(i).parse(buf, td.getFieldWidth(i));
+        } catch (java.text.ParseException e) {
+            e.printStackTrace();
+            throw new NoSuchElementException("parsing error!");
+        }
+    }
 
-        // read fields in the tuple
-        Tuple t = new Tuple(td);
-        RecordId rid = new RecordId(pid, slotId);
-        t.setRecordId(rid);
+    /**
+     * Encodes a tuple into a slot.
+     */
+    private void writeTuple(int slotId, Tuple t) {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(tupleSize);
+        DataOutputStream dos = new DataOutputStream(baos);
         try {
             for (int j=0; j<td.numFields(); j++) {
-                Field f = td.getFieldType(j).parse(dis);
-                t.setField(j, f);
+                Field f = t.getField(j);
+                if (f instanceof StringField) {
+                    // written at this table's width, whatever t's is
+                    ((StringField) f).serialize(dos, td.getFieldWidth(j));
+                } else {
+                    f.serialize(dos);
+                }
             }
-        } catch (java.text.ParseException e) {
+            dos.flush();
+        } catch (IOException e) {
+            // this really shouldn't happen
             e.printStackTrace();
-            throw new NoSuchElementException("parsing error!");
         }
 
-        return t;
+        ByteBuffer buf = data.duplicate();
+        buf.position(slotOffset(slotId));
+        buf.put(baos.toByteArray(), 0, tupleSize);
     }
 
     /**
@@ -160,64 +254,9 @@ public class HeapPage implements Page {
      * @return A byte array correspond to the bytes of this page.
      */
     public byte[] getPageData() {
-        int len = BufferPool.getPageSize();
-        ByteArrayOutputStream baos = new ByteArrayOutputStream(len);
-        DataOutputStream dos = new DataOutputStream(baos);
-
-        // create the header of the page
-        for (int i=0; i<header.length; i++) {
-            try {
-                dos.writeByte(header[i]);
-            } catch (IOException e) {
-                // this really shouldn't happen
-                e.printStackTrace();
-            }
-        }
-
-        // create the tuples
-        for (int i=0; i<tuples.length; i++) {
-
-            // empty slot
-            if (!isSlotUsed(i)) {
-                for (int j=0; j<td.getSize(); j++) {
-                    try {
-                        dos.writeByte(0);
-                    } catch (IOException e) {
-                        e.printStackTrace();
-                    }
-
-                }
-                continue;
-            }
-
-            // non-empty slot
-            for (int j=0; j<td.numFields(); j++) {
-                Field f = tuples[i].getField(j);
-                try {
-                    f.serialize(dos);
-                
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
-            }
-        }
-
-        // padding
-        int zerolen = BufferPool.getPageSize() - (header.length + td.getSize() * tuples.length); //- numSlots * td.getSize();
-        byte[] zeroes = new byte[zerolen];
-        try {
-            dos.write(zeroes, 0, zerolen);
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-
-        try {
-            dos.flush();
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-
-        return baos.toByteArray();
+        byte[] out = new byte[BufferPool.getPageSize()];
+        data.duplicate().get(out);
+        return out;
     }
 
     /**
@@ -251,8 +290,12 @@ public class HeapPage implements Page {
             throw new DbException("slot already free");
         }
 
+        saveBeforeImage();
         markSlotUsed(tNo, false);
-        this.tuples[tNo] = null;
+        // empty slots are all zeros on disk
+        for (int i = slotOffset(tNo); i < slotOffset(tNo + 1); i++) {
+            data.put(i, (byte) 0);
+        }
     }
 
     /**
@@ -270,9 +313,10 @@ public class HeapPage implements Page {
         // traverse the slots until finding a free slot
         for (int i = 0; i < this.numSlots; i++) {
             if (!isSlotUsed(i)) {
+                saveBeforeImage();
+                writeTuple(i, t);
                 markSlotUsed(i, true);
                 t.setRecordId(new RecordId(getId(), i));
-                tuples[i] = t;
                 return;
             }
         }
@@ -300,14 +344,45 @@ public class HeapPage implements Page {
      * Returns the number of empty slots on this page.
      */
     public int getNumEmptySlots() {
-        int res = 0;
-        for (int i = 0; i < numSlots; i++) {
-            if (!isSlotUsed(i)) {
-                res++;
+        int used = 0;
+        for (int i = 0; i < numSlots / 8; i++) {
+            used += Integer.bitCount(data.get(i) & 0xff);
+        }
+        // bits past the last slot are not counted
+        for (int i = numSlots / 8 * 8; i < numSlots; i++) {
+            if (isSlotUsed(i)) {
+                used++;
             }
         }
 
-        return res;
+        return numSlots - used;
+    }
+
+    /** @return the number of empty slots */
+    public int getFreeSpace() {
+        return getNumEmptySlots();
+    }
+
+    /** @return 1, since every tuple takes one slot */
+    public int spaceFor(Tuple t) {
+        return 1;
+    }
+
+    /** @return the first used slot at or after the given one, or numSlots */
+    private int nextUsedSlot(int from) {
+        int i = from;
+        while (i < numSlots) {
+            // skip whole empty header bytes
+            if (i % 8 == 0 && data.get(i / 8) == 0) {
+                i += 8;
+                continue;
+            }
+            if (isSlotUsed(i)) {
+                return i;
+            }
+            i++;
+        }
+        return numSlots;
     }
 
     /**
@@ -318,7 +393,7 @@ public class HeapPage implements Page {
             return false;
         }
 
-        byte b = header[i / 8];
+        byte b = data.get(i / 8);
         int bit = i % 8;
         return ((b >> bit) & 1) == 1;
     }
@@ -329,11 +404,13 @@ public class HeapPage implements Page {
     private void markSlotUsed(int i, boolean value) {
         int byteNo = i / 8;
         int bitNo = i % 8;
+        byte b = data.get(byteNo);
         if (value) {
-            header[byteNo] |= (byte) (1 << bitNo);
+            b |= (byte) (1 << bitNo);
         } else {
-            header[byteNo] ^= (byte) (1 << bitNo);
+            b &= (byte) ~(1 << bitNo);
         }
+        data.put(byteNo, b);
     }
 
     /**
@@ -341,15 +418,29 @@ public class HeapPage implements Page {
      * (note that this iterator shouldn't return tuples in empty slots!)
      */
     public Iterator<Tuple> iterator() {
-        List<Tuple> tupleList = new ArrayList<>();
-        for (int i = 0; i < numSlots; i++) {
-            if (isSlotUsed(i)) {
-                tupleList.add(tuples[i]);
+        return new Iterator<Tuple>() {
+            private int next = nextUsedSlot(0);
+
+            @Override
+            public boolean hasNext() {
+                return next < numSlots;
+            }
+
+            @Override
+            public Tuple next() {
+                if (next >= numSlots) {
+                    throw new NoSuchElementException();
+                }
+                Tuple t = readTuple(next);
+                next = nextUsedSlot(next + 1);
+                return t;
             }
-        }
 
-        return tupleList.iterator();
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
     }
 
 }
-
@@ -35,14 +35,14 @@ public class HeapPageId implements PageId {
     }
 
     /**
-     * @return a hash code for this page, represented by the concatenation of
-     *   the table number and the page number (needed if a PageId is used as a
-     *   key in a hash table in the BufferPool, for example.)
+     * @return a hash code for this page, combining the table number and the
+     *   page number (needed if a PageId is used as a key in a hash table in
+     *   the BufferPool, for example.) Computed without allocating, since it
+     *   is on the path of every buffer pool lookup.
      * @see BufferPool
      */
     public int hashCode() {
-        String str = String.valueOf(tableId) + String.valueOf(pgNo);
-        return str.hashCode();
+        return 31 * tableId + pgNo;
     }
 
     /**
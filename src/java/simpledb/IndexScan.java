@@ -0,0 +1,115 @@
+package simpledb;
+
+import java.util.*;
+
+/**
+ * IndexScan is an access method that reads the tuples of a table stored
+ * in a {@link BTreeFile} whose key satisfies a comparison, by searching the
+ * tree instead of reading the whole table. Tuples come out in key order.
+ * Like a {@link SeqScan}, it names its fields tableAlias.fieldName.
+ */
+public class IndexScan implements OpIterator {
+
+    private static final long serialVersionUID = 1L;
+
+    private final TransactionId tid;
+    private final int tableid;
+    private final String tableAlias;
+    private final Predicate.Op op;
+    private final Field operand;
+
+    private boolean open;
+    private DbFileIterator dbIt;
+
+    /**
+     * Creates a scan of the tuples of a table whose key satisfies
+     * {@code key op operand}.
+     *
+     * @param tid the transaction this scan is running as a part of
+     * @param tableid the table to scan, which must be stored in a BTreeFile
+     * @param tableAlias the alias of this table, as for SeqScan
+     * @param op the comparison; EQUALS and the range comparisons search
+     *     the tree, others read all of it
+     * @param operand the value the key is compared with
+     */
+    public IndexScan(TransactionId tid, int tableid, String tableAlias,
+            Predicate.Op op, Field operand) {
+        if (!(Database.getCatalog().getDatabaseFile(tableid) instanceof BTreeFile)) {
+            throw new IllegalArgumentException("table " + tableid + " has no B+ tree");
+        }
+        this.tid = tid;
+        this.tableid = tableid;
+        this.tableAlias = tableAlias;
+        this.op = op;
+        this.operand = operand;
+        this.open = false;
+    }
+
+    /** @return the actual name of the table in the catalog */
+    public String getTableName() {
+        return Database.getCatalog().getTableName(tableid);
+    }
+
+    /** @return the alias of the table this operator scans */
+    public String getAlias() {
+        return tableAlias;
+    }
+
+    /** @return the predicate on the key field this scan applies */
+    public Predicate getPredicate() {
+        BTreeFile f = (BTreeFile) Database.getCatalog().getDatabaseFile(tableid);
+        return new Predicate(f.getKeyField(), op, operand);
+    }
+
+    public void open() throws DbException, TransactionAbortedException {
+        BTreeFile f = (BTreeFile) Database.getCatalog().getDatabaseFile(tableid);
+        this.dbIt = f.indexIterator(tid, op, operand);
+        this.dbIt.open();
+        this.open = true;
+    }
+
+    /**
+     * Returns the TupleDesc of the table, with field names prefixed with
+     * the table alias.
+     */
+    public TupleDesc getTupleDesc() {
+        TupleDesc td = Database.getCatalog().getTupleDesc(tableid);
+        Type[] typeAr = new Type[td.numFields()];
+        String[] fieldAr = new String[td.numFields()];
+        int[] widthAr = new int[td.numFields()];
+        for (int i = 0; i < td.numFields(); i++) {
+            typeAr[i] = td.getFieldType(i);
+            fieldAr[i] = tableAlias + "." + td.getFieldName(i);
+            widthAr[i] = td.getFieldWidth(i);
+        }
+        return new TupleDesc(typeAr, fieldAr, widthAr);
+    }
+
+    public boolean hasNext() throws TransactionAbortedException, DbException {
+        if (!open) {
+            throw new IllegalStateException("Iterator has not yet been opened!");
+        }
+        return dbIt.hasNext();
+    }
+
+    public Tuple next() throws NoSuchElementException,
+            TransactionAbortedException, DbException {
+        if (!open) {
+            throw new IllegalStateException("Iterator has not yet been opened!");
+        }
+        return dbIt.next();
+    }
+
+    public void close() {
+        if (dbIt != null) {
+            dbIt.close();
+        }
+        open = false;
+    }
+
+    public void rewind() throws DbException, NoSuchElementException,
+            TransactionAbortedException {
+        dbIt.rewind();
+        open = true;
+    }
+}
@@ -4,6 +4,13 @@ package simpledb;
  */
 public class IntHistogram {
 
+    private final int min;
+    private final int max;
+    /** The number of values each bucket covers, possibly fractional. */
+    private final double width;
+    private final int[] heights;
+    private int ntups;
+
     /**
      * Create a new IntHistogram.
      * 
@@ -21,7 +28,15 @@ public class IntHistogram {
      * @param max The maximum integer value that will ever be passed to this class for histogramming
      */
     public IntHistogram(int buckets, int min, int max) {
-    	// some code goes here
+        this.min = min;
+        this.max = max;
+        int n = (int) Math.max(1, Math.min(buckets, (long) max - min + 1));
+        this.heights = new int[n];
+        this.width = ((double) max - min + 1) / n;
+    }
+
+    private int bucket(int v) {
+        return Math.min(heights.length - 1, (int) ((v - (double) min) / width));
     }
 
     /**
@@ -29,7 +44,8 @@ public class IntHistogram {
      * @param v Value to add to the histogram
      */
     public void addValue(int v) {
-    	// some code goes here
+        heights[bucket(v)]++;
+        ntups++;
     }
 
     /**
@@ -43,9 +59,67 @@ public class IntHistogram {
      * @return Predicted selectivity of this particular operator and value
      */
     public double estimateSelectivity(Predicate.Op op, int v) {
+        switch (op) {
+        case EQUALS:
+        case LIKE:
+            return equal(v);
+        case NOT_EQUALS:
+            return 1.0 - equal(v);
+        case GREATER_THAN:
+            return greater(v);
+        case GREATER_THAN_OR_EQ:
+            return greater(v) + equal(v);
+        case LESS_THAN:
+            return less(v);
+        case LESS_THAN_OR_EQ:
+            return less(v) + equal(v);
+        default:
+            throw new IllegalArgumentException("unknown op " + op);
+        }
+    }
+
+    /** @return the fraction of values equal to v */
+    private double equal(int v) {
+        if (ntups == 0 || v < min || v > max) {
+            return 0.0;
+        }
+        return heights[bucket(v)] / Math.max(width, 1.0) / ntups;
+    }
+
+    /** @return the fraction of values greater than v */
+    private double greater(int v) {
+        if (ntups == 0 || v >= max) {
+            return 0.0;
+        }
+        if (v < min) {
+            return 1.0;
+        }
+        int b = bucket(v);
+        double right = min + (b + 1) * width;
+        double part = Math.max(0.0, Math.min(1.0, (right - v - 1) / width));
+        double count = heights[b] * part;
+        for (int i = b + 1; i < heights.length; i++) {
+            count += heights[i];
+        }
+        return count / ntups;
+    }
 
-    	// some code goes here
-        return -1.0;
+    /** @return the fraction of values less than v */
+    private double less(int v) {
+        if (ntups == 0 || v <= min) {
+            return 0.0;
+        }
+        if (v > max) {
+            return 1.0;
+        }
+        int b = bucket(v);
+        double left = min + b * width;
+        double part = Math.max(0.0, Math.min(1.0, (v - left) / width));
+        double count = heights[b] * part;
+        for (int i = 0; i < b; i++) {
+            count += heights[i];
+        }
+        return count / ntups;
     }
     
     /**
@@ -58,15 +132,20 @@ public class IntHistogram {
      * */
     public double avgSelectivity()
     {
-        // some code goes here
-        return 1.0;
+        if (ntups == 0) {
+            return 1.0;
+        }
+        double sum = 0.0;
+        for (int h : heights) {
+            sum += (double) h * h / Math.max(width, 1.0);
+        }
+        return sum / ((double) ntups * ntups);
     }
     
     /**
      * @return A string describing this histogram, for debugging purposes
      */
     public String toString() {
-        // some code goes here
-        return null;
+        return "IntHistogram[" + min + ", " + max + "] " + java.util.Arrays.toString(heights);
     }
 }
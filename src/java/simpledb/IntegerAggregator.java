@@ -1,21 +1,27 @@
 package simpledb;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
 import java.util.NoSuchElementException;
 
 /**
  * Knows how to compute some aggregate over a set of IntFields.
+ * <p>
+ * Groups are numbered in the order they are first seen, and each has a
+ * long accumulator, and a long count for AVG, in arrays indexed by its
+ * number. Integer group keys find their number in an open-addressing table
+ * of primitive ints, and string keys through a dictionary of the strings
+ * seen, so merging a tuple takes one probe and allocates nothing unless it
+ * starts a group.
  */
 public class IntegerAggregator implements Aggregator {
 
     private static final long serialVersionUID = 1L;
 
-    // Key to use when gbfield == NO_GROUPING
-    private static final Field NG_KEY = null;
+    private static final int INITIAL_GROUPS = 16;
 
     /** Internal information */
     private final int gbfield;
@@ -23,9 +29,21 @@ public class IntegerAggregator implements Aggregator {
     private final int afield;
     private final Op what;
 
-    /** Store the groups, or average of a group for avg */
-    private final Map<Field, Integer> groups;
-    private final Map<Field, int[]> avgs;
+    /** The key of each group, by number */
+    private final ArrayList<Field> groupKeys;
+    /** The accumulator, and count for AVG, of each group, by number */
+    private long[] values;
+    private long[] counts;
+    private int numGroups;
+
+    /**
+     * The open-addressing table of integer keys: the key in each slot, and
+     * the number of its group plus one, or 0 if the slot is empty
+     */
+    private int[] slotKeys;
+    private int[] slotGroups;
+    /** The dictionary of string keys, to their group numbers */
+    private final HashMap<String, Integer> dictionary;
 
     /**
      * Aggregate constructor
@@ -43,13 +61,27 @@ public class IntegerAggregator implements Aggregator {
      */
 
     public IntegerAggregator(int gbfield, Type gbfieldtype, int afield, Op what) {
+        switch (what) {
+            case COUNT:
+            case SUM:
+            case AVG:
+            case MIN:
+            case MAX:
+                break;
+            default:
+                throw new IllegalArgumentException("IntegerAggregator: unsupported " + what);
+        }
         this.gbfield = gbfield;
         this.gbfieldtype = gbfieldtype;
         this.afield = afield;
         this.what = what;
 
-        this.groups = new HashMap<>();
-        this.avgs = new HashMap<>();
+        this.groupKeys = new ArrayList<>();
+        this.values = new long[INITIAL_GROUPS];
+        this.counts = new long[what == Op.AVG ? INITIAL_GROUPS : 0];
+        this.slotKeys = new int[INITIAL_GROUPS * 2];
+        this.slotGroups = new int[INITIAL_GROUPS * 2];
+        this.dictionary = new HashMap<>();
     }
 
     /**
@@ -60,44 +92,122 @@ public class IntegerAggregator implements Aggregator {
      *            the Tuple containing an aggregate field and a group-by field
      */
     public void mergeTupleIntoGroup(Tuple tup) {
-        Field gbkey;
-        if (gbfield == NO_GROUPING) {
-            gbkey = NG_KEY;
-        } else {
-            gbkey = tup.getField(this.gbfield);
-        }
-
-        int tval = ((IntField) tup.getField(this.afield)).getValue();
+        int g = group(tup);
+        long tval = ((IntField) tup.getField(this.afield)).getValue();
         switch (this.what) {
             case COUNT:
-                groups.put(gbkey, groups.getOrDefault(gbkey, 0) + 1);
+                values[g]++;
                 break;
-            
+
             case SUM:
-                groups.put(gbkey, tval + groups.getOrDefault(gbkey, 0));
+                values[g] += tval;
                 break;
 
             case AVG:
-                int sum = avgs.getOrDefault(gbkey, new int[]{0, 0})[0];
-                int cnt = avgs.getOrDefault(gbkey, new int[]{0, 0})[1];
-                avgs.put(gbkey, new int[]{sum + tval, cnt + 1});
+                values[g] += tval;
+                counts[g]++;
                 break;
-            
+
             case MIN:
-                int minv = groups.getOrDefault(gbkey, Integer.MAX_VALUE);
-                groups.put(gbkey, Math.min(tval, minv));
+                values[g] = Math.min(values[g], tval);
                 break;
 
             case MAX:
-                int maxv = groups.getOrDefault(gbkey, Integer.MIN_VALUE);
-                groups.put(gbkey, Math.max(tval, maxv));
+                values[g] = Math.max(values[g], tval);
                 break;
-        
+
             default:
                 throw new RuntimeException("IntegerAggregator: ???");
         }
     }
 
+    /** @return the number of the group of a tuple, starting a group if it is new */
+    private int group(Tuple tup) {
+        if (gbfield == NO_GROUPING) {
+            return numGroups == 0 ? newGroup(null) : 0;
+        }
+        Field key = tup.getField(gbfield);
+        if (gbfieldtype == Type.STRING_TYPE) {
+            String s = ((StringField) key).getValue();
+            Integer g = dictionary.get(s);
+            if (g == null) {
+                g = newGroup(key);
+                dictionary.put(s, g);
+            }
+            return g;
+        }
+        int k = ((IntField) key).getValue();
+        int mask = slotKeys.length - 1;
+        int slot = hash(k) & mask;
+        while (slotGroups[slot] != 0) {
+            if (slotKeys[slot] == k) {
+                return slotGroups[slot] - 1;
+            }
+            slot = (slot + 1) & mask;
+        }
+        int g = newGroup(key);
+        slotKeys[slot] = k;
+        slotGroups[slot] = g + 1;
+        if (numGroups * 2 > slotKeys.length) {
+            rehash();
+        }
+        return g;
+    }
+
+    private static int hash(int k) {
+        int h = k * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /** Doubles the open-addressing table, at most half of which is used */
+    private void rehash() {
+        int[] oldKeys = slotKeys;
+        int[] oldGroups = slotGroups;
+        slotKeys = new int[oldKeys.length * 2];
+        slotGroups = new int[oldKeys.length * 2];
+        int mask = slotKeys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldGroups[i] != 0) {
+                int slot = hash(oldKeys[i]) & mask;
+                while (slotGroups[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                slotKeys[slot] = oldKeys[i];
+                slotGroups[slot] = oldGroups[i];
+            }
+        }
+    }
+
+    /** Starts a group with the given key, and returns its number */
+    private int newGroup(Field key) {
+        if (numGroups == values.length) {
+            values = Arrays.copyOf(values, numGroups * 2);
+            if (what == Op.AVG) {
+                counts = Arrays.copyOf(counts, numGroups * 2);
+            }
+        }
+        if (what == Op.MIN) {
+            values[numGroups] = Long.MAX_VALUE;
+        } else if (what == Op.MAX) {
+            values[numGroups] = Long.MIN_VALUE;
+        }
+        groupKeys.add(key);
+        return numGroups++;
+    }
+
+    /**
+     * @return the aggregate value of a group
+     * @throws DbException if it does not fit in an IntField
+     */
+    private int result(int g) throws DbException {
+        long v = what == Op.AVG ? values[g] / counts[g] : values[g];
+        if (v != (int) v) {
+            throw new DbException("IntegerAggregator: " + what + " of " + v
+                    + " does not fit in an int");
+        }
+        return (int) v;
+    }
+
     /**
      * Create a OpIterator over group aggregate results.
      * 
@@ -127,37 +237,15 @@ public class IntegerAggregator implements Aggregator {
         @Override
         public void open() throws DbException, TransactionAbortedException {
             this.tuples = new ArrayList<>();
-            if (gbfield == NO_GROUPING) {
-                // no grouping
+            for (int g = 0; g < numGroups; g++) {
                 Tuple t = new Tuple(td);
-                if (what == Op.AVG) {
-                    int[] v = avgs.get(NG_KEY);
-                    int avg = v[0] / v[1];
-                    t.setField(0, new IntField(avg));
+                if (gbfield == NO_GROUPING) {
+                    t.setField(0, new IntField(result(g)));
                 } else {
-                    t.setField(0, new IntField(groups.get(NG_KEY)));
+                    t.setField(0, groupKeys.get(g));
+                    t.setField(1, new IntField(result(g)));
                 }
-
                 tuples.add(t);
-            } else {
-                // yes grouping
-                if (what == Op.AVG) {
-                    for (Field f : avgs.keySet()) {
-                        Tuple t = new Tuple(td);
-                        t.setField(0, f);
-                        int[] v = avgs.get(f);
-                        t.setField(1, new IntField(v[0] / v[1]));
-                        tuples.add(t);
-                    }
-                } else {
-                    for (Field f : groups.keySet()) {
-                        Tuple t = new Tuple(td);
-                        t.setField(0, f);
-                        int v = groups.get(f);
-                        t.setField(1, new IntField(v));
-                        tuples.add(t);
-                    }
-                }
             }
 
             this.it = tuples.iterator();
@@ -118,7 +118,7 @@ public class Join extends Operator {
                 to = child2.next();
                 // if t == t2
                 if (p.filter(t, to)) {
-                    Tuple res = combine(t, to);
+                    Tuple res = combine(getTupleDesc(), t, to);
                     return res;
                 }
             } else {
@@ -132,9 +132,13 @@ public class Join extends Operator {
         return null;
     }
 
-    // Combines two tuples into one
-    private Tuple combine(Tuple t1, Tuple t2) {
-        Tuple res = new Tuple(getTupleDesc());
+    /**
+     * Combines two tuples into one of the given schema, the fields of t1
+     * followed by those of t2. All the join operators build their output
+     * tuples with this.
+     */
+    static Tuple combine(TupleDesc td, Tuple t1, Tuple t2) {
+        Tuple res = new Tuple(td);
         int t1Num = t1.getTupleDesc().numFields();
         int t2Num = t2.getTupleDesc().numFields();
 
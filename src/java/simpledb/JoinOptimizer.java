@@ -68,7 +68,17 @@ public class JoinOptimizer {
 
         JoinPredicate p = new JoinPredicate(t1id, lj.p, t2id);
 
-        j = new Join(p,plan1,plan2);
+        if (lj.p == Predicate.Op.EQUALS && SortMergeJoin.isSortedOn(plan1, t1id)
+                && SortMergeJoin.isSortedOn(plan2, t2id)) {
+            // both inputs come sorted, so merging them needs no memory
+            j = new SortMergeJoin(p, plan1, plan2);
+        } else if (lj.p == Predicate.Op.EQUALS) {
+            j = new HashJoin(p, plan1, plan2);
+        } else if (SortMergeJoin.supports(lj.p)) {
+            j = new SortMergeJoin(p, plan1, plan2);
+        } else {
+            j = new BlockNestedLoopJoin(p, plan1, plan2);
+        }
 
         return j;
 
@@ -107,14 +117,51 @@ public class JoinOptimizer {
             // You do not need to implement proper support for these for Lab 3.
             return card1 + cost1 + cost2;
         } else {
-            // Insert your code here.
-            // HINT: You may need to use the variable "j" if you implemented
-            // a join algorithm that's more complicated than a basic
-            // nested-loops join.
-            return -1.0;
+            if (j.p == Predicate.Op.EQUALS) {
+                // a HashJoin reads each side once, a tuple of each at a time
+                // until the smaller runs out, then hashes the smaller side
+                // and probes it with every tuple of the larger; the part of
+                // the smaller side beyond its memory is written out and read
+                // back, with the matching part of the larger
+                double cost = cost1 + cost2 + card1 + card2 + Math.min(card1, card2);
+                double memory = (double) HashJoin.getMemoryPages() * TableStats.IOCOSTPERPAGE;
+                double smaller = Math.min(cost1, cost2);
+                if (smaller > memory) {
+                    cost += 2 * (1 - memory / smaller) * (cost1 + cost2);
+                }
+                return cost;
+            }
+            if (SortMergeJoin.supports(j.p)) {
+                // a SortMergeJoin reads and sorts each side once, and then
+                // only compares the pairs in its output, half of them on
+                // average for a range comparison
+                double cost = cost1 + cost2 + sortCost(card1) + sortCost(card2)
+                        + (double) card1 * card2 / 2;
+                // the held side, child2 for > and child1 for <, is read
+                // back up to the end of its matches for every tuple of the
+                // other when it does not fit
+                boolean holdsRight = j.p == Predicate.Op.GREATER_THAN
+                        || j.p == Predicate.Op.GREATER_THAN_OR_EQ;
+                double held = holdsRight ? cost2 : cost1;
+                double memory = (double) SortMergeJoin.getMemoryPages() * TableStats.IOCOSTPERPAGE;
+                if (held > memory) {
+                    cost += (holdsRight ? card1 : card2) * held / 2;
+                }
+                return cost;
+            }
+            // a BlockNestedLoopJoin rescans the right side for every block
+            // of pages of the left, and compares every pair
+            double leftPages = Math.max(1.0, cost1 / TableStats.IOCOSTPERPAGE);
+            double blocks = Math.ceil(leftPages / BlockNestedLoopJoin.getBlockPages());
+            return cost1 + blocks * cost2 + (double) card1 * card2;
         }
     }
 
+    /** @return the comparisons needed to sort the given number of tuples */
+    private static double sortCost(int card) {
+        return card < 2 ? 0 : card * (Math.log(card) / Math.log(2));
+    }
+
     /**
      * Estimate the cardinality of a join. The cardinality of a join is the
      * number of tuples produced by the join.
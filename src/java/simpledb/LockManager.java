@@ -0,0 +1,246 @@
+package simpledb;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * LockManager hands out page-level shared and exclusive locks to
+ * transactions. Locks are held until the transaction completes (strict
+ * two-phase locking), and a transaction holding the only shared lock on a
+ * page may upgrade it to an exclusive one.
+ * <p>
+ * A transaction that has to wait records whom it is waiting for in a
+ * waits-for graph. If adding those edges closes a cycle the request fails
+ * straight away with a {@link DeadlockException}, so deadlocks are broken as
+ * soon as they form rather than after a timeout.
+ *
+ * @Threadsafe
+ */
+public class LockManager {
+
+    /** The lock on one page. Guarded by its own monitor. */
+    private static class PageLock {
+        final Set<TransactionId> sharers = new HashSet<>();
+        TransactionId owner;
+        /** Number of transactions blocked on this lock. */
+        int waiters;
+        /** Set once the lock has been dropped from the table. */
+        boolean retired;
+
+        boolean isFree() {
+            return owner == null && sharers.isEmpty();
+        }
+
+        boolean canGrant(TransactionId tid, boolean exclusive) {
+            if (owner != null) {
+                return owner.equals(tid);
+            }
+            if (!exclusive) {
+                return true;
+            }
+            return sharers.isEmpty() || (sharers.size() == 1 && sharers.contains(tid));
+        }
+
+        /** @return the transactions tid would wait for, never including tid */
+        Set<TransactionId> blockers(TransactionId tid) {
+            Set<TransactionId> b = new HashSet<>(sharers);
+            if (owner != null) {
+                b.add(owner);
+            }
+            b.remove(tid);
+            return b;
+        }
+    }
+
+    /** The lock on each page somebody holds or waits for. */
+    private final ConcurrentHashMap<PageId, PageLock> locks;
+
+    /** The pages each transaction holds a lock on. */
+    private final ConcurrentHashMap<TransactionId, Set<PageId>> held;
+
+    /** Edges of the waits-for graph. Guarded by itself. */
+    private final HashMap<TransactionId, Set<TransactionId>> waitsFor;
+
+    public LockManager() {
+        this.locks = new ConcurrentHashMap<>();
+        this.held = new ConcurrentHashMap<>();
+        this.waitsFor = new HashMap<>();
+    }
+
+    /**
+     * Acquires a lock on a page for a transaction, blocking until it can be
+     * granted. Asking for a lock the transaction already holds returns
+     * immediately, and asking for READ_WRITE while holding READ_ONLY
+     * upgrades the lock.
+     *
+     * @param tid the transaction requesting the lock
+     * @param pid the page to lock
+     * @param perm READ_ONLY for a shared lock, READ_WRITE for an exclusive one
+     * @throws DeadlockException if waiting would deadlock
+     * @throws TransactionAbortedException if the thread is interrupted while
+     *   waiting
+     */
+    public void acquire(TransactionId tid, PageId pid, Permissions perm)
+        throws TransactionAbortedException {
+        boolean exclusive = perm == Permissions.READ_WRITE;
+        while (true) {
+            PageLock lock = locks.computeIfAbsent(pid, p -> new PageLock());
+            synchronized (lock) {
+                if (lock.retired) {
+                    // lost a race with release(); look the lock up again
+                    continue;
+                }
+                boolean waited = false;
+                lock.waiters++;
+                try {
+                    while (!lock.canGrant(tid, exclusive)) {
+                        awaitLock(tid, lock.blockers(tid));
+                        waited = true;
+                        lock.wait();
+                    }
+
+                    if (exclusive) {
+                        lock.sharers.remove(tid);
+                        lock.owner = tid;
+                    } else if (!tid.equals(lock.owner)) {
+                        lock.sharers.add(tid);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new TransactionAbortedException();
+                } finally {
+                    lock.waiters--;
+                    if (waited) {
+                        stopWaiting(tid);
+                    }
+                    if (lock.isFree() && lock.waiters == 0) {
+                        retire(pid, lock);
+                    }
+                }
+
+                if (lock.waiters > 0) {
+                    // the waiters now wait for us too; let them say so in
+                    // the waits-for graph
+                    lock.notifyAll();
+                }
+            }
+            held.computeIfAbsent(tid, t -> ConcurrentHashMap.newKeySet()).add(pid);
+            return;
+        }
+    }
+
+    /**
+     * Releases the lock a transaction holds on a page, if any. Only meant
+     * for pages the transaction has not used, since releasing a lock before
+     * the transaction completes gives up strict two-phase locking.
+     */
+    public void release(TransactionId tid, PageId pid) {
+        Set<PageId> pages = held.get(tid);
+        if (pages != null) {
+            pages.remove(pid);
+        }
+        PageLock lock = locks.get(pid);
+        if (lock == null) {
+            return;
+        }
+        synchronized (lock) {
+            if (tid.equals(lock.owner)) {
+                lock.owner = null;
+            }
+            lock.sharers.remove(tid);
+            if (lock.waiters > 0) {
+                lock.notifyAll();
+            } else if (lock.isFree()) {
+                retire(pid, lock);
+            }
+        }
+    }
+
+    /** Releases every lock the specified transaction holds. */
+    public void releaseAll(TransactionId tid) {
+        Set<PageId> pages = held.remove(tid);
+        if (pages != null) {
+            for (PageId pid : pages) {
+                release(tid, pid);
+            }
+        }
+        stopWaiting(tid);
+    }
+
+    /** @return true if the transaction holds any lock on the page */
+    public boolean holdsLock(TransactionId tid, PageId pid) {
+        Set<PageId> pages = held.get(tid);
+        return pages != null && pages.contains(pid);
+    }
+
+    /** @return true if the transaction holds an exclusive lock on the page */
+    public boolean holdsExclusive(TransactionId tid, PageId pid) {
+        PageLock lock = locks.get(pid);
+        if (lock == null) {
+            return false;
+        }
+        synchronized (lock) {
+            return tid.equals(lock.owner);
+        }
+    }
+
+    /** @return the pages the specified transaction holds a lock on */
+    public Set<PageId> lockedPages(TransactionId tid) {
+        Set<PageId> pages = held.get(tid);
+        return pages == null ? Collections.<PageId>emptySet() : pages;
+    }
+
+    /**
+     * Drops a free lock nobody is waiting on from the table. Caller holds
+     * the lock's monitor.
+     */
+    private void retire(PageId pid, PageLock lock) {
+        lock.retired = true;
+        locks.remove(pid, lock);
+    }
+
+    /**
+     * Records that tid waits for the given transactions, unless that would
+     * close a cycle in the waits-for graph. All updates to the graph happen
+     * under one monitor, so of two transactions about to wait on each other
+     * the second always sees the first one's edge.
+     */
+    private void awaitLock(TransactionId tid, Set<TransactionId> blockers)
+        throws DeadlockException {
+        synchronized (waitsFor) {
+            if (reaches(blockers, tid)) {
+                throw new DeadlockException();
+            }
+            waitsFor.put(tid, blockers);
+        }
+    }
+
+    private void stopWaiting(TransactionId tid) {
+        synchronized (waitsFor) {
+            waitsFor.remove(tid);
+        }
+    }
+
+    /** @return true if target is reachable from any of the start nodes */
+    private boolean reaches(Set<TransactionId> start, TransactionId target) {
+        Set<TransactionId> seen = new HashSet<>();
+        ArrayDeque<TransactionId> todo = new ArrayDeque<>(start);
+        while (!todo.isEmpty()) {
+            TransactionId t = todo.pop();
+            if (t.equals(target)) {
+                return true;
+            }
+            if (seen.add(t)) {
+                Set<TransactionId> next = waitsFor.get(t);
+                if (next != null) {
+                    todo.addAll(next);
+                }
+            }
+        }
+        return false;
+    }
+}
@@ -2,10 +2,12 @@ package simpledb;
 import java.util.Map;
 import java.util.Vector;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.NoSuchElementException;
+import java.util.TreeSet;
 
 /**
  * LogicalPlan represents a logical query plan that has been through
@@ -22,6 +24,18 @@ import java.util.NoSuchElementException;
  * best implementations for joins.
  */
 public class LogicalPlan {
+    /**
+     * A filter on the key of a table stored in a BTreeFile is answered by an
+     * {@link IndexScan} when its estimated selectivity is below this. The
+     * leaves an IndexScan reaches are read one at a time, without the
+     * read-ahead of a SeqScan, so the tree only pays off for selective
+     * filters.
+     */
+    public static final double INDEX_SCAN_SELECTIVITY = 0.1;
+
+    /** The limit of a plan without a LIMIT clause */
+    public static final int NO_LIMIT = -1;
+
     private Vector<LogicalJoinNode> joins;
     private Vector<LogicalScanNode> tables;
     private Vector<LogicalFilterNode> filters;
@@ -33,8 +47,10 @@ public class LogicalPlan {
     private boolean hasAgg = false;
     private String aggOp;
     private String aggField;
-    private boolean oByAsc, hasOrderBy = false;
-    private String oByField;
+    private boolean hasOrderBy = false;
+    private Vector<String> oByFields = new Vector<String>();
+    private Vector<Boolean> oByAsc = new Vector<Boolean>();
+    private int limit = NO_LIMIT;
     private String query;
 //    private Query owner;
 
@@ -203,19 +219,35 @@ public class LogicalPlan {
         hasAgg = true;
     }
 
-    /** Add an ORDER BY expression in the specified order on the specified field.  SimpleDb only supports
-        a single ORDER BY field.
+    /** Add an ORDER BY expression in the specified order on the specified field.  Fields added
+        later order tuples whose earlier fields are equal.
         @param field the field to order by
         @param asc true if should be ordered in ascending order, false for descending order
      * @throws ParsingException 
     */
     public void addOrderBy(String field, boolean asc) throws ParsingException {
         field=disambiguateName(field);
-        oByField = field;
-        oByAsc = asc;
+        oByFields.add(field);
+        oByAsc.add(asc);
         hasOrderBy = true;
     }
 
+    /** Add a LIMIT on the number of tuples the query returns.
+        @param limit the most tuples to return
+     * @throws ParsingException if the limit is negative
+    */
+    public void addLimit(int limit) throws ParsingException {
+        if (limit < 0) {
+            throw new ParsingException("LIMIT must not be negative");
+        }
+        this.limit = limit;
+    }
+
+    /** @return the most tuples the query returns, or NO_LIMIT */
+    public int getLimit() {
+        return limit;
+    }
+
     /** Given a name of a field, try to figure out what table it belongs to by looking
      *   through all of the tables added via {@link #addScan}. 
      *  @return A fully qualified name of the form tableAlias.name.  If the name parameter is already qualified
@@ -271,6 +303,102 @@ public class LogicalPlan {
         throw new ParsingException("Unknown predicate " + s);
     }
 
+    /**
+     * Finds the columns of a table that the query refers to, in any
+     * clause.
+     *
+     * @return the columns, in table order, or null if the query needs all
+     *   of them
+     */
+    private int[] scanColumns(LogicalScanNode table) {
+        ArrayList<String> names = new ArrayList<String>();
+        for (LogicalSelectListNode si : selectList) {
+            names.add(si.fname);
+        }
+        names.add(aggField);
+        names.add(groupByField);
+        names.addAll(oByFields);
+        for (LogicalFilterNode lf : filters) {
+            names.add(lf.fieldQuantifiedName);
+        }
+        for (LogicalJoinNode lj : joins) {
+            names.add(lj.f1QuantifiedName);
+            if (!(lj instanceof LogicalSubplanJoinNode)) {
+                names.add(lj.f2QuantifiedName);
+            }
+        }
+
+        TupleDesc td = Database.getCatalog().getTupleDesc(table.t);
+        String prefix = table.alias + ".";
+        TreeSet<Integer> columns = new TreeSet<Integer>();
+        for (String name : names) {
+            if (name == null) {
+                continue;
+            }
+            if (name.equals("null.*")) {
+                return null;
+            }
+            if (name.startsWith(prefix)) {
+                try {
+                    columns.add(td.fieldNameToIndex(name.substring(prefix.length())));
+                } catch (NoSuchElementException e) {
+                    // reported when the plan refers to it
+                    return null;
+                }
+            }
+        }
+        // a scan returns at least one column, if only to count rows
+        if (columns.isEmpty()) {
+            columns.add(0);
+        }
+        int[] result = new int[columns.size()];
+        int i = 0;
+        for (int col : columns) {
+            result[i++] = col;
+        }
+        return result;
+    }
+
+    /**
+     * Picks the filter an IndexScan of a table stored in a BTreeFile should
+     * answer: the most selective equality or range filter on the key, if
+     * TableStats put it under INDEX_SCAN_SELECTIVITY.
+     *
+     * @return the filter, or null if the table is better scanned in full
+     */
+    private LogicalFilterNode indexFilter(LogicalScanNode table, BTreeFile f,
+            Map<String,TableStats> baseTableStats) {
+        TupleDesc td = f.getTupleDesc();
+        int key = f.getKeyField();
+        TableStats s = baseTableStats.get(Database.getCatalog().getTableName(table.t));
+        LogicalFilterNode best = null;
+        double bestSel = INDEX_SCAN_SELECTIVITY;
+        for (LogicalFilterNode lf : filters) {
+            if (!lf.tableAlias.equals(table.alias) || !lf.fieldPureName.equals(td.getFieldName(key))
+                    || lf.p == Predicate.Op.LIKE || lf.p == Predicate.Op.NOT_EQUALS) {
+                continue;
+            }
+            double sel;
+            if (s == null) {
+                sel = lf.p == Predicate.Op.EQUALS ? 0.0 : 1.0;
+            } else {
+                sel = s.estimateSelectivity(key, lf.p, filterConstant(lf, td.getFieldType(key)));
+            }
+            if (sel < bestSel) {
+                best = lf;
+                bestSel = sel;
+            }
+        }
+        return best;
+    }
+
+    /** @return the constant of a filter, as a field of the given type */
+    private static Field filterConstant(LogicalFilterNode lf, Type ftyp) {
+        if (ftyp == Type.INT_TYPE)
+            return new IntField(Integer.parseInt(lf.c));
+        return new StringField(lf.c, Type.STRING_LEN);
+    }
+
     /** Convert this LogicalPlan into a physicalPlan represented by a {@link OpIterator}.  Attempts to
      *   find the optimal plan by using {@link JoinOptimizer#orderJoins} to order the joins in the plan.
      *  @param t The transaction that the returned OpIterator will run as a part of
@@ -289,12 +417,33 @@ public class LogicalPlan {
         HashMap<String,String> equivMap = new HashMap<String,String>();
         HashMap<String,Double> filterSelectivities = new HashMap<String, Double>();
         HashMap<String,TableStats> statsMap = new HashMap<String,TableStats>();
+        HashMap<String,SeqScan> scanMap = new HashMap<String,SeqScan>();
+        HashSet<LogicalFilterNode> indexFilters = new HashSet<LogicalFilterNode>();
 
         while (tableIt.hasNext()) {
             LogicalScanNode table = tableIt.next();
-            SeqScan ss = null;
+            OpIterator ss = null;
             try {
-                 ss = new SeqScan(t, Database.getCatalog().getDatabaseFile(table.t).getId(), table.alias);
+                 DbFile f = Database.getCatalog().getDatabaseFile(table.t);
+                 LogicalFilterNode indexed = null;
+                 if (f instanceof BTreeFile) {
+                     indexed = indexFilter(table, (BTreeFile) f, baseTableStats);
+                 }
+                 if (indexed != null) {
+                     // the tree finds the tuples the filter lets through
+                     int key = ((BTreeFile) f).getKeyField();
+                     ss = new IndexScan(t, f.getId(), table.alias, indexed.p,
+                             filterConstant(indexed, f.getTupleDesc().getFieldType(key)));
+                     indexFilters.add(indexed);
+                 } else {
+                     SeqScan seq = new SeqScan(t, f.getId(), table.alias);
+                     // columnar tables only read the columns the query uses
+                     if (f instanceof ColumnarFile) {
+                         seq.setColumns(scanColumns(table));
+                     }
+                     scanMap.put(table.alias,seq);
+                     ss = seq;
+                 }
             } catch (NoSuchElementException e) {
                 throw new ParsingException("Unknown table " + table.t);
             }
@@ -334,11 +483,20 @@ public class LogicalPlan {
             } catch (NoSuchElementException e) {
                 throw new ParsingException("Unknown field " + lf.fieldQuantifiedName);
             }
-            subplanMap.put(lf.tableAlias, new Filter(p, subplan));
+            if (!indexFilters.contains(lf)) {
+                subplanMap.put(lf.tableAlias, new Filter(p, subplan));
+                // the scan may skip pages with no tuple the filter lets through
+                if (scanMap.containsKey(lf.tableAlias)) {
+                    scanMap.get(lf.tableAlias).addPredicate(p);
+                }
+            }
 
             TableStats s = statsMap.get(Database.getCatalog().getTableName(this.getTableId(lf.tableAlias)));
             
-            double sel= s.estimateSelectivity(subplan.getTupleDesc().fieldNameToIndex(lf.fieldQuantifiedName), lf.p, f);
+            // statistics are over the whole table, whatever columns the scan returns
+            int statsField = Database.getCatalog().getTupleDesc(this.getTableId(lf.tableAlias))
+                    .fieldNameToIndex(lf.fieldPureName);
+            double sel= s.estimateSelectivity(statsField, lf.p, f);
             filterSelectivities.put(lf.tableAlias, filterSelectivities.get(lf.tableAlias) * sel);
 
             //s.addSelectivityFactor(estimateFilterSelectivity(lf,statsMap));
@@ -475,7 +633,24 @@ public class LogicalPlan {
         }
 
         if (hasOrderBy) {
-            node = new OrderBy(node.getTupleDesc().fieldNameToIndex(oByField), oByAsc, node);
+            int[] fields = new int[oByFields.size()];
+            boolean[] asc = new boolean[oByFields.size()];
+            for (int i = 0; i < fields.length; i++) {
+                fields[i] = node.getTupleDesc().fieldNameToIndex(oByFields.get(i));
+                asc[i] = oByAsc.get(i);
+            }
+            // a top-n heap is only worth it while it fits the memory of a sort
+            long sortCapacity = (long) OrderBy.getMemoryPages() * BufferPool.getPageSize()
+                / node.getTupleDesc().getSize();
+            if (limit != NO_LIMIT && limit <= sortCapacity) {
+                node = new TopN(fields, asc, node, limit);
+            } else {
+                node = new OrderBy(fields, asc, node);
+            }
+        }
+
+        if (limit != NO_LIMIT && !(node instanceof TopN)) {
+            node = new Limit(node, limit);
         }
 
         return new Project(outFields, outTypes, node);
@@ -0,0 +1,217 @@
+package simpledb;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * LruKPolicy approximates the LRU-K replacement policy of O'Neil et al.
+ * A page's backward K-distance is the time since its K-th most recent
+ * access; LRU-K evicts the page for which it is largest, treating pages seen
+ * fewer than K times as infinitely distant. Pages touched once by a large
+ * scan are therefore evicted before pages that are used repeatedly, such as
+ * those of small dimension tables.
+ * <p>
+ * Pages with fewer than K accesses wait in a FIFO probation queue and are
+ * evicted first, in O(1) time. Pages with K or more accesses move to a
+ * protected heap ordered by their K-th most recent access, which costs
+ * O(log n) per eviction. Accesses only update the page's own history, so hits
+ * never take the policy lock; the queues are brought up to date lazily when
+ * an eviction finds a page that has been accessed since it was queued and
+ * requeues it. Each requeue is paid for by an earlier access.
+ *
+ * @Threadsafe
+ */
+public class LruKPolicy implements ReplacementPolicy {
+
+    /** Default number of accesses remembered per page. */
+    public static final int DEFAULT_K = 2;
+
+    /** Access history of a page in the pool. */
+    private static class Entry {
+        final PageId pid;
+
+        /** Times of the last K accesses, as a ring. Guarded by this entry. */
+        final long[] history;
+        int accesses;
+        /** Set while the only recorded "access" is the page being prefetched. */
+        boolean prefetched;
+
+        /** The key the entry was queued with. Guarded by the policy. */
+        long queuedAt;
+        boolean isProtected;
+        boolean removed;
+
+        Entry(PageId pid, int k) {
+            this.pid = pid;
+            this.history = new long[k];
+        }
+
+        synchronized void record(long now) {
+            if (prefetched) {
+                // the first real access takes the place of the prefetch
+                prefetched = false;
+                history[(accesses - 1) % history.length] = now;
+                return;
+            }
+            history[accesses % history.length] = now;
+            accesses++;
+        }
+
+        synchronized int accesses() {
+            return accesses;
+        }
+
+        /** @return the time of the K-th most recent access, or 0 if none */
+        synchronized long kthAccess() {
+            if (accesses < history.length) {
+                return 0;
+            }
+            return history[accesses % history.length];
+        }
+
+        synchronized long lastAccess() {
+            return history[(accesses - 1) % history.length];
+        }
+    }
+
+    private final int k;
+
+    /** Logical clock, advanced on every access. */
+    private final AtomicLong clock;
+
+    /** History of each page in the pool; read without locking on hits. */
+    private final ConcurrentHashMap<PageId, Entry> entries;
+
+    /** Pages with fewer than K accesses, oldest first. Guarded by this. */
+    private final ArrayDeque<Entry> probation;
+
+    /** Pages with K or more accesses, by K-th access. Guarded by this. */
+    private final PriorityQueue<Entry> protectedQueue;
+
+    public LruKPolicy() {
+        this(DEFAULT_K);
+    }
+
+    /**
+     * @param k the number of accesses that make a page's history count
+     */
+    public LruKPolicy(int k) {
+        if (k < 1) {
+            throw new IllegalArgumentException("k must be positive");
+        }
+        this.k = k;
+        this.clock = new AtomicLong(0);
+        this.entries = new ConcurrentHashMap<>();
+        this.probation = new ArrayDeque<>();
+        this.protectedQueue = new PriorityQueue<>(
+                (a, b) -> Long.compare(a.queuedAt, b.queuedAt));
+    }
+
+    public synchronized void pageAdded(PageId pid) {
+        if (entries.containsKey(pid)) {
+            pageAccessed(pid);
+            return;
+        }
+
+        Entry e = new Entry(pid, k);
+        e.record(clock.incrementAndGet());
+        e.queuedAt = e.lastAccess();
+        entries.put(pid, e);
+        enqueue(e);
+    }
+
+    /**
+     * A prefetched page is queued as if accessed once, at the time it was
+     * read, but its first real access does not count as a second one.
+     */
+    public synchronized void pagePrefetched(PageId pid) {
+        if (entries.containsKey(pid)) {
+            return;
+        }
+        pageAdded(pid);
+        Entry e = entries.get(pid);
+        synchronized (e) {
+            e.prefetched = true;
+        }
+    }
+
+    public void pageAccessed(PageId pid) {
+        Entry e = entries.get(pid);
+        if (e != null) {
+            e.record(clock.incrementAndGet());
+        }
+    }
+
+    public synchronized void pageRemoved(PageId pid) {
+        Entry e = entries.remove(pid);
+        if (e != null) {
+            // dropped from its queue when it reaches the head
+            e.removed = true;
+        }
+    }
+
+    public synchronized boolean evict(Evictor evictor) {
+        if (evictFrom(probation, evictor)) {
+            return true;
+        }
+        return evictFrom(protectedQueue, evictor);
+    }
+
+    /**
+     * Offers the pages of one queue to evictor, head first, requeueing pages
+     * whose position is out of date along the way.
+     */
+    private boolean evictFrom(Queue<Entry> queue, Evictor evictor) {
+        ArrayList<Entry> skipped = new ArrayList<>();
+        try {
+            // every entry is examined at most twice: once to requeue, once to try
+            int budget = 2 * queue.size();
+            while (budget-- > 0 && !queue.isEmpty()) {
+                Entry e = queue.poll();
+                if (e.removed) {
+                    continue;
+                }
+
+                if (!e.isProtected && e.accesses() >= k) {
+                    // seen K times while on probation, so promote it
+                    enqueue(e);
+                    continue;
+                }
+                long key = e.isProtected ? e.kthAccess() : e.lastAccess();
+                if (key > e.queuedAt) {
+                    // accessed since it was queued; its place is further back
+                    e.queuedAt = key;
+                    queue.add(e);
+                    continue;
+                }
+                if (evictor.tryEvict(e.pid)) {
+                    entries.remove(e.pid);
+                    e.removed = true;
+                    return true;
+                }
+                // dirty or busy; give the others a turn
+                skipped.add(e);
+            }
+            return false;
+        } finally {
+            queue.addAll(skipped);
+        }
+    }
+
+    /** Queues e according to how many accesses it has had. */
+    private void enqueue(Entry e) {
+        if (e.accesses() >= k) {
+            e.isProtected = true;
+            e.queuedAt = e.kthAccess();
+            protectedQueue.add(e);
+        } else {
+            e.isProtected = false;
+            e.queuedAt = e.lastAccess();
+            probation.add(e);
+        }
+    }
+}
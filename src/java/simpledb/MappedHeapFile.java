@@ -0,0 +1,132 @@
+package simpledb;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * MappedHeapFile is a HeapFile that reads its pages from a memory mapping of
+ * the data file instead of copying each one out with a read call. The file
+ * is mapped read-only in fixed-size chunks. A page reads a slice of its
+ * chunk in place and copies it only when it is first changed, unless a
+ * BufferPool gives it an off-heap frame, into which it is copied.
+ * Writes still go through the channel, which the OS keeps coherent with the
+ * mapping; when they grow the file past the mapped region, the tail is
+ * remapped.
+ * <p>
+ * Meant for read-mostly tables that fit in memory. Select it for a table in
+ * the catalog schema by following the field list with the word "mapped".
+ *
+ * @see Catalog#loadSchema
+ */
+public class MappedHeapFile extends HeapFile {
+
+    /** Pages per mapped chunk. */
+    static final int CHUNK_PAGES = 256;
+
+    /** Mapped chunks of the file, each CHUNK_PAGES long except maybe the last. */
+    private volatile MappedByteBuffer[] chunks;
+
+    /** Number of pages the chunks cover. Guarded by this for writes. */
+    private volatile int mappedPages;
+
+    /**
+     * Constructs a mapped heap file backed by the specified file.
+     *
+     * @param f the file that stores the on-disk backing store for this file
+     * @param td the schema of the table
+     */
+    public MappedHeapFile(File f, TupleDesc td) {
+        super(f, td);
+        this.chunks = new MappedByteBuffer[0];
+        this.mappedPages = 0;
+    }
+
+    // see DbFile.java for javadocs
+    public Page readPage(PageId pid) {
+        try {
+            ByteBuffer mapped = mappedPage(pid);
+            if (mapped == null) {
+                // past the end of the file, like HeapFile this reads zeros
+                return super.readPage(pid);
+            }
+            // the page reads the mapping in place and copies it to change it
+            HeapPage pg = HeapPage.wrap((HeapPageId) pid, mapped);
+            pageRead(pg);
+            return pg;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    // see DbFile.java for javadocs
+    public Page readPage(PageId pid, ByteBuffer frame) {
+        try {
+            ByteBuffer mapped = mappedPage(pid);
+            if (mapped == null) {
+                // past the end of the file, like HeapFile this reads zeros
+                return super.readPage(pid, frame);
+            }
+            frame.duplicate().put(mapped);
+            TuplePage pg = newPage((HeapPageId) pid, frame);
+            pageRead(pg);
+            return pg;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /** @return the page's bytes in the mapping, or null if it is past the end */
+    private ByteBuffer mappedPage(PageId pid) throws IOException {
+        int pgNo = pid.getPageNumber();
+        if (pgNo >= mappedPages) {
+            remap();
+        }
+        if (pgNo >= mappedPages) {
+            return null;
+        }
+
+        int pgSz = BufferPool.getPageSize();
+        ByteBuffer chunk = chunks[pgNo / CHUNK_PAGES].duplicate();
+        int off = (pgNo % CHUNK_PAGES) * pgSz;
+        chunk.position(off);
+        chunk.limit(off + pgSz);
+        return chunk;
+    }
+
+    // see DbFile.java for javadocs
+    public void writePage(Page page) throws IOException {
+        super.writePage(page);
+        if (page.getId().getPageNumber() >= mappedPages) {
+            remap();
+        }
+    }
+
+    /**
+     * Maps whatever part of the file is not mapped yet. Full chunks are
+     * kept; a partial last chunk is mapped again at its new length.
+     */
+    private synchronized void remap() throws IOException {
+        FileChannel ch = channel();
+        int pgSz = BufferPool.getPageSize();
+        int filePages = (int) (ch.size() / pgSz);
+        if (filePages <= mappedPages) {
+            return;
+        }
+
+        int fullChunks = mappedPages / CHUNK_PAGES;
+        int numChunks = (filePages + CHUNK_PAGES - 1) / CHUNK_PAGES;
+        MappedByteBuffer[] grown = Arrays.copyOf(chunks, numChunks);
+        for (int c = fullChunks; c < numChunks; c++) {
+            int pages = Math.min(CHUNK_PAGES, filePages - c * CHUNK_PAGES);
+            grown[c] = ch.map(FileChannel.MapMode.READ_ONLY,
+                    (long) c * CHUNK_PAGES * pgSz, (long) pages * pgSz);
+        }
+        chunks = grown;
+        mappedPages = filePages;
+    }
+}
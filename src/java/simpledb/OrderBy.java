@@ -1,23 +1,60 @@
 package simpledb;
 
+import java.io.IOException;
 import java.util.*;
 
 /**
- * OrderBy is an operator that implements a relational ORDER BY.
+ * OrderBy is an operator that implements a relational ORDER BY, on one
+ * field or on several, each ascending or descending.
+ * <p>
+ * It holds at most a budget of pages of tuples in memory, set by
+ * setMemoryPages. A child that fits is sorted in memory; a larger one is
+ * sorted a budget at a time into runs written to {@link RunFile}s, which are
+ * then merged, as many at once as the budget has pages for, until few enough
+ * are left to merge as the tuples are returned.
  */
 public class OrderBy extends Operator {
 
     private static final long serialVersionUID = 1L;
+
+    /** Default number of pages of tuples a sort holds in memory */
+    public static final int DEFAULT_MEMORY_PAGES = 1000;
+
+    private static int memoryPages = DEFAULT_MEMORY_PAGES;
+
     private OpIterator child;
     private TupleDesc td;
-    private ArrayList<Tuple> childTups = new ArrayList<Tuple>();
+    private transient ArrayList<Tuple> childTups;
     private int orderByField;
     private String orderByFieldName;
     private Iterator<Tuple> it;
     private boolean asc;
+    private final int[] orderByFields;
+    private final boolean[] ascending;
+    private final int budgetPages;
+    private transient TupleComparator comparator;
+
+    /** The sorted runs of a child too large for memory, and their merge */
+    private transient ArrayList<RunFile> runs;
+    private transient PriorityQueue<RunHead> merge;
+    private transient ArrayList<DbFileIterator> readers;
+
+    /** The next tuple of a run being merged */
+    private static class RunHead {
+        Tuple t;
+        final DbFileIterator it;
+        final int run;
+
+        RunHead(Tuple t, DbFileIterator it, int run) {
+            this.t = t;
+            this.it = it;
+            this.run = run;
+        }
+    }
 
     /**
-     * Creates a new OrderBy node over the tuples from the iterator.
+     * Creates a new OrderBy node over the tuples from the iterator, which
+     * holds at most the pages of tuples set by setMemoryPages.
      * 
      * @param orderbyField
      *            the field to which the sort is applied.
@@ -27,11 +64,74 @@ public class OrderBy extends Operator {
      *            the tuples to sort.
      */
     public OrderBy(int orderbyField, boolean asc, OpIterator child) {
+        this(orderbyField, asc, child, memoryPages);
+    }
+
+    /**
+     * Creates a new OrderBy node with its own memory budget.
+     *
+     * @param memoryPages
+     *            the number of pages' worth of tuples the sort may hold in
+     *            memory before it writes runs to disk
+     */
+    public OrderBy(int orderbyField, boolean asc, OpIterator child, int memoryPages) {
+        this(new int[] { orderbyField }, new boolean[] { asc }, child, memoryPages);
+    }
+
+    /**
+     * Creates a new OrderBy node over the tuples from the iterator, sorting
+     * on several fields, which holds at most the pages of tuples set by
+     * setMemoryPages.
+     *
+     * @param orderbyFields
+     *            the fields to which the sort is applied, most significant
+     *            first.
+     * @param asc
+     *            for each field, true if its sort order is ascending.
+     * @param child
+     *            the tuples to sort.
+     */
+    public OrderBy(int[] orderbyFields, boolean[] asc, OpIterator child) {
+        this(orderbyFields, asc, child, memoryPages);
+    }
+
+    /**
+     * Creates a new OrderBy node on several fields with its own memory
+     * budget.
+     */
+    public OrderBy(int[] orderbyFields, boolean[] asc, OpIterator child, int memoryPages) {
+        if (memoryPages < 1) {
+            throw new IllegalArgumentException("a sort needs at least a page of memory");
+        }
+        if (orderbyFields.length == 0 || orderbyFields.length != asc.length) {
+            throw new IllegalArgumentException("need a direction for each of at least one field");
+        }
         this.child = child;
         td = child.getTupleDesc();
-        this.orderByField = orderbyField;
-        this.orderByFieldName = td.getFieldName(orderbyField);
-        this.asc = asc;
+        this.orderByFields = orderbyFields.clone();
+        this.ascending = asc.clone();
+        this.orderByField = orderbyFields[0];
+        this.orderByFieldName = td.getFieldName(orderbyFields[0]);
+        this.asc = asc[0];
+        this.budgetPages = memoryPages;
+    }
+
+    /**
+     * Sets the number of pages of tuples sorts made from now on hold in
+     * memory.
+     */
+    public static void setMemoryPages(int pages) {
+        memoryPages = pages;
+    }
+
+    /** Puts the memory of sorts made from now on back to the default. */
+    public static void resetMemoryPages() {
+        memoryPages = DEFAULT_MEMORY_PAGES;
+    }
+
+    /** @return the number of pages of tuples sorts made now hold in memory */
+    public static int getMemoryPages() {
+        return memoryPages;
     }
     
     public boolean isASC()
@@ -48,6 +148,16 @@ public class OrderBy extends Operator {
     {
 	return this.orderByFieldName;
     }
+
+    /** @return the fields sorted on, most significant first */
+    public int[] getOrderByFields() {
+        return orderByFields.clone();
+    }
+
+    /** @return for each field sorted on, true if it is in ascending order */
+    public boolean[] getAscending() {
+        return ascending.clone();
+    }
     
     public TupleDesc getTupleDesc() {
         return td;
@@ -55,22 +165,170 @@ public class OrderBy extends Operator {
 
     public void open() throws DbException, NoSuchElementException,
             TransactionAbortedException {
+        discard();
         child.open();
-        // load all the tuples in a collection, and sort it
-        while (child.hasNext())
-            childTups.add((Tuple) child.next());
-        Collections.sort(childTups, new TupleComparator(orderByField, asc));
-        it = childTups.iterator();
+        try {
+            sort();
+        } catch (IOException e) {
+            discard();
+            throw new DbException("could not write sorted run: " + e.getMessage());
+        }
         super.open();
     }
 
+    /**
+     * Reads the child a budget of tuples at a time. If it all fits, it is
+     * sorted in place; otherwise each budget is sorted and written as a run,
+     * and the runs merged down to as many as can be merged at once.
+     */
+    private void sort() throws DbException, TransactionAbortedException, IOException {
+        comparator = new TupleComparator(orderByFields, ascending);
+        int capacity = Math.max(1, budgetPages * BufferPool.getPageSize() / td.getSize());
+        childTups = new ArrayList<Tuple>(Math.min(capacity, 1024));
+        runs = new ArrayList<RunFile>();
+        while (child.hasNext()) {
+            childTups.add(child.next());
+            if (childTups.size() == capacity) {
+                runs.add(writeRun(childTups));
+                childTups.clear();
+            }
+        }
+        if (runs.isEmpty()) {
+            comparator.sort(childTups, td);
+            it = childTups.iterator();
+            return;
+        }
+        if (!childTups.isEmpty()) {
+            runs.add(writeRun(childTups));
+        }
+        childTups = null;
+
+        // each run being merged reads through a buffer of a page
+        int fanIn = Math.max(2, budgetPages - 1);
+        while (runs.size() > fanIn) {
+            ArrayList<RunFile> merged = new ArrayList<RunFile>();
+            boolean done = false;
+            try {
+                for (int i = 0; i < runs.size(); i += fanIn) {
+                    List<RunFile> group = runs.subList(i, Math.min(i + fanIn, runs.size()));
+                    if (group.size() == 1) {
+                        merged.add(group.get(0));
+                        continue;
+                    }
+                    RunFile out = new RunFile(td);
+                    merged.add(out);
+                    startMerge(group);
+                    for (Tuple t = nextMerged(); t != null; t = nextMerged()) {
+                        out.add(t);
+                    }
+                    for (RunFile r : group) {
+                        r.delete();
+                    }
+                }
+                done = true;
+            } finally {
+                // runs still holds every file of a failed pass, but not
+                // the ones the pass wrote
+                if (!done) {
+                    merged.removeAll(runs);
+                    for (RunFile r : merged) {
+                        r.delete();
+                    }
+                }
+            }
+            runs = merged;
+        }
+        startMerge(runs);
+    }
+
+    /** Sorts tuples and writes them to a new run. */
+    private RunFile writeRun(ArrayList<Tuple> tuples) throws IOException {
+        comparator.sort(tuples, td);
+        RunFile run = new RunFile(td);
+        for (Tuple t : tuples) {
+            run.add(t);
+        }
+        return run;
+    }
+
+    /**
+     * Opens the given runs and puts their first tuples on the merge heap.
+     * Equal tuples come out in the order of their runs, so the sort is
+     * stable.
+     */
+    private void startMerge(List<RunFile> group) throws DbException,
+            TransactionAbortedException, IOException {
+        closeReaders();
+        readers = new ArrayList<DbFileIterator>(group.size());
+        merge = new PriorityQueue<RunHead>(Math.max(1, group.size()), new Comparator<RunHead>() {
+            public int compare(RunHead a, RunHead b) {
+                int c = comparator.compare(a.t, b.t);
+                return c != 0 ? c : Integer.compare(a.run, b.run);
+            }
+        });
+        for (int i = 0; i < group.size(); i++) {
+            DbFileIterator r = group.get(i).iterator();
+            r.open();
+            readers.add(r);
+            if (r.hasNext()) {
+                merge.add(new RunHead(r.next(), r, i));
+            }
+        }
+    }
+
+    /** @return the least tuple of the runs being merged, or null */
+    private Tuple nextMerged() throws DbException, TransactionAbortedException {
+        RunHead head = merge.poll();
+        if (head == null) {
+            return null;
+        }
+        Tuple t = head.t;
+        if (head.it.hasNext()) {
+            head.t = head.it.next();
+            merge.add(head);
+        }
+        return t;
+    }
+
+    private void closeReaders() {
+        if (readers != null) {
+            for (DbFileIterator r : readers) {
+                r.close();
+            }
+        }
+        readers = null;
+        merge = null;
+    }
+
+    /** Drops the sorted tuples and deletes any runs. */
+    private void discard() {
+        closeReaders();
+        if (runs != null) {
+            for (RunFile r : runs) {
+                r.delete();
+            }
+        }
+        runs = null;
+        childTups = null;
+        it = null;
+    }
+
     public void close() {
         super.close();
-        it = null;
+        child.close();
+        discard();
     }
 
     public void rewind() throws DbException, TransactionAbortedException {
-        it = childTups.iterator();
+        if (childTups != null) {
+            it = childTups.iterator();
+        } else if (runs != null) {
+            try {
+                startMerge(runs);
+            } catch (IOException e) {
+                throw new DbException("could not read sorted run: " + e.getMessage());
+            }
+        }
     }
 
     /**
@@ -82,10 +340,13 @@ public class OrderBy extends Operator {
      */
     protected Tuple fetchNext() throws NoSuchElementException,
             TransactionAbortedException, DbException {
-        if (it != null && it.hasNext()) {
-            return it.next();
-        } else
-            return null;
+        if (it != null) {
+            return it.hasNext() ? it.next() : null;
+        }
+        if (merge != null) {
+            return nextMerged();
+        }
+        return null;
     }
 
     @Override
@@ -99,25 +360,3 @@ public class OrderBy extends Operator {
     }
 
 }
-
-class TupleComparator implements Comparator<Tuple> {
-    int field;
-    boolean asc;
-
-    public TupleComparator(int field, boolean asc) {
-        this.field = field;
-        this.asc = asc;
-    }
-
-    public int compare(Tuple o1, Tuple o2) {
-        Field t1 = (o1).getField(field);
-        Field t2 = (o2).getField(field);
-        if (t1.compare(Predicate.Op.EQUALS, t2))
-            return 0;
-        if (t1.compare(Predicate.Op.GREATER_THAN, t2))
-            return asc ? 1 : -1;
-        else
-            return asc ? -1 : 1;
-    }
-    
-}
@@ -0,0 +1,124 @@
+package simpledb;
+
+import java.nio.ByteBuffer;
+
+/**
+ * PageArena is a fixed set of page-sized frames carved out of direct
+ * ByteBuffers, allocated once when the arena is created. A BufferPool in
+ * off-heap mode reads each page it caches into a frame of its arena, so the
+ * cached bytes live outside the Java heap and the pool's size does not add
+ * to the work of the garbage collector.
+ * <p>
+ * Frames are named by their slot number. The arena only hands them out and
+ * takes them back; keeping track of what is in them is up to the caller.
+ *
+ * @Threadsafe
+ */
+public class PageArena {
+
+    /** Largest direct buffer the frames are carved out of. */
+    private static final int MAX_CHUNK_BYTES = 1 << 30;
+
+    private final int frameSize;
+    private final int framesPerChunk;
+    private final ByteBuffer[] chunks;
+
+    /** Stack of free slots; the first numFree entries are valid. Guarded by this. */
+    private final int[] free;
+    private int numFree;
+
+    /**
+     * Allocates an arena of numFrames frames of the current page size.
+     *
+     * @param numFrames the number of frames
+     */
+    public PageArena(int numFrames) {
+        this(numFrames, BufferPool.getPageSize(), MAX_CHUNK_BYTES);
+    }
+
+    /**
+     * @param numFrames the number of frames
+     * @param frameSize bytes per frame
+     * @param maxChunkBytes the largest direct buffer to allocate
+     */
+    PageArena(int numFrames, int frameSize, int maxChunkBytes) {
+        if (numFrames < 0 || frameSize < 1 || maxChunkBytes < frameSize) {
+            throw new IllegalArgumentException("bad arena size");
+        }
+        this.frameSize = frameSize;
+        this.framesPerChunk = maxChunkBytes / frameSize;
+        int numChunks = (numFrames + framesPerChunk - 1) / framesPerChunk;
+        this.chunks = new ByteBuffer[numChunks];
+        for (int c = 0; c < numChunks; c++) {
+            int frames = Math.min(framesPerChunk, numFrames - c * framesPerChunk);
+            chunks[c] = ByteBuffer.allocateDirect(frames * frameSize);
+        }
+
+        this.free = new int[numFrames];
+        // hand out low slots first
+        for (int i = 0; i < numFrames; i++) {
+            free[i] = numFrames - 1 - i;
+        }
+        this.numFree = numFrames;
+    }
+
+    /** @return the number of bytes in a frame */
+    public int getFrameSize() {
+        return frameSize;
+    }
+
+    /** @return the number of frames in the arena */
+    public int getNumFrames() {
+        return free.length;
+    }
+
+    /** @return the number of frames not handed out */
+    public synchronized int getFreeFrames() {
+        return numFree;
+    }
+
+    /** @return the number of direct bytes the arena holds */
+    public long getCapacity() {
+        return (long) free.length * frameSize;
+    }
+
+    /**
+     * Takes a frame out of the free list.
+     *
+     * @return the slot of the frame, or -1 if all frames are in use
+     */
+    public synchronized int allocate() {
+        if (numFree == 0) {
+            return -1;
+        }
+        return free[--numFree];
+    }
+
+    /**
+     * Returns a frame to the free list. Whatever was in it may be
+     * overwritten as soon as it is allocated again.
+     *
+     * @param slot a slot returned by allocate and not released since
+     */
+    public synchronized void release(int slot) {
+        if (slot < 0 || slot >= free.length || numFree == free.length) {
+            throw new IllegalArgumentException("slot " + slot + " is not in use");
+        }
+        free[numFree++] = slot;
+    }
+
+    /**
+     * @return a buffer over the given frame, with position 0 and the frame
+     *     size as its capacity
+     */
+    public ByteBuffer frame(int slot) {
+        if (slot < 0 || slot >= free.length) {
+            throw new IndexOutOfBoundsException("no slot " + slot);
+        }
+        ByteBuffer chunk = chunks[slot / framesPerChunk].duplicate();
+        int off = (slot % framesPerChunk) * frameSize;
+        chunk.limit(off + frameSize);
+        chunk.position(off);
+        return chunk.slice();
+    }
+}
@@ -4,6 +4,8 @@ import Zql.*;
 import java.io.*;
 import java.lang.reflect.InvocationTargetException;
 import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import jline.ArgumentCompletor;
 import jline.ConsoleReader;
@@ -253,18 +255,15 @@ public class Parser {
         if (q.getOrderBy() != null) {
             @SuppressWarnings("unchecked")
             Vector<ZOrderBy> obys = q.getOrderBy();
-            if (obys.size() > 1) {
-                throw new simpledb.ParsingException(
-                        "Multi-attribute ORDER BY is not supported.");
-            }
-            ZOrderBy oby = obys.elementAt(0);
-            if (!(oby.getExpression() instanceof ZConstant)) {
-                throw new simpledb.ParsingException(
-                        "Complex ORDER BY's are not supported");
-            }
-            ZConstant f = (ZConstant) oby.getExpression();
+            for (ZOrderBy oby : obys) {
+                if (!(oby.getExpression() instanceof ZConstant)) {
+                    throw new simpledb.ParsingException(
+                            "Complex ORDER BY's are not supported");
+                }
+                ZConstant f = (ZConstant) oby.getExpression();
 
-            lp.addOrderBy(f.getValue(), oby.getAscOrder());
+                lp.addOrderBy(f.getValue(), oby.getAscOrder());
+            }
 
         }
         return lp;
@@ -279,6 +278,9 @@ public class Parser {
         Query query = new Query(tId);
 
         LogicalPlan lp = parseQueryLogicalPlan(tId, s);
+        if (limit != LogicalPlan.NO_LIMIT) {
+            lp.addLimit(limit);
+        }
         OpIterator physicalPlan = lp.physicalPlan(tId,
                 TableStats.getStatsMap(), explain);
         query.setPhysicalPlan(physicalPlan);
@@ -463,14 +465,45 @@ public class Parser {
         }
     }
 
+    /** Matches a SELECT statement ending in a LIMIT clause */
+    private static final Pattern TRAILING_LIMIT = Pattern.compile(
+            "(?is)^(\\s*select\\b.*\\S)\\s+limit\\s+(\\d+)\\s*(;?)\\s*$");
+
+    /** The LIMIT of the statement being processed, or LogicalPlan.NO_LIMIT */
+    private int limit = LogicalPlan.NO_LIMIT;
+
+    /**
+     * Zql knows no LIMIT clause, so the LIMIT at the end of a SELECT is taken
+     * off before Zql sees the statement, and kept to be added to its plan.
+     *
+     * @return the statement without its LIMIT clause
+     */
+    String stripLimit(String s) throws simpledb.ParsingException {
+        limit = LogicalPlan.NO_LIMIT;
+        Matcher m = TRAILING_LIMIT.matcher(s);
+        if (!m.matches()) {
+            return s;
+        }
+        try {
+            limit = Integer.parseInt(m.group(2));
+        } catch (NumberFormatException e) {
+            throw new simpledb.ParsingException("LIMIT " + m.group(2) + " is too large");
+        }
+        return m.group(1) + m.group(3);
+    }
+
     public LogicalPlan generateLogicalPlan(TransactionId tid, String s)
             throws simpledb.ParsingException {
+        s = stripLimit(s);
         ByteArrayInputStream bis = new ByteArrayInputStream(s.getBytes());
         ZqlParser p = new ZqlParser(bis);
         try {
             ZStatement stmt = p.readStatement();
             if (stmt instanceof ZQuery) {
                 LogicalPlan lp = parseQueryLogicalPlan(tid, (ZQuery) stmt);
+                if (limit != LogicalPlan.NO_LIMIT) {
+                    lp.addLimit(limit);
+                }
                 return lp;
             }
         } catch (Zql.ParseException e) {
@@ -503,7 +536,13 @@ public class Parser {
 
     public void processNextStatement(InputStream is) {
         try {
-            ZqlParser p = new ZqlParser(is);
+            ByteArrayOutputStream text = new ByteArrayOutputStream();
+            byte[] buf = new byte[4096];
+            for (int n = is.read(buf); n >= 0; n = is.read(buf)) {
+                text.write(buf, 0, n);
+            }
+            String statement = stripLimit(text.toString("UTF-8"));
+            ZqlParser p = new ZqlParser(new ByteArrayInputStream(statement.getBytes("UTF-8")));
             ZStatement s = p.readStatement();
 
             Query query = null;
@@ -0,0 +1,34 @@
+package simpledb;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+
+/**
+ * PaxHeapFile is a HeapFile whose pages are {@link PaxHeapPage}s, which
+ * keep the same tuples on a page as a HeapPage but group the values of each
+ * field together. Scans and filters that read a few fields of every tuple
+ * then read contiguous bytes per field.
+ * <p>
+ * Select it for a table in the catalog schema by following the field list
+ * with the word "pax", and create its data file with
+ * {@link HeapFileEncoder#convertPax}.
+ *
+ * @see Catalog#loadSchema
+ */
+public class PaxHeapFile extends HeapFile {
+
+    /**
+     * Constructs a PAX heap file backed by the specified file.
+     *
+     * @param f the file that stores the on-disk backing store for this file
+     * @param td the schema of the table
+     */
+    public PaxHeapFile(File f, TupleDesc td) {
+        super(f, td);
+    }
+
+    @Override
+    protected TuplePage newPage(HeapPageId pid, ByteBuffer frame) throws IOException {
+        return PaxHeapPage.wrap(pid, frame);
+    }
+}
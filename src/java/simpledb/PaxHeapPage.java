@@ -0,0 +1,385 @@
+package simpledb;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.*;
+
+/**
+ * PaxHeapPage is a page of a {@link PaxHeapFile}, which lays out its tuples
+ * by column within the page (Partition Attributes Across). It holds as
+ * many tuples as a HeapPage of the same schema, and has the same header
+ * bitmap of used slots, but the values of each field are grouped together
+ * in a minipage of their own instead of being stored tuple by tuple:
+ * <pre>
+ *   header: one bit per slot
+ *   minipage of field 0: numSlots values of field 0
+ *   minipage of field 1: numSlots values of field 1
+ *   ...
+ * </pre>
+ * Field i of slot s is value s of minipage i. A scan that reads one field
+ * of every tuple therefore reads consecutive bytes, and
+ * {@link #getIntColumn} copies a whole int minipage out in one go. Values
+ * are encoded as in a HeapPage.
+ * <p>
+ * Like {@link HeapPage}, a page keeps only its bytes, reads and writes them
+ * in place, and saves its before image on its first change.
+ *
+ * @see PaxHeapFile
+ * @see HeapPage
+ */
+public class PaxHeapPage implements TuplePage {
+
+    final HeapPageId pid;
+    final TupleDesc td;
+    final int pageSize;
+    final int numSlots;
+    final int headerSize;
+
+    /** Offset of each field's minipage. */
+    private final int[] minipage;
+
+    /** The page, from position 0 to the page size. Only accessed by index. */
+    final ByteBuffer data;
+
+    // Dirtying transaction
+    private TransactionId tid;
+
+    /** What the page was before its first change since setBeforeImage. */
+    private final BeforeImage beforeImage = new BeforeImage();
+
+    /**
+     * Creates a page from a copy of the bytes of a page read from disk, in
+     * the format described above. The schema comes from the catalog.
+     */
+    public PaxHeapPage(HeapPageId id, byte[] data) throws IOException {
+        this(id, ByteBuffer.wrap(data));
+    }
+
+    /**
+     * Creates a page from a copy of the bytes between the position and
+     * limit of a buffer. The buffer's position is not changed.
+     */
+    public PaxHeapPage(HeapPageId id, ByteBuffer data) throws IOException {
+        this(id, Database.getCatalog().getTupleDesc(id.getTableId()),
+                BeforeImage.copyPage(data));
+    }
+
+    /**
+     * Creates a page of tuples with the given schema on a buffer whose
+     * capacity is the page size, which it takes over.
+     */
+    PaxHeapPage(HeapPageId id, TupleDesc td, ByteBuffer page) {
+        this.pid = id;
+        this.td = td;
+        this.pageSize = page.capacity();
+        this.numSlots = (pageSize * 8) / (td.getSize() * 8 + 1);
+        this.headerSize = (numSlots + 7) / 8;
+        this.minipage = new int[td.numFields()];
+        int off = headerSize;
+        for (int i = 0; i < minipage.length; i++) {
+            minipage[i] = off;
+            off += numSlots * fieldLen(i);
+        }
+        this.data = page;
+    }
+
+    /**
+     * Creates a page that reads and writes a page held in the given buffer
+     * instead of a copy of it.
+     *
+     * @param frame a writable buffer with at least a page of room from its
+     *     position, holding the page
+     */
+    static PaxHeapPage wrap(HeapPageId id, ByteBuffer frame) {
+        ByteBuffer page = frame.duplicate();
+        page.limit(page.position() + BufferPool.getPageSize());
+        return new PaxHeapPage(id, Database.getCatalog().getTupleDesc(id.getTableId()),
+                page.slice());
+    }
+
+    /**
+     * @return the bytes of an empty page
+     */
+    public static byte[] createEmptyPageData() {
+        return new byte[BufferPool.getPageSize()];
+    }
+
+    public HeapPageId getId() {
+        return pid;
+    }
+
+    /** @return the number of bytes of a value of field i */
+    private int fieldLen(int i) {
+        return td.getFieldType(i).getLen(td.getFieldWidth(i));
+    }
+
+    /** @return the offset of field i of a slot */
+    private int valueOffset(int slot, int i) {
+        return minipage[i] + slot * fieldLen(i);
+    }
+
+    /** @return the number of tuple slots on this page */
+    public int getNumSlots() {
+        return numSlots;
+    }
+
+    /**
+     * Returns true if associated slot on this page is filled.
+     */
+    public boolean isSlotUsed(int i) {
+        if (i < 0 || i >= numSlots) {
+            return false;
+        }
+        return ((data.get(i / 8) >> (i % 8)) & 1) == 1;
+    }
+
+    private void markSlotUsed(int i, boolean value) {
+        byte b = data.get(i / 8);
+        if (value) {
+            b |= (byte) (1 << (i % 8));
+        } else {
+            b &= (byte) ~(1 << (i % 8));
+        }
+        data.put(i / 8, b);
+    }
+
+    /**
+     * Returns the number of empty slots on this page.
+     */
+    public int getNumEmptySlots() {
+        int used = 0;
+        for (int i = 0; i < numSlots / 8; i++) {
+            used += Integer.bitCount(data.get(i) & 0xff);
+        }
+        // bits past the last slot are not counted
+        for (int i = numSlots / 8 * 8; i < numSlots; i++) {
+            if (isSlotUsed(i)) {
+                used++;
+            }
+        }
+        return numSlots - used;
+    }
+
+    /** @return the number of empty slots */
+    public int getFreeSpace() {
+        return getNumEmptySlots();
+    }
+
+    /** @return 1, since every tuple takes one slot */
+    public int spaceFor(Tuple t) {
+        return 1;
+    }
+
+    /** @return the first used slot at or after the given one, or numSlots */
+    private int nextUsedSlot(int from) {
+        int i = from;
+        while (i < numSlots) {
+            // skip whole empty header bytes
+            if (i % 8 == 0 && data.get(i / 8) == 0) {
+                i += 8;
+                continue;
+            }
+            if (isSlotUsed(i)) {
+                return i;
+            }
+            i++;
+        }
+        return numSlots;
+    }
+
+    /**
+     * Decodes one field of the tuple in a slot, straight from its minipage.
+     *
+     * @param slotId a used slot
+     * @param i the index of the field in the tuple
+     * @throws NoSuchElementException if the slot is not in use
+     */
+    public Field getField(int slotId, int i) throws NoSuchElementException {
+        if (!isSlotUsed(slotId)) {
+            throw new NoSuchElementException("slot " + slotId + " is empty");
+        }
+        ByteBuffer buf = data.duplicate();
+        buf.position(valueOffset(slotId, i));
+        try {
+            return td.getFieldType(i).parse(buf, td.getFieldWidth(i));
+        } catch (java.text.ParseException e) {
+            throw new IllegalStateException("corrupt field " + i + " in slot " + slotId, e);
+        }
+    }
+
+    /**
+     * Copies the minipage of an int field into an array, slot by slot.
+     * Values of free slots are 0; use {@link #isSlotUsed} to tell them
+     * apart.
+     *
+     * @param i the index of an int field
+     * @param values an array of at least getNumSlots() ints
+     * @return values
+     */
+    public int[] getIntColumn(int i, int[] values) {
+        if (td.getFieldType(i) != Type.INT_TYPE) {
+            throw new IllegalArgumentException("field " + i + " is not an int");
+        }
+        ByteBuffer buf = data.duplicate();
+        buf.position(minipage[i]);
+        buf.limit(minipage[i] + numSlots * 4);
+        IntBuffer ints = buf.slice().asIntBuffer();
+        ints.get(values, 0, numSlots);
+        return values;
+    }
+
+    /**
+     * Copies the tuple in a used slot into a Tuple, gathering its fields
+     * from the minipages into the row layout that Tuple decodes lazily.
+     */
+    private Tuple readTuple(int slotId) {
+        byte[] raw = new byte[td.getSize()];
+        ByteBuffer buf = data.duplicate();
+        for (int i = 0; i < minipage.length; i++) {
+            buf.position(valueOffset(slotId, i));
+            buf.get(raw, td.getOffset(i), fieldLen(i));
+        }
+        Tuple t = new Tuple(td, raw);
+        t.setRecordId(new RecordId(pid, slotId));
+        return t;
+    }
+
+    /** Encodes a tuple into the minipages at a slot. */
+    private void writeTuple(int slotId, Tuple t) {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(td.getSize());
+        DataOutputStream dos = new DataOutputStream(baos);
+        try {
+            for (int j = 0; j < td.numFields(); j++) {
+                Field f = t.getField(j);
+                if (f instanceof StringField) {
+                    // written at this table's width, whatever t's is
+                    ((StringField) f).serialize(dos, td.getFieldWidth(j));
+                } else {
+                    f.serialize(dos);
+                }
+            }
+            dos.flush();
+        } catch (IOException e) {
+            // this really shouldn't happen
+            e.printStackTrace();
+        }
+
+        byte[] row = baos.toByteArray();
+        ByteBuffer buf = data.duplicate();
+        for (int i = 0; i < minipage.length; i++) {
+            buf.position(valueOffset(slotId, i));
+            buf.put(row, td.getOffset(i), fieldLen(i));
+        }
+    }
+
+    /**
+     * Adds the specified tuple to the page in its first free slot.
+     *
+     * @throws DbException if the page is full or the tupledesc is mismatch
+     */
+    public void insertTuple(Tuple t) throws DbException {
+        if (!t.getTupleDesc().equals(td)) {
+            throw new DbException("tupledesc is mismatch");
+        }
+        int slot = nextFreeSlot();
+        if (slot < 0) {
+            throw new DbException("page is full");
+        }
+        beforeImage.save(this);
+        writeTuple(slot, t);
+        markSlotUsed(slot, true);
+        t.setRecordId(new RecordId(pid, slot));
+    }
+
+    /** @return the first free slot, or -1 */
+    private int nextFreeSlot() {
+        for (int b = 0; b < headerSize; b++) {
+            int bits = data.get(b) & 0xff;
+            if (bits != 0xff) {
+                int i = b * 8 + Integer.numberOfTrailingZeros(~bits);
+                return i < numSlots ? i : -1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Deletes the specified tuple from the page, zeroing its values.
+     *
+     * @throws DbException if this tuple is not on this page, or its slot is
+     *     already free
+     */
+    public void deleteTuple(Tuple t) throws DbException {
+        RecordId rid = t.getRecordId();
+        if (rid == null || !pid.equals(rid.getPageId())) {
+            throw new DbException("tuple absent");
+        }
+        int slot = rid.getTupleNumber();
+        if (!isSlotUsed(slot)) {
+            throw new DbException("slot already free");
+        }
+        beforeImage.save(this);
+        markSlotUsed(slot, false);
+        // empty slots are all zeros on disk
+        for (int i = 0; i < minipage.length; i++) {
+            int off = valueOffset(slot, i);
+            for (int b = off; b < off + fieldLen(i); b++) {
+                data.put(b, (byte) 0);
+            }
+        }
+    }
+
+    /**
+     * @return an iterator over the tuples on this page, each copied out of
+     *     the minipages when it is asked for
+     */
+    public Iterator<Tuple> iterator() {
+        return new Iterator<Tuple>() {
+            private int next = nextUsedSlot(0);
+
+            @Override
+            public boolean hasNext() {
+                return next < numSlots;
+            }
+
+            @Override
+            public Tuple next() {
+                if (next >= numSlots) {
+                    throw new NoSuchElementException();
+                }
+                Tuple t = readTuple(next);
+                next = nextUsedSlot(next + 1);
+                return t;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    public byte[] getPageData() {
+        byte[] out = new byte[pageSize];
+        data.duplicate().get(out);
+        return out;
+    }
+
+    public void markDirty(boolean dirty, TransactionId tid) {
+        this.tid = dirty ? tid : null;
+    }
+
+    public TransactionId isDirty() {
+        return tid;
+    }
+
+    public PaxHeapPage getBeforeImage() {
+        byte[] before = beforeImage.get(this);
+        return new PaxHeapPage(pid, td, ByteBuffer.wrap(before));
+    }
+
+    public void setBeforeImage() {
+        beforeImage.set();
+    }
+}
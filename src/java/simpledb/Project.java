@@ -33,12 +33,14 @@ public class Project extends Operator {
         this.child = child;
         outFieldIds = fieldList;
         String[] fieldAr = new String[fieldList.size()];
+        int[] widthAr = new int[fieldList.size()];
         TupleDesc childtd = child.getTupleDesc();
 
         for (int i = 0; i < fieldAr.length; i++) {
             fieldAr[i] = childtd.getFieldName(fieldList.get(i));
+            widthAr[i] = childtd.getFieldWidth(fieldList.get(i));
         }
-        td = new TupleDesc(types, fieldAr);
+        td = new TupleDesc(types, fieldAr, widthAr);
     }
 
     public TupleDesc getTupleDesc() {
@@ -0,0 +1,189 @@
+package simpledb;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntPredicate;
+
+/**
+ * ReadAhead prefetches pages for sequential scans in the background, so that
+ * a scan finds the next pages in the BufferPool instead of waiting on one
+ * synchronous read per page.
+ * <p>
+ * Each scan reports the pages it visits to its own {@link Stream}. Once two
+ * consecutive pages have been visited the stream keeps a window of the
+ * following pages in flight, topping it up whenever the scan has used half
+ * of it. The window starts small and doubles while prefetched pages are
+ * still cached when the scan reaches them; it is halved if they were evicted
+ * first, which means the window outgrew the share of the pool the scan can
+ * have. The window never exceeds the configured maximum or a quarter of the
+ * pool.
+ * <p>
+ * Reads are done by a few daemon threads shared by all streams, which exit
+ * when idle.
+ *
+ * @Threadsafe
+ */
+public class ReadAhead {
+
+    /** Default maximum number of pages a stream keeps in flight. */
+    public static final int DEFAULT_MAX_WINDOW = 32;
+
+    /** Number of pages a stream starts prefetching with. */
+    private static final int INITIAL_WINDOW = 4;
+
+    /** Number of threads issuing reads. */
+    private static final int IO_THREADS = 4;
+
+    private final BufferPool pool;
+
+    private volatile int maxWindow;
+
+    private final ThreadPoolExecutor workers;
+
+    /**
+     * @param pool the pool pages are read into
+     */
+    public ReadAhead(BufferPool pool) {
+        this.pool = pool;
+        this.maxWindow = DEFAULT_MAX_WINDOW;
+        this.workers = new ThreadPoolExecutor(IO_THREADS, IO_THREADS,
+                1, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), r -> {
+                    Thread t = new Thread(r, "read-ahead");
+                    t.setDaemon(true);
+                    return t;
+                });
+        this.workers.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Sets the largest number of pages a scan may have prefetched ahead of
+     * it. Zero turns read-ahead off.
+     */
+    public void setMaxWindow(int pages) {
+        if (pages < 0) {
+            throw new IllegalArgumentException("window must not be negative");
+        }
+        this.maxWindow = pages;
+    }
+
+    public int getMaxWindow() {
+        return maxWindow;
+    }
+
+    /** @return the window limit for this pool, which may be zero */
+    private int windowLimit() {
+        return Math.min(maxWindow, pool.getNumPages() / 4);
+    }
+
+    /**
+     * @param tableId the table the scan reads
+     * @return a new stream tracking the accesses of one scan
+     */
+    public Stream newStream(int tableId) {
+        return new Stream(tableId, p -> true);
+    }
+
+    /**
+     * @param tableId the table the scan reads
+     * @param wanted tells which pages the scan will read; the others are
+     *     reported but not prefetched
+     * @return a new stream tracking the accesses of one scan
+     */
+    public Stream newStream(int tableId, IntPredicate wanted) {
+        return new Stream(tableId, wanted);
+    }
+
+    /**
+     * The read-ahead state of one scan. Accesses are reported by the scan's
+     * own thread; only the set of completed prefetches is shared with the
+     * workers.
+     */
+    public class Stream {
+        private final int tableId;
+
+        private final IntPredicate wanted;
+
+        /** Last page the scan visited, or -2 before the first. */
+        private int last;
+
+        /** Highest page prefetching has been requested for. */
+        private int requestedUpTo;
+
+        private int window;
+
+        /** Pages prefetched and not yet reached by the scan. */
+        private final Set<Integer> done;
+
+        private volatile boolean closed;
+
+        private Stream(int tableId, IntPredicate wanted) {
+            this.tableId = tableId;
+            this.wanted = wanted;
+            this.last = -2;
+            this.requestedUpTo = -1;
+            this.window = INITIAL_WINDOW;
+            this.done = ConcurrentHashMap.newKeySet();
+        }
+
+        /**
+         * Reports that the scan is about to read a page, and prefetches the
+         * pages after it if the scan is sequential.
+         *
+         * @param pgNo the page the scan is about to read
+         * @param numPages the number of pages in the table
+         */
+        public void accessed(int pgNo, int numPages) {
+            int limit = windowLimit();
+            boolean sequential = pgNo == last + 1;
+            last = pgNo;
+            if (limit < 1) {
+                return;
+            }
+            if (!sequential) {
+                // start over from here
+                window = Math.min(INITIAL_WINDOW, limit);
+                requestedUpTo = pgNo;
+                done.clear();
+                return;
+            }
+
+            if (done.remove(pgNo)) {
+                if (pool.isCached(new HeapPageId(tableId, pgNo))) {
+                    window = Math.min(window * 2, limit);
+                } else {
+                    window = Math.max(window / 2, 1);
+                }
+            }
+            window = Math.min(window, limit);
+
+            // top the window up once half of it has been used
+            if (requestedUpTo - pgNo <= window / 2) {
+                int from = Math.max(requestedUpTo, pgNo) + 1;
+                int to = Math.min(pgNo + window, numPages - 1);
+                for (int p = from; p <= to; p++) {
+                    if (wanted.test(p)) {
+                        submit(p);
+                    }
+                }
+                requestedUpTo = Math.max(requestedUpTo, to);
+            }
+        }
+
+        /** Stops prefetching for this scan; reads already running finish. */
+        public void close() {
+            closed = true;
+            done.clear();
+        }
+
+        private void submit(final int pgNo) {
+            workers.execute(() -> {
+                if (!closed && pool.prefetchPage(new HeapPageId(tableId, pgNo))) {
+                    done.add(pgNo);
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package simpledb;
+
+/**
+ * ReplacementPolicy decides which page the BufferPool gives up when it needs
+ * a free frame. The BufferPool tells the policy about every page that enters,
+ * is accessed in, or leaves the pool, and asks it to evict a page when full.
+ * <p>
+ * pageAccessed is called on the buffer pool's lock-free hit path, so
+ * implementations should not take a global lock there. The other methods may
+ * be called concurrently by threads missing on different pages.
+ *
+ * @see BufferPool
+ * @see ClockPolicy
+ * @see LruKPolicy
+ */
+public interface ReplacementPolicy {
+
+    /**
+     * Callback through which a policy asks the BufferPool to evict a page.
+     */
+    public interface Evictor {
+        /**
+         * Tries to remove the specified page from the buffer pool. Fails
+         * without blocking if the page is dirty or otherwise in use.
+         *
+         * @param pid the candidate victim
+         * @return true if the page was removed from the pool
+         */
+        public boolean tryEvict(PageId pid);
+    }
+
+    /**
+     * Records that a page has been brought into the pool.
+     *
+     * @param pid the id of the page that was added
+     */
+    public void pageAdded(PageId pid);
+
+    /**
+     * Records that a page has been read into the pool ahead of use. Unlike
+     * pageAdded this is not an access, so a page that is never used should
+     * not look any more valuable than one that was. Defaults to pageAdded.
+     *
+     * @param pid the id of the page that was prefetched
+     */
+    public default void pagePrefetched(PageId pid) {
+        pageAdded(pid);
+    }
+
+    /**
+     * Records a hit on a page already in the pool.
+     *
+     * @param pid the id of the page that was accessed
+     */
+    public void pageAccessed(PageId pid);
+
+    /**
+     * Records that a page has left the pool other than through
+     * {@link #evict}, e.g. because it was discarded.
+     *
+     * @param pid the id of the page that was removed
+     */
+    public void pageRemoved(PageId pid);
+
+    /**
+     * Picks victims in policy order and offers them to evictor until one is
+     * evicted. The evicted page is forgotten by the policy.
+     *
+     * @param evictor used to remove the chosen page from the pool
+     * @return true if a page was evicted, false if no page could be
+     */
+    public boolean evict(Evictor evictor);
+}
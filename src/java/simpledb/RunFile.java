@@ -0,0 +1,187 @@
+package simpledb;
+
+import java.io.*;
+import java.lang.reflect.Constructor;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * RunFile is a temporary file of tuples that an operator writes once, in
+ * order, and then reads back from the start as many times as it likes. Unlike
+ * a {@link SpillFile} it is not made of pages: each tuple is written as its
+ * fields one after the other, integers in four bytes and strings as their
+ * length and characters with none of the padding of a page, so a run of
+ * short strings takes a fraction of the space. A tuple's RecordId, if it has
+ * one, is written after its fields and given back to the tuple read. The
+ * file never enters the catalog or the buffer pool.
+ */
+public class RunFile {
+
+    private final TupleDesc td;
+    private final File f;
+    private DataOutputStream out;
+    private int numTuples;
+
+    /** The kinds of PageId in RecordIds written so far, by number */
+    private final ArrayList<Constructor<?>> pidKinds = new ArrayList<Constructor<?>>();
+
+    /**
+     * Creates an empty run file for tuples of the given schema.
+     */
+    public RunFile(TupleDesc td) throws IOException {
+        this.td = td;
+        this.f = File.createTempFile("run", ".dat");
+        this.out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(f), BufferPool.getPageSize()));
+    }
+
+    /** @return the number of tuples added to this file */
+    public int numTuples() {
+        return numTuples;
+    }
+
+    /**
+     * Appends a tuple to this file.
+     */
+    public void add(Tuple t) throws IOException {
+        for (int i = 0; i < td.numFields(); i++) {
+            Field field = t.getField(i);
+            if (td.getFieldType(i) == Type.INT_TYPE) {
+                out.writeInt(((IntField) field).getValue());
+            } else {
+                out.writeUTF(((StringField) field).getValue());
+            }
+        }
+        writeRecordId(t.getRecordId());
+        numTuples++;
+    }
+
+    /**
+     * Writes a RecordId as the number of its kind of PageId, or 0 for none,
+     * then the integers the PageId serializes to and the tuple number.
+     */
+    private void writeRecordId(RecordId rid) throws IOException {
+        if (rid == null) {
+            out.writeByte(0);
+            return;
+        }
+        int[] pid = rid.getPageId().serialize();
+        int kind = 0;
+        while (kind < pidKinds.size()
+                && pidKinds.get(kind).getDeclaringClass() != rid.getPageId().getClass()) {
+            kind++;
+        }
+        if (kind == pidKinds.size()) {
+            Class<?>[] params = new Class<?>[pid.length];
+            Arrays.fill(params, int.class);
+            try {
+                pidKinds.add(rid.getPageId().getClass().getDeclaredConstructor(params));
+            } catch (NoSuchMethodException e) {
+                throw new IOException("no constructor to rebuild " + rid.getPageId().getClass());
+            }
+        }
+        out.writeByte(kind + 1);
+        for (int i : pid) {
+            out.writeInt(i);
+        }
+        out.writeInt(rid.getTupleNumber());
+    }
+
+    /** Reads a RecordId written by writeRecordId. */
+    private RecordId readRecordId(DataInputStream in) throws IOException {
+        int kind = in.readUnsignedByte();
+        if (kind == 0) {
+            return null;
+        }
+        Constructor<?> c = pidKinds.get(kind - 1);
+        Object[] args = new Object[c.getParameterCount()];
+        for (int i = 0; i < args.length; i++) {
+            args[i] = in.readInt();
+        }
+        try {
+            return new RecordId((PageId) c.newInstance(args), in.readInt());
+        } catch (ReflectiveOperationException e) {
+            throw new IOException("could not rebuild a page id: " + e);
+        }
+    }
+
+    /** Finishes writing the file, if that is not done already. */
+    private void finish() throws IOException {
+        if (out != null) {
+            out.close();
+            out = null;
+        }
+    }
+
+    /**
+     * Returns an iterator over the tuples added so far, in the order they
+     * were added. No more tuples may be added once it is made.
+     */
+    public DbFileIterator iterator() throws IOException {
+        finish();
+        return new AbstractDbFileIterator() {
+            private DataInputStream in;
+            private int read;
+
+            public void open() throws DbException {
+                try {
+                    in = new DataInputStream(new BufferedInputStream(
+                            new FileInputStream(f), BufferPool.getPageSize()));
+                } catch (FileNotFoundException e) {
+                    throw new DbException("run file is gone: " + f);
+                }
+                read = 0;
+            }
+
+            public void rewind() throws DbException {
+                close();
+                open();
+            }
+
+            public void close() {
+                super.close();
+                if (in != null) {
+                    try {
+                        in.close();
+                    } catch (IOException e) {
+                        // nothing more is read from it
+                    }
+                    in = null;
+                }
+            }
+
+            protected Tuple readNext() throws DbException {
+                if (in == null || read == numTuples) {
+                    return null;
+                }
+                Tuple t = new Tuple(td);
+                try {
+                    for (int i = 0; i < td.numFields(); i++) {
+                        if (td.getFieldType(i) == Type.INT_TYPE) {
+                            t.setField(i, new IntField(in.readInt()));
+                        } else {
+                            t.setField(i, new StringField(in.readUTF(), td.getFieldWidth(i)));
+                        }
+                    }
+                    t.setRecordId(readRecordId(in));
+                } catch (IOException e) {
+                    throw new DbException("could not read run file: " + e.getMessage());
+                }
+                read++;
+                return t;
+            }
+        };
+    }
+
+    /**
+     * Deletes this file.
+     */
+    public void delete() {
+        try {
+            finish();
+        } catch (IOException e) {
+            // the file goes away all the same
+        }
+        f.delete();
+    }
+}
@@ -6,11 +6,28 @@ import java.util.*;
  * SeqScan is an implementation of a sequential scan access method that reads
  * each tuple of a table in no particular order (e.g., as they are laid out on
  * disk).
+ * <p>
+ * A scan of a heap file that TableStats estimate to be larger than
+ * BULK_READ_FRACTION of the buffer pool runs in bulk read mode: it reads
+ * through a small {@link BufferRing} instead of the shared page table, so it
+ * does not flush the pool.
+ * <p>
+ * A scan may be restricted to some columns of the table with
+ * {@link #setColumns}. A {@link ColumnarFile} then reads the pages of
+ * those columns only.
+ * <p>
+ * Predicates that the scan's tuples are filtered by further up the plan
+ * can be handed down with {@link #addPredicate}. A heap file then skips
+ * the pages that its {@link ZoneMap} shows hold no tuple satisfying them.
+ * The scan still returns every tuple of the pages it reads.
  */
 public class SeqScan implements OpIterator {
 
     private static final long serialVersionUID = 1L;
 
+    /** Scans of tables larger than this share of the pool bypass it. */
+    public static final double BULK_READ_FRACTION = 0.75;
+
     /** Relevant internal information. */
     private TransactionId tid;
     private int tableid;
@@ -19,6 +36,15 @@ public class SeqScan implements OpIterator {
     /** Stateful fields. */
     private boolean open;
     private DbFileIterator dbIt;
+    private boolean bulkReadAllowed;
+    /** The columns returned, or null for all of them. */
+    private int[] columns;
+    /** Set when the file returns whole tuples that must be cut down. */
+    private boolean projecting;
+    /** The TupleDesc of the cut-down tuples. */
+    private TupleDesc projectedTd;
+    /** Predicates on the fields of the table that tuples are filtered by. */
+    private final List<Predicate> preds = new ArrayList<>();
 
     /**
      * Creates a sequential scan over the specified table as a part of the
@@ -44,6 +70,7 @@ public class SeqScan implements OpIterator {
         // Set up this SeqScan
         this.open = false;
         this.dbIt = null;
+        this.bulkReadAllowed = true;
     }
 
     /**
@@ -84,8 +111,80 @@ public class SeqScan implements OpIterator {
         this(tid, tableId, Database.getCatalog().getTableName(tableId));
     }
 
+    /**
+     * Allows or forbids bulk read mode for this scan. Takes effect on the
+     * next call to open.
+     */
+    public void setBulkReadAllowed(boolean allowed) {
+        this.bulkReadAllowed = allowed;
+    }
+
+    /**
+     * Restricts the scan to the given columns of the table, in the given
+     * order, or lifts the restriction if columns is null. Takes effect on
+     * the next call to open, and changes the TupleDesc of the scan.
+     *
+     * @param columns indexes into the table's TupleDesc, at least one
+     */
+    public void setColumns(int[] columns) {
+        if (columns != null && columns.length == 0) {
+            throw new IllegalArgumentException("a scan returns at least one column");
+        }
+        this.columns = columns == null ? null : columns.clone();
+    }
+
+    /**
+     * Tells the scan that its tuples will be filtered by the given
+     * predicate, so that it may skip pages holding none that satisfy it.
+     * Takes effect on the next call to open.
+     *
+     * @param p a predicate on the fields of this scan's TupleDesc, given
+     *     after any call to setColumns
+     */
+    public void addPredicate(Predicate p) {
+        int field = columns == null ? p.getField() : columns[p.getField()];
+        preds.add(new Predicate(field, p.getOp(), p.getOperand()));
+    }
+
+    /** @return true if the scan will read through a private ring */
+    public boolean isBulkRead() {
+        if (!bulkReadAllowed) {
+            return false;
+        }
+        DbFile f = Database.getCatalog().getDatabaseFile(tableid);
+        if (!(f instanceof HeapFile)) {
+            return false;
+        }
+        TableStats stats = TableStats.getTableStats(getTableName());
+        int pages = stats != null ? stats.numPages() : ((HeapFile) f).numPages();
+        return pages > BULK_READ_FRACTION * Database.getBufferPool().getNumPages();
+    }
+
     public void open() throws DbException, TransactionAbortedException {
-        this.dbIt = Database.getCatalog().getDatabaseFile(tableid).iterator(tid);
+        DbFile f = Database.getCatalog().getDatabaseFile(tableid);
+        this.projecting = false;
+        if (columns != null && f instanceof ColumnarFile) {
+            this.dbIt = ((ColumnarFile) f).iterator(tid, columns);
+        } else if (f instanceof HeapFile) {
+            BufferRing ring = isBulkRead() ? new BufferRing() : null;
+            this.dbIt = ((HeapFile) f).iterator(tid, ring, preds);
+            this.projecting = columns != null;
+        } else {
+            this.dbIt = f.iterator(tid);
+            this.projecting = columns != null;
+        }
+        if (projecting) {
+            TupleDesc td = f.getTupleDesc();
+            Type[] typeAr = new Type[columns.length];
+            String[] fieldAr = new String[columns.length];
+            int[] widthAr = new int[columns.length];
+            for (int i = 0; i < columns.length; i++) {
+                typeAr[i] = td.getFieldType(columns[i]);
+                fieldAr[i] = td.getFieldName(columns[i]);
+                widthAr[i] = td.getFieldWidth(columns[i]);
+            }
+            this.projectedTd = new TupleDesc(typeAr, fieldAr, widthAr);
+        }
         this.dbIt.open();
         this.open = true;
     }
@@ -102,16 +201,19 @@ public class SeqScan implements OpIterator {
      */
     public TupleDesc getTupleDesc() {
         TupleDesc td = Database.getCatalog().getTupleDesc(tableid);
-        int numFields = td.numFields();
+        int numFields = columns == null ? td.numFields() : columns.length;
         Type[] typeAr = new Type[numFields];
         String[] fieldAr = new String[numFields];
+        int[] widthAr = new int[numFields];
 
         for (int i = 0; i < numFields; i++) {
-            typeAr[i] = td.getFieldType(i);
-            fieldAr[i] = tableAlias + "." + td.getFieldName(i);
+            int col = columns == null ? i : columns[i];
+            typeAr[i] = td.getFieldType(col);
+            fieldAr[i] = tableAlias + "." + td.getFieldName(col);
+            widthAr[i] = td.getFieldWidth(col);
         }
         
-        return new TupleDesc(typeAr, fieldAr);
+        return new TupleDesc(typeAr, fieldAr, widthAr);
     }
 
     public boolean hasNext() throws TransactionAbortedException, DbException {
@@ -132,7 +234,16 @@ public class SeqScan implements OpIterator {
             throw new NoSuchElementException();
         }
 
-        return this.dbIt.next();
+        Tuple t = this.dbIt.next();
+        if (!projecting) {
+            return t;
+        }
+        Tuple out = new Tuple(projectedTd);
+        for (int i = 0; i < columns.length; i++) {
+            out.setField(i, t.getField(columns[i]));
+        }
+        out.setRecordId(t.getRecordId());
+        return out;
     }
 
     public void close() {
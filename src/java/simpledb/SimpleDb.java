@@ -4,8 +4,22 @@ import java.io.*;
 public class SimpleDb {
     public static void main (String args[])
             throws DbException, TransactionAbortedException, IOException {
-        // convert a file
+        // convert a file; "convert -slotted ..." writes slotted pages,
+        // "convert -pax ..." PAX pages, "convert -columnar ..." the column
+        // files of a ColumnarFile, "convert -btree ..." a BTreeFile keyed on
+        // the first field, and a type of string(n) stores strings in n
+        // characters
         if(args[0].equals("convert")) {
+        boolean slotted = args.length > 1 && args[1].equals("-slotted");
+        boolean pax = args.length > 1 && args[1].equals("-pax");
+        boolean columnar = args.length > 1 && args[1].equals("-columnar");
+        boolean btree = args.length > 1 && args[1].equals("-btree");
+        if (slotted || pax || columnar || btree) {
+            String[] rest = new String[args.length - 1];
+            rest[0] = args[0];
+            System.arraycopy(args, 2, rest, 1, args.length - 2);
+            args = rest;
+        }
         try {
             if (args.length<3 || args.length>5){
                 System.err.println("Unexpected number of arguments to convert ");
@@ -15,6 +29,8 @@ public class SimpleDb {
             File targetDatFile=new File(args[1].replaceAll(".txt", ".dat"));
             int numOfAttributes=Integer.parseInt(args[2]);
             Type[] ts = new Type[numOfAttributes];
+            int[] widths = new int[numOfAttributes];
+            java.util.Arrays.fill(widths, Type.STRING_LEN);
             char fieldSeparator=',';
 
             if (args.length == 3) 
@@ -30,21 +46,34 @@ public class SimpleDb {
                 }
                 int index=0;
                 for (String s: typeStringAr) {
-                        if (s.toLowerCase().equals("int"))
-                            ts[index++]=Type.INT_TYPE;
-                        else if (s.toLowerCase().equals("string"))
-                                ts[index++]=Type.STRING_TYPE;
-                            else {
+                        ts[index]=Type.forName(s);
+                        if (ts[index] == null) {
                                 System.err.println("Unknown type " + s);
                                 return;
-                            }
+                        }
+                        if (ts[index] == Type.STRING_TYPE)
+                                widths[index]=Type.declaredWidth(s);
+                        index++;
                 }
                 if (args.length==5)
                     fieldSeparator=args[4].charAt(0);
             }
 
-            HeapFileEncoder.convert(sourceTxtFile,targetDatFile,
-                        BufferPool.getPageSize(),numOfAttributes,ts,fieldSeparator);
+            if (btree)
+                HeapFileEncoder.convertBTree(sourceTxtFile,targetDatFile,
+                        BufferPool.getPageSize(),numOfAttributes,ts,widths,0,fieldSeparator);
+            else if (columnar)
+                HeapFileEncoder.convertColumnar(sourceTxtFile,targetDatFile,
+                        BufferPool.getPageSize(),numOfAttributes,ts,widths,fieldSeparator);
+            else if (pax)
+                HeapFileEncoder.convertPax(sourceTxtFile,targetDatFile,
+                        BufferPool.getPageSize(),numOfAttributes,ts,widths,fieldSeparator);
+            else if (slotted)
+                HeapFileEncoder.convertSlotted(sourceTxtFile,targetDatFile,
+                        BufferPool.getPageSize(),numOfAttributes,ts,widths,fieldSeparator);
+            else
+                HeapFileEncoder.convert(sourceTxtFile,targetDatFile,
+                        BufferPool.getPageSize(),numOfAttributes,ts,widths,fieldSeparator);
 
         } catch (IOException e) {
                 throw new RuntimeException(e);
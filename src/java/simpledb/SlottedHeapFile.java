@@ -0,0 +1,34 @@
+package simpledb;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+
+/**
+ * SlottedHeapFile is a HeapFile whose pages are {@link SlottedHeapPage}s,
+ * storing tuples as variable-length records. Tables with strings much
+ * shorter than their declared length take far fewer pages this way, at the
+ * cost of decoding each record field by field.
+ * <p>
+ * Select it for a table in the catalog schema by following the field list
+ * with the word "slotted", and create its data file with
+ * {@link HeapFileEncoder#convertSlotted}.
+ *
+ * @see Catalog#loadSchema
+ */
+public class SlottedHeapFile extends HeapFile {
+
+    /**
+     * Constructs a slotted heap file backed by the specified file.
+     *
+     * @param f the file that stores the on-disk backing store for this file
+     * @param td the schema of the table
+     */
+    public SlottedHeapFile(File f, TupleDesc td) {
+        super(f, td);
+    }
+
+    @Override
+    protected TuplePage newPage(HeapPageId pid, ByteBuffer frame) throws IOException {
+        return SlottedHeapPage.wrap(pid, frame);
+    }
+}
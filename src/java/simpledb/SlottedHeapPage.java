@@ -0,0 +1,416 @@
+package simpledb;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+/**
+ * SlottedHeapPage is a page of a {@link SlottedHeapFile}, which stores
+ * tuples as variable-length records so that a string takes only as many
+ * bytes as it has characters. The page starts with a header and a slot
+ * directory, and records are packed from the end of the page towards it:
+ * <pre>
+ *   u16 number of slots
+ *   u16 offset of the first record byte (0 in an empty page, meaning the
+ *       page size)
+ *   per slot: u16 record offset, u16 record length (0 for a free slot)
+ *   ... free space ...
+ *   records
+ * </pre>
+ * A record is its fields one after the other: an int is 4 bytes, and a
+ * string is a u16 length followed by that many bytes. A tuple keeps its slot
+ * for as long as it is on the page, so RecordIds stay valid when the
+ * records are moved to merge free space. A page of all zeros is an empty
+ * page, and pages are at most 65535 bytes.
+ * <p>
+ * Like {@link HeapPage}, a page keeps only its bytes, reads and writes them
+ * in place, and saves its before image on its first change.
+ *
+ * @see SlottedHeapFile
+ */
+public class SlottedHeapPage implements TuplePage {
+
+    /** Bytes before the slot directory. */
+    static final int HEADER_SIZE = 4;
+
+    /** Bytes per slot directory entry. */
+    static final int SLOT_SIZE = 4;
+
+    /** Bytes per unit of free space reported to the free-space map. */
+    static final int SPACE_UNIT = 16;
+
+    final HeapPageId pid;
+    final TupleDesc td;
+    final int pageSize;
+
+    /** The page, from position 0 to the page size. Only accessed by index. */
+    final ByteBuffer data;
+
+    // Dirtying transaction
+    private TransactionId tid;
+
+    /** What the page was before its first change since setBeforeImage. */
+    private final BeforeImage beforeImage = new BeforeImage();
+
+    /**
+     * Creates a page from a copy of the bytes of a page read from disk, in
+     * the format described above.
+     */
+    public SlottedHeapPage(HeapPageId id, byte[] data) throws IOException {
+        this(id, ByteBuffer.wrap(data));
+    }
+
+    /**
+     * Creates a page from a copy of the bytes between the position and limit
+     * of a buffer. The buffer's position is not changed.
+     */
+    public SlottedHeapPage(HeapPageId id, ByteBuffer data) throws IOException {
+        this(id, Database.getCatalog().getTupleDesc(id.getTableId()),
+                BeforeImage.copyPage(data));
+    }
+
+    /**
+     * Creates a page of tuples with the given schema on a buffer whose
+     * capacity is the page size, which it takes over.
+     */
+    SlottedHeapPage(HeapPageId id, TupleDesc td, ByteBuffer page) throws IOException {
+        this.pid = id;
+        this.td = td;
+        this.pageSize = page.capacity();
+        if (pageSize > 0xffff) {
+            throw new IOException("slotted pages hold at most 65535 bytes");
+        }
+        this.data = page;
+        int slots = getNumSlots();
+        if (HEADER_SIZE + slots * SLOT_SIZE > dataStart() || dataStart() > pageSize) {
+            throw new IOException("corrupt slotted page header");
+        }
+        for (int i = 0; i < slots; i++) {
+            int len = recordLength(i);
+            if (len != 0 && (recordOffset(i) < dataStart() || recordOffset(i) + len > pageSize)) {
+                throw new IOException("corrupt slot " + i);
+            }
+        }
+    }
+
+    /**
+     * Creates a page that reads and writes a page held in the given buffer
+     * instead of a copy of it.
+     *
+     * @param frame a writable buffer with at least a page of room from its
+     *     position, holding the page
+     */
+    static SlottedHeapPage wrap(HeapPageId id, ByteBuffer frame) throws IOException {
+        ByteBuffer page = frame.duplicate();
+        page.limit(page.position() + BufferPool.getPageSize());
+        return new SlottedHeapPage(id, Database.getCatalog().getTupleDesc(id.getTableId()),
+                page.slice());
+    }
+
+    /**
+     * @return the bytes of an empty page
+     */
+    public static byte[] createEmptyPageData() {
+        return new byte[BufferPool.getPageSize()];
+    }
+
+    /**
+     * @return the number of bytes a tuple takes as a record of a table with
+     *     the given schema, whose string widths may differ from t's
+     */
+    public static int recordSize(TupleDesc td, Tuple t) {
+        int size = 0;
+        for (int i = 0; i < td.numFields(); i++) {
+            if (td.getFieldType(i) == Type.STRING_TYPE) {
+                int len = ((StringField) t.getField(i)).getValue().length();
+                size += 2 + Math.min(len, td.getFieldWidth(i));
+            } else {
+                size += td.getFieldType(i).getLen();
+            }
+        }
+        return size;
+    }
+
+    public HeapPageId getId() {
+        return pid;
+    }
+
+    /** @return the number of entries in the slot directory, used or not */
+    public int getNumSlots() {
+        return u16(0);
+    }
+
+    /** @return true if the given slot holds a tuple */
+    public boolean isSlotUsed(int i) {
+        return i >= 0 && i < getNumSlots() && recordLength(i) != 0;
+    }
+
+    /** @return the number of tuples on this page */
+    public int getNumTuples() {
+        int n = 0;
+        for (int i = 0; i < getNumSlots(); i++) {
+            if (recordLength(i) != 0) {
+                n++;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * @return the number of bytes free on this page, counting the gaps left
+     *     by deleted records
+     */
+    public int getFreeBytes() {
+        int used = HEADER_SIZE + getNumSlots() * SLOT_SIZE;
+        for (int i = 0; i < getNumSlots(); i++) {
+            used += recordLength(i);
+        }
+        return pageSize - used;
+    }
+
+    /**
+     * @return the free bytes, less room for a new slot, in units of
+     *     SPACE_UNIT bytes
+     */
+    public int getFreeSpace() {
+        return Math.max(0, getFreeBytes() - SLOT_SIZE) / SPACE_UNIT;
+    }
+
+    /** @return the size of t's record in units of SPACE_UNIT bytes */
+    public int spaceFor(Tuple t) {
+        return (recordSize(td, t) + SPACE_UNIT - 1) / SPACE_UNIT;
+    }
+
+    /**
+     * Adds the specified tuple to the page, reusing a free slot if there is
+     * one. Records are moved together first if the free space is split up.
+     *
+     * @throws DbException if the page is full or the tupledesc is mismatch
+     */
+    public void insertTuple(Tuple t) throws DbException {
+        if (!t.getTupleDesc().equals(td)) {
+            throw new DbException("tupledesc is mismatch");
+        }
+
+        int len = recordSize(td, t);
+        int slots = getNumSlots();
+        int slot = 0;
+        while (slot < slots && recordLength(slot) != 0) {
+            slot++;
+        }
+        int need = len + (slot == slots ? SLOT_SIZE : 0);
+        if (need > getFreeBytes()) {
+            throw new DbException("page is full");
+        }
+
+        beforeImage.save(this);
+        if (dataStart() - (HEADER_SIZE + slots * SLOT_SIZE) < need) {
+            compact();
+        }
+        if (slot == slots) {
+            putU16(0, slots + 1);
+        }
+        int off = dataStart() - len;
+        writeRecord(off, t);
+        setDataStart(off);
+        setSlot(slot, off, len);
+        t.setRecordId(new RecordId(pid, slot));
+    }
+
+    /**
+     * Deletes the specified tuple from the page. Its slot is freed, and the
+     * directory shrinks if it was the last one.
+     *
+     * @throws DbException if this tuple is not on this page, or its slot is
+     *     already free
+     */
+    public void deleteTuple(Tuple t) throws DbException {
+        RecordId rid = t.getRecordId();
+        if (rid == null || !pid.equals(rid.getPageId())) {
+            throw new DbException("tuple absent");
+        }
+        int slot = rid.getTupleNumber();
+        if (!isSlotUsed(slot)) {
+            throw new DbException("slot already free");
+        }
+
+        beforeImage.save(this);
+        int off = recordOffset(slot);
+        int len = recordLength(slot);
+        setSlot(slot, 0, 0);
+        for (int i = off; i < off + len; i++) {
+            data.put(i, (byte) 0);
+        }
+        if (off == dataStart()) {
+            setDataStart(off + len);
+        }
+        int slots = getNumSlots();
+        while (slots > 0 && recordLength(slots - 1) == 0) {
+            slots--;
+        }
+        putU16(0, slots);
+        if (slots == 0) {
+            setDataStart(pageSize);
+        }
+    }
+
+    /**
+     * @return an iterator over the tuples on this page, each decoded when it
+     *     is asked for
+     */
+    public Iterator<Tuple> iterator() {
+        return new Iterator<Tuple>() {
+            private int next = nextUsedSlot(0);
+
+            @Override
+            public boolean hasNext() {
+                return next >= 0;
+            }
+
+            @Override
+            public Tuple next() {
+                if (next < 0) {
+                    throw new NoSuchElementException();
+                }
+                Tuple t = readRecord(next);
+                next = nextUsedSlot(next + 1);
+                return t;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    /** @return the first used slot at or after the given one, or -1 */
+    private int nextUsedSlot(int from) {
+        int slots = getNumSlots();
+        for (int i = from; i < slots; i++) {
+            if (recordLength(i) != 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /** Decodes the record in a used slot. */
+    private Tuple readRecord(int slot) {
+        ByteBuffer buf = data.duplicate();
+        buf.position(recordOffset(slot));
+        Tuple t = new Tuple(td);
+        for (int i = 0; i < td.numFields(); i++) {
+            if (td.getFieldType(i) == Type.STRING_TYPE) {
+                byte[] bs = new byte[buf.getShort() & 0xffff];
+                buf.get(bs);
+                t.setField(i, new StringField(new String(bs), td.getFieldWidth(i)));
+            } else {
+                t.setField(i, new IntField(buf.getInt()));
+            }
+        }
+        t.setRecordId(new RecordId(pid, slot));
+        return t;
+    }
+
+    /** Encodes a tuple as a record at the given offset. */
+    private void writeRecord(int off, Tuple t) {
+        ByteBuffer buf = data.duplicate();
+        buf.position(off);
+        for (int i = 0; i < td.numFields(); i++) {
+            if (td.getFieldType(i) == Type.STRING_TYPE) {
+                String s = ((StringField) t.getField(i)).getValue();
+                if (s.length() > td.getFieldWidth(i)) {
+                    s = s.substring(0, td.getFieldWidth(i));
+                }
+                buf.putShort((short) s.length());
+                // one byte per char, as StringField.serialize writes them
+                for (int c = 0; c < s.length(); c++) {
+                    buf.put((byte) s.charAt(c));
+                }
+            } else {
+                buf.putInt(((IntField) t.getField(i)).getValue());
+            }
+        }
+    }
+
+    /** Moves all records to the end of the page, merging the free space. */
+    private void compact() {
+        byte[] old = getPageData();
+        int pos = pageSize;
+        for (int i = 0; i < getNumSlots(); i++) {
+            int len = recordLength(i);
+            if (len == 0) {
+                continue;
+            }
+            pos -= len;
+            int from = u16(HEADER_SIZE + i * SLOT_SIZE);
+            for (int b = 0; b < len; b++) {
+                data.put(pos + b, old[from + b]);
+            }
+            setSlot(i, pos, len);
+        }
+        for (int b = HEADER_SIZE + getNumSlots() * SLOT_SIZE; b < pos; b++) {
+            data.put(b, (byte) 0);
+        }
+        setDataStart(pos);
+    }
+
+    private int dataStart() {
+        int start = u16(2);
+        return start == 0 ? pageSize : start;
+    }
+
+    private void setDataStart(int start) {
+        putU16(2, start == pageSize ? 0 : start);
+    }
+
+    private int recordOffset(int slot) {
+        return u16(HEADER_SIZE + slot * SLOT_SIZE);
+    }
+
+    private int recordLength(int slot) {
+        return u16(HEADER_SIZE + slot * SLOT_SIZE + 2);
+    }
+
+    private void setSlot(int slot, int off, int len) {
+        putU16(HEADER_SIZE + slot * SLOT_SIZE, off);
+        putU16(HEADER_SIZE + slot * SLOT_SIZE + 2, len);
+    }
+
+    private int u16(int index) {
+        return data.getShort(index) & 0xffff;
+    }
+
+    private void putU16(int index, int value) {
+        data.putShort(index, (short) value);
+    }
+
+    public byte[] getPageData() {
+        byte[] out = new byte[pageSize];
+        data.duplicate().get(out);
+        return out;
+    }
+
+    public void markDirty(boolean dirty, TransactionId tid) {
+        this.tid = dirty ? tid : null;
+    }
+
+    public TransactionId isDirty() {
+        return tid;
+    }
+
+    public SlottedHeapPage getBeforeImage() {
+        byte[] before = beforeImage.get(this);
+        try {
+            return new SlottedHeapPage(pid, td, ByteBuffer.wrap(before));
+        } catch (IOException e) {
+            // we parsed it OK before
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public void setBeforeImage() {
+        beforeImage.set();
+    }
+}
@@ -0,0 +1,364 @@
+package simpledb;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * The SortMergeJoin operator joins two inputs sorted on their join fields
+ * by reading them side by side. Inputs that are not known to come sorted
+ * already are sorted first by an {@link OrderBy}; inputs known to be
+ * sorted are an ascending OrderBy or an {@link IndexScan} on the join
+ * field, or a Filter over one of these.
+ * <p>
+ * For EQUALS, both inputs are read once, holding only the run of child2
+ * tuples with the current key, which every child1 tuple with that key is
+ * joined with. For the range comparisons, one input is streamed and the
+ * other is held: child1 is streamed for GREATER_THAN and GREATER_THAN_OR_EQ
+ * and child2 for LESS_THAN and LESS_THAN_OR_EQ, so that the held tuples
+ * matching a streamed tuple are always a prefix of the sorted held input,
+ * which only grows as the streamed key does. Each streamed tuple is joined
+ * with the prefix found so far without comparing the pairs, and the held
+ * tuples after it are compared until one does not match.
+ * <p>
+ * The held input stays in memory while it fits in a given number of pages'
+ * worth of tuples. When it does not, it is written to a {@link RunFile}
+ * and its prefix is read again from the start of the file for each
+ * streamed tuple.
+ * <p>
+ * As for {@link Join}, results are the concatenation of a tuple of child1
+ * and a tuple of child2.
+ */
+public class SortMergeJoin extends Operator {
+
+    private static final long serialVersionUID = 1L;
+
+    /** Default number of pages of tuples a range join holds in memory */
+    public static final int DEFAULT_MEMORY_PAGES = 1000;
+
+    private static int memoryPages = DEFAULT_MEMORY_PAGES;
+
+    private JoinPredicate p;
+    private OpIterator child1;
+    private OpIterator child2;
+    private final int budgetPages;
+
+    /** The children, or the OrderBy operators sorting them */
+    private OpIterator left;
+    private OpIterator right;
+
+    /** The child1 tuple being joined, or for range comparisons the streamed tuple */
+    private Tuple l;
+
+    /** For EQUALS, the run of child2 tuples with the key of l, and the next child2 tuple */
+    private ArrayList<Tuple> run;
+    private Tuple r;
+
+    /** For range comparisons, the held input in memory, or null if it is not read yet or on disk */
+    private transient ArrayList<Tuple> held;
+    /** For range comparisons, the held input written to disk, and the iterator reading it back */
+    private transient RunFile heldRun;
+    private transient DbFileIterator heldIt;
+    /** For range comparisons, the length of the held prefix known to match l */
+    private int bound;
+
+    /** The next index in run, or the number of held tuples already read for l */
+    private int idx;
+
+    /**
+     * Constructor. Accepts two children to join and the predicate to join them
+     * on
+     *
+     * @param p
+     *            The predicate to use to join the children; its operator
+     *            must be EQUALS or one of the range comparisons
+     * @param child1
+     *            Iterator for the left relation to join
+     * @param child2
+     *            Iterator for the right relation to join
+     */
+    public SortMergeJoin(JoinPredicate p, OpIterator child1, OpIterator child2) {
+        this(p, child1, child2, memoryPages);
+    }
+
+    /**
+     * Constructor for a join with its own memory budget.
+     *
+     * @param memoryPages
+     *            The number of pages' worth of tuples a range join may hold
+     *            in memory before it writes the held input to disk
+     */
+    public SortMergeJoin(JoinPredicate p, OpIterator child1, OpIterator child2, int memoryPages) {
+        if (!supports(p.getOperator())) {
+            throw new IllegalArgumentException("sort-merge join cannot evaluate " + p.getOperator());
+        }
+        if (memoryPages < 1) {
+            throw new IllegalArgumentException("a join needs at least a page of memory");
+        }
+        this.p = p;
+        this.child1 = child1;
+        this.child2 = child2;
+        this.budgetPages = memoryPages;
+    }
+
+    /**
+     * Sets the number of pages of tuples range joins made from now on hold
+     * in memory.
+     */
+    public static void setMemoryPages(int pages) {
+        memoryPages = pages;
+    }
+
+    /** Puts the memory of joins made from now on back to the default. */
+    public static void resetMemoryPages() {
+        memoryPages = DEFAULT_MEMORY_PAGES;
+    }
+
+    /** @return the number of pages of tuples joins made now hold in memory */
+    public static int getMemoryPages() {
+        return memoryPages;
+    }
+
+    /** @return true if a SortMergeJoin can evaluate a join with the given operator */
+    public static boolean supports(Predicate.Op op) {
+        switch (op) {
+        case EQUALS:
+        case LESS_THAN:
+        case LESS_THAN_OR_EQ:
+        case GREATER_THAN:
+        case GREATER_THAN_OR_EQ:
+            return true;
+        default:
+            return false;
+        }
+    }
+
+    /**
+     * @return true if the tuples of an operator are known to come in
+     *     ascending order of the given field
+     */
+    public static boolean isSortedOn(OpIterator it, int field) {
+        if (it instanceof OrderBy) {
+            OrderBy o = (OrderBy) it;
+            return o.isASC() && o.getOrderByField() == field;
+        }
+        if (it instanceof IndexScan) {
+            return ((IndexScan) it).getPredicate().getField() == field;
+        }
+        if (it instanceof Filter) {
+            return isSortedOn(((Filter) it).getChildren()[0], field);
+        }
+        return false;
+    }
+
+    public JoinPredicate getJoinPredicate() {
+        return this.p;
+    }
+
+    public TupleDesc getTupleDesc() {
+        return TupleDesc.merge(child1.getTupleDesc(), child2.getTupleDesc());
+    }
+
+    public void open() throws DbException, NoSuchElementException,
+            TransactionAbortedException {
+        left = isSortedOn(child1, p.getField1()) ? child1
+                : new OrderBy(p.getField1(), true, child1);
+        right = isSortedOn(child2, p.getField2()) ? child2
+                : new OrderBy(p.getField2(), true, child2);
+        left.open();
+        right.open();
+        reset();
+        super.open();
+    }
+
+    public void close() {
+        super.close();
+        if (left != null && left != child1) {
+            left.close();
+        }
+        if (right != null && right != child2) {
+            right.close();
+        }
+        child1.close();
+        child2.close();
+        left = null;
+        right = null;
+        run = null;
+        dropHeld();
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException {
+        left.rewind();
+        right.rewind();
+        reset();
+    }
+
+    private void reset() {
+        l = null;
+        r = null;
+        run = new ArrayList<Tuple>();
+        dropHeld();
+        bound = 0;
+        idx = 0;
+    }
+
+    /** Lets go of the held input, deleting it from disk if it was written there. */
+    private void dropHeld() {
+        held = null;
+        if (heldIt != null) {
+            heldIt.close();
+            heldIt = null;
+        }
+        if (heldRun != null) {
+            heldRun.delete();
+            heldRun = null;
+        }
+    }
+
+    /** @return true if a range join streams child1 and holds child2 */
+    private boolean streamsLeft() {
+        Predicate.Op op = p.getOperator();
+        return op == Predicate.Op.GREATER_THAN || op == Predicate.Op.GREATER_THAN_OR_EQ;
+    }
+
+    /** @return a negative number, zero or a positive number as a is less than, equal to or greater than b */
+    private static int compare(Field a, Field b) {
+        if (a.compare(Predicate.Op.EQUALS, b)) {
+            return 0;
+        }
+        return a.compare(Predicate.Op.LESS_THAN, b) ? -1 : 1;
+    }
+
+    /**
+     * Returns the next tuple generated by the join, or null if there are no
+     * more tuples.
+     *
+     * @return The next matching tuple.
+     */
+    protected Tuple fetchNext() throws TransactionAbortedException, DbException {
+        if (p.getOperator() == Predicate.Op.EQUALS) {
+            return fetchEqual();
+        }
+        return fetchRange();
+    }
+
+    private Tuple fetchEqual() throws TransactionAbortedException, DbException {
+        int f1 = p.getField1();
+        int f2 = p.getField2();
+        while (true) {
+            if (l != null && idx < run.size()) {
+                return Join.combine(getTupleDesc(), l, run.get(idx++));
+            }
+            if (!left.hasNext()) {
+                return null;
+            }
+            Tuple next = left.next();
+            Field a = next.getField(f1);
+            idx = 0;
+            if (l != null && !run.isEmpty() && compare(a, l.getField(f1)) == 0) {
+                // another child1 tuple with the same key joins the same run
+                l = next;
+                continue;
+            }
+            l = next;
+            run.clear();
+            if (r == null && right.hasNext()) {
+                r = right.next();
+            }
+            while (r != null && compare(r.getField(f2), a) < 0) {
+                r = right.hasNext() ? right.next() : null;
+            }
+            if (r == null) {
+                // no child2 tuple is left for this or any greater key
+                return null;
+            }
+            while (r != null && compare(r.getField(f2), a) == 0) {
+                run.add(r);
+                r = right.hasNext() ? right.next() : null;
+            }
+        }
+    }
+
+    private Tuple fetchRange() throws TransactionAbortedException, DbException {
+        boolean streamsLeft = streamsLeft();
+        OpIterator streamed = streamsLeft ? left : right;
+        if (held == null && heldRun == null) {
+            hold(streamsLeft ? right : left);
+        }
+        while (true) {
+            if (l != null) {
+                Tuple h = nextHeld();
+                if (h != null && idx >= bound) {
+                    // past the prefix known to match, so compare
+                    if (streamsLeft ? p.filter(l, h) : p.filter(h, l)) {
+                        bound++;
+                    } else {
+                        h = null;
+                    }
+                }
+                if (h != null) {
+                    idx++;
+                    return streamsLeft ? Join.combine(getTupleDesc(), l, h)
+                            : Join.combine(getTupleDesc(), h, l);
+                }
+            }
+            if (!streamed.hasNext()) {
+                return null;
+            }
+            l = streamed.next();
+            idx = 0;
+            if (heldIt != null) {
+                heldIt.rewind();
+            }
+        }
+    }
+
+    /**
+     * Reads the sorted input a range join holds, keeping it in memory if it
+     * fits in the budget and writing it to a RunFile if not.
+     */
+    private void hold(OpIterator in) throws TransactionAbortedException, DbException {
+        long maxTuples = (long) budgetPages * BufferPool.getPageSize()
+                / in.getTupleDesc().getSize();
+        held = new ArrayList<Tuple>();
+        while (in.hasNext() && held.size() <= maxTuples) {
+            held.add(in.next());
+        }
+        if (held.size() <= maxTuples) {
+            return;
+        }
+        try {
+            heldRun = new RunFile(in.getTupleDesc());
+            for (Tuple t : held) {
+                heldRun.add(t);
+            }
+            held = null;
+            while (in.hasNext()) {
+                heldRun.add(in.next());
+            }
+            heldIt = heldRun.iterator();
+        } catch (IOException e) {
+            throw new DbException("could not write join input: " + e.getMessage());
+        }
+        heldIt.open();
+    }
+
+    /** @return the next held tuple for l, or null if all have been read */
+    private Tuple nextHeld() throws TransactionAbortedException, DbException {
+        if (heldIt == null) {
+            return idx < held.size() ? held.get(idx) : null;
+        }
+        return heldIt.hasNext() ? heldIt.next() : null;
+    }
+
+    @Override
+    public OpIterator[] getChildren() {
+        return new OpIterator[]{child1, child2};
+    }
+
+    @Override
+    public void setChildren(OpIterator[] children) {
+        this.child1 = children[0];
+        this.child2 = children[1];
+    }
+
+}
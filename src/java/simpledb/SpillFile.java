@@ -0,0 +1,134 @@
+package simpledb;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * SpillFile is a temporary {@link HeapFile} that an operator writes tuples
+ * to when they do not fit in its memory, and reads back once they are all
+ * written. Pages are written and read straight from the file, without the
+ * buffer pool, as no other transaction ever sees them, and are given their
+ * schema directly, so the file is never in the catalog. The operator
+ * deletes the file when it is done with it.
+ */
+public class SpillFile {
+
+    private final TupleDesc td;
+    private final HeapFile file;
+    private final int slotsPerPage;
+
+    /** The page being filled, and the number of tuples on it */
+    private HeapPage page;
+    private int onPage;
+    private int numPages;
+    private int numTuples;
+
+    /**
+     * Creates an empty spill file for tuples of the given schema.
+     */
+    public SpillFile(TupleDesc td) throws IOException {
+        this.td = td;
+        this.file = new HeapFile(File.createTempFile("spill", ".dat"), td);
+        this.slotsPerPage = BufferPool.getPageSize() * 8 / (td.getSize() * 8 + 1);
+    }
+
+    /** @return the number of tuples added to this file */
+    public int numTuples() {
+        return numTuples;
+    }
+
+    /**
+     * Appends a copy of a tuple to this file.
+     */
+    public void add(Tuple t) throws DbException, IOException {
+        if (page == null || onPage == slotsPerPage) {
+            flush();
+            page = HeapPage.wrap(new HeapPageId(file.getId(), numPages), td,
+                    ByteBuffer.allocate(BufferPool.getPageSize()));
+        }
+        Tuple copy = new Tuple(td);
+        for (int i = 0; i < td.numFields(); i++) {
+            copy.setField(i, t.getField(i));
+        }
+        page.insertTuple(copy);
+        onPage++;
+        numTuples++;
+    }
+
+    /** Writes out the page being filled, if any. */
+    private void flush() throws IOException {
+        if (page != null) {
+            write(numPages, ByteBuffer.wrap(page.getPageData()));
+            numPages++;
+            page = null;
+            onPage = 0;
+        }
+    }
+
+    private void write(int pgNo, ByteBuffer src) throws IOException {
+        long offset = (long) pgNo * BufferPool.getPageSize();
+        FileChannel ch = file.channel();
+        while (src.hasRemaining()) {
+            ch.write(src, offset + src.position());
+        }
+    }
+
+    /**
+     * Returns an iterator over the tuples added so far, in the order they
+     * were added. No more tuples may be added once it is made.
+     */
+    public DbFileIterator iterator() throws IOException {
+        flush();
+        return new AbstractDbFileIterator() {
+            private int pgNo;
+            private java.util.Iterator<Tuple> it;
+
+            public void open() {
+                pgNo = 0;
+                it = null;
+            }
+
+            public void rewind() {
+                close();
+                open();
+            }
+
+            protected Tuple readNext() throws DbException {
+                while (it == null || !it.hasNext()) {
+                    if (pgNo >= numPages) {
+                        return null;
+                    }
+                    it = readPage(pgNo++).iterator();
+                }
+                return it.next();
+            }
+        };
+    }
+
+    private HeapPage readPage(int pgNo) throws DbException {
+        ByteBuffer buf = ByteBuffer.allocate(BufferPool.getPageSize());
+        long offset = (long) pgNo * BufferPool.getPageSize();
+        try {
+            FileChannel ch = file.channel();
+            while (buf.hasRemaining()) {
+                if (ch.read(buf, offset + buf.position()) < 0) {
+                    throw new EOFException("spill file ends inside page " + pgNo);
+                }
+            }
+            buf.clear();
+            return HeapPage.wrap(new HeapPageId(file.getId(), pgNo), td, buf);
+        } catch (IOException e) {
+            throw new DbException("could not read spilled page: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Deletes this file.
+     */
+    public void delete() {
+        file.close();
+        file.getFile().delete();
+        page = null;
+    }
+}
@@ -54,6 +54,20 @@ public class StringField implements Field {
 	 *            Where the string is written
 	 */
 	public void serialize(DataOutputStream dos) throws IOException {
+		serialize(dos, maxSize);
+	}
+
+	/**
+	 * Write this string to dos as a string of at most maxSize characters,
+	 * which may differ from the size it was created with. Always writes
+	 * maxSize + 4 bytes, as {@link #serialize(DataOutputStream)} does.
+	 * 
+	 * @param dos
+	 *            Where the string is written
+	 * @param maxSize
+	 *            The maximum size of the string as written
+	 */
+	public void serialize(DataOutputStream dos, int maxSize) throws IOException {
 		String s = value;
 		int overflow = maxSize - s.length();
 		if (overflow < 0) {
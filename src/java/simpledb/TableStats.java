@@ -1,5 +1,7 @@
 package simpledb;
 
+import java.io.IOException;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
@@ -66,6 +68,22 @@ public class TableStats {
      */
     static final int NUM_HIST_BINS = 100;
 
+    /** Cost of reading one page of this table. */
+    private final int ioCostPerPage;
+
+    /** Number of pages in the table. */
+    private final int numPages;
+
+    /** Number of tuples in the table. */
+    private int numTuples;
+
+    /** Histograms of the int fields, by field index. */
+    private final HashMap<Integer, IntHistogram> intHists = new HashMap<Integer, IntHistogram>();
+
+    /** Histograms of the string fields, by field index. */
+    private final HashMap<Integer, StringHistogram> stringHists =
+            new HashMap<Integer, StringHistogram>();
+
     /**
      * Create a new TableStats object, that keeps track of statistics on each
      * column of a table
@@ -84,7 +102,72 @@ public class TableStats {
         // You should try to do this reasonably efficiently, but you don't
         // necessarily have to (for example) do everything
         // in a single scan of the table.
-        // some code goes here
+        this.ioCostPerPage = ioCostPerPage;
+        DbFile f = Database.getCatalog().getDatabaseFile(tableid);
+        if (f instanceof HeapFile) {
+            this.numPages = ((HeapFile) f).numPages();
+        } else if (f instanceof ColumnarFile) {
+            this.numPages = ((ColumnarFile) f).numPages();
+        } else if (f instanceof BTreeFile) {
+            this.numPages = ((BTreeFile) f).numPages();
+        } else {
+            this.numPages = 0;
+        }
+
+        // the first scan finds the range of each int field, and the second
+        // fills in histograms over those ranges
+        TupleDesc td = f.getTupleDesc();
+        int[] mins = new int[td.numFields()];
+        int[] maxs = new int[td.numFields()];
+        Arrays.fill(mins, Integer.MAX_VALUE);
+        Arrays.fill(maxs, Integer.MIN_VALUE);
+        TransactionId tid = new TransactionId();
+        DbFileIterator it = f.iterator(tid);
+        try {
+            it.open();
+            while (it.hasNext()) {
+                Tuple t = it.next();
+                numTuples++;
+                for (int i = 0; i < td.numFields(); i++) {
+                    if (td.getFieldType(i) == Type.INT_TYPE) {
+                        int v = ((IntField) t.getField(i)).getValue();
+                        mins[i] = Math.min(mins[i], v);
+                        maxs[i] = Math.max(maxs[i], v);
+                    }
+                }
+            }
+            for (int i = 0; i < td.numFields(); i++) {
+                if (td.getFieldType(i) == Type.INT_TYPE) {
+                    intHists.put(i, numTuples == 0 ? new IntHistogram(NUM_HIST_BINS, 0, 0)
+                            : new IntHistogram(NUM_HIST_BINS, mins[i], maxs[i]));
+                } else {
+                    stringHists.put(i, new StringHistogram(NUM_HIST_BINS));
+                }
+            }
+            it.rewind();
+            while (it.hasNext()) {
+                Tuple t = it.next();
+                for (int i = 0; i < td.numFields(); i++) {
+                    if (td.getFieldType(i) == Type.INT_TYPE) {
+                        intHists.get(i).addValue(((IntField) t.getField(i)).getValue());
+                    } else {
+                        stringHists.get(i).addValue(((StringField) t.getField(i)).getValue());
+                    }
+                }
+            }
+            it.close();
+            Database.getBufferPool().transactionComplete(tid);
+        } catch (DbException | TransactionAbortedException | IOException e) {
+            throw new RuntimeException("could not compute statistics for table " + tableid, e);
+        }
+    }
+
+    /**
+     * @return the number of pages in the table when the statistics were
+     *         computed
+     */
+    public int numPages() {
+        return numPages;
     }
 
     /**
@@ -100,8 +183,7 @@ public class TableStats {
      * @return The estimated cost of scanning the table.
      */
     public double estimateScanCost() {
-        // some code goes here
-        return 0;
+        return (double) numPages * ioCostPerPage;
     }
 
     /**
@@ -114,8 +196,7 @@ public class TableStats {
      *         selectivityFactor
      */
     public int estimateTableCardinality(double selectivityFactor) {
-        // some code goes here
-        return 0;
+        return (int) (numTuples * selectivityFactor);
     }
 
     /**
@@ -129,7 +210,12 @@ public class TableStats {
      * expected selectivity. You may estimate this value from the histograms.
      * */
     public double avgSelectivity(int field, Predicate.Op op) {
-        // some code goes here
+        if (intHists.containsKey(field)) {
+            return intHists.get(field).avgSelectivity();
+        }
+        if (stringHists.containsKey(field)) {
+            return stringHists.get(field).avgSelectivity();
+        }
         return 1.0;
     }
 
@@ -147,7 +233,13 @@ public class TableStats {
      *         predicate
      */
     public double estimateSelectivity(int field, Predicate.Op op, Field constant) {
-        // some code goes here
+        if (constant instanceof IntField && intHists.containsKey(field)) {
+            return intHists.get(field).estimateSelectivity(op, ((IntField) constant).getValue());
+        }
+        if (constant instanceof StringField && stringHists.containsKey(field)) {
+            return stringHists.get(field).estimateSelectivity(op,
+                    ((StringField) constant).getValue());
+        }
         return 1.0;
     }
 
@@ -155,8 +247,7 @@ public class TableStats {
      * return the total number of tuples in this table
      * */
     public int totalTuples() {
-        // some code goes here
-        return 0;
+        return numTuples;
     }
 
 }
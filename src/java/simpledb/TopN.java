@@ -0,0 +1,194 @@
+package simpledb;
+
+import java.util.*;
+
+/**
+ * TopN is an operator that implements an ORDER BY followed by a LIMIT of n:
+ * it returns the first n tuples its child would have in order, holding no
+ * more than n of them at once. It reads the child in a single pass, keeping
+ * the best n tuples so far in a heap with the worst of them on top, so each
+ * tuple costs O(log n). Tuples are compared by their normalized keys (see
+ * {@link TupleComparator}) first, so most of the tuples that do not make the
+ * top n are turned away comparing two longs. Equal tuples keep the order the
+ * child gave them, as they do in an {@link OrderBy}.
+ */
+public class TopN extends Operator {
+
+    private static final long serialVersionUID = 1L;
+    private OpIterator child;
+    private TupleDesc td;
+    private int orderByField;
+    private String orderByFieldName;
+    private boolean asc;
+    private final int[] orderByFields;
+    private final boolean[] ascending;
+    private final int limit;
+
+    /** The result, best tuple first, and the position in it */
+    private transient Tuple[] top;
+    private int idx;
+
+    /** A tuple in the heap, with its normalized key and position in the child */
+    private static class Entry {
+        final Tuple t;
+        final long key;
+        final long seq;
+
+        Entry(Tuple t, long key, long seq) {
+            this.t = t;
+            this.key = key;
+            this.seq = seq;
+        }
+    }
+
+    /**
+     * Creates a new TopN node over the tuples from the iterator.
+     *
+     * @param orderbyField
+     *            the field to which the sort is applied.
+     * @param asc
+     *            true if the sort order is ascending.
+     * @param child
+     *            the tuples to sort.
+     * @param limit
+     *            the number of tuples to return.
+     */
+    public TopN(int orderbyField, boolean asc, OpIterator child, int limit) {
+        this(new int[] { orderbyField }, new boolean[] { asc }, child, limit);
+    }
+
+    /**
+     * Creates a new TopN node sorting on several fields.
+     *
+     * @param orderbyFields
+     *            the fields to which the sort is applied, most significant
+     *            first.
+     * @param asc
+     *            for each field, true if its sort order is ascending.
+     */
+    public TopN(int[] orderbyFields, boolean[] asc, OpIterator child, int limit) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("negative limit " + limit);
+        }
+        if (orderbyFields.length == 0 || orderbyFields.length != asc.length) {
+            throw new IllegalArgumentException("need a direction for each of at least one field");
+        }
+        this.child = child;
+        td = child.getTupleDesc();
+        this.orderByFields = orderbyFields.clone();
+        this.ascending = asc.clone();
+        this.orderByField = orderbyFields[0];
+        this.orderByFieldName = td.getFieldName(orderbyFields[0]);
+        this.asc = asc[0];
+        this.limit = limit;
+    }
+
+    public boolean isASC() {
+        return this.asc;
+    }
+
+    public int getOrderByField() {
+        return this.orderByField;
+    }
+
+    public String getOrderFieldName() {
+        return this.orderByFieldName;
+    }
+
+    /** @return the fields sorted on, most significant first */
+    public int[] getOrderByFields() {
+        return orderByFields.clone();
+    }
+
+    /** @return for each field sorted on, true if it is in ascending order */
+    public boolean[] getAscending() {
+        return ascending.clone();
+    }
+
+    /** @return the most tuples this operator returns */
+    public int getLimit() {
+        return limit;
+    }
+
+    public TupleDesc getTupleDesc() {
+        return td;
+    }
+
+    public void open() throws DbException, NoSuchElementException,
+            TransactionAbortedException {
+        child.open();
+        final TupleComparator order = new TupleComparator(orderByFields, ascending);
+        final boolean exact = order.keyIsExact(td);
+        // the worst tuple kept, the one to drop first, is on top
+        Comparator<Entry> worstFirst = new Comparator<Entry>() {
+            public int compare(Entry a, Entry b) {
+                int c = Long.compare(b.key, a.key);
+                if (c == 0 && !exact) {
+                    c = order.compare(b.t, a.t);
+                }
+                return c != 0 ? c : Long.compare(b.seq, a.seq);
+            }
+        };
+        PriorityQueue<Entry> heap = new PriorityQueue<Entry>(Math.max(1, limit), worstFirst);
+        long seq = 0;
+        if (limit > 0) {
+            while (child.hasNext()) {
+                Tuple t = child.next();
+                long key = order.key(t);
+                if (heap.size() == limit && key > heap.peek().key) {
+                    seq++;
+                    continue;
+                }
+                Entry e = new Entry(t, key, seq++);
+                if (heap.size() < limit) {
+                    heap.add(e);
+                } else if (worstFirst.compare(e, heap.peek()) > 0) {
+                    heap.poll();
+                    heap.add(e);
+                }
+            }
+        }
+        top = new Tuple[heap.size()];
+        for (int i = top.length - 1; i >= 0; i--) {
+            top[i] = heap.poll().t;
+        }
+        idx = 0;
+        super.open();
+    }
+
+    public void close() {
+        super.close();
+        child.close();
+        top = null;
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException {
+        idx = 0;
+    }
+
+    /**
+     * Operator.fetchNext implementation. Returns the best tuples of the
+     * child in order
+     *
+     * @return The next tuple in the ordering, or null if there are no more
+     *         tuples
+     */
+    protected Tuple fetchNext() throws NoSuchElementException,
+            TransactionAbortedException, DbException {
+        if (top != null && idx < top.length) {
+            return top[idx++];
+        }
+        return null;
+    }
+
+    @Override
+    public OpIterator[] getChildren() {
+        return new OpIterator[] { this.child };
+    }
+
+    @Override
+    public void setChildren(OpIterator[] children) {
+        this.child = children[0];
+    }
+
+}
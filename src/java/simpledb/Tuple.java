@@ -1,6 +1,7 @@
 package simpledb;
 
 import java.io.Serializable;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.Iterator;
 import java.util.StringJoiner;
@@ -11,6 +12,10 @@ import simpledb.TupleDesc.TDItem;
  * Tuple maintains information about the contents of a tuple. Tuples have a
  * specified schema specified by a TupleDesc object and contain Field objects
  * with the data for each field.
+ * <p>
+ * A tuple read from a page may instead hold its fields still encoded, as
+ * they are stored on disk; each field is then decoded the first time it is
+ * asked for.
  */
 public class Tuple implements Serializable {
 
@@ -20,6 +25,9 @@ public class Tuple implements Serializable {
     private RecordId rid;
     private Field[] fields;
 
+    /** The encoded fields not decoded yet, or null. */
+    private byte[] raw;
+
     /**
      * Create a new tuple with the specified schema (type).
      *
@@ -33,6 +41,20 @@ public class Tuple implements Serializable {
         fields = new Field[schema.numFields()];
     }
 
+    /**
+     * Create a tuple whose fields are decoded on demand from their encoding
+     * in the on-disk format, which the tuple takes over.
+     *
+     * @param td
+     *            the schema of this tuple.
+     * @param raw
+     *            td.getSize() bytes holding the fields.
+     */
+    Tuple(TupleDesc td, byte[] raw) {
+        this(td);
+        this.raw = raw;
+    }
+
     /**
      * @return The TupleDesc representing the schema of this tuple.
      */
@@ -77,7 +99,23 @@ public class Tuple implements Serializable {
      *            field index to return. Must be a valid index.
      */
     public Field getField(int i) {
-        return this.fields[i];
+        Field f = this.fields[i];
+        if (f == null && raw != null) {
+            f = decode(i);
+            this.fields[i] = f;
+        }
+        return f;
+    }
+
+    /** Decodes the ith field from its encoding. */
+    private Field decode(int i) {
+        ByteBuffer buf = ByteBuffer.wrap(raw);
+        buf.position(schema.getOffset(i));
+        try {
+            return schema.getFieldType(i).parse(buf, schema.getFieldWidth(i));
+        } catch (java.text.ParseException e) {
+            throw new IllegalStateException("corrupt field " + i, e);
+        }
     }
 
     /**
@@ -90,8 +128,8 @@ public class Tuple implements Serializable {
      */
     public String toString() {
         StringJoiner sj = new StringJoiner(" ");
-        for (Field f : this.fields) {
-            sj.add(f.toString());
+        for (int i = 0; i < fields.length; i++) {
+            sj.add(getField(i).toString());
         }
 
         return sj.toString();
@@ -113,7 +151,7 @@ public class Tuple implements Serializable {
 
             @Override
             public Field next() {
-                return fields[curIdx++];
+                return getField(curIdx++);
             }
 
             @Override
@@ -130,6 +168,13 @@ public class Tuple implements Serializable {
      * */
     public void resetTupleDesc(TupleDesc td)
     {
+        // the encoding is only laid out for the old one
+        if (raw != null) {
+            for (int i = 0; i < fields.length; i++) {
+                getField(i);
+            }
+            raw = null;
+        }
         this.schema = td;
     }
 }
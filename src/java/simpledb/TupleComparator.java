@@ -0,0 +1,229 @@
+package simpledb;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Orders tuples on one or more of their fields, each ascending or
+ * descending, the first field deciding unless it is equal, then the next,
+ * and so on.
+ * <p>
+ * Besides comparing two tuples, it sorts lists of them through normalized
+ * keys: each tuple is given a long whose order matches that of the tuples as
+ * far as it goes, made from the leading sort fields. Integers take 32 bits
+ * each, and strings their first characters in 16 bits each. Most
+ * comparisons of a sort are then of two longs, and only tuples whose keys
+ * are equal are compared field by field; keys of at most two integer fields
+ * are the whole tuple order, and are never compared further. The keys are
+ * sorted in arrays of longs by a merge sort, whose halves are sorted in
+ * parallel in a fork-join pool when a list is large.
+ */
+class TupleComparator implements Comparator<Tuple> {
+    private final int[] fields;
+    private final boolean[] asc;
+
+    public TupleComparator(int field, boolean asc) {
+        this(new int[] { field }, new boolean[] { asc });
+    }
+
+    /**
+     * @param fields
+     *            the fields to order on, most significant first
+     * @param asc
+     *            for each field, true if it is in ascending order
+     */
+    public TupleComparator(int[] fields, boolean[] asc) {
+        if (fields.length == 0 || fields.length != asc.length) {
+            throw new IllegalArgumentException("need a direction for each of at least one field");
+        }
+        this.fields = fields.clone();
+        this.asc = asc.clone();
+    }
+
+    public int compare(Tuple o1, Tuple o2) {
+        for (int i = 0; i < fields.length; i++) {
+            int c = compareFields(o1.getField(fields[i]), o2.getField(fields[i]));
+            if (c != 0) {
+                return asc[i] ? c : -c;
+            }
+        }
+        return 0;
+    }
+
+    /** Compares two fields of the same type in one step. */
+    private static int compareFields(Field a, Field b) {
+        if (a instanceof IntField) {
+            return Integer.compare(((IntField) a).getValue(), ((IntField) b).getValue());
+        }
+        return ((StringField) a).getValue().compareTo(((StringField) b).getValue());
+    }
+
+    /** Lists shorter than this are sorted by one thread */
+    private static final int PARALLEL_THRESHOLD = 8192;
+    /** Runs shorter than this are sorted by insertion */
+    private static final int INSERTION_THRESHOLD = 32;
+
+    /**
+     * Sorts a list of tuples of the given schema. The sort is stable.
+     */
+    public void sort(List<Tuple> tuples, TupleDesc td) {
+        int n = tuples.size();
+        if (n < 2) {
+            return;
+        }
+        Tuple[] ts = tuples.toArray(new Tuple[n]);
+        long[] keys = new long[n];
+        int[] idx = new int[n];
+        for (int i = 0; i < n; i++) {
+            keys[i] = key(ts[i]);
+            idx[i] = i;
+        }
+        KeySort sort = new KeySort(ts, keys, idx, keyIsExact(td), 0, n);
+        if (n < PARALLEL_THRESHOLD) {
+            sort.compute();
+        } else {
+            ForkJoinPool.commonPool().invoke(sort);
+        }
+        ListIterator<Tuple> it = tuples.listIterator();
+        for (int i = 0; i < n; i++) {
+            it.next();
+            it.set(ts[idx[i]]);
+        }
+    }
+
+    /**
+     * A stable merge sort of the normalized keys of tuples, with the
+     * positions of the tuples alongside. The halves of a range are sorted as
+     * separate fork-join tasks while they are long enough to be worth it,
+     * and then merged.
+     */
+    private class KeySort extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final Tuple[] ts;
+        private final long[] keys;
+        private final int[] idx;
+        private final boolean exact;
+        private final int lo;
+        private final int hi;
+
+        KeySort(Tuple[] ts, long[] keys, int[] idx, boolean exact, int lo, int hi) {
+            this.ts = ts;
+            this.keys = keys;
+            this.idx = idx;
+            this.exact = exact;
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        /** Compares the tuples at two positions of the arrays. */
+        private int cmp(long k1, int i1, long k2, int i2) {
+            int c = Long.compare(k1, k2);
+            return c != 0 || exact ? c : TupleComparator.this.compare(ts[i1], ts[i2]);
+        }
+
+        protected void compute() {
+            if (hi - lo <= INSERTION_THRESHOLD) {
+                for (int i = lo + 1; i < hi; i++) {
+                    long k = keys[i];
+                    int x = idx[i];
+                    int j = i - 1;
+                    while (j >= lo && cmp(keys[j], idx[j], k, x) > 0) {
+                        keys[j + 1] = keys[j];
+                        idx[j + 1] = idx[j];
+                        j--;
+                    }
+                    keys[j + 1] = k;
+                    idx[j + 1] = x;
+                }
+                return;
+            }
+            int mid = (lo + hi) >>> 1;
+            KeySort left = new KeySort(ts, keys, idx, exact, lo, mid);
+            KeySort right = new KeySort(ts, keys, idx, exact, mid, hi);
+            if (hi - lo >= PARALLEL_THRESHOLD) {
+                invokeAll(left, right);
+            } else {
+                left.compute();
+                right.compute();
+            }
+            if (cmp(keys[mid - 1], idx[mid - 1], keys[mid], idx[mid]) <= 0) {
+                return;
+            }
+            // merge a copy of the left half with the right half in place
+            int len = mid - lo;
+            long[] lk = Arrays.copyOfRange(keys, lo, mid);
+            int[] li = Arrays.copyOfRange(idx, lo, mid);
+            int a = 0;
+            int b = mid;
+            int out = lo;
+            while (a < len && b < hi) {
+                if (cmp(lk[a], li[a], keys[b], idx[b]) <= 0) {
+                    keys[out] = lk[a];
+                    idx[out++] = li[a++];
+                } else {
+                    keys[out] = keys[b];
+                    idx[out++] = idx[b++];
+                }
+            }
+            System.arraycopy(lk, a, keys, out, len - a);
+            System.arraycopy(li, a, idx, out, len - a);
+        }
+    }
+
+    /** @return true if equal keys mean the tuples are equal in this order */
+    boolean keyIsExact(TupleDesc td) {
+        int bits = 0;
+        for (int f : fields) {
+            if (td.getFieldType(f) != Type.INT_TYPE) {
+                return false;
+            }
+            bits += 32;
+        }
+        return bits <= 64;
+    }
+
+    /**
+     * Returns the normalized key of a tuple: if the key of one tuple is less
+     * than that of another, the tuple comes first in this order.
+     */
+    long key(Tuple t) {
+        long key = 0;
+        int bits = 0;
+        for (int i = 0; i < fields.length && bits < 64; i++) {
+            Field f = t.getField(fields[i]);
+            long part;
+            int width;
+            boolean last = false;
+            if (f instanceof IntField) {
+                // flipping the sign bit orders ints as unsigned
+                part = (((IntField) f).getValue() ^ Integer.MIN_VALUE) & 0xFFFFFFFFL;
+                width = 32;
+            } else {
+                // as many characters as fit, and then no more fields, as the
+                // rest of the string comes before them
+                String s = ((StringField) f).getValue();
+                width = (64 - bits) / 16 * 16;
+                part = 0;
+                for (int c = 0; c < width / 16; c++) {
+                    part = part << 16 | (c < s.length() ? s.charAt(c) : 0);
+                }
+                last = true;
+            }
+            if (!asc[i]) {
+                part = ~part & (width == 64 ? -1L : (1L << width) - 1);
+            }
+            int take = Math.min(width, 64 - bits);
+            key = take == 64 ? part : key << take | part >>> (width - take);
+            bits += take;
+            if (last) {
+                break;
+            }
+        }
+        if (bits < 64) {
+            key <<= 64 - bits;
+        }
+        // compare as unsigned through the signed order of longs
+        return key ^ Long.MIN_VALUE;
+    }
+}
@@ -14,6 +14,9 @@ public class TupleDesc implements Serializable {
     // The size of this TupleDesc in bytes.
     private int byteSize;
 
+    // The byte offset of each field within a tuple.
+    private int[] offsets;
+
     /**
      * A help class to facilitate organizing the information of each field
      * */
@@ -31,12 +34,26 @@ public class TupleDesc implements Serializable {
          * */
         public final String fieldName;
 
+        /**
+         * The declared width of the field: the most characters a string
+         * field holds
+         * */
+        public final int fieldWidth;
+
         public TDItem(Type t, String n) {
+            this(t, n, Type.STRING_LEN);
+        }
+
+        public TDItem(Type t, String n, int width) {
             this.fieldName = n;
             this.fieldType = t;
+            this.fieldWidth = width;
         }
 
         public String toString() {
+            if (fieldType == Type.STRING_TYPE && fieldWidth != Type.STRING_LEN) {
+                return fieldName + "(" + fieldType + "(" + fieldWidth + "))";
+            }
             return fieldName + "(" + fieldType + ")";
         }
     }
@@ -83,17 +100,37 @@ public class TupleDesc implements Serializable {
      *            be null.
      */
     public TupleDesc(Type[] typeAr, String[] fieldAr) {
+        this(typeAr, fieldAr, null);
+    }
+
+    /**
+     * Create a new TupleDesc with typeAr.length fields with fields of the
+     * specified types and widths, with associated named fields. Strings
+     * are stored in widthAr[i] characters instead of Type.STRING_LEN.
+     * 
+     * @param typeAr
+     *            array specifying the number of and types of fields in this
+     *            TupleDesc. It must contain at least one entry.
+     * @param fieldAr
+     *            array specifying the names of the fields. Note that names may
+     *            be null.
+     * @param widthAr
+     *            array specifying the width of each field, or null for the
+     *            default widths. Widths of non-string fields are ignored.
+     */
+    public TupleDesc(Type[] typeAr, String[] fieldAr, int[] widthAr) {
         this.fields = new ArrayList<>();
         int num_fields = typeAr.length;
         for (int i = 0; i < num_fields; i++) {
-            TDItem field = new TDItem(typeAr[i], fieldAr[i]);
+            int width = widthAr == null ? Type.STRING_LEN : widthAr[i];
+            if (width < 0) {
+                throw new IllegalArgumentException("negative width of field " + i);
+            }
+            TDItem field = new TDItem(typeAr[i], fieldAr[i], width);
             this.fields.add(field);
         }
 
-        byteSize = 0;
-        for (TDItem field : this.fields) {
-            byteSize += field.fieldType.getLen();
-        }
+        computeLayout();
     }
 
     /**
@@ -111,9 +148,17 @@ public class TupleDesc implements Serializable {
             this.fields.add(field);
         }
 
+        computeLayout();
+    }
+
+    /** Sets the size of tuples and the offsets of their fields. */
+    private void computeLayout() {
+        offsets = new int[fields.size()];
         byteSize = 0;
-        for (TDItem field : this.fields) {
-            byteSize += field.fieldType.getLen();
+        for (int i = 0; i < fields.size(); i++) {
+            offsets[i] = byteSize;
+            TDItem field = fields.get(i);
+            byteSize += field.fieldType.getLen(field.fieldWidth);
         }
     }
 
@@ -159,6 +204,24 @@ public class TupleDesc implements Serializable {
         return this.fields.get(i).fieldType;
     }
 
+    /**
+     * Gets the declared width of the ith field of this TupleDesc, the most
+     * characters it holds if it is a string.
+     * 
+     * @param i
+     *            The index of the field. It must be a valid index.
+     * @return the width of the ith field
+     * @throws NoSuchElementException
+     *             if i is not a valid field reference.
+     */
+    public int getFieldWidth(int i) throws NoSuchElementException {
+        if (i < 0 || i >= numFields()) {
+            throw new NoSuchElementException();
+        }
+
+        return this.fields.get(i).fieldWidth;
+    }
+
     /**
      * Find the index of the field with a given name.
      * 
@@ -186,6 +249,20 @@ public class TupleDesc implements Serializable {
         return this.byteSize;
     }
 
+    /**
+     * @return the offset in bytes of the ith field from the start of a
+     *         tuple, in the format tuples are stored on disk
+     * @throws NoSuchElementException
+     *             if i is not a valid field reference.
+     */
+    public int getOffset(int i) throws NoSuchElementException {
+        if (i < 0 || i >= numFields()) {
+            throw new NoSuchElementException();
+        }
+
+        return this.offsets[i];
+    }
+
     /**
      * Merge two TupleDescs into one, with td1.numFields + td2.numFields fields,
      * with the first td1.numFields coming from td1 and the remaining from td2.
@@ -200,26 +277,30 @@ public class TupleDesc implements Serializable {
         // some code goes here
         Type[] typeAr = new Type[td1.numFields() + td2.numFields()];
         String[] fieldAr = new String[td1.numFields() + td2.numFields()];
+        int[] widthAr = new int[td1.numFields() + td2.numFields()];
 
         for (int i = 0; i < td1.fields.size(); i++) {
             typeAr[i] = td1.fields.get(i).fieldType;
             fieldAr[i] = td1.fields.get(i).fieldName;
+            widthAr[i] = td1.fields.get(i).fieldWidth;
         }
 
         for (int i = 0; i < td2.fields.size(); i++) {
             int offset = td1.numFields();
             typeAr[i + offset] = td2.fields.get(i).fieldType;
             fieldAr[i + offset] = td2.fields.get(i).fieldName;
+            widthAr[i + offset] = td2.fields.get(i).fieldWidth;
         }
 
-        return new TupleDesc(typeAr, fieldAr);
+        return new TupleDesc(typeAr, fieldAr, widthAr);
     }
 
     /**
      * Compares the specified object with this TupleDesc for equality. Two
      * TupleDescs are considered equal if they have the same number of items
      * and if the i-th type in this TupleDesc is equal to the i-th type in o
-     * for every i.
+     * for every i. Widths are not compared, so tuples may move between
+     * tables whose strings are declared with different widths.
      * 
      * @param o
      *            the Object to be compared for equality with this TupleDesc.
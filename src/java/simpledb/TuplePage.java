@@ -0,0 +1,49 @@
+package simpledb;
+
+import java.util.Iterator;
+
+/**
+ * TuplePage is the interface of the pages a {@link HeapFile} stores its
+ * tuples on. Besides reading and changing tuples, a page reports its free
+ * space so the file's {@link FreeSpaceMap} can track it. Free space is
+ * counted in a unit of the page's choosing, which only needs to be the
+ * same for {@link #getFreeSpace} and {@link #spaceFor}.
+ *
+ * @see HeapPage
+ * @see SlottedHeapPage
+ */
+public interface TuplePage extends Page {
+
+    /**
+     * @return an iterator over the tuples on this page, which must stay
+     *     pinned while it is used
+     */
+    public Iterator<Tuple> iterator();
+
+    /**
+     * Adds the specified tuple to the page, and sets its RecordId.
+     *
+     * @throws DbException if there is no room for it or its TupleDesc does
+     *     not match
+     */
+    public void insertTuple(Tuple t) throws DbException;
+
+    /**
+     * Deletes the specified tuple from the page.
+     *
+     * @throws DbException if the tuple is not on this page
+     */
+    public void deleteTuple(Tuple t) throws DbException;
+
+    /**
+     * @return the room left on this page, rounded down
+     */
+    public int getFreeSpace();
+
+    /**
+     * @return the room inserting t would take on a page of this format,
+     *     rounded up, so that a page whose free space is at least this much
+     *     surely has room for it
+     */
+    public int spaceFor(Tuple t);
+}
@@ -2,6 +2,10 @@ package simpledb;
 
 import java.text.ParseException;
 import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
  * Class representing a type in SimpleDB.
@@ -24,33 +28,123 @@ public enum Type implements Serializable {
             }
         }
 
+        @Override
+        public Field parse(ByteBuffer buf) throws ParseException {
+            try {
+                return new IntField(buf.getInt());
+            } catch (BufferUnderflowException e) {
+                throw new ParseException("couldn't parse", buf.position());
+            }
+        }
+
     }, STRING_TYPE() {
         @Override
         public int getLen() {
-            return STRING_LEN+4;
+            return getLen(STRING_LEN);
+        }
+
+        @Override
+        public int getLen(int width) {
+            return width+4;
         }
 
         @Override
         public Field parse(DataInputStream dis) throws ParseException {
+            return parse(dis, STRING_LEN);
+        }
+
+        @Override
+        public Field parse(DataInputStream dis, int width) throws ParseException {
             try {
                 int strLen = dis.readInt();
                 byte bs[] = new byte[strLen];
                 dis.read(bs);
-                dis.skipBytes(STRING_LEN-strLen);
-                return new StringField(new String(bs), STRING_LEN);
+                dis.skipBytes(width-strLen);
+                return new StringField(new String(bs), width);
             } catch (IOException e) {
                 throw new ParseException("couldn't parse", 0);
             }
         }
+
+        @Override
+        public Field parse(ByteBuffer buf) throws ParseException {
+            return parse(buf, STRING_LEN);
+        }
+
+        @Override
+        public Field parse(ByteBuffer buf, int width) throws ParseException {
+            try {
+                int start = buf.position();
+                int strLen = buf.getInt();
+                if (strLen < 0 || strLen > width) {
+                    throw new ParseException("bad string length " + strLen, start);
+                }
+                byte bs[] = new byte[strLen];
+                buf.get(bs);
+                buf.position(start + getLen(width));
+                return new StringField(new String(bs), width);
+            } catch (BufferUnderflowException | IllegalArgumentException e) {
+                throw new ParseException("couldn't parse", buf.position());
+            }
+        }
     };
     
     public static final int STRING_LEN = 128;
 
+    // A string type with a declared width, such as string(32).
+    private static final Pattern STRING_WIDTH = Pattern.compile("string\\((\\d+)\\)");
+
+  /**
+   * Parses the name of a type as it is declared in a schema: "int",
+   * "string", or "string(n)" for strings of at most n characters, n > 0.
+   * Case and surrounding whitespace are ignored.
+   *
+   * @return the type, or null if the name is none of these
+   */
+    public static Type forName(String name) {
+        String s = name.trim().toLowerCase();
+        if (s.equals("int"))
+            return INT_TYPE;
+        if (s.equals("string") || declaredWidth(s) > 0)
+            return STRING_TYPE;
+        return null;
+    }
+
+  /**
+   * @return the width a type name declares: n for "string(n)", and
+   *   STRING_LEN for "string", or -1 if the name declares no width
+   * @see #forName
+   */
+    public static int declaredWidth(String name) {
+        String s = name.trim().toLowerCase();
+        if (s.equals("string"))
+            return STRING_LEN;
+        Matcher m = STRING_WIDTH.matcher(s);
+        if (!m.matches())
+            return -1;
+        try {
+            int width = Integer.parseInt(m.group(1));
+            return width > 0 ? width : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
   /**
    * @return the number of bytes required to store a field of this type.
    */
     public abstract int getLen();
 
+  /**
+   * @return the number of bytes required to store a field of this type
+   *   declared with the given width; only strings have a width, the
+   *   maximum number of characters they hold.
+   * @param width the declared width of the field
+   */
+    public int getLen(int width) {
+        return getLen();
+    }
+
   /**
    * @return a Field object of the same type as this object that has contents
    *   read from the specified DataInputStream.
@@ -60,4 +154,29 @@ public enum Type implements Serializable {
    */
     public abstract Field parse(DataInputStream dis) throws ParseException;
 
+  /**
+   * Like {@link #parse(DataInputStream)}, for a field declared with the
+   * given width.
+   */
+    public Field parse(DataInputStream dis, int width) throws ParseException {
+        return parse(dis);
+    }
+
+  /**
+   * @return a Field object of the same type as this object that has contents
+   *   read from the specified buffer, which is left just past the field.
+   * @param buf The buffer to read from
+   * @throws ParseException if the data in the buffer is not of the
+   *   appropriate type.
+   */
+    public abstract Field parse(ByteBuffer buf) throws ParseException;
+
+  /**
+   * Like {@link #parse(ByteBuffer)}, for a field declared with the given
+   * width.
+   */
+    public Field parse(ByteBuffer buf, int width) throws ParseException {
+        return parse(buf);
+    }
+
 }
@@ -0,0 +1,351 @@
+package simpledb;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ZoneMap records the smallest and largest value of each int field on each
+ * page of a HeapFile, so that a scan with a predicate on such a field can
+ * skip the pages whose range cannot satisfy it. Each page has a zone: a
+ * state, which is {@link #UNKNOWN}, {@link #EMPTY} or {@link #KNOWN}, and
+ * for a known page a (min, max) pair per int field.
+ * <p>
+ * A zone need only contain the values on its page, not be tight. Inserts
+ * widen the zone before the tuple goes on the page, and deletes leave it
+ * as it is; the zone is made exact again whenever the page is written to
+ * the data file, and worked out for a page it does not know when a scan
+ * with predicates reads it. Zones of written pages are also stored in a
+ * side file next to the data file, at their page number, so a reopened
+ * file starts with them. A zone of all zeros in the side file is unknown.
+ * <p>
+ * The side file begins with a header stamped with the length and
+ * modification time of the data file as of the last stored zone. A side
+ * file whose stamp does not match the data file, because the data file was
+ * written without it or replaced, is deleted on opening, and every zone
+ * starts out unknown.
+ *
+ * @Threadsafe
+ * @see FreeSpaceMap
+ */
+public class ZoneMap {
+
+    /** State of a page whose values are not known; it is never skipped. */
+    static final int UNKNOWN = 0;
+
+    /** State of a page with no tuples. */
+    static final int EMPTY = 1;
+
+    /** State of a page whose int fields lie within its (min, max) pairs. */
+    static final int KNOWN = 2;
+
+    /** Suffix appended to the data file's name to name the side file. */
+    public static final String SUFFIX = ".zm";
+
+    /** First int of the side file's header. */
+    private static final int MAGIC = 0x5A4D0001;
+
+    /**
+     * Bytes before the first zone: the magic, the stride, then the length
+     * and modification time in nanoseconds of the data file.
+     */
+    static final int HEADER_BYTES = 24;
+
+    private final File file;
+
+    /** The data file the zones describe. */
+    private final File dataFile;
+
+    /** The int fields of the table, in order. */
+    private final int[] fields;
+
+    /** Position of each field of the table among the int fields, or -1. */
+    private final int[] position;
+
+    /** Ints per zone: the state, then a (min, max) pair per int field. */
+    private final int stride;
+
+    /** The zone of each page, stride ints apiece. Guarded by this. */
+    private int[] zones;
+
+    /** Number of pages with zones. Guarded by this. */
+    private int numPages;
+
+    /** Channel on the side file, or null until first written. Guarded by this. */
+    private FileChannel channel;
+
+    /** Set once writing the side file failed, after which it is left alone. */
+    private boolean readOnly;
+
+    /**
+     * Opens the zone map of the given data file, reading the zones stored
+     * in its side file if that exists and matches the data file. Zones past
+     * the end of the data file are left over from before it was truncated
+     * and are ignored.
+     *
+     * @param dataFile the data file, next to which the side file is kept
+     * @param td the schema of the table
+     * @param filePages the number of pages in the data file
+     */
+    public ZoneMap(File dataFile, TupleDesc td, int filePages) {
+        this.file = sideFile(dataFile);
+        this.dataFile = dataFile;
+        this.position = new int[td.numFields()];
+        int n = 0;
+        for (int i = 0; i < position.length; i++) {
+            position[i] = td.getFieldType(i) == Type.INT_TYPE ? n++ : -1;
+        }
+        this.fields = new int[n];
+        for (int i = 0; i < position.length; i++) {
+            if (position[i] >= 0) {
+                fields[position[i]] = i;
+            }
+        }
+        this.stride = 1 + 2 * n;
+        this.zones = new int[0];
+        this.numPages = 0;
+        this.readOnly = false;
+        load(filePages);
+    }
+
+    /** @return the side file holding the zone map of the given data file */
+    public static File sideFile(File dataFile) {
+        return new File(dataFile.getPath() + SUFFIX);
+    }
+
+    private void load(int filePages) {
+        if (!file.exists()) {
+            return;
+        }
+        try (FileInputStream in = new FileInputStream(file)) {
+            byte[] stored = new byte[(int) file.length()];
+            int n = 0;
+            while (n < stored.length) {
+                int r = in.read(stored, n, stored.length - n);
+                if (r < 0) {
+                    break;
+                }
+                n += r;
+            }
+            ByteBuffer b = ByteBuffer.wrap(stored, 0, n);
+            if (n < HEADER_BYTES || b.getInt() != MAGIC || b.getInt() != stride
+                    || b.getLong() != dataFile.length() || b.getLong() != dataModified()) {
+                discard();
+                return;
+            }
+            int pages = Math.min((n - HEADER_BYTES) / (stride * 4), filePages);
+            zones = new int[Math.max(pages, 16) * stride];
+            b.asIntBuffer().get(zones, 0, pages * stride);
+            numPages = pages;
+        } catch (IOException e) {
+            // start from nothing; zones are learned as pages are written and scanned
+            zones = new int[0];
+            numPages = 0;
+            discard();
+        }
+    }
+
+    /**
+     * Deletes a side file that cannot be trusted. If it cannot be deleted
+     * it is left alone, since stamping it again would vouch for the zones
+     * still in it.
+     */
+    private void discard() {
+        if (file.exists() && !file.delete()) {
+            readOnly = true;
+        }
+    }
+
+    /** @return the modification time of the data file, in nanoseconds */
+    private long dataModified() throws IOException {
+        return Files.getLastModifiedTime(dataFile.toPath()).to(TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Records the exact zone of a page, as found by looking at its tuples.
+     *
+     * @param pgNo the page number
+     * @param tuples the tuples on the page
+     */
+    public void update(int pgNo, Iterator<Tuple> tuples) {
+        int[] zone = summarize(tuples);
+        synchronized (this) {
+            grow(pgNo + 1);
+            System.arraycopy(zone, 0, zones, pgNo * stride, stride);
+        }
+    }
+
+    /**
+     * Records the exact zone of a page that was just written to the data
+     * file, and stores it in the side file, stamped with the data file as
+     * it now is.
+     *
+     * @param pgNo the page number
+     * @param tuples the tuples on the page
+     */
+    public void updateStored(int pgNo, Iterator<Tuple> tuples) {
+        int[] zone = summarize(tuples);
+        synchronized (this) {
+            grow(pgNo + 1);
+            System.arraycopy(zone, 0, zones, pgNo * stride, stride);
+            if (readOnly) {
+                return;
+            }
+            try {
+                ByteBuffer b = ByteBuffer.allocate(stride * 4);
+                b.asIntBuffer().put(zone);
+                long off = HEADER_BYTES + (long) pgNo * stride * 4;
+                while (b.hasRemaining()) {
+                    channel().write(b, off + b.position());
+                }
+                ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+                header.putInt(MAGIC).putInt(stride)
+                        .putLong(dataFile.length()).putLong(dataModified());
+                header.flip();
+                while (header.hasRemaining()) {
+                    channel().write(header, header.position());
+                }
+            } catch (IOException e) {
+                // the map still works in memory, it just starts over next time
+                readOnly = true;
+            }
+        }
+    }
+
+    /**
+     * Widens the zone of a page to take in a tuple about to be put on it.
+     * Zones that are not known stay so.
+     */
+    public synchronized void widen(int pgNo, Tuple t) {
+        if (pgNo >= numPages) {
+            return;
+        }
+        int base = pgNo * stride;
+        int state = zones[base];
+        if (state == UNKNOWN) {
+            return;
+        }
+        for (int k = 0; k < fields.length; k++) {
+            int v = ((IntField) t.getField(fields[k])).getValue();
+            int at = base + 1 + 2 * k;
+            if (state == EMPTY) {
+                zones[at] = v;
+                zones[at + 1] = v;
+            } else {
+                zones[at] = Math.min(zones[at], v);
+                zones[at + 1] = Math.max(zones[at + 1], v);
+            }
+        }
+        zones[base] = KNOWN;
+    }
+
+    /**
+     * Returns false if no tuple on a page can satisfy a predicate: the page
+     * is empty, or the predicate compares an int field with a value outside
+     * the page's range for it.
+     *
+     * @param pgNo the page number
+     * @param p a predicate on the fields of the table
+     */
+    public synchronized boolean mayMatch(int pgNo, Predicate p) {
+        if (pgNo >= numPages) {
+            return true;
+        }
+        int base = pgNo * stride;
+        if (zones[base] != KNOWN) {
+            return zones[base] != EMPTY;
+        }
+        int k = position[p.getField()];
+        if (k < 0 || !(p.getOperand() instanceof IntField)) {
+            return true;
+        }
+        int min = zones[base + 1 + 2 * k];
+        int max = zones[base + 2 + 2 * k];
+        int v = ((IntField) p.getOperand()).getValue();
+        switch (p.getOp()) {
+        case EQUALS:
+            return min <= v && v <= max;
+        case GREATER_THAN:
+            return max > v;
+        case GREATER_THAN_OR_EQ:
+            return max >= v;
+        case LESS_THAN:
+            return min < v;
+        case LESS_THAN_OR_EQ:
+            return min <= v;
+        case NOT_EQUALS:
+            return min != v || max != v;
+        default:
+            return true;
+        }
+    }
+
+    /** @return the state of a page's zone */
+    public synchronized int getState(int pgNo) {
+        return pgNo < numPages ? zones[pgNo * stride] : UNKNOWN;
+    }
+
+    /** @return the zone of a page's tuples */
+    private int[] summarize(Iterator<Tuple> tuples) {
+        int[] zone = new int[stride];
+        if (!tuples.hasNext()) {
+            zone[0] = EMPTY;
+            return zone;
+        }
+        zone[0] = KNOWN;
+        for (int k = 0; k < fields.length; k++) {
+            zone[1 + 2 * k] = Integer.MAX_VALUE;
+            zone[2 + 2 * k] = Integer.MIN_VALUE;
+        }
+        while (tuples.hasNext()) {
+            Tuple t = tuples.next();
+            for (int k = 0; k < fields.length; k++) {
+                int v = ((IntField) t.getField(fields[k])).getValue();
+                zone[1 + 2 * k] = Math.min(zone[1 + 2 * k], v);
+                zone[2 + 2 * k] = Math.max(zone[2 + 2 * k], v);
+            }
+        }
+        return zone;
+    }
+
+    /** Extends the map with unknown zones to cover n pages. */
+    private void grow(int n) {
+        if (n <= numPages) {
+            return;
+        }
+        if (n * stride > zones.length) {
+            zones = Arrays.copyOf(zones, Math.max(n, zones.length / stride * 2) * stride);
+        }
+        Arrays.fill(zones, numPages * stride, n * stride, UNKNOWN);
+        numPages = n;
+    }
+
+    /**
+     * Closes the channel on the side file, if it is open. It is opened
+     * again by the next write.
+     */
+    public synchronized void close() {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // nothing is buffered, so nothing is lost
+            }
+            channel = null;
+        }
+    }
+
+    /** @return the channel on the side file, opening it if need be */
+    private FileChannel channel() throws IOException {
+        if (channel == null) {
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.READ,
+                    StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+        }
+        return channel;
+    }
+}
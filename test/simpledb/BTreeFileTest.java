@@ -0,0 +1,286 @@
+package simpledb;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Random;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class BTreeFileTest extends SimpleDbTestBase {
+    private static final TupleDesc TD = new TupleDesc(
+            new Type[]{Type.INT_TYPE, Type.INT_TYPE}, new String[]{"key", "value"});
+
+    private TransactionId tid;
+    private BTreeFile bf;
+
+    /**
+     * Set up initial resources for each unit test. Small pages make a few
+     * thousand tuples fill a tree of several levels.
+     */
+    @Before public void setUp() throws Exception {
+        super.setUp();
+        BufferPool.setPageSize(256);
+        Database.resetBufferPool(1000);
+        File f = File.createTempFile("btree", ".dat");
+        f.deleteOnExit();
+        bf = new BTreeFile(f, 0, TD);
+        Database.getCatalog().addTable(bf, SystemTestUtil.getUUID());
+        tid = new TransactionId();
+    }
+
+    @After public void tearDown() throws Exception {
+        Database.getBufferPool().transactionComplete(tid);
+        BufferPool.resetPageSize();
+    }
+
+    private static Tuple tuple(int key, int value) {
+        Tuple t = new Tuple(TD);
+        t.setField(0, new IntField(key));
+        t.setField(1, new IntField(value));
+        return t;
+    }
+
+    /** Inserts n tuples with random keys below n / 4, so many repeat. */
+    private ArrayList<int[]> insertRandom(int n) throws Exception {
+        Random r = new Random(444);
+        ArrayList<int[]> rows = new ArrayList<int[]>();
+        for (int i = 0; i < n; i++) {
+            int key = r.nextInt(n / 4);
+            Database.getBufferPool().insertTuple(tid, bf.getId(), tuple(key, i));
+            rows.add(new int[]{key, i});
+        }
+        return rows;
+    }
+
+    private static ArrayList<int[]> read(DbFileIterator it) throws Exception {
+        ArrayList<int[]> rows = new ArrayList<int[]>();
+        it.open();
+        while (it.hasNext()) {
+            Tuple t = it.next();
+            rows.add(new int[]{((IntField) t.getField(0)).getValue(),
+                    ((IntField) t.getField(1)).getValue()});
+        }
+        it.close();
+        return rows;
+    }
+
+    private static ArrayList<String> sorted(ArrayList<int[]> rows) {
+        ArrayList<String> s = new ArrayList<String>();
+        for (int[] row : rows) {
+            s.add(row[0] + "," + row[1]);
+        }
+        Collections.sort(s);
+        return s;
+    }
+
+    private static void assertKeyOrder(ArrayList<int[]> rows) {
+        for (int i = 1; i < rows.size(); i++) {
+            assertTrue(rows.get(i - 1)[0] <= rows.get(i)[0]);
+        }
+    }
+
+    /**
+     * A scan returns every inserted tuple in key order, after the inserts
+     * have split leaves and internal pages.
+     */
+    @Test public void insertAndScan() throws Exception {
+        ArrayList<int[]> rows = insertRandom(3000);
+        ArrayList<int[]> scanned = read(bf.iterator(tid));
+        assertEquals(3000, scanned.size());
+        assertKeyOrder(scanned);
+        assertEquals(sorted(rows), sorted(scanned));
+        assertTrue(bf.numPages() > 3000 / BTreeLeafPage.getMaxTuples(TD, 256));
+    }
+
+    /**
+     * Searches for each comparison return exactly the tuples a filter
+     * would, including keys repeated across several leaves.
+     */
+    @Test public void indexSearches() throws Exception {
+        ArrayList<int[]> rows = insertRandom(3000);
+        Predicate.Op[] ops = new Predicate.Op[]{Predicate.Op.EQUALS,
+                Predicate.Op.LESS_THAN, Predicate.Op.LESS_THAN_OR_EQ,
+                Predicate.Op.GREATER_THAN, Predicate.Op.GREATER_THAN_OR_EQ,
+                Predicate.Op.NOT_EQUALS};
+        for (int key : new int[]{-1, 0, 7, 374, 749, 750}) {
+            for (Predicate.Op op : ops) {
+                Predicate p = new Predicate(0, op, new IntField(key));
+                ArrayList<int[]> expected = new ArrayList<int[]>();
+                for (int[] row : rows) {
+                    if (p.filter(tuple(row[0], row[1]))) {
+                        expected.add(row);
+                    }
+                }
+                ArrayList<int[]> found = read(bf.indexIterator(tid, op, new IntField(key)));
+                assertKeyOrder(found);
+                assertEquals(op + " " + key, sorted(expected), sorted(found));
+            }
+        }
+    }
+
+    /**
+     * Deletes find their tuple whether or not its RecordId is still good.
+     */
+    @Test public void deleteTuples() throws Exception {
+        ArrayList<int[]> rows = insertRandom(1000);
+        ArrayList<Tuple> scanned = new ArrayList<Tuple>();
+        DbFileIterator it = bf.iterator(tid);
+        it.open();
+        while (it.hasNext()) {
+            scanned.add(it.next());
+        }
+        it.close();
+
+        ArrayList<int[]> left = new ArrayList<int[]>();
+        for (int i = 0; i < scanned.size(); i++) {
+            Tuple t = scanned.get(i);
+            if (i % 2 == 0) {
+                Database.getBufferPool().deleteTuple(tid, t);
+            } else {
+                left.add(new int[]{((IntField) t.getField(0)).getValue(),
+                        ((IntField) t.getField(1)).getValue()});
+            }
+        }
+        ArrayList<int[]> found = read(bf.iterator(tid));
+        assertEquals(sorted(left), sorted(found));
+
+        int key = rows.get(0)[0];
+        ArrayList<int[]> expected = new ArrayList<int[]>();
+        for (int[] row : left) {
+            if (row[0] == key) {
+                expected.add(row);
+            }
+        }
+        found = read(bf.indexIterator(tid, Predicate.Op.EQUALS, new IntField(key)));
+        assertEquals(sorted(expected), sorted(found));
+        try {
+            Tuple absent = tuple(-5, -5);
+            absent.setRecordId(scanned.get(0).getRecordId());
+            bf.deleteTuple(tid, absent);
+            fail("deleted a tuple that is not in the tree");
+        } catch (DbException e) {
+        }
+    }
+
+    /**
+     * A committed tree reads back the same from disk.
+     */
+    @Test public void persists() throws Exception {
+        ArrayList<int[]> rows = insertRandom(2000);
+        Database.getBufferPool().transactionComplete(tid);
+        Database.resetBufferPool(1000);
+        tid = new TransactionId();
+        ArrayList<int[]> scanned = read(bf.iterator(tid));
+        assertKeyOrder(scanned);
+        assertEquals(sorted(rows), sorted(scanned));
+    }
+
+    /**
+     * A bulk-loaded tree answers searches and takes further inserts into
+     * its full leaves.
+     */
+    @Test public void bulkLoad() throws Exception {
+        File text = File.createTempFile("btree", ".txt");
+        text.deleteOnExit();
+        FileWriter w = new FileWriter(text);
+        ArrayList<int[]> rows = new ArrayList<int[]>();
+        Random r = new Random(444);
+        for (int i = 0; i < 2000; i++) {
+            int key = r.nextInt(500);
+            w.write(key + "," + i + "\n");
+            rows.add(new int[]{key, i});
+        }
+        w.close();
+        File data = File.createTempFile("btree", ".dat");
+        data.deleteOnExit();
+        HeapFileEncoder.convertBTree(text, data, 256, 2,
+                new Type[]{Type.INT_TYPE, Type.INT_TYPE}, null, 0, ',');
+        BTreeFile loaded = new BTreeFile(data, 0, TD);
+        Database.getCatalog().addTable(loaded, SystemTestUtil.getUUID());
+
+        ArrayList<int[]> scanned = read(loaded.iterator(tid));
+        assertKeyOrder(scanned);
+        assertEquals(sorted(rows), sorted(scanned));
+
+        for (int i = 0; i < 500; i += 50) {
+            Database.getBufferPool().insertTuple(tid, loaded.getId(), tuple(i, -i));
+            rows.add(new int[]{i, -i});
+        }
+        ArrayList<int[]> found = read(loaded.indexIterator(tid,
+                Predicate.Op.GREATER_THAN_OR_EQ, new IntField(250)));
+        ArrayList<int[]> expected = new ArrayList<int[]>();
+        for (int[] row : rows) {
+            if (row[0] >= 250) {
+                expected.add(row);
+            }
+        }
+        assertKeyOrder(found);
+        assertEquals(sorted(expected), sorted(found));
+    }
+
+    private static boolean usesIndexScan(OpIterator op) {
+        if (op instanceof IndexScan) {
+            return true;
+        }
+        if (op instanceof Operator) {
+            for (OpIterator child : ((Operator) op).getChildren()) {
+                if (child != null && usesIndexScan(child)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The planner searches the tree for a selective filter on the key, and
+     * scans the table for an unselective one.
+     */
+    @Test public void plannerUsesIndex() throws Exception {
+        insertRandom(2000);
+        Database.getBufferPool().transactionComplete(tid);
+        tid = new TransactionId();
+        String name = Database.getCatalog().getTableName(bf.getId());
+        HashMap<String, TableStats> stats = new HashMap<String, TableStats>();
+        stats.put(name, new TableStats(bf.getId(), 1000));
+
+        LogicalPlan lp = new LogicalPlan();
+        lp.addScan(bf.getId(), "b");
+        lp.addFilter("b.key", Predicate.Op.EQUALS, "42");
+        lp.addProjectField("b.value", null);
+        OpIterator plan = lp.physicalPlan(tid, stats, false);
+        assertTrue(usesIndexScan(plan));
+        int n = 0;
+        plan.open();
+        while (plan.hasNext()) {
+            plan.next();
+            n++;
+        }
+        plan.close();
+        assertEquals(read(bf.indexIterator(tid, Predicate.Op.EQUALS, new IntField(42))).size(), n);
+
+        lp = new LogicalPlan();
+        lp.addScan(bf.getId(), "b");
+        lp.addFilter("b.key", Predicate.Op.GREATER_THAN, "10");
+        lp.addProjectField("b.value", null);
+        assertFalse(usesIndexScan(lp.physicalPlan(tid, stats, false)));
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(BTreeFileTest.class);
+    }
+}
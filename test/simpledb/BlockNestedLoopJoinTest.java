@@ -0,0 +1,148 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import junit.framework.JUnit4TestAdapter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+
+public class BlockNestedLoopJoinTest extends SimpleDbTestBase {
+
+  int width1 = 2;
+  int width2 = 3;
+  OpIterator scan1;
+  OpIterator scan2;
+  OpIterator eqJoin;
+
+  /**
+   * Initialize each unit test
+   */
+  @Before public void createTupleLists() throws Exception {
+    this.scan1 = TestUtil.createTupleList(width1,
+        new int[] { 1, 2,
+                    3, 4,
+                    5, 6,
+                    7, 8 });
+    this.scan2 = TestUtil.createTupleList(width2,
+        new int[] { 1, 2, 3,
+                    2, 3, 4,
+                    3, 4, 5,
+                    4, 5, 6,
+                    5, 6, 7 });
+    this.eqJoin = TestUtil.createTupleList(width1 + width2,
+        new int[] { 1, 2, 1, 2, 3,
+                    3, 4, 3, 4, 5,
+                    5, 6, 5, 6, 7 });
+  }
+
+  /** @return the tuples of an operator as sorted strings */
+  private static ArrayList<String> results(OpIterator op) throws Exception {
+    ArrayList<String> s = new ArrayList<String>();
+    op.open();
+    while (op.hasNext()) {
+      s.add(op.next().toString());
+    }
+    op.close();
+    Collections.sort(s);
+    return s;
+  }
+
+  /** @return a two-column tuple list of n tuples with keys i % keys */
+  private static OpIterator keyed(int n, int keys) {
+    int[] data = new int[n * 2];
+    for (int i = 0; i < n; i++) {
+      data[2 * i] = i % keys;
+      data[2 * i + 1] = i;
+    }
+    return TestUtil.createTupleList(2, data);
+  }
+
+  /**
+   * Unit test for BlockNestedLoopJoin.getTupleDesc()
+   */
+  @Test public void getTupleDesc() {
+    JoinPredicate pred = new JoinPredicate(0, Predicate.Op.EQUALS, 0);
+    BlockNestedLoopJoin op = new BlockNestedLoopJoin(pred, scan1, scan2);
+    TupleDesc expected = Utility.getTupleDesc(width1 + width2);
+    assertEquals(expected, op.getTupleDesc());
+  }
+
+  /**
+   * Unit test for BlockNestedLoopJoin.rewind()
+   */
+  @Test public void rewind() throws Exception {
+    JoinPredicate pred = new JoinPredicate(0, Predicate.Op.EQUALS, 0);
+    BlockNestedLoopJoin op = new BlockNestedLoopJoin(pred, scan1, scan2);
+    op.open();
+    while (op.hasNext()) {
+      assertNotNull(op.next());
+    }
+    assertTrue(TestUtil.checkExhausted(op));
+    op.rewind();
+
+    eqJoin.open();
+    Tuple expected = eqJoin.next();
+    Tuple actual = op.next();
+    assertTrue(TestUtil.compareTuples(expected, actual));
+  }
+
+  /**
+   * Unit test for BlockNestedLoopJoin.getNext() using an = predicate
+   */
+  @Test public void eqJoin() throws Exception {
+    JoinPredicate pred = new JoinPredicate(0, Predicate.Op.EQUALS, 0);
+    BlockNestedLoopJoin op = new BlockNestedLoopJoin(pred, scan1, scan2);
+    op.open();
+    eqJoin.open();
+    TestUtil.matchAllTuples(eqJoin, op);
+  }
+
+  /**
+   * Outer inputs of many blocks return what Join does, for predicates a
+   * hash or sort-merge join cannot evaluate
+   */
+  @Test public void manyBlocks() throws Exception {
+    // a page holds 511 two-int tuples, so 2000 tuples make four blocks
+    for (Predicate.Op op : new Predicate.Op[] { Predicate.Op.NOT_EQUALS,
+        Predicate.Op.LIKE, Predicate.Op.GREATER_THAN }) {
+      JoinPredicate pred = new JoinPredicate(0, op, 0);
+      ArrayList<String> expected = results(new Join(pred, keyed(2000, 40), keyed(30, 50)));
+      ArrayList<String> actual = results(
+          new BlockNestedLoopJoin(pred, keyed(2000, 40), keyed(30, 50), 1));
+      assertEquals(op.toString(), expected, actual);
+    }
+  }
+
+  /**
+   * The cost of a block nested-loop join falls with the block size
+   */
+  @Test public void costFallsWithBlockSize() throws Exception {
+    LogicalJoinNode ne = new LogicalJoinNode("a", "b", "a.f0", "b.f0",
+        Predicate.Op.NOT_EQUALS);
+    JoinOptimizer jo = new JoinOptimizer(null, new java.util.Vector<LogicalJoinNode>());
+    try {
+      BlockNestedLoopJoin.setBlockPages(1);
+      double small = jo.estimateJoinCost(ne, 10000, 10000, 100000, 100000);
+      BlockNestedLoopJoin.setBlockPages(10);
+      double large = jo.estimateJoinCost(ne, 10000, 10000, 100000, 100000);
+      assertEquals(100000 + 100 * 100000 + 10000.0 * 10000, small, 1e-6);
+      assertEquals(100000 + 10 * 100000 + 10000.0 * 10000, large, 1e-6);
+    } finally {
+      BlockNestedLoopJoin.resetBlockPages();
+    }
+  }
+
+  /**
+   * JUnit suite target
+   */
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(BlockNestedLoopJoinTest.class);
+  }
+}
@@ -0,0 +1,196 @@
+package simpledb;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class BufferPoolPinTest extends SimpleDbTestBase {
+    private HeapFile hf;
+    private TransactionId tid;
+    private BufferPool bp;
+
+    /**
+     * Set up initial resources for each unit test.
+     */
+    @Before
+    public void setUp() throws Exception {
+        // enough rows for several pages
+        hf = SystemTestUtil.createRandomHeapFile(2, 3000, null, null);
+        assertTrue(hf.numPages() >= 4);
+        tid = new TransactionId();
+        bp = Database.resetBufferPool(2);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    private PageId pid(int pgNo) {
+        return new HeapPageId(hf.getId(), pgNo);
+    }
+
+    /**
+     * A pinned page stays cached while unpinned ones are evicted around it.
+     */
+    @Test
+    public void pinnedPageIsNotEvicted() throws Exception {
+        Page pinned = bp.getPage(tid, pid(0), Permissions.READ_ONLY);
+        for (int i = 1; i < 4; i++) {
+            bp.getPage(tid, pid(i), Permissions.READ_ONLY);
+            bp.unpinPage(tid, pid(i));
+        }
+        long misses = bp.getMissCount();
+        assertSame(pinned, bp.getPage(tid, pid(0), Permissions.READ_ONLY));
+        assertEquals(misses, bp.getMissCount());
+    }
+
+    /**
+     * Reading a page fails when every frame is pinned, and succeeds once one
+     * of them is unpinned.
+     */
+    @Test
+    public void unpinMakesPageEvictable() throws Exception {
+        bp.getPage(tid, pid(0), Permissions.READ_ONLY);
+        bp.getPage(tid, pid(1), Permissions.READ_ONLY);
+        try {
+            bp.getPage(tid, pid(2), Permissions.READ_ONLY);
+            fail("expected DbException with every page pinned");
+        } catch (DbException e) {
+            // expected
+        }
+
+        bp.unpinPage(tid, pid(1));
+        bp.getPage(tid, pid(2), Permissions.READ_ONLY);
+    }
+
+    /**
+     * Pins are counted, so a page pinned twice needs two unpins.
+     */
+    @Test
+    public void pinsAreCounted() throws Exception {
+        bp.getPage(tid, pid(0), Permissions.READ_ONLY);
+        bp.getPage(tid, pid(0), Permissions.READ_ONLY);
+        bp.getPage(tid, pid(1), Permissions.READ_ONLY);
+        bp.unpinPage(tid, pid(1));
+        bp.unpinPage(tid, pid(0));
+
+        // page 1 is the only one that can go
+        bp.getPage(tid, pid(2), Permissions.READ_ONLY);
+        long misses = bp.getMissCount();
+        bp.getPage(tid, pid(0), Permissions.READ_ONLY);
+        assertEquals(misses, bp.getMissCount());
+    }
+
+    /**
+     * Unpinning a page the transaction never pinned does not release someone
+     * else's pin.
+     */
+    @Test
+    public void unpinIsPerTransaction() throws Exception {
+        TransactionId other = new TransactionId();
+        bp.getPage(tid, pid(0), Permissions.READ_ONLY);
+        bp.getPage(other, pid(1), Permissions.READ_ONLY);
+        bp.unpinPage(other, pid(0));
+        try {
+            bp.getPage(tid, pid(2), Permissions.READ_ONLY);
+            fail("expected DbException with every page pinned");
+        } catch (DbException e) {
+            // expected
+        }
+        bp.transactionComplete(other);
+    }
+
+    /**
+     * Completing a transaction drops the pins it still holds.
+     */
+    @Test
+    public void transactionCompleteDropsPins() throws Exception {
+        TransactionId other = new TransactionId();
+        bp.getPage(other, pid(0), Permissions.READ_ONLY);
+        bp.getPage(other, pid(1), Permissions.READ_ONLY);
+        bp.transactionComplete(other);
+
+        bp.getPage(tid, pid(2), Permissions.READ_ONLY);
+        bp.getPage(tid, pid(3), Permissions.READ_ONLY);
+    }
+
+    /**
+     * A scan only keeps the page it is on pinned, so it fits in a tiny pool
+     * and leaves it free once closed.
+     */
+    @Test
+    public void scanUnpinsPages() throws Exception {
+        DbFileIterator it = hf.iterator(tid);
+        it.open();
+        int count = 0;
+        while (it.hasNext()) {
+            it.next();
+            count++;
+        }
+        it.close();
+        assertEquals(3000, count);
+
+        TransactionId other = new TransactionId();
+        bp.getPage(other, pid(0), Permissions.READ_ONLY);
+        bp.getPage(other, pid(1), Permissions.READ_ONLY);
+        bp.transactionComplete(other);
+    }
+
+    /**
+     * Eviction waits for a victim whose stripe another thread holds for a
+     * moment, instead of failing because the pool looked full of busy pages.
+     */
+    @Test
+    public void evictionWaitsForBusyStripe() throws Exception {
+        // two cached pages, and a third on another stripe than either
+        int a = 0;
+        int b = 1;
+        int c = 2;
+        while (c < hf.numPages() && (bp.stripeFor(pid(c)) == bp.stripeFor(pid(a))
+                || bp.stripeFor(pid(c)) == bp.stripeFor(pid(b)))) {
+            c++;
+        }
+        assertTrue(c < hf.numPages());
+        for (int i : new int[] { a, b }) {
+            bp.getPage(tid, pid(i), Permissions.READ_ONLY);
+            bp.unpinPage(tid, pid(i));
+        }
+
+        final java.util.concurrent.CountDownLatch held = new java.util.concurrent.CountDownLatch(1);
+        final PageId pa = pid(a);
+        final PageId pb = pid(b);
+        Thread holder = new Thread() {
+            public void run() {
+                bp.stripeFor(pa).lock();
+                bp.stripeFor(pb).lock();
+                held.countDown();
+                try {
+                    Thread.sleep(20);
+                } catch (InterruptedException e) {
+                    // let go early
+                } finally {
+                    bp.stripeFor(pb).unlock();
+                    bp.stripeFor(pa).unlock();
+                }
+            }
+        };
+        holder.start();
+        held.await();
+        bp.getPage(tid, pid(c), Permissions.READ_ONLY);
+        holder.join();
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(BufferPoolPinTest.class);
+    }
+}
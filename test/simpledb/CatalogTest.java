@@ -2,6 +2,8 @@ package simpledb;
 
 import static org.junit.Assert.assertEquals;
 
+import java.io.File;
+import java.io.FileWriter;
 import java.util.NoSuchElementException;
 import java.util.Random;
 
@@ -42,6 +44,29 @@ public class CatalogTest extends SimpleDbTestBase {
     /**
      * Unit test for Catalog.getTableId()
      */
+    /**
+     * Unit test for Catalog.loadSchema() with declared string widths
+     */
+    @Test public void loadSchemaWidths() throws Exception {
+        File schema = File.createTempFile("widths", ".schema");
+        schema.deleteOnExit();
+        String table = "widths" + SystemTestUtil.getUUID().replace("-", "");
+        FileWriter w = new FileWriter(schema);
+        w.write(table + " (id int pk, name string(32), note string)\n");
+        w.close();
+
+        Database.getCatalog().loadSchema(schema.getAbsolutePath());
+        TupleDesc td = Database.getCatalog().getTupleDesc(
+                Database.getCatalog().getTableId(table));
+        assertEquals(3, td.numFields());
+        assertEquals(Type.STRING_TYPE, td.getFieldType(1));
+        assertEquals(32, td.getFieldWidth(1));
+        assertEquals(Type.STRING_LEN, td.getFieldWidth(2));
+        assertEquals(4 + 36 + Type.STRING_TYPE.getLen(), td.getSize());
+        assertEquals("id", Database.getCatalog().getPrimaryKey(
+                Database.getCatalog().getTableId(table)));
+    }
+
     @Test public void getTableId() {
         assertEquals(id2, Database.getCatalog().getTableId(name));
         assertEquals(id1, Database.getCatalog().getTableId(nameThisTestRun));
@@ -0,0 +1,172 @@
+package simpledb;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.util.HashMap;
+import java.util.HashSet;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+import simpledb.systemtest.SimpleDbTestBase;
+
+public class ColumnarFileTest extends SimpleDbTestBase {
+    private static final int ROWS = 3000;
+
+    private String name;
+    private ColumnarFile cf;
+    private TransactionId tid;
+
+    /**
+     * Writes a text table of (id, name, score) rows, converts it to
+     * columns and loads it through a schema declaring it "columnar".
+     */
+    @Before public void setUp() throws Exception {
+        File text = File.createTempFile("columnar", ".txt");
+        text.deleteOnExit();
+        File dir = text.getParentFile();
+        name = text.getName().replace(".txt", "");
+        FileWriter w = new FileWriter(text);
+        for (int i = 0; i < ROWS; i++) {
+            w.write(i + ",name" + i + "," + (i % 7) + "\n");
+        }
+        w.close();
+
+        File data = new File(dir, name + ".dat");
+        Type[] types = new Type[]{Type.INT_TYPE, Type.STRING_TYPE, Type.INT_TYPE};
+        for (int i = 0; i < types.length; i++) {
+            ColumnarFile.columnFile(data, i).deleteOnExit();
+        }
+        HeapFileEncoder.convertColumnar(text, data, BufferPool.getPageSize(), 3, types,
+                new int[]{0, 16, 0}, ',');
+
+        File schema = File.createTempFile("columnar", ".schema", dir);
+        schema.deleteOnExit();
+        w = new FileWriter(schema);
+        w.write(name + " (id int, name string(16), score int) columnar\n");
+        w.close();
+        Database.getCatalog().loadSchema(schema.getAbsolutePath());
+        cf = (ColumnarFile) Database.getCatalog().getDatabaseFile(
+                Database.getCatalog().getTableId(name));
+        tid = new TransactionId();
+    }
+
+    @After public void tearDown() throws Exception {
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    private HashSet<String> scan(DbFileIterator it) throws Exception {
+        HashSet<String> rows = new HashSet<String>();
+        it.open();
+        while (it.hasNext()) {
+            rows.add(it.next().toString());
+        }
+        it.close();
+        return rows;
+    }
+
+    /**
+     * Each column has its own pages, sized by its width, and the rows read
+     * back whole.
+     */
+    @Test public void convertAndScan() throws Exception {
+        int intPages = (ROWS + cf.getSlotsPerPage(0) - 1) / cf.getSlotsPerPage(0);
+        int namePages = (ROWS + cf.getSlotsPerPage(1) - 1) / cf.getSlotsPerPage(1);
+        assertEquals(intPages, cf.numPages(0));
+        assertEquals(namePages, cf.numPages(1));
+        assertEquals(2 * intPages + namePages, cf.numPages());
+
+        HashSet<String> rows = scan(cf.iterator(tid));
+        assertEquals(ROWS, rows.size());
+        assertTrue(rows.contains("17 name17 3"));
+    }
+
+    /**
+     * A projected scan returns only its columns and reads only their pages.
+     */
+    @Test public void projectedScan() throws Exception {
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        long misses = Database.getBufferPool().getMissCount();
+        DbFileIterator it = cf.iterator(tid, new int[]{2, 0});
+        it.open();
+        Tuple t = it.next();
+        assertEquals(2, t.getTupleDesc().numFields());
+        assertEquals("score", t.getTupleDesc().getFieldName(0));
+        assertEquals(0, ((IntField) t.getField(1)).getValue());
+        int count = 1;
+        while (it.hasNext()) {
+            it.next();
+            count++;
+        }
+        it.close();
+        assertEquals(ROWS, count);
+        assertEquals(2 * cf.numPages(0), Database.getBufferPool().getMissCount() - misses);
+    }
+
+    /**
+     * Inserts and deletes change every column and reach the disk.
+     */
+    @Test public void insertAndDelete() throws Exception {
+        DbFileIterator it = cf.iterator(tid);
+        it.open();
+        Tuple victim = it.next();
+        it.close();
+        Database.getBufferPool().deleteTuple(tid, victim);
+
+        Tuple t = new Tuple(cf.getTupleDesc());
+        t.setField(0, new IntField(-1));
+        t.setField(1, new StringField("a name longer than sixteen", Type.STRING_LEN));
+        t.setField(2, new IntField(42));
+        Database.getBufferPool().insertTuple(tid, cf.getId(), t);
+        // the freed row is reused
+        assertEquals(victim.getRecordId(), t.getRecordId());
+        Database.getBufferPool().transactionComplete(tid);
+
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        tid = new TransactionId();
+        HashSet<String> rows = scan(cf.iterator(tid));
+        assertEquals(ROWS, rows.size());
+        assertTrue(rows.contains("-1 a name longer th 42"));
+        assertFalse(rows.contains(victim.toString()));
+    }
+
+    /**
+     * The planner restricts scans of columnar tables to the columns the
+     * query uses.
+     */
+    @Test public void plannerPrunesColumns() throws Exception {
+        int tableId = cf.getId();
+        HashMap<String, TableStats> stats = new HashMap<String, TableStats>();
+        stats.put(name, new TableStats(tableId, 1000));
+
+        LogicalPlan lp = new LogicalPlan();
+        lp.addScan(tableId, "c");
+        lp.addFilter("c.score", Predicate.Op.EQUALS, "3");
+        lp.addProjectField("c.id", null);
+        OpIterator plan = lp.physicalPlan(tid, stats, false);
+
+        plan.open();
+        int count = 0;
+        while (plan.hasNext()) {
+            Tuple t = plan.next();
+            assertEquals(3, ((IntField) t.getField(0)).getValue() % 7);
+            count++;
+        }
+        plan.close();
+        assertEquals((ROWS - 3 + 6) / 7, count);
+
+        SeqScan ss = new SeqScan(tid, tableId, "c");
+        ss.setColumns(new int[]{0, 2});
+        assertEquals("c.score", ss.getTupleDesc().getFieldName(1));
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(ColumnarFileTest.class);
+    }
+}
@@ -0,0 +1,133 @@
+package simpledb;
+
+import java.io.File;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class FreeSpaceMapTest extends SimpleDbTestBase {
+    private File side;
+
+    /**
+     * Set up initial resources for each unit test.
+     */
+    @Before public void setUp() throws Exception {
+        side = File.createTempFile("free", FreeSpaceMap.SUFFIX);
+        side.delete();
+        side.deleteOnExit();
+    }
+
+    @After public void tearDown() {
+        side.delete();
+    }
+
+    /**
+     * Pages the map has not seen may have room; full ones are skipped.
+     */
+    @Test public void findSkipsFullPages() {
+        FreeSpaceMap m = new FreeSpaceMap(side, 0);
+        assertEquals(0, m.findPage(0, 3, 1));
+        assertEquals(FreeSpaceMap.UNKNOWN, m.getFree(2));
+
+        m.update(0, 0);
+        m.update(1, 0);
+        m.update(2, 7);
+        assertEquals(2, m.findPage(0, 5, 1));
+        assertEquals(3, m.findPage(3, 5, 1));
+        m.update(2, 0);
+        m.update(3, 0);
+        m.update(4, 0);
+        assertEquals(-1, m.findPage(0, 5, 1));
+    }
+
+    /**
+     * A page below the first one with room gets found again once it has
+     * room itself.
+     */
+    @Test public void freedPageIsFoundAgain() {
+        FreeSpaceMap m = new FreeSpaceMap(side, 0);
+        for (int i = 0; i < 10; i++) {
+            m.update(i, 0);
+        }
+        assertEquals(-1, m.findPage(0, 10, 1));
+        m.update(4, 1);
+        assertEquals(4, m.findPage(0, 10, 1));
+    }
+
+    /**
+     * Pages with less than the needed room are passed over.
+     */
+    @Test public void findHonorsNeededSpace() {
+        FreeSpaceMap m = new FreeSpaceMap(side, 0);
+        m.update(0, 2);
+        m.update(1, 9);
+        assertEquals(0, m.findPage(0, 2, 2));
+        assertEquals(1, m.findPage(0, 2, 3));
+        assertEquals(-1, m.findPage(0, 2, 10));
+        // the small page still counts as having room
+        assertEquals(0, m.findPage(0, 2, 1));
+    }
+
+    /**
+     * Large counts are capped.
+     */
+    @Test public void countsAreCapped() {
+        FreeSpaceMap m = new FreeSpaceMap(side, 0);
+        m.update(0, 1000);
+        assertEquals(FreeSpaceMap.MAX_FREE, m.getFree(0));
+    }
+
+    /**
+     * Stored entries are read back, except those past the end of the file.
+     */
+    @Test public void storedEntriesPersist() {
+        FreeSpaceMap m = new FreeSpaceMap(side, 0);
+        m.updateStored(0, 0);
+        m.updateStored(3, 12);
+        m.update(1, 5);
+
+        FreeSpaceMap reopened = new FreeSpaceMap(side, 4);
+        assertEquals(0, reopened.getFree(0));
+        assertEquals(12, reopened.getFree(3));
+        // stored as unknown, since only page 3 was written after it
+        assertEquals(FreeSpaceMap.UNKNOWN, reopened.getFree(2));
+
+        FreeSpaceMap truncated = new FreeSpaceMap(side, 2);
+        assertEquals(FreeSpaceMap.UNKNOWN, truncated.getFree(3));
+    }
+
+    /**
+     * Once a file's pages are known to be full, an insert reads only the
+     * page it goes to.
+     */
+    @Test public void insertSkipsFullPages() throws Exception {
+        HeapFile hf = SystemTestUtil.createRandomHeapFile(2, 504 * 8, null, null);
+        BufferPool bp = Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        TransactionId tid = new TransactionId();
+
+        // the first insert looks at every page and appends one
+        bp.insertTuple(tid, hf.getId(), Utility.getHeapTuple(1, 2));
+        assertEquals(9, hf.numPages());
+
+        long accesses = bp.getHitCount() + bp.getMissCount();
+        bp.insertTuple(tid, hf.getId(), Utility.getHeapTuple(2, 2));
+        assertEquals(2, bp.getHitCount() + bp.getMissCount() - accesses);
+        bp.transactionComplete(tid);
+
+        assertEquals(FreeSpaceMap.MAX_FREE, hf.freeSpace().getFree(8));
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(FreeSpaceMapTest.class);
+    }
+}
@@ -0,0 +1,255 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+
+public class HashJoinTest extends SimpleDbTestBase {
+
+  int width1 = 2;
+  int width2 = 3;
+  OpIterator scan1;
+  OpIterator scan2;
+  OpIterator eqJoin;
+
+  /**
+   * Initialize each unit test
+   */
+  @Before public void createTupleLists() throws Exception {
+    this.scan1 = TestUtil.createTupleList(width1,
+        new int[] { 1, 2,
+                    3, 4,
+                    5, 6,
+                    7, 8 });
+    this.scan2 = TestUtil.createTupleList(width2,
+        new int[] { 1, 2, 3,
+                    2, 3, 4,
+                    3, 4, 5,
+                    4, 5, 6,
+                    5, 6, 7,
+                    3, 0, 0 });
+    this.eqJoin = TestUtil.createTupleList(width1 + width2,
+        new int[] { 1, 2, 1, 2, 3,
+                    3, 4, 3, 4, 5,
+                    3, 4, 3, 0, 0,
+                    5, 6, 5, 6, 7 });
+  }
+
+  private static int count(OpIterator op) throws Exception {
+    op.rewind();
+    int n = 0;
+    while (op.hasNext()) {
+      op.next();
+      n++;
+    }
+    return n;
+  }
+
+  /**
+   * Unit test for HashJoin.getTupleDesc()
+   */
+  @Test public void getTupleDesc() {
+    JoinPredicate pred = new JoinPredicate(0, Predicate.Op.EQUALS, 0);
+    HashJoin op = new HashJoin(pred, scan1, scan2);
+    TupleDesc expected = Utility.getTupleDesc(width1 + width2);
+    TupleDesc actual = op.getTupleDesc();
+    assertEquals(expected, actual);
+  }
+
+  /**
+   * Unit test for HashJoin.rewind()
+   */
+  @Test public void rewind() throws Exception {
+    JoinPredicate pred = new JoinPredicate(0, Predicate.Op.EQUALS, 0);
+    HashJoin op = new HashJoin(pred, scan1, scan2);
+    op.open();
+    while (op.hasNext()) {
+      assertNotNull(op.next());
+    }
+    assertTrue(TestUtil.checkExhausted(op));
+    op.rewind();
+
+    eqJoin.open();
+    Tuple expected = eqJoin.next();
+    Tuple actual = op.next();
+    assertTrue(TestUtil.compareTuples(expected, actual));
+  }
+
+  /**
+   * Unit test for HashJoin.getNext() hashing the left input, the smaller
+   */
+  @Test public void eqJoinBuildLeft() throws Exception {
+    JoinPredicate pred = new JoinPredicate(0, Predicate.Op.EQUALS, 0);
+    HashJoin op = new HashJoin(pred, scan1, scan2);
+    op.open();
+    eqJoin.open();
+    TestUtil.matchAllTuples(eqJoin, op);
+    assertEquals(4, count(op));
+  }
+
+  /**
+   * Unit test for HashJoin.getNext() hashing the right input, the smaller;
+   * the output still puts the left tuple first
+   */
+  @Test public void eqJoinBuildRight() throws Exception {
+    JoinPredicate pred = new JoinPredicate(0, Predicate.Op.EQUALS, 0);
+    HashJoin op = new HashJoin(pred, scan2, scan1);
+    OpIterator swapped = TestUtil.createTupleList(width1 + width2,
+        new int[] { 1, 2, 3, 1, 2,
+                    3, 4, 5, 3, 4,
+                    3, 0, 0, 3, 4,
+                    5, 6, 7, 5, 6 });
+    op.open();
+    swapped.open();
+    TestUtil.matchAllTuples(swapped, op);
+    assertEquals(4, count(op));
+  }
+
+  /** @return a two-column tuple list of n tuples with keys i % keys */
+  private static OpIterator keyed(int n, int keys) {
+    int[] data = new int[n * 2];
+    for (int i = 0; i < n; i++) {
+      data[2 * i] = i % keys;
+      data[2 * i + 1] = i;
+    }
+    return TestUtil.createTupleList(2, data);
+  }
+
+  private static int catalogSize() {
+    int n = 0;
+    for (java.util.Iterator<Integer> it = Database.getCatalog().tableIdIterator(); it.hasNext(); it.next()) {
+      n++;
+    }
+    return n;
+  }
+
+  /** @return the spill files in the temporary directory */
+  private static java.util.Set<String> spillFiles() throws Exception {
+    java.io.File tmp = java.io.File.createTempFile("spill", ".dat");
+    tmp.delete();
+    java.util.Set<String> names = new java.util.HashSet<String>();
+    for (String name : tmp.getParentFile().list()) {
+      if (name.startsWith("spill") && name.endsWith(".dat")) {
+        names.add(name);
+      }
+    }
+    return names;
+  }
+
+  /**
+   * Inputs larger than the memory budget are joined through partitions on
+   * disk, which are deleted when the join closes
+   */
+  @Test public void spillsToDisk() throws Exception {
+    int tables = catalogSize();
+    java.util.Set<String> files = spillFiles();
+    JoinPredicate pred = new JoinPredicate(0, Predicate.Op.EQUALS, 0);
+    // 3000 keys match twice on the left and once on the right
+    HashJoin op = new HashJoin(pred, keyed(6000, 3000), keyed(5000, 5000), 2);
+    op.open();
+    int n = 0;
+    while (op.hasNext()) {
+      Tuple t = op.next();
+      assertEquals(t.getField(0), t.getField(2));
+      n++;
+    }
+    assertEquals(6000, n);
+    assertTrue(op.getSpillCount() > 0);
+    assertEquals(files, spillFiles());
+    assertEquals(6000, count(op));
+    op.close();
+    assertEquals(files, spillFiles());
+    // spills never go in the catalog
+    assertEquals(tables, catalogSize());
+  }
+
+  /**
+   * Probe tuples read while sizing the inputs count against the budget, so
+   * a build input that fits only without them is split
+   */
+  @Test public void bufferedProbeCounts() throws Exception {
+    JoinPredicate pred = new JoinPredicate(0, Predicate.Op.EQUALS, 0);
+    // 600 one-field tuples fill 2400 bytes of a 4096-byte page, but with the
+    // 342 two-field tuples read beside them they fill more than the page
+    int[] keys = new int[600];
+    for (int i = 0; i < keys.length; i++) {
+      keys[i] = i;
+    }
+    HashJoin op = new HashJoin(pred, TestUtil.createTupleList(1, keys), keyed(5000, 5000), 1);
+    op.open();
+    int n = 0;
+    while (op.hasNext()) {
+      Tuple t = op.next();
+      assertEquals(t.getField(0), t.getField(1));
+      n++;
+    }
+    assertTrue(op.getSpillCount() > 0);
+    op.close();
+    assertEquals(600, n);
+  }
+
+  /**
+   * Partitions whose keys are all equal cannot be split, and are joined in
+   * memory once they are deep enough
+   */
+  @Test public void spillsSkewedKeys() throws Exception {
+    JoinPredicate pred = new JoinPredicate(0, Predicate.Op.EQUALS, 0);
+    HashJoin op = new HashJoin(pred, keyed(600, 1), keyed(700, 1), 1);
+    op.open();
+    int n = 0;
+    while (op.hasNext()) {
+      op.next();
+      n++;
+    }
+    op.close();
+    assertEquals(600 * 700, n);
+  }
+
+  /**
+   * HashJoin only evaluates equality joins
+   */
+  @Test public void rejectsInequality() {
+    try {
+      new HashJoin(new JoinPredicate(0, Predicate.Op.GREATER_THAN, 0), scan1, scan2);
+      fail("built a hash join on >");
+    } catch (IllegalArgumentException e) {
+    }
+  }
+
+  /**
+   * JoinOptimizer evaluates equality joins with a HashJoin
+   */
+  @Test public void optimizerChoosesHashJoin() throws Exception {
+    LogicalJoinNode eq = new LogicalJoinNode("a", "b", "a.f0", "b.f0", Predicate.Op.EQUALS);
+    LogicalJoinNode ne = new LogicalJoinNode("a", "b", "a.f0", "b.f0",
+        Predicate.Op.NOT_EQUALS);
+    TupleDesc td = new TupleDesc(new Type[] { Type.INT_TYPE, Type.INT_TYPE },
+        new String[] { "a.f0", "a.f1" });
+    TupleDesc td2 = new TupleDesc(new Type[] { Type.INT_TYPE, Type.INT_TYPE },
+        new String[] { "b.f0", "b.f1" });
+    OpIterator left = new TupleIterator(td, java.util.Collections.<Tuple>emptyList());
+    OpIterator right = new TupleIterator(td2, java.util.Collections.<Tuple>emptyList());
+    assertTrue(JoinOptimizer.instantiateJoin(eq, left, right) instanceof HashJoin);
+    assertTrue(JoinOptimizer.instantiateJoin(ne, left, right) instanceof BlockNestedLoopJoin);
+
+    JoinOptimizer jo = new JoinOptimizer(null, new java.util.Vector<LogicalJoinNode>());
+    double hash = jo.estimateJoinCost(eq, 1000, 10000, 10000, 100000);
+    double nested = jo.estimateJoinCost(ne, 1000, 10000, 10000, 100000);
+    assertTrue(hash < nested);
+    assertTrue(hash >= 10000 + 100000);
+  }
+
+  /**
+   * JUnit suite target
+   */
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(HashJoinTest.class);
+  }
+}
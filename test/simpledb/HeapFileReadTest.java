@@ -121,6 +121,24 @@ public class HeapFileReadTest extends SimpleDbTestBase {
         it.close();
     }
 
+    /**
+     * Dropping a table from the catalog closes its channel, and a closed
+     * file opens it again when it is next read.
+     */
+    @Test
+    public void closeReleasesChannel() throws Exception {
+        java.nio.channels.FileChannel ch = hf.channel();
+        assertTrue(ch.isOpen());
+        byte[] before = hf.readPage(new HeapPageId(hf.getId(), 0)).getPageData();
+
+        Database.getCatalog().removeTable(hf.getId());
+        assertFalse(ch.isOpen());
+        Database.getCatalog().addTable(hf, SystemTestUtil.getUUID());
+        assertArrayEquals(before, hf.readPage(new HeapPageId(hf.getId(), 0)).getPageData());
+        assertTrue(hf.channel().isOpen());
+        hf.close();
+    }
+
     /**
      * JUnit suite target
      */
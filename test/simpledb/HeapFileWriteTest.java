@@ -1,5 +1,9 @@
 package simpledb;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -23,6 +27,40 @@ public class HeapFileWriteTest extends TestUtil.CreateHeapFile {
         Database.getBufferPool().transactionComplete(tid);
     }
 
+    /**
+     * The encoder lays out strings at their declared width, so narrow
+     * columns take proportionally fewer pages.
+     */
+    @Test public void convertNarrowStrings() throws Exception {
+        File text = File.createTempFile("narrow", ".txt");
+        text.deleteOnExit();
+        FileWriter w = new FileWriter(text);
+        for (int i = 0; i < 1000; i++) {
+            w.write(i + ",name" + i + "\n");
+        }
+        w.close();
+        Type[] types = new Type[]{Type.INT_TYPE, Type.STRING_TYPE};
+        int[] widths = new int[]{0, 12};
+        File wide = File.createTempFile("wide", ".dat");
+        File narrow = File.createTempFile("narrow", ".dat");
+        wide.deleteOnExit();
+        narrow.deleteOnExit();
+        HeapFileEncoder.convert(text, wide, BufferPool.getPageSize(), 2, types, ',');
+        HeapFileEncoder.convert(text, narrow, BufferPool.getPageSize(), 2, types, widths, ',');
+
+        TupleDesc td = new TupleDesc(types, new String[]{"id", "name"}, widths);
+        HeapFile hf = new HeapFile(narrow, td);
+        Database.getCatalog().addTable(hf, SystemTestUtil.getUUID());
+        // 136-byte tuples fill 34 pages, 20-byte ones 5
+        assertEquals(34, wide.length() / BufferPool.getPageSize());
+        assertEquals(5, hf.numPages());
+        DbFileIterator it = hf.iterator(tid);
+        it.open();
+        Tuple t = it.next();
+        assertEquals("name0", ((StringField) t.getField(1)).getValue());
+        it.close();
+    }
+
     /**
      * Unit test for HeapFile.addTuple()
      */
@@ -86,6 +124,26 @@ public class HeapFileWriteTest extends TestUtil.CreateHeapFile {
         it.close();
     }
 
+    /**
+     * The page count is kept in memory, but still sees pages another writer
+     * appended to the file.
+     */
+    @Test public void numPagesSeesExternalAppends() throws Exception {
+        assertEquals(1, empty.numPages());
+        empty.writePage(new HeapPage(new HeapPageId(empty.getId(), 1),
+                HeapPage.createEmptyPageData()));
+        assertEquals(2, empty.numPages());
+
+        FileOutputStream out = new FileOutputStream(empty.getFile(), true);
+        out.write(HeapPage.createEmptyPageData());
+        out.close();
+        assertEquals(3, empty.numPages());
+
+        // and the new page reads back
+        HeapPage p = (HeapPage) empty.readPage(new HeapPageId(empty.getId(), 2));
+        assertEquals(504, p.getNumEmptySlots());
+    }
+
     /**
      * JUnit suite target
      */
@@ -120,6 +120,32 @@ public class HeapPageReadTest extends SimpleDbTestBase {
             assertFalse(page.isSlotUsed(i));
     }
 
+    /**
+     * Unit test for HeapPage.getField()
+     */
+    @Test public void getField() throws Exception {
+        HeapPage page = new HeapPage(pid, EXAMPLE_DATA);
+
+        for (int i = 0; i < 20; ++i) {
+            assertEquals(EXAMPLE_VALUES[i][0], ((IntField) page.getField(i, 0)).getValue());
+            assertEquals(EXAMPLE_VALUES[i][1], ((IntField) page.getField(i, 1)).getValue());
+        }
+    }
+
+    /**
+     * Tuples handed out by a page are copies, so they keep their values when
+     * the page changes under them.
+     */
+    @Test public void tuplesOutliveChanges() throws Exception {
+        HeapPage page = new HeapPage(pid, EXAMPLE_DATA);
+        Tuple first = page.iterator().next();
+        page.deleteTuple(first);
+        page.insertTuple(Utility.getHeapTuple(7, 2));
+
+        assertEquals(EXAMPLE_VALUES[0][0], ((IntField) first.getField(0)).getValue());
+        assertEquals(7, ((IntField) page.getField(0, 0)).getValue());
+    }
+
     /**
      * JUnit suite target
      */
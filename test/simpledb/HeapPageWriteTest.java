@@ -44,6 +44,28 @@ public class HeapPageWriteTest extends SimpleDbTestBase {
         assertEquals(false, dirtier != null);
     }
 
+    /**
+     * Strings declared narrower than Type.STRING_LEN fit more tuples on a
+     * page, and are cut to the declared width.
+     */
+    @Test public void narrowStrings() throws Exception {
+        TupleDesc td = new TupleDesc(new Type[]{Type.INT_TYPE, Type.STRING_TYPE},
+                new String[]{"id", "name"}, new int[]{0, 8});
+        Database.getCatalog().addTable(new SkeletonFile(-1, td), SystemTestUtil.getUUID());
+        HeapPage page = new HeapPage(pid, HeapPage.createEmptyPageData());
+        assertEquals(BufferPool.getPageSize() * 8 / (16 * 8 + 1), page.getNumEmptySlots());
+
+        Tuple t = new Tuple(new TupleDesc(new Type[]{Type.INT_TYPE, Type.STRING_TYPE}));
+        t.setField(0, new IntField(1));
+        t.setField(1, new StringField("abcdefghijkl", Type.STRING_LEN));
+        page.insertTuple(t);
+
+        HeapPage copy = new HeapPage(pid, page.getPageData());
+        Tuple read = copy.iterator().next();
+        assertEquals("abcdefgh", ((StringField) read.getField(1)).getValue());
+        assertEquals("abcdefgh", ((StringField) copy.getField(0, 1)).getValue());
+    }
+
     /**
      * Unit test for HeapPage.addTuple()
      */
@@ -1,7 +1,9 @@
 package simpledb;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
 
+import java.util.HashMap;
 import java.util.NoSuchElementException;
 
 import junit.framework.JUnit4TestAdapter;
@@ -178,6 +180,84 @@ public class IntegerAggregatorTest extends SimpleDbTestBase {
     }
   }
 
+  /**
+   * Many integer groups, negative and colliding keys among them, each get
+   * their own aggregate
+   */
+  @Test public void manyGroups() throws Exception {
+    IntegerAggregator agg = new IntegerAggregator(0, Type.INT_TYPE, 1, Aggregator.Op.COUNT);
+    HashMap<Integer, Integer> expected = new HashMap<Integer, Integer>();
+    for (int i = 0; i < 20000; i++) {
+      // keys a multiple of a large power of two apart land in the same slot
+      int key = (i % 3000 - 1500) << 16;
+      agg.mergeTupleIntoGroup(Utility.getHeapTuple(new int[] { key, i }));
+      expected.put(key, expected.containsKey(key) ? expected.get(key) + 1 : 1);
+    }
+    OpIterator it = agg.iterator();
+    it.open();
+    int groups = 0;
+    while (it.hasNext()) {
+      Tuple t = it.next();
+      int key = ((IntField) t.getField(0)).getValue();
+      assertEquals(expected.get(key).intValue(), ((IntField) t.getField(1)).getValue());
+      groups++;
+    }
+    assertEquals(expected.size(), groups);
+  }
+
+  /**
+   * String group keys are grouped by their value
+   */
+  @Test public void stringGroups() throws Exception {
+    TupleDesc td = new TupleDesc(new Type[] { Type.STRING_TYPE, Type.INT_TYPE });
+    IntegerAggregator agg = new IntegerAggregator(0, Type.STRING_TYPE, 1, Aggregator.Op.MAX);
+    String[] names = { "ann", "bob", "ann", "cy", "bob", "ann" };
+    for (int i = 0; i < names.length; i++) {
+      Tuple t = new Tuple(td);
+      t.setField(0, new StringField(names[i], Type.STRING_LEN));
+      t.setField(1, new IntField(i));
+      agg.mergeTupleIntoGroup(t);
+    }
+    OpIterator it = agg.iterator();
+    it.open();
+    HashMap<String, Integer> max = new HashMap<String, Integer>();
+    while (it.hasNext()) {
+      Tuple t = it.next();
+      max.put(t.getField(0).toString(), ((IntField) t.getField(1)).getValue());
+    }
+    assertEquals(3, max.size());
+    assertEquals(5, max.get("ann").intValue());
+    assertEquals(4, max.get("bob").intValue());
+    assertEquals(3, max.get("cy").intValue());
+  }
+
+  /**
+   * Sums are kept in longs: an average of large values is right, and a sum
+   * too large for an IntField is an error rather than a wrapped value
+   */
+  @Test public void largeSums() throws Exception {
+    IntegerAggregator avg = new IntegerAggregator(Aggregator.NO_GROUPING, null, 0,
+        Aggregator.Op.AVG);
+    IntegerAggregator sum = new IntegerAggregator(Aggregator.NO_GROUPING, null, 0,
+        Aggregator.Op.SUM);
+    for (int i = 0; i < 4; i++) {
+      avg.mergeTupleIntoGroup(Utility.getHeapTuple(Integer.MAX_VALUE - i));
+      sum.mergeTupleIntoGroup(Utility.getHeapTuple(Integer.MAX_VALUE - i));
+    }
+    OpIterator it = avg.iterator();
+    it.open();
+    // the mean is MAX_VALUE - 1.5, truncated like integer division
+    assertEquals(Integer.MAX_VALUE - 2, ((IntField) it.next().getField(0)).getValue());
+
+    it = sum.iterator();
+    try {
+      it.open();
+      fail("a sum of 4 * 2^31 fit in an int");
+    } catch (DbException e) {
+      // expected
+    }
+  }
+
   /**
    * JUnit suite target
    */
@@ -0,0 +1,144 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import junit.framework.JUnit4TestAdapter;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class LimitTest extends SimpleDbTestBase {
+
+  /** A tuple list that counts the tuples read from it */
+  static class CountingIterator extends TupleIterator {
+    private static final long serialVersionUID = 1L;
+    int read;
+
+    CountingIterator(TupleDesc td, Iterable<Tuple> tuples) {
+      super(td, tuples);
+    }
+
+    public Tuple next() {
+      read++;
+      return super.next();
+    }
+  }
+
+  private static CountingIterator counting(int n) {
+    int[] data = new int[n];
+    for (int i = 0; i < n; i++) {
+      data[i] = i;
+    }
+    TupleIterator ti = TestUtil.createTupleList(1, data);
+    ArrayList<Tuple> tuples = new ArrayList<Tuple>();
+    try {
+      ti.open();
+      while (ti.hasNext()) {
+        tuples.add(ti.next());
+      }
+    } catch (Exception e) {
+      throw new RuntimeException(e);
+    }
+    return new CountingIterator(ti.getTupleDesc(), tuples);
+  }
+
+  /**
+   * Limit returns the first tuples of its child and reads no more of it
+   */
+  @Test public void stopsEarly() throws Exception {
+    CountingIterator child = counting(1000);
+    Limit op = new Limit(child, 10);
+    op.open();
+    int n = 0;
+    while (op.hasNext()) {
+      assertEquals(n, ((IntField) op.next().getField(0)).getValue());
+      n++;
+    }
+    assertEquals(10, n);
+    assertEquals(10, child.read);
+
+    op.rewind();
+    assertEquals(0, ((IntField) op.next().getField(0)).getValue());
+    op.close();
+  }
+
+  /**
+   * A limit larger than the child returns the whole child
+   */
+  @Test public void largeLimit() throws Exception {
+    Limit op = new Limit(counting(5), 100);
+    op.open();
+    int n = 0;
+    while (op.hasNext()) {
+      op.next();
+      n++;
+    }
+    op.close();
+    assertEquals(5, n);
+  }
+
+  /**
+   * The parser takes a trailing LIMIT off a SELECT into its plan, which
+   * sorts with a TopN under an ORDER BY and ends in a Limit otherwise
+   */
+  @Test public void parsedLimit() throws Exception {
+    ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+    File f = SystemTestUtil.createRandomHeapFileUnopened(2, 2000, 1000, null, tuples);
+    HeapFile hf = new HeapFile(f, Utility.getTupleDesc(2, "f"));
+    Database.getCatalog().addTable(hf, "lt");
+    HashMap<String, TableStats> stats = new HashMap<String, TableStats>();
+    stats.put("lt", new TableStats(hf.getId(), 1000));
+    TransactionId tid = new TransactionId();
+    Parser p = new Parser();
+
+    assertEquals("SELECT * FROM lt;", p.stripLimit("SELECT * FROM lt limit 3 ;"));
+    assertEquals("select * from lt t where t.f0 = 1",
+        p.stripLimit("select * from lt t where t.f0 = 1 LIMIT 3"));
+    assertEquals("DELETE FROM lt LIMIT 3;", p.stripLimit("DELETE FROM lt LIMIT 3;"));
+
+    LogicalPlan lp = p.generateLogicalPlan(tid,
+        "SELECT t.f0 FROM lt t ORDER BY t.f0 DESC LIMIT 7;");
+    assertEquals(7, lp.getLimit());
+    OpIterator plan = lp.physicalPlan(tid, stats, false);
+    assertTrue(((Operator) plan).getChildren()[0] instanceof TopN);
+    plan.open();
+    int n = 0;
+    int last = Integer.MAX_VALUE;
+    while (plan.hasNext()) {
+      int v = ((IntField) plan.next().getField(0)).getValue();
+      assertTrue(v <= last);
+      last = v;
+      n++;
+    }
+    plan.close();
+    assertEquals(7, n);
+
+    lp = p.generateLogicalPlan(tid,
+        "SELECT t.f0, t.f1 FROM lt t ORDER BY t.f0, t.f1 DESC LIMIT 3;");
+    plan = lp.physicalPlan(tid, stats, false);
+    TopN top = (TopN) ((Operator) plan).getChildren()[0];
+    assertEquals(2, top.getOrderByFields().length);
+    assertTrue(top.getAscending()[0] && !top.getAscending()[1]);
+
+    lp = p.generateLogicalPlan(tid, "SELECT t.f1 FROM lt t LIMIT 4;");
+    plan = lp.physicalPlan(tid, stats, false);
+    assertTrue(((Operator) plan).getChildren()[0] instanceof Limit);
+
+    lp = p.generateLogicalPlan(tid, "SELECT t.f1 FROM lt t;");
+    assertEquals(LogicalPlan.NO_LIMIT, lp.getLimit());
+    Database.getBufferPool().transactionComplete(tid);
+  }
+
+  /**
+   * JUnit suite target
+   */
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(LimitTest.class);
+  }
+}
@@ -0,0 +1,185 @@
+package simpledb;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class LockManagerTest {
+    /** How long to give a blocked thread before deciding it is stuck. */
+    private static final int WAIT_MS = 200;
+
+    private LockManager lm;
+    private PageId p0, p1;
+    private TransactionId t1, t2, t3;
+
+    /** Acquires a lock in another thread, recording how that went. */
+    private class Grabber extends Thread {
+        final TransactionId tid;
+        final PageId pid;
+        final Permissions perm;
+        volatile boolean acquired;
+        volatile Exception error;
+
+        Grabber(TransactionId tid, PageId pid, Permissions perm) {
+            this.tid = tid;
+            this.pid = pid;
+            this.perm = perm;
+            setDaemon(true);
+            start();
+        }
+
+        public void run() {
+            try {
+                lm.acquire(tid, pid, perm);
+                acquired = true;
+            } catch (Exception e) {
+                error = e;
+            }
+        }
+    }
+
+    @Before public void setUp() {
+        lm = new LockManager();
+        p0 = new HeapPageId(1, 0);
+        p1 = new HeapPageId(1, 1);
+        t1 = new TransactionId();
+        t2 = new TransactionId();
+        t3 = new TransactionId();
+    }
+
+    @Test public void sharedLocksAreCompatible() throws Exception {
+        lm.acquire(t1, p0, Permissions.READ_ONLY);
+        Grabber g = new Grabber(t2, p0, Permissions.READ_ONLY);
+        g.join(WAIT_MS);
+        assertTrue(g.acquired);
+        assertTrue(lm.holdsLock(t1, p0));
+        assertTrue(lm.holdsLock(t2, p0));
+    }
+
+    @Test public void exclusiveLockBlocksUntilReleased() throws Exception {
+        lm.acquire(t1, p0, Permissions.READ_WRITE);
+        Grabber g = new Grabber(t2, p0, Permissions.READ_ONLY);
+        g.join(WAIT_MS);
+        assertFalse(g.acquired);
+
+        lm.releaseAll(t1);
+        g.join(WAIT_MS);
+        assertTrue(g.acquired);
+        assertFalse(lm.holdsLock(t1, p0));
+    }
+
+    @Test public void soleSharerUpgrades() throws Exception {
+        lm.acquire(t1, p0, Permissions.READ_ONLY);
+        lm.acquire(t1, p0, Permissions.READ_WRITE);
+        assertTrue(lm.holdsExclusive(t1, p0));
+
+        // asking for less than we hold is a no-op
+        lm.acquire(t1, p0, Permissions.READ_ONLY);
+        assertTrue(lm.holdsExclusive(t1, p0));
+    }
+
+    @Test public void upgradeWaitsForOtherSharers() throws Exception {
+        lm.acquire(t1, p0, Permissions.READ_ONLY);
+        lm.acquire(t2, p0, Permissions.READ_ONLY);
+        Grabber g = new Grabber(t1, p0, Permissions.READ_WRITE);
+        g.join(WAIT_MS);
+        assertFalse(g.acquired);
+
+        lm.releaseAll(t2);
+        g.join(WAIT_MS);
+        assertTrue(g.acquired);
+        assertTrue(lm.holdsExclusive(t1, p0));
+    }
+
+    @Test public void concurrentUpgradesDeadlock() throws Exception {
+        lm.acquire(t1, p0, Permissions.READ_ONLY);
+        lm.acquire(t2, p0, Permissions.READ_ONLY);
+        Grabber g = new Grabber(t1, p0, Permissions.READ_WRITE);
+        g.join(WAIT_MS);
+        assertFalse(g.acquired);
+
+        try {
+            lm.acquire(t2, p0, Permissions.READ_WRITE);
+            fail("expected DeadlockException");
+        } catch (DeadlockException e) {
+            // expected
+        }
+
+        // aborting t2 lets t1 through
+        lm.releaseAll(t2);
+        g.join(WAIT_MS);
+        assertTrue(g.acquired);
+    }
+
+    @Test public void cycleIsDetectedImmediately() throws Exception {
+        lm.acquire(t1, p0, Permissions.READ_WRITE);
+        lm.acquire(t2, p1, Permissions.READ_WRITE);
+        Grabber g = new Grabber(t1, p1, Permissions.READ_ONLY);
+        g.join(WAIT_MS);
+        assertFalse(g.acquired);
+
+        long start = System.currentTimeMillis();
+        try {
+            lm.acquire(t2, p0, Permissions.READ_ONLY);
+            fail("expected DeadlockException");
+        } catch (DeadlockException e) {
+            // expected
+        }
+        assertTrue(System.currentTimeMillis() - start < WAIT_MS);
+        assertNull(g.error);
+    }
+
+    @Test public void longerCycleIsDetected() throws Exception {
+        PageId p2 = new HeapPageId(1, 2);
+        lm.acquire(t1, p0, Permissions.READ_WRITE);
+        lm.acquire(t2, p1, Permissions.READ_WRITE);
+        lm.acquire(t3, p2, Permissions.READ_WRITE);
+        Grabber g1 = new Grabber(t1, p1, Permissions.READ_WRITE);
+        Grabber g2 = new Grabber(t2, p2, Permissions.READ_WRITE);
+        g1.join(WAIT_MS);
+        g2.join(WAIT_MS);
+
+        try {
+            lm.acquire(t3, p0, Permissions.READ_WRITE);
+            fail("expected DeadlockException");
+        } catch (DeadlockException e) {
+            // expected
+        }
+        lm.releaseAll(t3);
+        g2.join(WAIT_MS);
+        assertTrue(g2.acquired);
+        assertFalse(g1.acquired);
+    }
+
+    /**
+     * A sharer that joins while a writer waits is added to the writer's
+     * edges, so a cycle through it is still found.
+     */
+    @Test public void lateSharerIsTracked() throws Exception {
+        lm.acquire(t1, p0, Permissions.READ_ONLY);
+        Grabber w = new Grabber(t2, p0, Permissions.READ_WRITE);
+        w.join(WAIT_MS);
+        assertFalse(w.acquired);
+
+        lm.acquire(t2, p1, Permissions.READ_WRITE);
+        lm.acquire(t3, p0, Permissions.READ_ONLY);
+        Thread.sleep(WAIT_MS);
+
+        // t3 -> t2 -> t3
+        try {
+            lm.acquire(t3, p1, Permissions.READ_ONLY);
+            fail("expected DeadlockException");
+        } catch (DeadlockException e) {
+            // expected
+        }
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(LockManagerTest.class);
+    }
+}
@@ -0,0 +1,121 @@
+package simpledb;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.util.ArrayList;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class MappedHeapFileTest extends SimpleDbTestBase {
+    private ArrayList<ArrayList<Integer>> tuples;
+    private MappedHeapFile mf;
+    private TransactionId tid;
+
+    /**
+     * Set up initial resources for each unit test.
+     */
+    @Before public void setUp() throws Exception {
+        tuples = new ArrayList<ArrayList<Integer>>();
+        File f = SystemTestUtil.createRandomHeapFileUnopened(2, 504 * 3 + 10, 1000, null, tuples);
+        mf = new MappedHeapFile(f, Utility.getTupleDesc(2));
+        Database.getCatalog().addTable(mf, SystemTestUtil.getUUID());
+        tid = new TransactionId();
+    }
+
+    @After public void tearDown() throws Exception {
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * Pages decoded from the mapping match those HeapFile reads.
+     */
+    @Test public void readPage() throws Exception {
+        HeapFile plain = new HeapFile(mf.getFile(), mf.getTupleDesc());
+        assertEquals(4, mf.numPages());
+        for (int i = 0; i < 4; i++) {
+            HeapPageId pid = new HeapPageId(mf.getId(), i);
+            HeapPage mapped = (HeapPage) mf.readPage(pid);
+            HeapPage read = (HeapPage) plain.readPage(pid);
+            assertArrayEquals(read.getPageData(), mapped.getPageData());
+        }
+        SystemTestUtil.matchTuples(mf, tuples);
+    }
+
+    /**
+     * A page read without a frame reads the mapping in place, and changes
+     * a copy of it, leaving the file alone.
+     */
+    @Test public void readsMappingInPlace() throws Exception {
+        HeapPageId pid = new HeapPageId(mf.getId(), 3);
+        HeapPage pg = (HeapPage) mf.readPage(pid);
+        assertTrue(pg.data.isReadOnly());
+        byte[] before = pg.getPageData();
+        int empty = pg.getNumEmptySlots();
+
+        pg.insertTuple(Utility.getHeapTuple(-1, 2));
+        assertFalse(pg.data.isReadOnly());
+        assertEquals(empty - 1, pg.getNumEmptySlots());
+        assertArrayEquals(before, mf.readPage(pid).getPageData());
+        assertArrayEquals(before, pg.getBeforeImage().getPageData());
+    }
+
+    /**
+     * Pages appended by inserts are mapped and read back.
+     */
+    @Test public void growsWithInserts() throws Exception {
+        // fill the last page and spill onto a new one
+        int free = 504 - 10;
+        for (int i = 0; i < free + 5; i++) {
+            Tuple t = Utility.getHeapTuple(i, 2);
+            Database.getBufferPool().insertTuple(tid, mf.getId(), t);
+            ArrayList<Integer> values = new ArrayList<Integer>();
+            values.add(i);
+            values.add(i);
+            tuples.add(values);
+        }
+        Database.getBufferPool().transactionComplete(tid);
+        assertEquals(5, mf.numPages());
+
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        HeapPage last = (HeapPage) mf.readPage(new HeapPageId(mf.getId(), 4));
+        assertEquals(504 - 5, last.getNumEmptySlots());
+        SystemTestUtil.matchTuples(mf, tuples);
+    }
+
+    /**
+     * The catalog creates a MappedHeapFile for tables declared "mapped".
+     */
+    @Test public void selectedInSchema() throws Exception {
+        File dir = mf.getFile().getParentFile();
+        File schema = File.createTempFile("mapped", ".schema", dir);
+        schema.deleteOnExit();
+        String plainName = "plain" + SystemTestUtil.getUUID().replace("-", "");
+        String mappedName = "mapped" + SystemTestUtil.getUUID().replace("-", "");
+        FileWriter w = new FileWriter(schema);
+        w.write(plainName + " (a int, b int)\n");
+        w.write(mappedName + " (a int, b int) mapped\n");
+        w.close();
+
+        Database.getCatalog().loadSchema(schema.getAbsolutePath());
+        DbFile plain = Database.getCatalog().getDatabaseFile(
+                Database.getCatalog().getTableId(plainName));
+        DbFile mapped = Database.getCatalog().getDatabaseFile(
+                Database.getCatalog().getTableId(mappedName));
+        assertFalse(plain instanceof MappedHeapFile);
+        assertTrue(mapped instanceof MappedHeapFile);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(MappedHeapFileTest.class);
+    }
+}
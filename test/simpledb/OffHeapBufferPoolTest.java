@@ -0,0 +1,108 @@
+package simpledb;
+
+import java.util.ArrayList;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class OffHeapBufferPoolTest extends SimpleDbTestBase {
+    private static final int POOL_PAGES = 4;
+
+    private ArrayList<ArrayList<Integer>> tuples;
+    private HeapFile hf;
+    private TransactionId tid;
+    private BufferPool bp;
+
+    /**
+     * Set up initial resources for each unit test.
+     */
+    @Before public void setUp() throws Exception {
+        tuples = new ArrayList<ArrayList<Integer>>();
+        // more pages than the pool holds
+        hf = SystemTestUtil.createRandomHeapFile(2, 504 * 10, 1000, null, tuples);
+        tid = new TransactionId();
+        bp = Database.resetBufferPool(POOL_PAGES, true);
+    }
+
+    @After public void tearDown() throws Exception {
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * The pool takes one arena frame per cached page and gives it back when
+     * the page is evicted.
+     */
+    @Test public void framesFollowCachedPages() throws Exception {
+        assertTrue(bp.isOffHeap());
+        PageArena arena = bp.getArena();
+        assertEquals(POOL_PAGES, arena.getNumFrames());
+        assertEquals(POOL_PAGES, arena.getFreeFrames());
+
+        HeapPageId pid = new HeapPageId(hf.getId(), 0);
+        HeapPage pg = (HeapPage) bp.getPage(tid, pid, Permissions.READ_ONLY);
+        assertTrue(pg.data.isDirect());
+        assertEquals(POOL_PAGES - 1, arena.getFreeFrames());
+        bp.unpinPage(tid, pid);
+
+        for (int i = 0; i < hf.numPages(); i++) {
+            pid = new HeapPageId(hf.getId(), i);
+            bp.getPage(tid, pid, Permissions.READ_ONLY);
+            bp.unpinPage(tid, pid);
+        }
+        assertEquals(0, arena.getFreeFrames());
+        bp.discardPage(pid);
+        assertEquals(1, arena.getFreeFrames());
+    }
+
+    /**
+     * Pages read into arena frames hold the same bytes as pages read by the
+     * file itself.
+     */
+    @Test public void pagesMatchFile() throws Exception {
+        for (int i = 0; i < hf.numPages(); i++) {
+            HeapPageId pid = new HeapPageId(hf.getId(), i);
+            Page pg = bp.getPage(tid, pid, Permissions.READ_ONLY);
+            assertArrayEquals(hf.readPage(pid).getPageData(), pg.getPageData());
+            bp.unpinPage(tid, pid);
+        }
+    }
+
+    /**
+     * Changes made to pages in arena frames are written back on commit and
+     * thrown away on abort.
+     */
+    @Test public void commitAndAbort() throws Exception {
+        for (int i = 0; i < 600; i++) {
+            bp.insertTuple(tid, hf.getId(), Utility.getHeapTuple(i, 2));
+            ArrayList<Integer> values = new ArrayList<Integer>();
+            values.add(i);
+            values.add(i);
+            tuples.add(values);
+        }
+        bp.transactionComplete(tid);
+        SystemTestUtil.matchTuples(hf, tuples);
+
+        TransactionId aborted = new TransactionId();
+        bp.insertTuple(aborted, hf.getId(), Utility.getHeapTuple(-1, 2));
+        bp.transactionComplete(aborted, false);
+        SystemTestUtil.matchTuples(hf, tuples);
+
+        // and once more from disk
+        Database.resetBufferPool(POOL_PAGES, true);
+        SystemTestUtil.matchTuples(hf, tuples);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(OffHeapBufferPoolTest.class);
+    }
+}
@@ -0,0 +1,169 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import junit.framework.JUnit4TestAdapter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+
+public class OrderByTest extends SimpleDbTestBase {
+
+  int[] data;
+  OpIterator scan;
+
+  /**
+   * Initialize each unit test with 5000 tuples, many more than a page holds,
+   * whose keys repeat
+   */
+  @Before public void createTupleList() throws Exception {
+    Random r = new Random(444);
+    data = new int[5000 * 2];
+    for (int i = 0; i < 5000; i++) {
+      data[2 * i] = r.nextInt(1000);
+      data[2 * i + 1] = i;
+    }
+    scan = TestUtil.createTupleList(2, data);
+  }
+
+  /** @return the tuples of an operator, in the order returned */
+  private static ArrayList<Tuple> results(OpIterator op) throws Exception {
+    ArrayList<Tuple> s = new ArrayList<Tuple>();
+    while (op.hasNext()) {
+      s.add(op.next());
+    }
+    return s;
+  }
+
+  /** Checks tuples are sorted on field 0, ties in the order of field 1 */
+  private static void checkSorted(ArrayList<Tuple> tuples, boolean asc) {
+    for (int i = 1; i < tuples.size(); i++) {
+      int k0 = ((IntField) tuples.get(i - 1).getField(0)).getValue();
+      int k1 = ((IntField) tuples.get(i).getField(0)).getValue();
+      assertTrue(asc ? k0 <= k1 : k0 >= k1);
+      if (k0 == k1) {
+        assertTrue(((IntField) tuples.get(i - 1).getField(1)).getValue()
+            < ((IntField) tuples.get(i).getField(1)).getValue());
+      }
+    }
+  }
+
+  /**
+   * A sort that fits in memory returns every tuple, in order
+   */
+  @Test public void inMemory() throws Exception {
+    OrderBy op = new OrderBy(0, true, scan);
+    op.open();
+    ArrayList<Tuple> sorted = results(op);
+    op.close();
+    assertEquals(5000, sorted.size());
+    checkSorted(sorted, true);
+  }
+
+  /**
+   * Opening a sort again returns the tuples once, not twice
+   */
+  @Test public void reopen() throws Exception {
+    for (int pages : new int[] { OrderBy.DEFAULT_MEMORY_PAGES, 1 }) {
+      OrderBy op = new OrderBy(0, true, scan, pages);
+      op.open();
+      assertEquals(5000, results(op).size());
+      op.close();
+      op.open();
+      assertEquals(5000, results(op).size());
+      op.close();
+    }
+  }
+
+  /**
+   * A sort with a page of memory writes runs and merges them, in more than
+   * one pass, into the same order a sort in memory gives, in either
+   * direction
+   */
+  @Test public void external() throws Exception {
+    for (boolean asc : new boolean[] { true, false }) {
+      OrderBy mem = new OrderBy(0, asc, scan);
+      mem.open();
+      ArrayList<Tuple> expected = results(mem);
+      mem.close();
+
+      OrderBy op = new OrderBy(0, asc, scan, 1);
+      op.open();
+      ArrayList<Tuple> actual = results(op);
+      assertEquals(expected.size(), actual.size());
+      for (int i = 0; i < expected.size(); i++) {
+        assertTrue(TestUtil.compareTuples(expected.get(i), actual.get(i)));
+      }
+      checkSorted(actual, asc);
+
+      op.rewind();
+      ArrayList<Tuple> again = results(op);
+      op.close();
+      assertEquals(actual.size(), again.size());
+      assertTrue(TestUtil.compareTuples(actual.get(0), again.get(0)));
+    }
+  }
+
+  /**
+   * A sort on two fields in opposite directions, in memory and through
+   * runs, orders on the second field within equal first fields
+   */
+  @Test public void multiColumn() throws Exception {
+    for (int pages : new int[] { OrderBy.DEFAULT_MEMORY_PAGES, 1 }) {
+      OrderBy op = new OrderBy(new int[] { 0, 1 }, new boolean[] { false, true }, scan, pages);
+      op.open();
+      ArrayList<Tuple> sorted = results(op);
+      op.close();
+      assertEquals(5000, sorted.size());
+      checkSorted(sorted, false);
+    }
+  }
+
+  /**
+   * Strings and RecordIds survive being written to a run
+   */
+  @Test public void externalStrings() throws Exception {
+    TupleDesc td = new TupleDesc(new Type[] { Type.STRING_TYPE, Type.INT_TYPE });
+    ArrayList<Tuple> tuples = new ArrayList<Tuple>();
+    String[] words = new String[300];
+    for (int i = 0; i < words.length; i++) {
+      words[i] = Integer.toString(i * 7919 % 1000, 36) + (i % 3 == 0 ? "" : "x");
+      Tuple t = new Tuple(td);
+      t.setField(0, new StringField(words[i], Type.STRING_LEN));
+      t.setField(1, new IntField(i));
+      if (i % 2 == 0) {
+        t.setRecordId(new RecordId(new HeapPageId(7, i / 10), i % 10));
+      }
+      tuples.add(t);
+    }
+    OrderBy op = new OrderBy(0, true, new TupleIterator(td, tuples), 1);
+    op.open();
+    ArrayList<Tuple> sorted = results(op);
+    op.close();
+    Arrays.sort(words);
+    assertEquals(words.length, sorted.size());
+    for (int i = 0; i < words.length; i++) {
+      Tuple t = sorted.get(i);
+      assertEquals(words[i], ((StringField) t.getField(0)).getValue());
+      int n = ((IntField) t.getField(1)).getValue();
+      if (n % 2 == 0) {
+        assertEquals(new RecordId(new HeapPageId(7, n / 10), n % 10), t.getRecordId());
+      } else {
+        assertEquals(null, t.getRecordId());
+      }
+    }
+  }
+
+  /**
+   * JUnit suite target
+   */
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(OrderByTest.class);
+  }
+}
@@ -0,0 +1,75 @@
+package simpledb;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class PageArenaTest {
+
+    /**
+     * Every frame can be allocated once, and a released one is handed out
+     * again.
+     */
+    @Test public void allocateAndRelease() {
+        PageArena arena = new PageArena(4, 64, 1024);
+        assertEquals(4, arena.getNumFrames());
+        assertEquals(4 * 64, arena.getCapacity());
+
+        boolean[] seen = new boolean[4];
+        for (int i = 0; i < 4; i++) {
+            int slot = arena.allocate();
+            assertFalse(seen[slot]);
+            seen[slot] = true;
+        }
+        assertEquals(0, arena.getFreeFrames());
+        assertEquals(-1, arena.allocate());
+
+        arena.release(2);
+        assertEquals(1, arena.getFreeFrames());
+        assertEquals(2, arena.allocate());
+    }
+
+    /**
+     * Frames are direct, page sized and do not overlap, also across chunks.
+     */
+    @Test public void framesAreDisjoint() {
+        // three frames per chunk, so the arena spans three chunks
+        PageArena arena = new PageArena(7, 64, 200);
+        for (int slot = 0; slot < 7; slot++) {
+            ByteBuffer f = arena.frame(slot);
+            assertTrue(f.isDirect());
+            assertEquals(64, f.capacity());
+            assertEquals(0, f.position());
+            for (int i = 0; i < 64; i++) {
+                f.put(i, (byte) slot);
+            }
+        }
+        for (int slot = 0; slot < 7; slot++) {
+            ByteBuffer f = arena.frame(slot);
+            for (int i = 0; i < 64; i++) {
+                assertEquals(slot, f.get(i));
+            }
+        }
+    }
+
+    /**
+     * Releasing more frames than were allocated is an error.
+     */
+    @Test(expected=IllegalArgumentException.class)
+    public void doubleRelease() {
+        PageArena arena = new PageArena(2, 64, 1024);
+        arena.release(arena.allocate());
+        arena.release(0);
+        arena.release(1);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(PageArenaTest.class);
+    }
+}
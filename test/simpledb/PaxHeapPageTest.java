@@ -0,0 +1,182 @@
+package simpledb;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.util.ArrayList;
+import java.util.Iterator;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+import simpledb.TestUtil.SkeletonFile;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class PaxHeapPageTest extends SimpleDbTestBase {
+    private static final TupleDesc TD = new TupleDesc(
+            new Type[]{Type.INT_TYPE, Type.STRING_TYPE, Type.INT_TYPE},
+            new String[]{"id", "name", "year"});
+
+    private HeapPageId pid;
+
+    /**
+     * Set up initial resources for each unit test.
+     */
+    @Before public void addTable() throws Exception {
+        this.pid = new HeapPageId(-1, -1);
+        Database.getCatalog().addTable(new SkeletonFile(-1, TD), SystemTestUtil.getUUID());
+    }
+
+    private static Tuple tuple(int id, String name, int year) {
+        Tuple t = new Tuple(TD);
+        t.setField(0, new IntField(id));
+        t.setField(1, new StringField(name, Type.STRING_LEN));
+        t.setField(2, new IntField(year));
+        return t;
+    }
+
+    private static ArrayList<String> rows(PaxHeapPage page) {
+        ArrayList<String> rows = new ArrayList<String>();
+        Iterator<Tuple> it = page.iterator();
+        while (it.hasNext()) {
+            Tuple t = it.next();
+            rows.add(t.getField(0) + "," + t.getField(1) + "," + t.getField(2));
+        }
+        return rows;
+    }
+
+    /**
+     * A page holds as many tuples as a HeapPage of the same schema, and
+     * they read back whole, field by field and column by column.
+     */
+    @Test public void insertAndRead() throws Exception {
+        PaxHeapPage page = new PaxHeapPage(pid, PaxHeapPage.createEmptyPageData());
+        HeapPage heap = new HeapPage(pid, HeapPage.createEmptyPageData());
+        assertEquals(heap.getNumEmptySlots(), page.getNumSlots());
+        assertEquals(page.getNumSlots(), page.getNumEmptySlots());
+
+        int n = page.getNumSlots();
+        for (int i = 0; i < n; i++) {
+            Tuple t = tuple(i, "name" + i, 1970 + i);
+            page.insertTuple(t);
+            assertEquals(new RecordId(pid, i), t.getRecordId());
+        }
+        assertEquals(0, page.getFreeSpace());
+        try {
+            page.insertTuple(tuple(-1, "full", 0));
+            fail("expected DbException");
+        } catch (DbException e) {
+            // expected
+        }
+
+        ArrayList<String> rows = rows(page);
+        assertEquals(n, rows.size());
+        assertEquals("5,name5,1975", rows.get(5));
+        assertEquals(new StringField("name9", Type.STRING_LEN), page.getField(9, 1));
+
+        int[] years = page.getIntColumn(2, new int[n]);
+        for (int i = 0; i < n; i++) {
+            assertEquals(1970 + i, years[i]);
+        }
+    }
+
+    /**
+     * A deleted tuple's slot reads as empty, and is the next one filled.
+     */
+    @Test public void deleteAndReuse() throws Exception {
+        PaxHeapPage page = new PaxHeapPage(pid, PaxHeapPage.createEmptyPageData());
+        ArrayList<Tuple> tuples = new ArrayList<Tuple>();
+        for (int i = 0; i < 4; i++) {
+            Tuple t = tuple(i, "n" + i, i);
+            page.insertTuple(t);
+            tuples.add(t);
+        }
+        page.deleteTuple(tuples.get(1));
+        assertFalse(page.isSlotUsed(1));
+        assertEquals(0, page.getIntColumn(0, new int[page.getNumSlots()])[1]);
+        try {
+            page.deleteTuple(tuples.get(1));
+            fail("expected DbException");
+        } catch (DbException e) {
+            // expected
+        }
+
+        Tuple t = tuple(9, "n9", 9);
+        page.insertTuple(t);
+        assertEquals(new RecordId(pid, 1), t.getRecordId());
+        assertEquals("9,n9,9", rows(page).get(1));
+    }
+
+    /**
+     * The page data is the page, and the before image is the page as it was
+     * at the last setBeforeImage.
+     */
+    @Test public void pageDataRoundTrip() throws Exception {
+        PaxHeapPage page = new PaxHeapPage(pid, PaxHeapPage.createEmptyPageData());
+        page.insertTuple(tuple(1, "Gray", 1998));
+        page.setBeforeImage();
+        page.insertTuple(tuple(2, "Stonebraker", 2014));
+
+        PaxHeapPage copy = new PaxHeapPage(pid, page.getPageData());
+        assertEquals(rows(page), rows(copy));
+        assertEquals(2, rows(copy).size());
+        assertEquals(1, rows(page.getBeforeImage()).size());
+    }
+
+    /**
+     * A table declared "pax" in a schema is a PaxHeapFile of PAX pages
+     * written by the encoder.
+     */
+    @Test public void paxFile() throws Exception {
+        File text = File.createTempFile("pax", ".txt");
+        text.deleteOnExit();
+        File dir = text.getParentFile();
+        String name = text.getName().replace(".txt", "");
+        FileWriter w = new FileWriter(text);
+        for (int i = 0; i < 1000; i++) {
+            w.write(i + ",name" + i + "," + (i % 50) + "\n");
+        }
+        w.close();
+
+        File data = new File(dir, name + ".dat");
+        data.deleteOnExit();
+        FreeSpaceMap.sideFile(data).deleteOnExit();
+        ZoneMap.sideFile(data).deleteOnExit();
+        HeapFileEncoder.convertPax(text, data, BufferPool.getPageSize(), 3,
+                new Type[]{Type.INT_TYPE, Type.STRING_TYPE, Type.INT_TYPE}, null, ',');
+
+        File schema = File.createTempFile("pax", ".schema", dir);
+        schema.deleteOnExit();
+        w = new FileWriter(schema);
+        w.write(name + " (id int, name string, year int) pax\n");
+        w.close();
+        Database.getCatalog().loadSchema(schema.getAbsolutePath());
+        HeapFile hf = (HeapFile) Database.getCatalog().getDatabaseFile(
+                Database.getCatalog().getTableId(name));
+        assertTrue(hf instanceof PaxHeapFile);
+        assertTrue(hf.readPage(new HeapPageId(hf.getId(), 0)) instanceof PaxHeapPage);
+
+        TransactionId tid = new TransactionId();
+        DbFileIterator it = hf.iterator(tid);
+        it.open();
+        int count = 0;
+        long sum = 0;
+        while (it.hasNext()) {
+            sum += ((IntField) it.next().getField(2)).getValue();
+            count++;
+        }
+        it.close();
+        Database.getBufferPool().transactionComplete(tid);
+        assertEquals(1000, count);
+        assertEquals(20 * (49 * 50 / 2), sum);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(PaxHeapPageTest.class);
+    }
+}
@@ -0,0 +1,155 @@
+package simpledb;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class ReplacementPolicyTest {
+
+    /** Evictor that records victims and refuses the pages in busy. */
+    private static class RecordingEvictor implements ReplacementPolicy.Evictor {
+        final List<PageId> victims = new ArrayList<PageId>();
+        final Set<PageId> busy = new HashSet<PageId>();
+
+        public boolean tryEvict(PageId pid) {
+            if (busy.contains(pid)) {
+                return false;
+            }
+            victims.add(pid);
+            return true;
+        }
+    }
+
+    private static PageId pid(int n) {
+        return new HeapPageId(1, n);
+    }
+
+    /**
+     * Unit test for ClockPolicy: a page accessed since the last sweep gets a
+     * second chance.
+     */
+    @Test public void clockSecondChance() {
+        ClockPolicy p = new ClockPolicy();
+        RecordingEvictor ev = new RecordingEvictor();
+        for (int i = 0; i < 4; i++) {
+            p.pageAdded(pid(i));
+        }
+
+        // the first sweep clears every bit, then page 0 goes
+        assertTrue(p.evict(ev));
+        assertEquals(pid(0), ev.victims.get(0));
+
+        // page 1 was accessed after the sweep, so 2 goes before it
+        p.pageAccessed(pid(1));
+        assertTrue(p.evict(ev));
+        assertEquals(pid(2), ev.victims.get(1));
+    }
+
+    /**
+     * Unit test for ClockPolicy: pages the pool refuses to give up are
+     * skipped, and evict fails if there are no others.
+     */
+    @Test public void clockSkipsBusyPages() {
+        ClockPolicy p = new ClockPolicy();
+        RecordingEvictor ev = new RecordingEvictor();
+        p.pageAdded(pid(0));
+        p.pageAdded(pid(1));
+        ev.busy.add(pid(0));
+
+        assertTrue(p.evict(ev));
+        assertEquals(pid(1), ev.victims.get(0));
+        assertFalse(p.evict(ev));
+
+        // a removed page's slot is reused
+        p.pageRemoved(pid(0));
+        p.pageAdded(pid(2));
+        assertTrue(p.evict(ev));
+        assertEquals(pid(2), ev.victims.get(1));
+    }
+
+    /**
+     * Unit test for LruKPolicy: pages seen fewer than K times are evicted
+     * before pages seen K times, oldest first.
+     */
+    @Test public void lruKPrefersProbationPages() {
+        LruKPolicy p = new LruKPolicy(2);
+        RecordingEvictor ev = new RecordingEvictor();
+        p.pageAdded(pid(0));
+        p.pageAccessed(pid(0));
+        p.pageAdded(pid(1));
+        p.pageAdded(pid(2));
+
+        assertTrue(p.evict(ev));
+        assertTrue(p.evict(ev));
+        assertTrue(p.evict(ev));
+        assertEquals(pid(1), ev.victims.get(0));
+        assertEquals(pid(2), ev.victims.get(1));
+        assertEquals(pid(0), ev.victims.get(2));
+        assertFalse(p.evict(ev));
+    }
+
+    /**
+     * Unit test for LruKPolicy: among pages seen K times, the one whose K-th
+     * most recent access is oldest goes first.
+     */
+    @Test public void lruKOrdersByKthAccess() {
+        LruKPolicy p = new LruKPolicy(2);
+        RecordingEvictor ev = new RecordingEvictor();
+        p.pageAdded(pid(0));
+        p.pageAdded(pid(1));
+        p.pageAccessed(pid(1));
+        p.pageAccessed(pid(0));
+
+        // page 1's second-to-last access is older than page 0's
+        p.pageAccessed(pid(0));
+        assertTrue(p.evict(ev));
+        assertEquals(pid(1), ev.victims.get(0));
+
+        p.pageRemoved(pid(0));
+        assertFalse(p.evict(ev));
+    }
+
+    /**
+     * Unit test for ClockPolicy: a prefetched page nobody has used goes
+     * before pages that were accessed.
+     */
+    @Test public void clockEvictsUnusedPrefetchFirst() {
+        ClockPolicy p = new ClockPolicy();
+        RecordingEvictor ev = new RecordingEvictor();
+        p.pageAdded(pid(0));
+        p.pagePrefetched(pid(1));
+
+        assertTrue(p.evict(ev));
+        assertEquals(pid(1), ev.victims.get(0));
+    }
+
+    /**
+     * Unit test for LruKPolicy: the first real access of a prefetched page
+     * counts as its first access, not its second.
+     */
+    @Test public void lruKPrefetchIsNotAnAccess() {
+        LruKPolicy p = new LruKPolicy(2);
+        RecordingEvictor ev = new RecordingEvictor();
+        p.pageAdded(pid(0));
+        p.pageAccessed(pid(0));
+        p.pagePrefetched(pid(1));
+        p.pageAccessed(pid(1));
+
+        // page 1 is still on probation, so it goes before page 0
+        assertTrue(p.evict(ev));
+        assertEquals(pid(1), ev.victims.get(0));
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(ReplacementPolicyTest.class);
+    }
+}
@@ -0,0 +1,115 @@
+package simpledb;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.util.HashSet;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+import simpledb.systemtest.SimpleDbTestBase;
+
+public class SlottedHeapFileTest extends SimpleDbTestBase {
+    private static final int ROWS = 2000;
+
+    private File dir;
+    private String name;
+    private SlottedHeapFile sf;
+    private TransactionId tid;
+
+    /**
+     * Writes a text table, converts it to slotted pages and loads it through
+     * a schema declaring it "slotted".
+     */
+    @Before public void setUp() throws Exception {
+        File text = File.createTempFile("slotted", ".txt");
+        text.deleteOnExit();
+        dir = text.getParentFile();
+        name = text.getName().replace(".txt", "");
+        FileWriter w = new FileWriter(text);
+        for (int i = 0; i < ROWS; i++) {
+            w.write(i + ",name" + i + "\n");
+        }
+        w.close();
+
+        File data = new File(dir, name + ".dat");
+        data.deleteOnExit();
+        FreeSpaceMap.sideFile(data).deleteOnExit();
+        ZoneMap.sideFile(data).deleteOnExit();
+        HeapFileEncoder.convertSlotted(text, data, BufferPool.getPageSize(), 2,
+                new Type[]{Type.INT_TYPE, Type.STRING_TYPE}, ',');
+
+        File schema = File.createTempFile("slotted", ".schema", dir);
+        schema.deleteOnExit();
+        w = new FileWriter(schema);
+        w.write(name + " (id int, name string) slotted\n");
+        w.close();
+        Database.getCatalog().loadSchema(schema.getAbsolutePath());
+        sf = (SlottedHeapFile) Database.getCatalog().getDatabaseFile(
+                Database.getCatalog().getTableId(name));
+        tid = new TransactionId();
+    }
+
+    @After public void tearDown() throws Exception {
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    private HashSet<String> scan() throws Exception {
+        HashSet<String> rows = new HashSet<String>();
+        DbFileIterator it = sf.iterator(tid);
+        it.open();
+        while (it.hasNext()) {
+            Tuple t = it.next();
+            rows.add(t.getField(0) + "," + t.getField(1));
+        }
+        it.close();
+        return rows;
+    }
+
+    /**
+     * The encoder packs the rows on few pages and they read back.
+     */
+    @Test public void convertAndScan() throws Exception {
+        HashSet<String> rows = scan();
+        assertEquals(ROWS, rows.size());
+        assertTrue(rows.contains("17,name17"));
+        int perPage = BufferPool.getPageSize() * 8 / (sf.getTupleDesc().getSize() * 8 + 1);
+        int fixedPages = (ROWS + perPage - 1) / perPage;
+        assertTrue(sf.numPages() * 4 < fixedPages);
+        assertTrue(sf.readPage(new HeapPageId(sf.getId(), 0)) instanceof SlottedHeapPage);
+    }
+
+    /**
+     * Inserts and deletes go through the buffer pool and reach the disk.
+     */
+    @Test public void insertAndDelete() throws Exception {
+        Tuple t = new Tuple(sf.getTupleDesc());
+        t.setField(0, new IntField(-1));
+        t.setField(1, new StringField("inserted", Type.STRING_LEN));
+        Database.getBufferPool().insertTuple(tid, sf.getId(), t);
+
+        DbFileIterator it = sf.iterator(tid);
+        it.open();
+        Tuple victim = it.next();
+        it.close();
+        Database.getBufferPool().deleteTuple(tid, victim);
+        Database.getBufferPool().transactionComplete(tid);
+
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        tid = new TransactionId();
+        HashSet<String> rows = scan();
+        assertEquals(ROWS, rows.size());
+        assertTrue(rows.contains("-1,inserted"));
+        assertFalse(rows.contains(victim.getField(0) + "," + victim.getField(1)));
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(SlottedHeapFileTest.class);
+    }
+}
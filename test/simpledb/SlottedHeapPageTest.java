@@ -0,0 +1,172 @@
+package simpledb;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+import simpledb.TestUtil.SkeletonFile;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class SlottedHeapPageTest extends SimpleDbTestBase {
+    private static final TupleDesc TD = new TupleDesc(
+            new Type[]{Type.INT_TYPE, Type.STRING_TYPE}, new String[]{"id", "name"});
+
+    private HeapPageId pid;
+
+    /**
+     * Set up initial resources for each unit test.
+     */
+    @Before public void addTable() throws Exception {
+        this.pid = new HeapPageId(-1, -1);
+        Database.getCatalog().addTable(new SkeletonFile(-1, TD), SystemTestUtil.getUUID());
+    }
+
+    private static Tuple tuple(int id, String name) {
+        Tuple t = new Tuple(TD);
+        t.setField(0, new IntField(id));
+        t.setField(1, new StringField(name, Type.STRING_LEN));
+        return t;
+    }
+
+    private static ArrayList<String> names(SlottedHeapPage page) {
+        ArrayList<String> names = new ArrayList<String>();
+        Iterator<Tuple> it = page.iterator();
+        while (it.hasNext()) {
+            names.add(((StringField) it.next().getField(1)).getValue());
+        }
+        return names;
+    }
+
+    /**
+     * Records take only the bytes of their strings, and read back as written.
+     */
+    @Test public void insertAndRead() throws Exception {
+        SlottedHeapPage page = new SlottedHeapPage(pid, SlottedHeapPage.createEmptyPageData());
+        assertEquals(0, page.getNumTuples());
+
+        Tuple t = tuple(7, "Codd");
+        page.insertTuple(t);
+        assertEquals(new RecordId(pid, 0), t.getRecordId());
+        assertEquals(4 + 2 + 4, SlottedHeapPage.recordSize(TD, t));
+        assertEquals(BufferPool.getPageSize() - 4 - 4 - 10, page.getFreeBytes());
+
+        page.insertTuple(tuple(8, ""));
+        Iterator<Tuple> it = page.iterator();
+        Tuple first = it.next();
+        assertEquals(7, ((IntField) first.getField(0)).getValue());
+        assertEquals("Codd", ((StringField) first.getField(1)).getValue());
+        assertEquals("", ((StringField) it.next().getField(1)).getValue());
+        assertFalse(it.hasNext());
+    }
+
+    /**
+     * Many more short tuples fit on a page than fixed-size ones would.
+     */
+    @Test public void fillsWithShortStrings() throws Exception {
+        SlottedHeapPage page = new SlottedHeapPage(pid, SlottedHeapPage.createEmptyPageData());
+        int n = 0;
+        try {
+            while (true) {
+                page.insertTuple(tuple(n, "author " + n));
+                n++;
+            }
+        } catch (DbException e) {
+            // full
+        }
+        int fixed = BufferPool.getPageSize() * 8 / (TD.getSize() * 8 + 1);
+        assertTrue(n > 4 * fixed);
+        assertEquals(n, page.getNumTuples());
+        assertEquals(0, page.getFreeSpace());
+    }
+
+    /**
+     * A deleted tuple's slot is reused, and other tuples keep their slots
+     * when the records are moved together to make room.
+     */
+    @Test public void deleteAndCompact() throws Exception {
+        SlottedHeapPage page = new SlottedHeapPage(pid, SlottedHeapPage.createEmptyPageData());
+        ArrayList<Tuple> tuples = new ArrayList<Tuple>();
+        String filler = "xxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxx";
+        try {
+            while (true) {
+                Tuple t = tuple(tuples.size(), filler);
+                page.insertTuple(t);
+                tuples.add(t);
+            }
+        } catch (DbException e) {
+            // full
+        }
+
+        // free every other record, leaving gaps too small on their own
+        for (int i = 0; i < tuples.size(); i += 2) {
+            page.deleteTuple(tuples.get(i));
+        }
+        Tuple big = tuple(-1, filler + filler + filler);
+        page.insertTuple(big);
+        assertEquals(new RecordId(pid, 0), big.getRecordId());
+
+        Iterator<Tuple> it = page.iterator();
+        assertEquals(-1, ((IntField) it.next().getField(0)).getValue());
+        for (int i = 1; i < tuples.size(); i += 2) {
+            Tuple t = it.next();
+            assertEquals(tuples.get(i).getRecordId(), t.getRecordId());
+            assertEquals(i, ((IntField) t.getField(0)).getValue());
+        }
+        assertFalse(it.hasNext());
+    }
+
+    /**
+     * Deleting a tuple twice, or one from another page, fails.
+     */
+    @Test public void deleteMissing() throws Exception {
+        SlottedHeapPage page = new SlottedHeapPage(pid, SlottedHeapPage.createEmptyPageData());
+        Tuple t = tuple(1, "a");
+        page.insertTuple(t);
+        page.deleteTuple(t);
+        try {
+            page.deleteTuple(t);
+            fail("expected DbException");
+        } catch (DbException e) {
+            // expected
+        }
+        assertEquals(0, page.getNumSlots());
+    }
+
+    /**
+     * The page data is the page, and the before image is the page as it was
+     * at the last setBeforeImage.
+     */
+    @Test public void pageDataRoundTrip() throws Exception {
+        SlottedHeapPage page = new SlottedHeapPage(pid, SlottedHeapPage.createEmptyPageData());
+        page.insertTuple(tuple(1, "Gray"));
+        page.setBeforeImage();
+        page.insertTuple(tuple(2, "Stonebraker"));
+
+        SlottedHeapPage copy = new SlottedHeapPage(pid, page.getPageData());
+        assertEquals(names(page), names(copy));
+        assertEquals(2, names(copy).size());
+        assertEquals(1, names(page.getBeforeImage()).size());
+    }
+
+    /**
+     * A header whose slot array runs into the records is rejected.
+     */
+    @Test(expected=java.io.IOException.class)
+    public void corruptHeader() throws Exception {
+        byte[] data = SlottedHeapPage.createEmptyPageData();
+        data[0] = (byte) 0x7f;
+        new SlottedHeapPage(pid, data);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(SlottedHeapPageTest.class);
+    }
+}
@@ -0,0 +1,221 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import junit.framework.JUnit4TestAdapter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+
+public class SortMergeJoinTest extends SimpleDbTestBase {
+
+  OpIterator scan1;
+  OpIterator scan2;
+
+  /**
+   * Initialize each unit test with unsorted inputs whose keys repeat on
+   * both sides
+   */
+  @Before public void createTupleLists() throws Exception {
+    Random r = new Random(444);
+    int[] d1 = new int[200 * 2];
+    for (int i = 0; i < 200; i++) {
+      d1[2 * i] = r.nextInt(50);
+      d1[2 * i + 1] = i;
+    }
+    int[] d2 = new int[300 * 2];
+    for (int i = 0; i < 300; i++) {
+      d2[2 * i] = r.nextInt(60) - 5;
+      d2[2 * i + 1] = -i;
+    }
+    this.scan1 = TestUtil.createTupleList(2, d1);
+    this.scan2 = TestUtil.createTupleList(2, d2);
+  }
+
+  /** @return the tuples of an operator as sorted strings */
+  private static ArrayList<String> results(OpIterator op) throws Exception {
+    ArrayList<String> s = new ArrayList<String>();
+    op.open();
+    while (op.hasNext()) {
+      s.add(op.next().toString());
+    }
+    op.close();
+    Collections.sort(s);
+    return s;
+  }
+
+  private void checkAgainstJoin(Predicate.Op op) throws Exception {
+    JoinPredicate pred = new JoinPredicate(0, op, 0);
+    ArrayList<String> expected = results(new Join(pred, scan1, scan2));
+    ArrayList<String> actual = results(new SortMergeJoin(pred, scan1, scan2));
+    assertFalse(expected.isEmpty());
+    assertEquals(op.toString(), expected, actual);
+  }
+
+  /**
+   * Unit test for SortMergeJoin.getTupleDesc()
+   */
+  @Test public void getTupleDesc() {
+    JoinPredicate pred = new JoinPredicate(0, Predicate.Op.EQUALS, 0);
+    SortMergeJoin op = new SortMergeJoin(pred, scan1, scan2);
+    assertEquals(Utility.getTupleDesc(4), op.getTupleDesc());
+  }
+
+  /**
+   * An equality join pairs up every tuple of a run of equal keys on one
+   * side with every tuple of the run on the other
+   */
+  @Test public void eqJoinDuplicates() throws Exception {
+    checkAgainstJoin(Predicate.Op.EQUALS);
+  }
+
+  /**
+   * Range comparisons in both directions return what a nested loop does
+   */
+  @Test public void rangeJoins() throws Exception {
+    checkAgainstJoin(Predicate.Op.LESS_THAN);
+    checkAgainstJoin(Predicate.Op.LESS_THAN_OR_EQ);
+    checkAgainstJoin(Predicate.Op.GREATER_THAN);
+    checkAgainstJoin(Predicate.Op.GREATER_THAN_OR_EQ);
+  }
+
+  /**
+   * A range join whose held input is larger than its memory writes it to
+   * disk and returns the same tuples
+   */
+  @Test public void rangeJoinsOverBudget() throws Exception {
+    Random r = new Random(445);
+    int[] d1 = new int[800 * 2];
+    for (int i = 0; i < 800; i++) {
+      d1[2 * i] = r.nextInt(1000);
+      d1[2 * i + 1] = i;
+    }
+    int[] d2 = new int[1200 * 2];
+    for (int i = 0; i < 1200; i++) {
+      d2[2 * i] = r.nextInt(1000);
+      d2[2 * i + 1] = -i;
+    }
+    // a page holds 512 of these tuples, fewer than either input
+    OpIterator big1 = TestUtil.createTupleList(2, d1);
+    OpIterator big2 = TestUtil.createTupleList(2, d2);
+    for (Predicate.Op op : new Predicate.Op[] { Predicate.Op.LESS_THAN,
+        Predicate.Op.LESS_THAN_OR_EQ, Predicate.Op.GREATER_THAN,
+        Predicate.Op.GREATER_THAN_OR_EQ }) {
+      JoinPredicate pred = new JoinPredicate(0, op, 0);
+      ArrayList<String> expected = results(new Join(pred, big1, big2));
+      SortMergeJoin smj = new SortMergeJoin(pred, big1, big2, 1);
+      assertEquals(op.toString(), expected, results(smj));
+      smj.open();
+      smj.rewind();
+      int n = 0;
+      while (smj.hasNext()) {
+        smj.next();
+        n++;
+      }
+      smj.close();
+      assertEquals(expected.size(), n);
+    }
+  }
+
+  /**
+   * SortMergeJoin needs at least a page of memory
+   */
+  @Test public void rejectsNoMemory() {
+    try {
+      new SortMergeJoin(new JoinPredicate(0, Predicate.Op.LESS_THAN, 0), scan1, scan2, 0);
+      fail("built a sort-merge join with no memory");
+    } catch (IllegalArgumentException e) {
+    }
+  }
+
+  /**
+   * Unit test for SortMergeJoin.rewind()
+   */
+  @Test public void rewind() throws Exception {
+    JoinPredicate pred = new JoinPredicate(0, Predicate.Op.LESS_THAN, 0);
+    SortMergeJoin op = new SortMergeJoin(pred, scan1, scan2);
+    op.open();
+    int n = 0;
+    while (op.hasNext()) {
+      op.next();
+      n++;
+    }
+    op.rewind();
+    int m = 0;
+    while (op.hasNext()) {
+      op.next();
+      m++;
+    }
+    op.close();
+    assertEquals(n, m);
+  }
+
+  /**
+   * Inputs already sorted on the join field are used as they come
+   */
+  @Test public void reusesOrder() throws Exception {
+    OrderBy sorted1 = new OrderBy(0, true, scan1);
+    OrderBy sorted2 = new OrderBy(0, true, scan2);
+    assertTrue(SortMergeJoin.isSortedOn(sorted1, 0));
+    assertFalse(SortMergeJoin.isSortedOn(sorted1, 1));
+    assertFalse(SortMergeJoin.isSortedOn(new OrderBy(0, false, scan1), 0));
+    assertTrue(SortMergeJoin.isSortedOn(new Filter(
+        new Predicate(1, Predicate.Op.GREATER_THAN, new IntField(3)), sorted1), 0));
+    assertFalse(SortMergeJoin.isSortedOn(scan1, 0));
+
+    JoinPredicate pred = new JoinPredicate(0, Predicate.Op.EQUALS, 0);
+    ArrayList<String> expected = results(new Join(pred, scan1, scan2));
+    assertEquals(expected, results(new SortMergeJoin(pred, sorted1, sorted2)));
+  }
+
+  /**
+   * SortMergeJoin cannot evaluate NOT_EQUALS or LIKE
+   */
+  @Test public void rejectsOtherOps() {
+    try {
+      new SortMergeJoin(new JoinPredicate(0, Predicate.Op.NOT_EQUALS, 0), scan1, scan2);
+      fail("built a sort-merge join on <>");
+    } catch (IllegalArgumentException e) {
+    }
+  }
+
+  /**
+   * JoinOptimizer merges inputs that come sorted, and range joins
+   */
+  @Test public void optimizerChoosesSortMergeJoin() throws Exception {
+    TupleDesc td = new TupleDesc(new Type[] { Type.INT_TYPE, Type.INT_TYPE },
+        new String[] { "a.f0", "a.f1" });
+    TupleDesc td2 = new TupleDesc(new Type[] { Type.INT_TYPE, Type.INT_TYPE },
+        new String[] { "b.f0", "b.f1" });
+    OpIterator left = new TupleIterator(td, Collections.<Tuple>emptyList());
+    OpIterator right = new TupleIterator(td2, Collections.<Tuple>emptyList());
+    LogicalJoinNode eq = new LogicalJoinNode("a", "b", "a.f0", "b.f0", Predicate.Op.EQUALS);
+    LogicalJoinNode lt = new LogicalJoinNode("a", "b", "a.f0", "b.f0", Predicate.Op.LESS_THAN);
+    LogicalJoinNode ne = new LogicalJoinNode("a", "b", "a.f0", "b.f0",
+        Predicate.Op.NOT_EQUALS);
+    assertTrue(JoinOptimizer.instantiateJoin(eq, left, right) instanceof HashJoin);
+    assertTrue(JoinOptimizer.instantiateJoin(eq, new OrderBy(0, true, left),
+        new OrderBy(0, true, right)) instanceof SortMergeJoin);
+    assertTrue(JoinOptimizer.instantiateJoin(lt, left, right) instanceof SortMergeJoin);
+    assertTrue(JoinOptimizer.instantiateJoin(ne, left, right) instanceof BlockNestedLoopJoin);
+
+    JoinOptimizer jo = new JoinOptimizer(null, new java.util.Vector<LogicalJoinNode>());
+    assertTrue(jo.estimateJoinCost(lt, 1000, 10000, 10000, 100000)
+        < jo.estimateJoinCost(ne, 1000, 10000, 10000, 100000));
+  }
+
+  /**
+   * JUnit suite target
+   */
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(SortMergeJoinTest.class);
+  }
+}
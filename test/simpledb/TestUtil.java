@@ -380,6 +380,8 @@ public class TestUtil {
                 throw new RuntimeException(e);
             }
             emptyFile.deleteOnExit();
+            FreeSpaceMap.sideFile(emptyFile).deleteOnExit();
+            ZoneMap.sideFile(emptyFile).deleteOnExit();
         }
 
         protected void setUp() throws Exception {
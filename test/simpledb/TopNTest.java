@@ -0,0 +1,86 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import junit.framework.JUnit4TestAdapter;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+
+public class TopNTest extends SimpleDbTestBase {
+
+  OpIterator scan;
+
+  /**
+   * Initialize each unit test with 5000 tuples whose keys repeat
+   */
+  @Before public void createTupleList() throws Exception {
+    Random r = new Random(444);
+    int[] data = new int[5000 * 2];
+    for (int i = 0; i < 5000; i++) {
+      data[2 * i] = r.nextInt(300);
+      data[2 * i + 1] = i;
+    }
+    scan = TestUtil.createTupleList(2, data);
+  }
+
+  /** @return the tuples of an open operator, in the order returned */
+  private static ArrayList<Tuple> results(OpIterator op) throws Exception {
+    ArrayList<Tuple> s = new ArrayList<Tuple>();
+    while (op.hasNext()) {
+      s.add(op.next());
+    }
+    return s;
+  }
+
+  /**
+   * TopN returns the first tuples OrderBy does, ties included, in either
+   * direction and for limits from none to more than the child has
+   */
+  @Test public void matchesOrderBy() throws Exception {
+    for (boolean asc : new boolean[] { true, false }) {
+      OrderBy sort = new OrderBy(0, asc, scan);
+      sort.open();
+      ArrayList<Tuple> sorted = results(sort);
+      sort.close();
+      for (int limit : new int[] { 0, 1, 10, 17, 4999, 5000, 6000 }) {
+        TopN op = new TopN(0, asc, scan, limit);
+        op.open();
+        ArrayList<Tuple> top = results(op);
+        op.close();
+        assertEquals(Math.min(limit, sorted.size()), top.size());
+        for (int i = 0; i < top.size(); i++) {
+          assertTrue(TestUtil.compareTuples(sorted.get(i), top.get(i)));
+        }
+      }
+    }
+  }
+
+  /**
+   * Unit test for TopN.rewind()
+   */
+  @Test public void rewind() throws Exception {
+    TopN op = new TopN(0, true, scan, 10);
+    op.open();
+    ArrayList<Tuple> first = results(op);
+    op.rewind();
+    ArrayList<Tuple> second = results(op);
+    op.close();
+    assertEquals(10, second.size());
+    for (int i = 0; i < first.size(); i++) {
+      assertTrue(TestUtil.compareTuples(first.get(i), second.get(i)));
+    }
+  }
+
+  /**
+   * JUnit suite target
+   */
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(TopNTest.class);
+  }
+}
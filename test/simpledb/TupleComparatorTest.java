@@ -0,0 +1,127 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import junit.framework.JUnit4TestAdapter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Random;
+
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+
+public class TupleComparatorTest extends SimpleDbTestBase {
+
+  private static final TupleDesc MIXED = new TupleDesc(
+      new Type[] { Type.INT_TYPE, Type.STRING_TYPE, Type.INT_TYPE, Type.INT_TYPE });
+
+  private static final int[] EDGES = { Integer.MIN_VALUE, Integer.MIN_VALUE + 1, -1, 0, 1,
+      Integer.MAX_VALUE - 1, Integer.MAX_VALUE };
+
+  /** @return n tuples of MIXED with few distinct values in each field */
+  private static ArrayList<Tuple> tuples(int n, long seed) {
+    Random r = new Random(seed);
+    String[] words = { "", "a", "a\u0000", "ab", "abcd", "abcde", "abcdf", "b", "\uffff" };
+    ArrayList<Tuple> tuples = new ArrayList<Tuple>();
+    for (int i = 0; i < n; i++) {
+      Tuple t = new Tuple(MIXED);
+      t.setField(0, new IntField(EDGES[r.nextInt(EDGES.length)]));
+      t.setField(1, new StringField(words[r.nextInt(words.length)], Type.STRING_LEN));
+      t.setField(2, new IntField(r.nextInt(5) - 2));
+      t.setField(3, new IntField(i));
+      tuples.add(t);
+    }
+    return tuples;
+  }
+
+  /** The order of the fields compared one by one through Field.compare */
+  private static Comparator<Tuple> reference(final int[] fields, final boolean[] asc) {
+    return new Comparator<Tuple>() {
+      public int compare(Tuple a, Tuple b) {
+        for (int i = 0; i < fields.length; i++) {
+          Field x = a.getField(fields[i]);
+          Field y = b.getField(fields[i]);
+          if (x.compare(Predicate.Op.EQUALS, y)) {
+            continue;
+          }
+          boolean gt = x.compare(Predicate.Op.GREATER_THAN, y);
+          return gt == asc[i] ? 1 : -1;
+        }
+        return 0;
+      }
+    };
+  }
+
+  private static final int[][] FIELDS = { { 0 }, { 1 }, { 0, 2 }, { 2, 0 }, { 1, 0 },
+      { 0, 1, 2 }, { 2, 0, 1 } };
+
+  /**
+   * Normalized keys never order two tuples against their order
+   */
+  @Test public void keysPreserveOrder() {
+    ArrayList<Tuple> tuples = tuples(300, 1);
+    Random r = new Random(2);
+    for (int[] fields : FIELDS) {
+      for (int k = 0; k < 4; k++) {
+        boolean[] asc = new boolean[fields.length];
+        for (int i = 0; i < asc.length; i++) {
+          asc[i] = r.nextBoolean();
+        }
+        TupleComparator tc = new TupleComparator(fields, asc);
+        Comparator<Tuple> ref = reference(fields, asc);
+        boolean exact = tc.keyIsExact(MIXED);
+        for (Tuple a : tuples) {
+          for (Tuple b : tuples) {
+            int expected = Integer.signum(ref.compare(a, b));
+            assertEquals(expected, Integer.signum(tc.compare(a, b)));
+            int byKey = Long.compare(tc.key(a), tc.key(b));
+            if (byKey != 0) {
+              assertEquals(expected, byKey);
+            } else if (exact) {
+              assertEquals(0, expected);
+            }
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Only sort fields of at most two integers make exact keys
+   */
+  @Test public void exactKeys() {
+    assertTrue(new TupleComparator(new int[] { 0, 2 }, new boolean[] { true, false })
+        .keyIsExact(MIXED));
+    assertTrue(!new TupleComparator(new int[] { 0, 2, 3 }, new boolean[] { true, true, true })
+        .keyIsExact(MIXED));
+    assertTrue(!new TupleComparator(1, true).keyIsExact(MIXED));
+  }
+
+  /**
+   * A sort large enough to run in parallel gives the order of a stable
+   * sort with the reference comparator
+   */
+  @Test public void sortIsStable() {
+    for (int[] fields : FIELDS) {
+      boolean[] asc = new boolean[fields.length];
+      asc[0] = true;
+      ArrayList<Tuple> expected = tuples(50000, 3);
+      ArrayList<Tuple> actual = new ArrayList<Tuple>(expected);
+      Collections.sort(expected, reference(fields, asc));
+      new TupleComparator(fields, asc).sort(actual, MIXED);
+      for (int i = 0; i < expected.size(); i++) {
+        assertTrue(expected.get(i) == actual.get(i));
+      }
+    }
+  }
+
+  /**
+   * JUnit suite target
+   */
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(TupleComparatorTest.class);
+  }
+}
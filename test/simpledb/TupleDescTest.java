@@ -133,6 +133,39 @@ public class TupleDescTest extends SimpleDbTestBase {
         }
     }
 
+    /**
+     * Declared string widths set the size and layout of tuples, and survive
+     * a merge.
+     */
+    @Test public void fieldWidths() {
+        TupleDesc td = new TupleDesc(new Type[]{Type.STRING_TYPE, Type.INT_TYPE},
+                new String[]{"name", "id"}, new int[]{32, 0});
+        assertEquals(32, td.getFieldWidth(0));
+        assertEquals(32 + 4 + 4, td.getSize());
+        assertEquals(36, td.getOffset(1));
+        assertTrue(td.equals(new TupleDesc(new Type[]{Type.STRING_TYPE, Type.INT_TYPE})));
+
+        TupleDesc merged = TupleDesc.merge(Utility.getTupleDesc(1), td);
+        assertEquals(Type.STRING_LEN, new TupleDesc(new Type[]{Type.STRING_TYPE}).getFieldWidth(0));
+        assertEquals(32, merged.getFieldWidth(1));
+        assertEquals(4 + 36 + 4, merged.getSize());
+    }
+
+    /**
+     * Type names as declared in a schema, with their widths.
+     */
+    @Test public void typeNames() {
+        assertEquals(Type.INT_TYPE, Type.forName(" INT "));
+        assertEquals(Type.STRING_TYPE, Type.forName("string"));
+        assertEquals(Type.STRING_LEN, Type.declaredWidth("string"));
+        assertEquals(Type.STRING_TYPE, Type.forName("String(32)"));
+        assertEquals(32, Type.declaredWidth("String(32)"));
+        assertNull(Type.forName("string(0)"));
+        assertNull(Type.forName("string(99999999999)"));
+        assertNull(Type.forName("float"));
+        assertEquals(-1, Type.declaredWidth("int"));
+    }
+
     /**
      * Unit test for TupleDesc.numFields()
      */
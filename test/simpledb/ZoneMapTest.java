@@ -0,0 +1,206 @@
+package simpledb;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+
+import simpledb.systemtest.SimpleDbTestBase;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class ZoneMapTest extends SimpleDbTestBase {
+    private static final TupleDesc TD = new TupleDesc(
+            new Type[]{Type.INT_TYPE, Type.STRING_TYPE, Type.INT_TYPE});
+
+    private File data;
+
+    /**
+     * Set up initial resources for each unit test.
+     */
+    @Before public void setUp() throws Exception {
+        data = File.createTempFile("zone", ".dat");
+        data.deleteOnExit();
+        ZoneMap.sideFile(data).deleteOnExit();
+    }
+
+    @After public void tearDown() {
+        ZoneMap.sideFile(data).delete();
+        data.delete();
+    }
+
+    private static Tuple tuple(int a, int b) {
+        Tuple t = new Tuple(TD);
+        t.setField(0, new IntField(a));
+        t.setField(1, new StringField("x", Type.STRING_LEN));
+        t.setField(2, new IntField(b));
+        return t;
+    }
+
+    private static Predicate pred(int field, Predicate.Op op, int v) {
+        return new Predicate(field, op, new IntField(v));
+    }
+
+    /**
+     * Pages whose range for a field lies outside what a predicate on it
+     * allows can be skipped; others, and predicates on strings, cannot.
+     */
+    @Test public void rangesRuleOutPages() {
+        ZoneMap m = new ZoneMap(data, TD, 0);
+        m.update(0, Arrays.asList(tuple(10, 5), tuple(20, 5), tuple(15, 5)).iterator());
+        assertEquals(ZoneMap.KNOWN, m.getState(0));
+
+        assertTrue(m.mayMatch(0, pred(0, Predicate.Op.EQUALS, 10)));
+        assertFalse(m.mayMatch(0, pred(0, Predicate.Op.EQUALS, 21)));
+        assertFalse(m.mayMatch(0, pred(0, Predicate.Op.GREATER_THAN, 20)));
+        assertTrue(m.mayMatch(0, pred(0, Predicate.Op.GREATER_THAN_OR_EQ, 20)));
+        assertFalse(m.mayMatch(0, pred(0, Predicate.Op.LESS_THAN, 10)));
+        assertTrue(m.mayMatch(0, pred(0, Predicate.Op.LESS_THAN_OR_EQ, 10)));
+        assertTrue(m.mayMatch(0, pred(0, Predicate.Op.NOT_EQUALS, 5)));
+        assertFalse(m.mayMatch(0, pred(2, Predicate.Op.NOT_EQUALS, 5)));
+        assertTrue(m.mayMatch(0, new Predicate(1, Predicate.Op.EQUALS,
+                new StringField("y", Type.STRING_LEN))));
+    }
+
+    /**
+     * Empty pages never match; pages the map has not seen always may.
+     */
+    @Test public void emptyAndUnknownPages() {
+        ZoneMap m = new ZoneMap(data, TD, 0);
+        m.update(1, Collections.<Tuple>emptyIterator());
+        assertEquals(ZoneMap.UNKNOWN, m.getState(0));
+        assertEquals(ZoneMap.EMPTY, m.getState(1));
+        assertTrue(m.mayMatch(0, pred(0, Predicate.Op.EQUALS, 1)));
+        assertFalse(m.mayMatch(1, pred(0, Predicate.Op.NOT_EQUALS, 1)));
+        assertTrue(m.mayMatch(5, pred(0, Predicate.Op.EQUALS, 1)));
+    }
+
+    /**
+     * Inserted tuples widen known zones, including empty ones.
+     */
+    @Test public void widenTakesInTuples() {
+        ZoneMap m = new ZoneMap(data, TD, 0);
+        m.update(0, Collections.<Tuple>emptyIterator());
+        m.widen(0, tuple(7, 1));
+        assertEquals(ZoneMap.KNOWN, m.getState(0));
+        assertTrue(m.mayMatch(0, pred(0, Predicate.Op.EQUALS, 7)));
+        assertFalse(m.mayMatch(0, pred(0, Predicate.Op.EQUALS, 8)));
+        m.widen(0, tuple(9, 1));
+        assertTrue(m.mayMatch(0, pred(0, Predicate.Op.EQUALS, 8)));
+
+        // a page not seen yet stays unknown
+        m.widen(3, tuple(1, 1));
+        assertEquals(ZoneMap.UNKNOWN, m.getState(3));
+    }
+
+    /**
+     * Stored zones are read back, except those past the end of the file.
+     */
+    @Test public void storedZonesPersist() {
+        ZoneMap m = new ZoneMap(data, TD, 0);
+        m.updateStored(0, Arrays.asList(tuple(1, 2)).iterator());
+        m.updateStored(3, Collections.<Tuple>emptyIterator());
+        m.update(1, Arrays.asList(tuple(1, 2)).iterator());
+
+        ZoneMap reopened = new ZoneMap(data, TD, 4);
+        assertFalse(reopened.mayMatch(0, pred(2, Predicate.Op.GREATER_THAN, 2)));
+        assertEquals(ZoneMap.EMPTY, reopened.getState(3));
+        assertEquals(ZoneMap.UNKNOWN, reopened.getState(1));
+
+        ZoneMap truncated = new ZoneMap(data, TD, 2);
+        assertEquals(ZoneMap.UNKNOWN, truncated.getState(3));
+    }
+
+    /**
+     * Stored zones are dropped once the data file changes without them.
+     */
+    @Test public void staleZonesDropped() throws Exception {
+        ZoneMap m = new ZoneMap(data, TD, 0);
+        m.updateStored(0, Arrays.asList(tuple(1, 2)).iterator());
+        m.close();
+
+        FileOutputStream out = new FileOutputStream(data, true);
+        out.write(new byte[BufferPool.getPageSize()]);
+        out.close();
+        ZoneMap reopened = new ZoneMap(data, TD, 1);
+        assertEquals(ZoneMap.UNKNOWN, reopened.getState(0));
+        assertTrue(reopened.mayMatch(0, pred(2, Predicate.Op.GREATER_THAN, 2)));
+        assertFalse(ZoneMap.sideFile(data).exists());
+    }
+
+    /**
+     * A scan with a range predicate on an ordered column reads only the
+     * pages in the range, and sees tuples inserted since the zones were
+     * worked out.
+     */
+    @Test public void scanSkipsPages() throws Exception {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        for (int i = 0; i < 5000; i++) {
+            tuples.add(new ArrayList<Integer>(Arrays.asList(i, i % 7)));
+        }
+        File f = File.createTempFile("zone", ".dat");
+        f.deleteOnExit();
+        FreeSpaceMap.sideFile(f).deleteOnExit();
+        ZoneMap.sideFile(f).deleteOnExit();
+        HeapFileEncoder.convert(tuples, f, BufferPool.getPageSize(), 2);
+        HeapFile hf = Utility.openHeapFile(2, f);
+        int perPage = BufferPool.getPageSize() * 8 / (8 * 8 + 1);
+
+        // a plain scan leaves the zones alone; the first one with
+        // predicates reads every page and works them out
+        BufferPool bp = Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        TransactionId tid = new TransactionId();
+        assertEquals(5000, count(hf.iterator(tid)));
+        assertEquals(ZoneMap.UNKNOWN, hf.zones().getState(0));
+        Predicate p = pred(0, Predicate.Op.GREATER_THAN_OR_EQ, 4000);
+        int firstPage = 4000 / perPage;
+        assertEquals(5000, count(hf.iterator(tid, null, Arrays.asList(p))));
+        assertEquals(ZoneMap.KNOWN, hf.zones().getState(0));
+        bp.transactionComplete(tid);
+
+        bp = Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        tid = new TransactionId();
+        int n = count(hf.iterator(tid, null, Arrays.asList(p)));
+        assertEquals(5000 - firstPage * perPage, n);
+        assertEquals(hf.numPages() - firstPage, bp.getMissCount() + bp.getPrefetchCount());
+
+        // the insert goes on the last page, whose zone it widens
+        bp.insertTuple(tid, hf.getId(), Utility.getHeapTuple(new int[]{9000, 0}));
+        DbFileIterator it = hf.iterator(tid, null, Arrays.asList(
+                pred(0, Predicate.Op.EQUALS, 9000)));
+        int found = 0;
+        it.open();
+        while (it.hasNext()) {
+            if (((IntField) it.next().getField(0)).getValue() == 9000) {
+                found++;
+            }
+        }
+        it.close();
+        assertEquals(1, found);
+        bp.transactionComplete(tid);
+    }
+
+    private static int count(DbFileIterator it) throws Exception {
+        int n = 0;
+        it.open();
+        while (it.hasNext()) {
+            it.next();
+            n++;
+        }
+        it.close();
+        return n;
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(ZoneMapTest.class);
+    }
+}
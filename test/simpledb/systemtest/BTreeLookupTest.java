@@ -0,0 +1,119 @@
+package simpledb.systemtest;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.util.HashMap;
+import java.util.Random;
+
+import org.junit.Test;
+
+import simpledb.*;
+
+/**
+ * Loads a paperauths-like table of (paperid, authorid) rows both as a heap
+ * file and as a B+ tree on paperid, and looks up the authors of one paper
+ * through the planner, which searches the tree, and through a Filter over
+ * a SeqScan of the heap file. Both must return the same rows; the search
+ * must read only a root-to-leaf path of pages.
+ */
+public class BTreeLookupTest extends SimpleDbTestBase {
+    private static final int ROWS = 200000;
+    private static final int PAPERS = 60000;
+    private static final int PAPER = 42;
+
+    @Test public void testPointLookup() throws Exception {
+        File text = File.createTempFile("paperauths", ".txt");
+        text.deleteOnExit();
+        Random r = new Random(444);
+        FileWriter w = new FileWriter(text);
+        int expected = 0;
+        for (int i = 0; i < ROWS; i++) {
+            int paper = r.nextInt(PAPERS);
+            if (paper == PAPER) {
+                expected++;
+            }
+            w.write(paper + "," + r.nextInt(100000) + "\n");
+        }
+        w.close();
+
+        Type[] types = new Type[]{Type.INT_TYPE, Type.INT_TYPE};
+        TupleDesc td = new TupleDesc(types, new String[]{"paperid", "authorid"});
+        File heapData = File.createTempFile("paperauths", ".dat");
+        heapData.deleteOnExit();
+        FreeSpaceMap.sideFile(heapData).deleteOnExit();
+        ZoneMap.sideFile(heapData).deleteOnExit();
+        HeapFileEncoder.convert(text, heapData, BufferPool.getPageSize(), 2, types, null, ',');
+        HeapFile hf = new HeapFile(heapData, td);
+        Database.getCatalog().addTable(hf, SystemTestUtil.getUUID());
+
+        File treeData = File.createTempFile("paperauths", ".btree");
+        treeData.deleteOnExit();
+        HeapFileEncoder.convertBTree(text, treeData, BufferPool.getPageSize(), 2, types,
+                null, 0, ',');
+        BTreeFile bf = new BTreeFile(treeData, 0, td);
+        String name = SystemTestUtil.getUUID();
+        Database.getCatalog().addTable(bf, name);
+
+        HashMap<String, TableStats> stats = new HashMap<String, TableStats>();
+        stats.put(name, new TableStats(bf.getId(), 1000));
+
+        TransactionId tid = new TransactionId();
+        LogicalPlan lp = new LogicalPlan();
+        lp.addScan(bf.getId(), "p");
+        lp.addFilter("p.paperid", Predicate.Op.EQUALS, String.valueOf(PAPER));
+        lp.addProjectField("p.authorid", null);
+        OpIterator planned = lp.physicalPlan(tid, stats, false);
+
+        OpIterator plain = new Filter(
+                new Predicate(0, Predicate.Op.EQUALS, new IntField(PAPER)),
+                new SeqScan(tid, hf.getId(), "p"));
+
+        long[] full = run(plain, expected);
+        long[] searched = run(planned, expected);
+        Database.getBufferPool().transactionComplete(tid);
+
+        // the root pointer, one page per internal level and the leaves
+        // holding the matches, which may straddle two
+        int leaves = (ROWS + BTreeLeafPage.getMaxTuples(td, BufferPool.getPageSize()) - 1)
+                / BTreeLeafPage.getMaxTuples(td, BufferPool.getPageSize());
+        int fanout = BTreeInternalPage.getMaxKeys(td, 0, BufferPool.getPageSize()) + 1;
+        int levels = 0;
+        for (int n = leaves; n > 1; n = (n + fanout - 1) / fanout) {
+            levels++;
+        }
+        System.out.println(String.format(
+                "BTreeLookupTest: %d of %d rows, Filter over SeqScan %d pages %.2f ms, "
+                + "IndexScan %d pages %.2f ms",
+                expected, ROWS, full[0], full[1] / 1e6, searched[0], searched[1] / 1e6));
+        assertEquals(hf.numPages(), full[0]);
+        assertTrue(searched[0] <= 1 + levels + 2);
+    }
+
+    /**
+     * Runs a plan from an empty pool and checks it returns the expected
+     * number of rows.
+     *
+     * @return the pages read and the nanoseconds taken
+     */
+    private static long[] run(OpIterator plan, int expected) throws Exception {
+        BufferPool bp = Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        long start = System.nanoTime();
+        plan.open();
+        int n = 0;
+        while (plan.hasNext()) {
+            plan.next();
+            n++;
+        }
+        plan.close();
+        long elapsed = System.nanoTime() - start;
+        assertEquals(expected, n);
+        return new long[]{bp.getMissCount() + bp.getPrefetchCount(), elapsed};
+    }
+
+    /** Make test compatible with older version of ant. */
+    public static junit.framework.Test suite() {
+        return new junit.framework.JUnit4TestAdapter(BTreeLookupTest.class);
+    }
+}
@@ -0,0 +1,81 @@
+package simpledb.systemtest;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+
+import org.junit.Test;
+
+import simpledb.*;
+
+/**
+ * Joins a small table with one larger than the buffer pool on a LIKE
+ * predicate, which only a nested loop evaluates, once with Join and once
+ * with a BlockNestedLoopJoin. Join reads the larger table once for every
+ * tuple of the smaller; the block join reads it once for every block.
+ */
+public class BlockNestedLoopJoinTest extends SimpleDbTestBase {
+    private static final int OUTER = 500;
+    private static final int INNER = 30000;
+    private static final int COLUMNS = 2;
+
+    @Test public void testFewerInnerScans() throws Exception {
+        ArrayList<ArrayList<Integer>> t1 = new ArrayList<ArrayList<Integer>>();
+        HeapFile outer = SystemTestUtil.createRandomHeapFile(COLUMNS, OUTER, 1000, null, t1);
+        ArrayList<ArrayList<Integer>> t2 = new ArrayList<ArrayList<Integer>>();
+        HeapFile inner = SystemTestUtil.createRandomHeapFile(COLUMNS, INNER, 1000, null, t2);
+        assertTrue(inner.numPages() > BufferPool.DEFAULT_PAGES);
+
+        int[] counts = new int[1000];
+        for (ArrayList<Integer> t : t2) {
+            counts[t.get(0)]++;
+        }
+        int expected = 0;
+        for (ArrayList<Integer> t : t1) {
+            expected += counts[t.get(0)];
+        }
+
+        TransactionId tid = new TransactionId();
+        JoinPredicate p = new JoinPredicate(0, Predicate.Op.LIKE, 0);
+        long[] nested = run(new Join(p, new SeqScan(tid, outer.getId(), "a"),
+                new SeqScan(tid, inner.getId(), "b")), expected);
+        long[] blocked = run(new BlockNestedLoopJoin(p, new SeqScan(tid, outer.getId(), "a"),
+                new SeqScan(tid, inner.getId(), "b"), 1), expected);
+        Database.getBufferPool().transactionComplete(tid);
+
+        System.out.println(String.format(
+                "BlockNestedLoopJoinTest: %d rows from %d x %d, Join %d pages %.1f ms, "
+                + "BlockNestedLoopJoin %d pages %.1f ms",
+                expected, OUTER, INNER, nested[0], nested[1] / 1e6,
+                blocked[0], blocked[1] / 1e6));
+        // all the outer tuples fit in one page, so one block
+        assertEquals(outer.numPages() + inner.numPages(), blocked[0]);
+        assertTrue(nested[0] > OUTER * (long) (inner.numPages() - BufferPool.DEFAULT_PAGES));
+    }
+
+    /**
+     * Runs a join from an empty pool and checks it returns the expected
+     * number of rows.
+     *
+     * @return the pages read and the nanoseconds taken
+     */
+    private static long[] run(OpIterator join, int expected) throws Exception {
+        BufferPool bp = Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        long start = System.nanoTime();
+        join.open();
+        int n = 0;
+        while (join.hasNext()) {
+            join.next();
+            n++;
+        }
+        join.close();
+        long elapsed = System.nanoTime() - start;
+        assertEquals(expected, n);
+        return new long[]{bp.getMissCount() + bp.getPrefetchCount(), elapsed};
+    }
+
+    /** Make test compatible with older version of ant. */
+    public static junit.framework.Test suite() {
+        return new junit.framework.JUnit4TestAdapter(BlockNestedLoopJoinTest.class);
+    }
+}
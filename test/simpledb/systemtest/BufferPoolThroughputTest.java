@@ -0,0 +1,128 @@
+package simpledb.systemtest;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import simpledb.*;
+
+/**
+ * Measures the throughput of BufferPool.getPage for pages that are already
+ * cached, with 1 to 16 threads hammering the same pool. Every lookup should be
+ * a hit served without taking a lock, so throughput should grow with the
+ * number of cores available; the test fails if any lookup goes to disk or
+ * returns a different Page object than the one cached.
+ */
+public class BufferPoolThroughputTest extends SimpleDbTestBase {
+    private static final int PAGES = 32;
+    private static final int LOOKUPS_PER_THREAD = 200000;
+    private static final int[] THREAD_COUNTS = new int[]{1, 2, 4, 8, 16};
+
+    /** Counts the number of readPage operations. */
+    static class InstrumentedHeapFile extends HeapFile {
+        final AtomicInteger readCount = new AtomicInteger(0);
+
+        public InstrumentedHeapFile(File f, TupleDesc td) {
+            super(f, td);
+        }
+
+        @Override
+        public Page readPage(PageId pid) throws NoSuchElementException {
+            readCount.incrementAndGet();
+            return super.readPage(pid);
+        }
+    }
+
+    @Test public void testCachedGetPageScaling() throws Exception {
+        File f = SystemTestUtil.createRandomHeapFileUnopened(2, 504 * PAGES, 1000, null,
+                new ArrayList<ArrayList<Integer>>());
+        InstrumentedHeapFile table = new InstrumentedHeapFile(f, Utility.getTupleDesc(2));
+        Database.getCatalog().addTable(table, SystemTestUtil.getUUID());
+        Database.resetBufferPool(PAGES * 2);
+
+        // warm the pool so that every later lookup is a hit
+        TransactionId tid = new TransactionId();
+        final PageId[] pids = new PageId[PAGES];
+        final Page[] cached = new Page[PAGES];
+        for (int i = 0; i < PAGES; i++) {
+            pids[i] = new HeapPageId(table.getId(), i);
+            cached[i] = Database.getBufferPool().getPage(tid, pids[i], Permissions.READ_ONLY);
+            Database.getBufferPool().unpinPage(tid, pids[i]);
+        }
+        assertEquals(PAGES, table.readCount.get());
+
+        System.out.println("BufferPoolThroughputTest: " + Runtime.getRuntime().availableProcessors()
+                + " processors available");
+
+        // let the JIT compile the lookup path before timing anything
+        run(1, pids, cached);
+
+        double base = 0;
+        for (int threads : THREAD_COUNTS) {
+            double rate = run(threads, pids, cached);
+            if (threads == 1) {
+                base = rate;
+            }
+            System.out.println(String.format(
+                    "BufferPoolThroughputTest: %2d threads %12.0f getPage/s (%.2fx of 1 thread)",
+                    threads, rate, rate / base));
+        }
+
+        // nothing should have been read from disk after warming
+        assertEquals(PAGES, table.readCount.get());
+    }
+
+    /** @return cached lookups per second with the given number of threads */
+    private double run(int threads, final PageId[] pids,
+            final Page[] cached) throws Exception {
+        final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            final int offset = t;
+            workers[t] = new Thread() {
+                public void run() {
+                    try {
+                        BufferPool bp = Database.getBufferPool();
+                        TransactionId tid = new TransactionId();
+                        for (int i = 0; i < LOOKUPS_PER_THREAD; i++) {
+                            int p = (i + offset) % PAGES;
+                            if (bp.getPage(tid, pids[p], Permissions.READ_ONLY) != cached[p]) {
+                                throw new AssertionError("page " + p + " was not served from cache");
+                            }
+                            bp.unpinPage(tid, pids[p]);
+                        }
+                        bp.transactionComplete(tid);
+                    } catch (Throwable e) {
+                        error.compareAndSet(null, e);
+                    }
+                }
+            };
+        }
+
+        long start = System.nanoTime();
+        for (Thread w : workers) {
+            w.start();
+        }
+        for (Thread w : workers) {
+            w.join();
+        }
+        long elapsed = System.nanoTime() - start;
+
+        if (error.get() != null) {
+            throw new RuntimeException(error.get());
+        }
+        return (double) threads * LOOKUPS_PER_THREAD / (elapsed / 1e9);
+    }
+
+    /** Make test compatible with older version of ant. */
+    public static junit.framework.Test suite() {
+        return new junit.framework.JUnit4TestAdapter(BufferPoolThroughputTest.class);
+    }
+}
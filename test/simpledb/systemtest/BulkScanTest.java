@@ -0,0 +1,90 @@
+package simpledb.systemtest;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import simpledb.*;
+
+/**
+ * Interleaves point lookups on a small hot table with full scans of a table
+ * four times the size of the buffer pool, once with the scans going through
+ * the shared page table and once in bulk read mode. Bulk scans read through
+ * a private ring, so the hot pages should stay cached and nearly every
+ * lookup should hit.
+ */
+public class BulkScanTest extends SimpleDbTestBase {
+    private static final int HOT_PAGES = 16;
+    private static final int BIG_PAGES = 4 * BufferPool.DEFAULT_PAGES;
+    private static final int TUPLES_PER_PAGE = 504;
+    private static final int SCANS = 3;
+    /** A few lookups are done after every this many scanned tuples. */
+    private static final int LOOKUP_INTERVAL = 10000;
+    private static final int LOOKUPS = 8;
+
+    @Test public void testBulkScanKeepsHotPages() throws Exception {
+        HeapFile hot = SystemTestUtil.createRandomHeapFile(2, TUPLES_PER_PAGE * HOT_PAGES,
+                null, null);
+        HeapFile big = SystemTestUtil.createRandomHeapFile(2, TUPLES_PER_PAGE * BIG_PAGES,
+                null, null);
+        String bigName = Database.getCatalog().getTableName(big.getId());
+        TableStats.setTableStats(bigName, new TableStats(big.getId(), 1000));
+
+        double shared = hotHitRatio(hot, big, false);
+        double bulk = hotHitRatio(hot, big, true);
+        System.out.println(String.format(
+                "BulkScanTest: hot lookup hit ratio %.1f%% with shared scans, %.1f%% with bulk scans",
+                100 * shared, 100 * bulk));
+
+        assertTrue(bulk >= shared);
+        assertTrue(bulk > 0.99);
+    }
+
+    /** @return the share of hot lookups that hit while the big table is scanned */
+    private double hotHitRatio(HeapFile hot, HeapFile big, boolean bulk) throws Exception {
+        BufferPool bp = Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        TransactionId tid = new TransactionId();
+        Random r = new Random(444);
+
+        // warm the hot pages
+        for (int i = 0; i < HOT_PAGES; i++) {
+            PageId pid = new HeapPageId(hot.getId(), i);
+            bp.getPage(tid, pid, Permissions.READ_ONLY);
+            bp.unpinPage(tid, pid);
+        }
+
+        long hits = 0;
+        long lookups = 0;
+        for (int s = 0; s < SCANS; s++) {
+            SeqScan scan = new SeqScan(tid, big.getId());
+            scan.setBulkReadAllowed(bulk);
+            assertEquals(bulk, scan.isBulkRead());
+            scan.open();
+            int count = 0;
+            while (scan.hasNext()) {
+                scan.next();
+                if (++count % LOOKUP_INTERVAL == 0) {
+                    for (int i = 0; i < LOOKUPS; i++) {
+                        PageId pid = new HeapPageId(hot.getId(), r.nextInt(HOT_PAGES));
+                        long before = bp.getHitCount();
+                        bp.getPage(tid, pid, Permissions.READ_ONLY);
+                        bp.unpinPage(tid, pid);
+                        hits += bp.getHitCount() - before;
+                        lookups++;
+                    }
+                }
+            }
+            scan.close();
+            assertEquals(TUPLES_PER_PAGE * BIG_PAGES, count);
+        }
+        bp.transactionComplete(tid);
+        return (double) hits / lookups;
+    }
+
+    /** Make test compatible with older version of ant. */
+    public static junit.framework.Test suite() {
+        return new junit.framework.JUnit4TestAdapter(BulkScanTest.class);
+    }
+}
@@ -0,0 +1,123 @@
+package simpledb.systemtest;
+
+import static org.junit.Assert.*;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import simpledb.*;
+
+/**
+ * Copies the bundled DBLP tables into ColumnarFiles and reports how many
+ * pages scans projecting a few columns read, against the pages of a full
+ * HeapFile scan, which reads every column. Skipped when the tables are not
+ * in the working directory.
+ */
+public class ColumnarScanTest extends SimpleDbTestBase {
+    private static final char SEPARATOR = '\u001f';
+
+    @Test public void testVenues() throws Exception {
+        TupleDesc td = new TupleDesc(
+                new Type[]{Type.INT_TYPE, Type.STRING_TYPE, Type.INT_TYPE, Type.INT_TYPE},
+                new String[]{"id", "name", "year", "type"});
+        int[][] projections = {{2}, {2, 3}, {1}};
+        double[] reductions = report("venues", td, projections);
+        // two int columns of a 144-byte row
+        assertTrue(reductions[1] > 10);
+    }
+
+    @Test public void testPaperAuths() throws Exception {
+        TupleDesc td = new TupleDesc(new Type[]{Type.INT_TYPE, Type.INT_TYPE},
+                new String[]{"paperid", "authorid"});
+        int[][] projections = {{1}};
+        double[] reductions = report("paperauths", td, projections);
+        assertTrue(reductions[0] > 1.9);
+    }
+
+    /**
+     * Prints the pages a HeapFile scan of the table reads and those of the
+     * given projections of its columnar copy.
+     *
+     * @return how many times fewer pages each projection read
+     */
+    private static double[] report(String table, TupleDesc td, int[][] projections)
+            throws Exception {
+        File dat = new File(table + ".dat");
+        Assume.assumeTrue(dat.exists());
+        HeapFile hf = new HeapFile(dat, td);
+        Database.getCatalog().addTable(hf, SystemTestUtil.getUUID());
+
+        // dump the table as text, then convert the text to columns
+        File text = File.createTempFile(table, ".txt");
+        text.deleteOnExit();
+        BufferedWriter w = new BufferedWriter(new FileWriter(text));
+        TransactionId tid = new TransactionId();
+        DbFileIterator it = hf.iterator(tid);
+        it.open();
+        int rows = 0;
+        while (it.hasNext()) {
+            Tuple t = it.next();
+            for (int i = 0; i < td.numFields(); i++) {
+                if (i > 0) {
+                    w.write(SEPARATOR);
+                }
+                w.write(t.getField(i).toString());
+            }
+            w.write('\n');
+            rows++;
+        }
+        it.close();
+        w.close();
+        Database.getBufferPool().transactionComplete(tid);
+
+        File base = File.createTempFile(table, ".dat");
+        base.deleteOnExit();
+        Type[] types = new Type[td.numFields()];
+        for (int i = 0; i < types.length; i++) {
+            types[i] = td.getFieldType(i);
+            ColumnarFile.columnFile(base, i).deleteOnExit();
+        }
+        HeapFileEncoder.convertColumnar(text, base, BufferPool.getPageSize(), types.length,
+                types, null, SEPARATOR);
+        ColumnarFile cf = new ColumnarFile(base, td);
+        Database.getCatalog().addTable(cf, SystemTestUtil.getUUID());
+
+        int heapPages = hf.numPages();
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("ColumnarScanTest: %s (%d rows) HeapFile %d pages",
+                table, rows, heapPages));
+        double[] reductions = new double[projections.length];
+        for (int p = 0; p < projections.length; p++) {
+            Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+            long misses = Database.getBufferPool().getMissCount();
+            tid = new TransactionId();
+            it = cf.iterator(tid, projections[p]);
+            it.open();
+            int count = 0;
+            while (it.hasNext()) {
+                it.next();
+                count++;
+            }
+            it.close();
+            Database.getBufferPool().transactionComplete(tid);
+            assertEquals(rows, count);
+
+            long read = Database.getBufferPool().getMissCount() - misses;
+            reductions[p] = (double) heapPages / read;
+            sb.append(String.format(", %s %d pages (%.1fx)",
+                    cf.getTupleDesc(projections[p]).toString().replaceAll("\\(\\w+\\)", ""),
+                    read, reductions[p]));
+        }
+        System.out.println(sb);
+        return reductions;
+    }
+
+    /** Make test compatible with older version of ant. */
+    public static junit.framework.Test suite() {
+        return new junit.framework.JUnit4TestAdapter(ColumnarScanTest.class);
+    }
+}
@@ -0,0 +1,66 @@
+package simpledb.systemtest;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import simpledb.*;
+
+/**
+ * Sorts a table many times larger than the memory the sort is given, which
+ * must write sorted runs and merge them, and checks every key comes back
+ * in order.
+ */
+public class ExternalSortTest extends SimpleDbTestBase {
+    private static final int ROWS = 200000;
+    private static final int COLUMNS = 2;
+    private static final int MEMORY_PAGES = 20;
+
+    @Test public void testExternalSort() throws Exception {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        HeapFile table = SystemTestUtil.createRandomHeapFile(COLUMNS, ROWS, 1000000, null, tuples);
+        assertTrue(table.numPages() > 10 * MEMORY_PAGES);
+        int[] keys = new int[ROWS];
+        for (int i = 0; i < ROWS; i++) {
+            keys[i] = tuples.get(i).get(0);
+        }
+        Arrays.sort(keys);
+
+        TransactionId tid = new TransactionId();
+        long inMemory = run(new OrderBy(0, true, new SeqScan(tid, table.getId(), "t")), keys);
+        long external = run(new OrderBy(0, true, new SeqScan(tid, table.getId(), "t"),
+                MEMORY_PAGES), keys);
+        Database.getBufferPool().transactionComplete(tid);
+
+        System.out.println(String.format(
+                "ExternalSortTest: %d rows over %d pages, in memory %.1f ms, "
+                + "in %d pages of memory %.1f ms",
+                ROWS, table.numPages(), inMemory / 1e6, MEMORY_PAGES, external / 1e6));
+    }
+
+    /**
+     * Runs a sort and checks it returns the keys in order.
+     *
+     * @return the nanoseconds taken
+     */
+    private static long run(OpIterator sort, int[] keys) throws Exception {
+        long start = System.nanoTime();
+        sort.open();
+        int n = 0;
+        while (sort.hasNext()) {
+            assertEquals(keys[n++], ((IntField) sort.next().getField(0)).getValue());
+        }
+        sort.close();
+        long elapsed = System.nanoTime() - start;
+        assertEquals(keys.length, n);
+        return elapsed;
+    }
+
+    /** Make test compatible with older version of ant. */
+    public static junit.framework.Test suite() {
+        return new junit.framework.JUnit4TestAdapter(ExternalSortTest.class);
+    }
+}
@@ -0,0 +1,115 @@
+package simpledb.systemtest;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import simpledb.*;
+
+/**
+ * Groups a million rows into a thousand groups with an IntegerAggregator,
+ * on integer and on string keys, and times it against the per-tuple
+ * HashMap updates IntegerAggregator used to make for AVG. Rows cycle over a
+ * set of prepared tuples so that only the aggregation is timed.
+ */
+public class HashAggregateTest extends SimpleDbTestBase {
+    private static final int ROWS = 1000000;
+    private static final int DISTINCT = 10000;
+    private static final int GROUPS = 1000;
+
+    @Test public void testGroupBy() throws Exception {
+        Random r = new Random(444);
+        TupleDesc intTd = Utility.getTupleDesc(2);
+        TupleDesc strTd = new TupleDesc(new Type[] { Type.STRING_TYPE, Type.INT_TYPE });
+        Tuple[] ints = new Tuple[DISTINCT];
+        Tuple[] strs = new Tuple[DISTINCT];
+        for (int i = 0; i < DISTINCT; i++) {
+            int group = r.nextInt(GROUPS);
+            int value = r.nextInt(1000000);
+            ints[i] = new Tuple(intTd);
+            ints[i].setField(0, new IntField(group * 7919));
+            ints[i].setField(1, new IntField(value));
+            strs[i] = new Tuple(strTd);
+            strs[i].setField(0, new StringField("group" + group, Type.STRING_LEN));
+            strs[i].setField(1, new IntField(value));
+        }
+
+        // twice to let the JIT compile each, then timed
+        long legacy = 0;
+        long intAvg = 0;
+        long intSum = 0;
+        long strAvg = 0;
+        for (int round = 0; round < 3; round++) {
+            long start = System.nanoTime();
+            Map<Field, int[]> avgs = legacyAvg(ints);
+            legacy = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            IntegerAggregator agg = aggregate(ints, Type.INT_TYPE, Aggregator.Op.AVG);
+            intAvg = System.nanoTime() - start;
+            OpIterator it = agg.iterator();
+            it.open();
+            int groups = 0;
+            while (it.hasNext()) {
+                Tuple t = it.next();
+                int[] v = avgs.get(t.getField(0));
+                assertEquals(v[0] / v[1], ((IntField) t.getField(1)).getValue());
+                groups++;
+            }
+            assertEquals(avgs.size(), groups);
+
+            start = System.nanoTime();
+            aggregate(ints, Type.INT_TYPE, Aggregator.Op.SUM).iterator().open();
+            intSum = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            agg = aggregate(strs, Type.STRING_TYPE, Aggregator.Op.AVG);
+            strAvg = System.nanoTime() - start;
+            it = agg.iterator();
+            it.open();
+            groups = 0;
+            while (it.hasNext()) {
+                it.next();
+                groups++;
+            }
+            assertEquals(avgs.size(), groups);
+        }
+
+        System.out.println(String.format(
+                "HashAggregateTest: %d rows into %d groups, HashMap AVG %.1f ms, "
+                + "AVG on int keys %.1f ms, SUM on int keys %.1f ms, AVG on string keys %.1f ms",
+                ROWS, GROUPS, legacy / 1e6, intAvg / 1e6, intSum / 1e6, strAvg / 1e6));
+    }
+
+    private static IntegerAggregator aggregate(Tuple[] rows, Type gbType, Aggregator.Op op) {
+        IntegerAggregator agg = new IntegerAggregator(0, gbType, 1, op);
+        for (int i = 0; i < ROWS; i++) {
+            agg.mergeTupleIntoGroup(rows[i % DISTINCT]);
+        }
+        return agg;
+    }
+
+    /** AVG as IntegerAggregator used to compute it, a sum and count per group */
+    private static Map<Field, int[]> legacyAvg(Tuple[] rows) {
+        Map<Field, int[]> avgs = new HashMap<Field, int[]>();
+        for (int i = 0; i < ROWS; i++) {
+            Tuple tup = rows[i % DISTINCT];
+            Field gbkey = tup.getField(0);
+            int tval = ((IntField) tup.getField(1)).getValue();
+            int sum = avgs.getOrDefault(gbkey, new int[]{0, 0})[0];
+            int cnt = avgs.getOrDefault(gbkey, new int[]{0, 0})[1];
+            avgs.put(gbkey, new int[]{sum + tval, cnt + 1});
+        }
+        return avgs;
+    }
+
+    /** Make test compatible with older version of ant. */
+    public static junit.framework.Test suite() {
+        return new junit.framework.JUnit4TestAdapter(HashAggregateTest.class);
+    }
+}
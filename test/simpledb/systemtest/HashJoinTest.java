@@ -0,0 +1,103 @@
+package simpledb.systemtest;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import org.junit.Test;
+
+import simpledb.*;
+
+/**
+ * Joins a papers-like table with a paperauths-like table on paper id, once
+ * with the nested-loop Join and once with a HashJoin, which must return
+ * the same number of rows while reading each table only once; and joins
+ * two larger tables with and without enough memory to hold either.
+ */
+public class HashJoinTest extends SimpleDbTestBase {
+    private static final int PAPERS = 1000;
+    private static final int PAPERAUTHS = 10000;
+
+    private static final int COLUMNS = 2;
+
+    @Test public void testHashJoinMatchesNestedLoop() throws Exception {
+        ArrayList<ArrayList<Integer>> paperTuples = new ArrayList<ArrayList<Integer>>();
+        HeapFile papers = SystemTestUtil.createRandomHeapFile(
+                COLUMNS, PAPERS, PAPERS, null, paperTuples);
+        ArrayList<ArrayList<Integer>> authTuples = new ArrayList<ArrayList<Integer>>();
+        HeapFile paperauths = SystemTestUtil.createRandomHeapFile(
+                COLUMNS, PAPERAUTHS, PAPERS, null, authTuples);
+
+        HashMap<Integer, Integer> perPaper = new HashMap<Integer, Integer>();
+        for (ArrayList<Integer> t : paperTuples) {
+            Integer n = perPaper.get(t.get(0));
+            perPaper.put(t.get(0), n == null ? 1 : n + 1);
+        }
+        int expected = 0;
+        for (ArrayList<Integer> t : authTuples) {
+            Integer n = perPaper.get(t.get(0));
+            expected += n == null ? 0 : n;
+        }
+
+        TransactionId tid = new TransactionId();
+        JoinPredicate p = new JoinPredicate(0, Predicate.Op.EQUALS, 0);
+        long nested = SystemTestUtil.timePlan(new Join(p,
+                new SeqScan(tid, papers.getId(), "p"),
+                new SeqScan(tid, paperauths.getId(), "a")), expected);
+        long hashed = SystemTestUtil.timePlan(new HashJoin(p,
+                new SeqScan(tid, papers.getId(), "p"),
+                new SeqScan(tid, paperauths.getId(), "a")), expected);
+        Database.getBufferPool().transactionComplete(tid);
+
+        System.out.println(String.format(
+                "HashJoinTest: %d rows from %d x %d, Join %.1f ms, HashJoin %.1f ms",
+                expected, PAPERS, PAPERAUTHS, nested / 1e6, hashed / 1e6));
+    }
+
+    /**
+     * Joins two tables of 100000 rows each with room in memory for only a
+     * tenth of either, so most partitions go to disk, and checks the join
+     * returns what it does with room for both.
+     */
+    @Test public void testSpillingJoin() throws Exception {
+        int rows = 100000;
+        ArrayList<ArrayList<Integer>> t1 = new ArrayList<ArrayList<Integer>>();
+        HeapFile table1 = SystemTestUtil.createRandomHeapFile(COLUMNS, rows, rows, null, t1);
+        ArrayList<ArrayList<Integer>> t2 = new ArrayList<ArrayList<Integer>>();
+        HeapFile table2 = SystemTestUtil.createRandomHeapFile(COLUMNS, rows, rows, null, t2);
+
+        HashMap<Integer, Integer> counts = new HashMap<Integer, Integer>();
+        for (ArrayList<Integer> t : t1) {
+            Integer n = counts.get(t.get(0));
+            counts.put(t.get(0), n == null ? 1 : n + 1);
+        }
+        int expected = 0;
+        for (ArrayList<Integer> t : t2) {
+            Integer n = counts.get(t.get(0));
+            expected += n == null ? 0 : n;
+        }
+
+        int pages = table1.numPages() / 10;
+        TransactionId tid = new TransactionId();
+        JoinPredicate p = new JoinPredicate(0, Predicate.Op.EQUALS, 0);
+        long inMemory = SystemTestUtil.timePlan(new HashJoin(p,
+                new SeqScan(tid, table1.getId(), "a"),
+                new SeqScan(tid, table2.getId(), "b")), expected);
+        long spilling = SystemTestUtil.timePlan(new HashJoin(p,
+                new SeqScan(tid, table1.getId(), "a"),
+                new SeqScan(tid, table2.getId(), "b"), pages), expected);
+        Database.getBufferPool().transactionComplete(tid);
+
+        System.out.println(String.format(
+                "HashJoinTest: %d rows from %d x %d, in memory %.1f ms, "
+                + "in %d of %d pages %.1f ms",
+                expected, rows, rows, inMemory / 1e6, pages, table1.numPages(),
+                spilling / 1e6));
+    }
+
+    /** Make test compatible with older version of ant. */
+    public static junit.framework.Test suite() {
+        return new junit.framework.JUnit4TestAdapter(HashJoinTest.class);
+    }
+}
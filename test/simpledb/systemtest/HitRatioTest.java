@@ -0,0 +1,99 @@
+package simpledb.systemtest;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.Random;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import simpledb.*;
+
+/**
+ * Compares the buffer pool hit ratios of the replacement policies on the DBLP
+ * tables that ship with SimpleDB. The workload mixes repeated lookups of a
+ * small hot set of venues pages with a long sequential scan of paperauths,
+ * which is the pattern that flushes dimension tables out of a recency-blind
+ * pool.
+ */
+public class HitRatioTest extends SimpleDbTestBase {
+    private static final int BUFFER_PAGES = BufferPool.DEFAULT_PAGES;
+    private static final int HOT_PAGES = 16;
+    private static final int ROUNDS = 40;
+    private static final int LOOKUPS_PER_ROUND = 64;
+    private static final int SCAN_PAGES_PER_ROUND = 40;
+
+    private HeapFile venues;
+    private HeapFile paperauths;
+
+    /** Hits and lookups of one run. */
+    private static class Result {
+        long hotHits, hotLookups, hits, lookups;
+    }
+
+    @Test public void testDblpHitRatio() throws Exception {
+        File venuesFile = new File("venues.dat");
+        File paperauthsFile = new File("paperauths.dat");
+        Assume.assumeTrue(venuesFile.exists() && paperauthsFile.exists());
+
+        venues = new HeapFile(venuesFile, new TupleDesc(
+                new Type[]{Type.INT_TYPE, Type.STRING_TYPE, Type.INT_TYPE, Type.INT_TYPE},
+                new String[]{"id", "name", "year", "type"}));
+        paperauths = new HeapFile(paperauthsFile, new TupleDesc(
+                new Type[]{Type.INT_TYPE, Type.INT_TYPE},
+                new String[]{"paperid", "authorid"}));
+        Database.getCatalog().addTable(venues, "venues");
+        Database.getCatalog().addTable(paperauths, "paperauths");
+
+        Result clock = run(new ClockPolicy());
+        Result lruK = run(new LruKPolicy(2));
+        report("CLOCK", clock);
+        report("LRU-2", lruK);
+
+        // the scan touches each page once, so LRU-2 should keep the hot set
+        assertTrue(lruK.hotHits >= clock.hotHits);
+        assertTrue(lruK.hotHits > lruK.hotLookups * 9 / 10);
+    }
+
+    private Result run(ReplacementPolicy policy) throws Exception {
+        BufferPool bp = Database.resetBufferPool(BUFFER_PAGES, policy);
+        TransactionId tid = new TransactionId();
+        Random r = new Random(6830);
+        Result res = new Result();
+        int scanPage = 0;
+
+        for (int round = 0; round < ROUNDS; round++) {
+            long before = bp.getHitCount();
+            for (int i = 0; i < LOOKUPS_PER_ROUND; i++) {
+                PageId pid = new HeapPageId(venues.getId(), r.nextInt(HOT_PAGES));
+                bp.getPage(tid, pid, Permissions.READ_ONLY);
+                bp.unpinPage(tid, pid);
+            }
+            res.hotHits += bp.getHitCount() - before;
+            res.hotLookups += LOOKUPS_PER_ROUND;
+
+            for (int i = 0; i < SCAN_PAGES_PER_ROUND; i++) {
+                PageId pid = new HeapPageId(paperauths.getId(), scanPage);
+                bp.getPage(tid, pid, Permissions.READ_ONLY);
+                bp.unpinPage(tid, pid);
+                scanPage = (scanPage + 1) % paperauths.numPages();
+            }
+        }
+        res.hits = bp.getHitCount();
+        res.lookups = bp.getHitCount() + bp.getMissCount();
+        Database.getBufferPool().transactionComplete(tid);
+        return res;
+    }
+
+    private void report(String name, Result res) {
+        System.out.println(String.format(
+                "HitRatioTest: %-6s overall %5.1f%%, hot venues pages %5.1f%%",
+                name, 100.0 * res.hits / res.lookups, 100.0 * res.hotHits / res.hotLookups));
+    }
+
+    /** Make test compatible with older version of ant. */
+    public static junit.framework.Test suite() {
+        return new junit.framework.JUnit4TestAdapter(HitRatioTest.class);
+    }
+}
@@ -0,0 +1,56 @@
+package simpledb.systemtest;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import simpledb.*;
+
+/**
+ * Inserts the same number of tuples into a small and a large table whose
+ * pages are all full, and counts the pages the inserts ask the buffer pool
+ * for. Inserts find a page with room through the free-space map, so apart
+ * from learning once that each existing page is full, they should visit as
+ * few pages in the large table as in the small one.
+ */
+public class InsertScalingTest extends SimpleDbTestBase {
+    private static final int SMALL_PAGES = 8;
+    private static final int LARGE_PAGES = 400;
+    private static final int TUPLES_PER_PAGE = 504;
+    private static final int INSERTS = 5000;
+    private static final int INSERTS_PER_TRANSACTION = 500;
+
+    @Test public void testPagesVisitedAreFlat() throws Exception {
+        HeapFile small = SystemTestUtil.createRandomHeapFile(2, TUPLES_PER_PAGE * SMALL_PAGES,
+                null, null);
+        HeapFile large = SystemTestUtil.createRandomHeapFile(2, TUPLES_PER_PAGE * LARGE_PAGES,
+                null, null);
+
+        long smallVisits = pagesVisited(small);
+        long largeVisits = pagesVisited(large);
+
+        // each full page is read at most once to learn it is full, rather
+        // than the table being searched for room on every insert
+        assertTrue(largeVisits <= smallVisits + LARGE_PAGES);
+    }
+
+    /** @return the pages asked for by inserts into the table, committing every few */
+    private static long pagesVisited(HeapFile table) throws Exception {
+        BufferPool bp = Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        TransactionId tid = new TransactionId();
+        for (int i = 0; i < INSERTS; i++) {
+            bp.insertTuple(tid, table.getId(), Utility.getHeapTuple(i, 2));
+            if ((i + 1) % INSERTS_PER_TRANSACTION == 0) {
+                bp.transactionComplete(tid);
+                tid = new TransactionId();
+            }
+        }
+        bp.transactionComplete(tid);
+        return bp.getHitCount() + bp.getMissCount();
+    }
+
+    /** Make test compatible with older version of ant. */
+    public static junit.framework.Test suite() {
+        return new junit.framework.JUnit4TestAdapter(InsertScalingTest.class);
+    }
+}
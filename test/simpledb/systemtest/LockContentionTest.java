@@ -0,0 +1,142 @@
+package simpledb.systemtest;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import simpledb.*;
+
+/**
+ * Runs N threads of short transactions against a small table, each reading
+ * and updating a few random pages, and reports committed transactions per
+ * second and how many attempts were aborted as deadlock victims. Every
+ * update increments a counter kept in the first tuple of a page, so after
+ * the run the counters on disk must add up to the number of committed
+ * updates; a lost update would mean the locks let two writers through.
+ */
+public class LockContentionTest extends SimpleDbTestBase {
+    private static final int PAGES = 8;
+    private static final int TRANSACTIONS = 400;
+    private static final int PAGES_PER_TRANSACTION = 4;
+    private static final double WRITE_FRACTION = 0.3;
+    private static final int[] THREAD_COUNTS = new int[]{1, 2, 4, 8};
+
+    @Test public void testMixedReadWriteContention() throws Exception {
+        HeapFile table = SystemTestUtil.createRandomHeapFile(2, 504 * PAGES, 1000, null,
+                new ArrayList<ArrayList<Integer>>());
+        assertEquals(PAGES, table.numPages());
+        Database.resetBufferPool(PAGES * 2);
+
+        long expected = counterSum(table);
+        for (int threads : THREAD_COUNTS) {
+            Result r = run(table, threads);
+            expected += r.updates.get();
+            System.out.println(String.format(
+                    "LockContentionTest: %d threads %8.0f txn/s, %4d deadlock aborts",
+                    threads, r.rate, r.aborts.get()));
+        }
+
+        // every committed increment reached the disk exactly once
+        assertEquals(expected, counterSum(table));
+    }
+
+    static class Result {
+        final AtomicInteger updates = new AtomicInteger();
+        final AtomicInteger aborts = new AtomicInteger();
+        double rate;
+    }
+
+    /** Runs TRANSACTIONS transactions split between the given threads. */
+    private Result run(final HeapFile table, int threads) throws Exception {
+        final Result res = new Result();
+        final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            final int seed = t;
+            final int count = TRANSACTIONS / threads;
+            workers[t] = new Thread() {
+                public void run() {
+                    Random r = new Random(seed);
+                    try {
+                        for (int i = 0; i < count; i++) {
+                            // retry until the transaction commits
+                            while (true) {
+                                TransactionId tid = new TransactionId();
+                                try {
+                                    int updates = runTransaction(table, tid, r);
+                                    Database.getBufferPool().transactionComplete(tid, true);
+                                    res.updates.addAndGet(updates);
+                                    break;
+                                } catch (TransactionAbortedException e) {
+                                    res.aborts.incrementAndGet();
+                                    Database.getBufferPool().transactionComplete(tid, false);
+                                }
+                            }
+                        }
+                    } catch (Throwable e) {
+                        error.compareAndSet(null, e);
+                    }
+                }
+            };
+        }
+
+        long start = System.nanoTime();
+        for (Thread w : workers) {
+            w.start();
+        }
+        for (Thread w : workers) {
+            w.join();
+        }
+        long elapsed = System.nanoTime() - start;
+        if (error.get() != null) {
+            throw new AssertionError(error.get());
+        }
+        res.rate = (TRANSACTIONS / threads) * threads / (elapsed / 1e9);
+        return res;
+    }
+
+    /** @return the number of counters incremented */
+    private static int runTransaction(HeapFile table, TransactionId tid, Random r)
+        throws DbException, TransactionAbortedException {
+        BufferPool bp = Database.getBufferPool();
+        int updates = 0;
+        for (int i = 0; i < PAGES_PER_TRANSACTION; i++) {
+            PageId pid = new HeapPageId(table.getId(), r.nextInt(PAGES));
+            boolean write = r.nextDouble() < WRITE_FRACTION;
+            HeapPage pg = (HeapPage) bp.getPage(tid, pid,
+                    write ? Permissions.READ_WRITE : Permissions.READ_ONLY);
+            Tuple first = pg.iterator().next();
+            int value = ((IntField) first.getField(0)).getValue();
+            if (write) {
+                // pages hand out copies of their tuples, so write it back
+                pg.deleteTuple(first);
+                first.setField(0, new IntField(value + 1));
+                pg.insertTuple(first);
+                pg.markDirty(true, tid);
+                updates++;
+            }
+            bp.unpinPage(tid, pid);
+        }
+        return updates;
+    }
+
+    /** @return the sum of the counters as stored on disk */
+    private static long counterSum(HeapFile table) {
+        long sum = 0;
+        for (int i = 0; i < PAGES; i++) {
+            HeapPage pg = (HeapPage) table.readPage(new HeapPageId(table.getId(), i));
+            sum += ((IntField) pg.iterator().next().getField(0)).getValue();
+        }
+        return sum;
+    }
+
+    /** Make test compatible with older version of ant. */
+    public static junit.framework.Test suite() {
+        return new junit.framework.JUnit4TestAdapter(LockContentionTest.class);
+    }
+}
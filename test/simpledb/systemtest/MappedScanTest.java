@@ -0,0 +1,78 @@
+package simpledb.systemtest;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+
+import org.junit.Test;
+
+import simpledb.*;
+
+/**
+ * Compares full-scan throughput of a HeapFile and a MappedHeapFile over the
+ * same data, starting each scan with an empty buffer pool so that every page
+ * goes through readPage. Both must return the same tuples; the speeds are
+ * only reported.
+ */
+public class MappedScanTest extends SimpleDbTestBase {
+    private static final int PAGES = 256;
+    private static final int TUPLES_PER_PAGE = 504;
+    private static final int RUNS = 5;
+
+    @Test public void testMappedScanThroughput() throws Exception {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        File f = SystemTestUtil.createRandomHeapFileUnopened(2, TUPLES_PER_PAGE * PAGES, 1000,
+                null, tuples);
+        // a copy, since a table's id comes from its file name
+        File copy = File.createTempFile("mapped", ".dat");
+        copy.deleteOnExit();
+        Files.copy(f.toPath(), copy.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+        HeapFile plain = new HeapFile(f, Utility.getTupleDesc(2));
+        HeapFile mapped = new MappedHeapFile(copy, Utility.getTupleDesc(2));
+        Database.getCatalog().addTable(plain, SystemTestUtil.getUUID());
+        Database.getCatalog().addTable(mapped, SystemTestUtil.getUUID());
+        SystemTestUtil.matchTuples(mapped, tuples);
+
+        // let the JIT compile both read paths before timing anything
+        scanRate(plain);
+        scanRate(mapped);
+
+        double plainRate = 0;
+        double mappedRate = 0;
+        for (int run = 0; run < RUNS; run++) {
+            plainRate = Math.max(plainRate, scanRate(plain));
+            mappedRate = Math.max(mappedRate, scanRate(mapped));
+        }
+        System.out.println(String.format(
+                "MappedScanTest: HeapFile %8.0f pages/s, MappedHeapFile %8.0f pages/s (%.2fx)",
+                plainRate, mappedRate, mappedRate / plainRate));
+    }
+
+    /** @return pages/sec of a scan starting from an empty pool */
+    private static double scanRate(HeapFile table) throws Exception {
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        TransactionId tid = new TransactionId();
+        long start = System.nanoTime();
+        DbFileIterator it = table.iterator(tid);
+        it.open();
+        int count = 0;
+        while (it.hasNext()) {
+            it.next();
+            count++;
+        }
+        it.close();
+        long elapsed = System.nanoTime() - start;
+        Database.getBufferPool().transactionComplete(tid);
+        assertEquals(TUPLES_PER_PAGE * PAGES, count);
+        return PAGES / (elapsed / 1e9);
+    }
+
+    /** Make test compatible with older version of ant. */
+    public static junit.framework.Test suite() {
+        return new junit.framework.JUnit4TestAdapter(MappedScanTest.class);
+    }
+}
@@ -0,0 +1,59 @@
+package simpledb.systemtest;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+
+import org.junit.Test;
+
+import simpledb.*;
+
+/**
+ * Fills a large buffer pool with the pages of a table, once on the Java heap
+ * and once off it, and compares how much heap the cached pages hold on to.
+ * An off-heap pool keeps the page bytes in its arena, so it should retain
+ * far less heap than an on-heap pool of the same size.
+ */
+public class OffHeapPoolTest extends SimpleDbTestBase {
+    private static final int PAGES = 500;
+    private static final int TUPLES_PER_PAGE = 504;
+
+    @Test public void testOffHeapPoolKeepsHeapSmall() throws Exception {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        HeapFile table = SystemTestUtil.createRandomHeapFile(2, TUPLES_PER_PAGE * PAGES,
+                1000, null, tuples);
+
+        long onHeap = retainedHeap(table, tuples, false);
+        long offHeap = retainedHeap(table, tuples, true);
+        System.out.println(String.format(
+                "OffHeapPoolTest: %d cached pages retain %d KB of heap on-heap, %d KB off-heap",
+                PAGES, onHeap / 1024, offHeap / 1024));
+
+        assertTrue(offHeap < onHeap / 2);
+    }
+
+    /** @return the heap held by a pool with every page of the table cached */
+    private static long retainedHeap(HeapFile table, ArrayList<ArrayList<Integer>> tuples,
+            boolean offHeap) throws Exception {
+        Database.resetBufferPool(1);
+        long before = SystemTestUtil.getMemoryFootprint();
+        BufferPool bp = Database.resetBufferPool(PAGES, offHeap);
+        SystemTestUtil.matchTuples(table, tuples);
+        for (int i = 0; i < PAGES; i++) {
+            bp.getPage(null, new HeapPageId(table.getId(), i), Permissions.READ_ONLY);
+        }
+        // every page must be cached now
+        long misses = bp.getMissCount();
+        for (int i = 0; i < PAGES; i++) {
+            bp.getPage(null, new HeapPageId(table.getId(), i), Permissions.READ_ONLY);
+        }
+        assertEquals(misses, bp.getMissCount());
+        long after = SystemTestUtil.getMemoryFootprint();
+        return Math.max(0, after - before);
+    }
+
+    /** Make test compatible with older version of ant. */
+    public static junit.framework.Test suite() {
+        return new junit.framework.JUnit4TestAdapter(OffHeapPoolTest.class);
+    }
+}
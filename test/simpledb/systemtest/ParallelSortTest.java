@@ -0,0 +1,86 @@
+package simpledb.systemtest;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Random;
+
+import org.junit.Test;
+
+import simpledb.*;
+
+/**
+ * Sorts 300000 tuples in memory on two fields, one ascending and one
+ * descending, once comparing their fields through Field.compare, as
+ * OrderBy used to, and once through an OrderBy, which compares normalized
+ * keys and sorts in parallel.
+ */
+public class ParallelSortTest extends SimpleDbTestBase {
+    private static final int ROWS = 300000;
+
+    /** Field 0 ascending, then field 1 descending, through Field.compare */
+    private static final Comparator<Tuple> FIELD_BY_FIELD = new Comparator<Tuple>() {
+        public int compare(Tuple a, Tuple b) {
+            for (int f = 0; f < 2; f++) {
+                Field x = a.getField(f);
+                Field y = b.getField(f);
+                if (x.compare(Predicate.Op.EQUALS, y)) {
+                    continue;
+                }
+                boolean gt = x.compare(Predicate.Op.GREATER_THAN, y);
+                return gt == (f == 0) ? 1 : -1;
+            }
+            return 0;
+        }
+    };
+
+    @Test public void testSort() throws Exception {
+        TupleDesc td = Utility.getTupleDesc(2);
+        Random r = new Random(444);
+        ArrayList<Tuple> tuples = new ArrayList<Tuple>(ROWS);
+        for (int i = 0; i < ROWS; i++) {
+            Tuple t = new Tuple(td);
+            t.setField(0, new IntField(r.nextInt(1000)));
+            t.setField(1, new IntField(r.nextInt()));
+            tuples.add(t);
+        }
+
+        // with memory for all the tuples, so the sort stays in memory
+        int pages = ROWS / (BufferPool.getPageSize() / td.getSize()) + 1;
+        // twice to let the JIT compile both ways of sorting, then timed
+        long fieldByField = 0;
+        long keyed = 0;
+        ArrayList<Tuple> expected = null;
+        for (int round = 0; round < 3; round++) {
+            expected = new ArrayList<Tuple>(tuples);
+            long start = System.nanoTime();
+            Collections.sort(expected, FIELD_BY_FIELD);
+            fieldByField = System.nanoTime() - start;
+
+            OrderBy sort = new OrderBy(new int[] { 0, 1 }, new boolean[] { true, false },
+                    new TupleIterator(td, tuples), pages);
+            start = System.nanoTime();
+            sort.open();
+            keyed = System.nanoTime() - start;
+            int n = 0;
+            while (sort.hasNext()) {
+                assertTrue(expected.get(n++) == sort.next());
+            }
+            sort.close();
+            assertEquals(ROWS, n);
+        }
+
+        System.out.println(String.format(
+                "ParallelSortTest: %d rows on two fields, Field.compare %.1f ms, "
+                + "normalized keys on %d cores %.1f ms",
+                ROWS, fieldByField / 1e6, Runtime.getRuntime().availableProcessors(),
+                keyed / 1e6));
+    }
+
+    /** Make test compatible with older version of ant. */
+    public static junit.framework.Test suite() {
+        return new junit.framework.JUnit4TestAdapter(ParallelSortTest.class);
+    }
+}
@@ -0,0 +1,108 @@
+package simpledb.systemtest;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.Random;
+
+import org.junit.Test;
+
+import simpledb.*;
+
+/**
+ * Fills the same (id, name, year) tuples into row-major HeapPages and into
+ * PaxHeapPages held in memory, and times a filter and sum over the year
+ * column of each: through the tuple iterator and getField on the
+ * HeapPages, and over the contiguous year minipage on the PAX pages. The
+ * two must agree; the timings are only reported.
+ */
+public class PaxScanTest extends SimpleDbTestBase {
+    private static final int PAGES = 500;
+    private static final int RUNS = 5;
+    private static final int MIN_YEAR = 1990;
+    private static final TupleDesc TD = new TupleDesc(
+            new Type[]{Type.INT_TYPE, Type.STRING_TYPE, Type.INT_TYPE},
+            new String[]{"id", "name", "year"});
+
+    @Test public void testColumnFilter() throws Exception {
+        File f = File.createTempFile("pax", ".dat");
+        f.deleteOnExit();
+        HeapFile table = new HeapFile(f, TD);
+        Database.getCatalog().addTable(table, SystemTestUtil.getUUID());
+        Random r = new Random(444);
+        ArrayList<HeapPage> heapPages = new ArrayList<HeapPage>();
+        ArrayList<PaxHeapPage> paxPages = new ArrayList<PaxHeapPage>();
+        int id = 0;
+        for (int p = 0; p < PAGES; p++) {
+            HeapPageId pid = new HeapPageId(table.getId(), p);
+            HeapPage heap = new HeapPage(pid, HeapPage.createEmptyPageData());
+            PaxHeapPage pax = new PaxHeapPage(pid, PaxHeapPage.createEmptyPageData());
+            for (int i = 0; i < pax.getNumSlots(); i++) {
+                Tuple t = new Tuple(TD);
+                t.setField(0, new IntField(id++));
+                t.setField(1, new StringField("author" + id, Type.STRING_LEN));
+                t.setField(2, new IntField(1950 + r.nextInt(70)));
+                heap.insertTuple(t);
+                pax.insertTuple(t);
+            }
+            heapPages.add(heap);
+            paxPages.add(pax);
+        }
+
+        // warm up the JIT on both loops
+        long expected = rowSum(heapPages);
+        assertEquals(expected, columnSum(paxPages));
+        double rowMs = Double.MAX_VALUE;
+        double columnMs = Double.MAX_VALUE;
+        for (int run = 0; run < RUNS; run++) {
+            long start = System.nanoTime();
+            assertEquals(expected, rowSum(heapPages));
+            rowMs = Math.min(rowMs, (System.nanoTime() - start) / 1e6);
+            start = System.nanoTime();
+            assertEquals(expected, columnSum(paxPages));
+            columnMs = Math.min(columnMs, (System.nanoTime() - start) / 1e6);
+        }
+        System.out.println(String.format(
+                "PaxScanTest: %d tuples, HeapPage %.2f ms, PaxHeapPage %.2f ms (%.1fx)",
+                id, rowMs, columnMs, rowMs / columnMs));
+    }
+
+    /** @return the sum of the years from MIN_YEAR on, read tuple by tuple */
+    private static long rowSum(ArrayList<HeapPage> pages) {
+        long sum = 0;
+        for (HeapPage page : pages) {
+            Iterator<Tuple> it = page.iterator();
+            while (it.hasNext()) {
+                int year = ((IntField) it.next().getField(2)).getValue();
+                if (year >= MIN_YEAR) {
+                    sum += year;
+                }
+            }
+        }
+        return sum;
+    }
+
+    /** @return the sum of the years from MIN_YEAR on, read a minipage at a time */
+    private static long columnSum(ArrayList<PaxHeapPage> pages) {
+        long sum = 0;
+        int[] years = new int[pages.get(0).getNumSlots()];
+        for (PaxHeapPage page : pages) {
+            // every slot is used, so no header check is needed
+            page.getIntColumn(2, years);
+            for (int i = 0; i < years.length; i++) {
+                int year = years[i];
+                if (year >= MIN_YEAR) {
+                    sum += year;
+                }
+            }
+        }
+        return sum;
+    }
+
+    /** Make test compatible with older version of ant. */
+    public static junit.framework.Test suite() {
+        return new junit.framework.JUnit4TestAdapter(PaxScanTest.class);
+    }
+}
@@ -0,0 +1,121 @@
+package simpledb.systemtest;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.NoSuchElementException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.junit.Test;
+
+import simpledb.*;
+
+/**
+ * Measures full scans with and without read-ahead and reports pages/sec.
+ * Scans of a file in the OS page cache are mostly CPU-bound, so the test also
+ * scans a table that charges a fixed latency per page read, standing in for
+ * a device where each request costs more than the copy. With read-ahead the
+ * scan should overlap those latencies: the pages it reaches should mostly
+ * be in the pool already, read by the prefetcher, where without read-ahead
+ * the scan reads every page itself.
+ */
+public class ReadAheadTest extends SimpleDbTestBase {
+    private static final int PAGES = 256;
+    private static final int TUPLES_PER_PAGE = 504;
+    private static final int LATENCY_US = 200;
+    private static final int RUNS = 3;
+
+    /** A heap file whose every page read takes at least LATENCY_US. */
+    static class SlowHeapFile extends HeapFile {
+        public SlowHeapFile(File f, TupleDesc td) {
+            super(f, td);
+        }
+
+        @Override
+        public Page readPage(PageId pid) throws NoSuchElementException {
+            long until = System.nanoTime() + TimeUnit.MICROSECONDS.toNanos(LATENCY_US);
+            while (System.nanoTime() < until) {
+                LockSupport.parkNanos(until - System.nanoTime());
+            }
+            return super.readPage(pid);
+        }
+    }
+
+    @Test public void testScanWithReadAhead() throws Exception {
+        // separate files, since a table's id comes from its file name
+        HeapFile fast = new HeapFile(SystemTestUtil.createRandomHeapFileUnopened(2,
+                TUPLES_PER_PAGE * PAGES, 1000, null, new ArrayList<ArrayList<Integer>>()),
+                Utility.getTupleDesc(2));
+        HeapFile slow = new SlowHeapFile(SystemTestUtil.createRandomHeapFileUnopened(2,
+                TUPLES_PER_PAGE * PAGES, 1000, null, new ArrayList<ArrayList<Integer>>()),
+                Utility.getTupleDesc(2));
+        Database.getCatalog().addTable(fast, SystemTestUtil.getUUID());
+        Database.getCatalog().addTable(slow, SystemTestUtil.getUUID());
+        assertEquals(PAGES, fast.numPages());
+
+        // let the JIT compile the scan path before timing anything
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        scan(fast);
+
+        report("cached file", fast);
+        long[] slowResident = report("slow device", slow);
+
+        // without read-ahead the scan reads every page itself; with it, the
+        // prefetcher gets to most pages first
+        assertEquals(0, slowResident[0]);
+        assertTrue("read-ahead did not get ahead of the slow scan",
+                slowResident[1] >= PAGES / 2);
+    }
+
+    /**
+     * Scans a table a few times without and with read-ahead, and prints the
+     * best rate and the pages prefetched.
+     *
+     * @return the fewest pages the scan found in the pool when it reached
+     *     them, without and with read-ahead
+     */
+    private long[] report(String name, HeapFile table) throws Exception {
+        long[] resident = new long[] { Long.MAX_VALUE, Long.MAX_VALUE };
+        for (int on = 0; on < 2; on++) {
+            double rate = 0;
+            long prefetched = 0;
+            for (int run = 0; run < RUNS; run++) {
+                BufferPool bp = Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+                bp.getReadAhead().setMaxWindow(on == 1 ? ReadAhead.DEFAULT_MAX_WINDOW : 0);
+
+                long start = System.nanoTime();
+                assertEquals(TUPLES_PER_PAGE * PAGES, scan(table));
+                rate = Math.max(rate, PAGES / ((System.nanoTime() - start) / 1e9));
+                // a cold pool, so every hit is a page read ahead of the scan
+                resident[on] = Math.min(resident[on], bp.getHitCount());
+                prefetched = bp.getPrefetchCount();
+            }
+            System.out.println(String.format(
+                    "ReadAheadTest: %-11s read-ahead %-3s %10.0f pages/s, %3d pages prefetched, "
+                    + "%3d found in the pool",
+                    name, on == 1 ? "on" : "off", rate, prefetched, resident[on]));
+        }
+        return resident;
+    }
+
+    private static int scan(HeapFile table) throws Exception {
+        TransactionId tid = new TransactionId();
+        DbFileIterator it = table.iterator(tid);
+        it.open();
+        int count = 0;
+        while (it.hasNext()) {
+            it.next();
+            count++;
+        }
+        it.close();
+        Database.getBufferPool().transactionComplete(tid);
+        return count;
+    }
+
+    /** Make test compatible with older version of ant. */
+    public static junit.framework.Test suite() {
+        return new junit.framework.JUnit4TestAdapter(ReadAheadTest.class);
+    }
+}
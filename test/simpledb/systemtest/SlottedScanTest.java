@@ -0,0 +1,101 @@
+package simpledb.systemtest;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.util.Random;
+
+import org.junit.Test;
+
+import simpledb.*;
+
+/**
+ * Stores a DBLP-like table of (key, name, title) rows, whose strings are far
+ * shorter than Type.STRING_LEN, in both the fixed-size HeapPage format and
+ * the slotted format, and compares the number of pages each takes and how
+ * long a cold full scan of each runs. The slotted file must be at least
+ * three times smaller.
+ */
+public class SlottedScanTest extends SimpleDbTestBase {
+    private static final int ROWS = 50000;
+    private static final int RUNS = 3;
+    private static final Type[] TYPES =
+            new Type[]{Type.INT_TYPE, Type.STRING_TYPE, Type.STRING_TYPE};
+
+    @Test public void testSlottedPages() throws Exception {
+        File text = File.createTempFile("dblp", ".txt");
+        text.deleteOnExit();
+        Random r = new Random(444);
+        FileWriter w = new FileWriter(text);
+        for (int i = 0; i < ROWS; i++) {
+            w.write(i + "," + word(r, 8, 16) + "," + word(r, 20, 60) + "\n");
+        }
+        w.close();
+
+        File fixedData = tempData("fixed");
+        File slottedData = tempData("slotted");
+        HeapFileEncoder.convert(text, fixedData, BufferPool.getPageSize(), 3, TYPES, ',');
+        HeapFileEncoder.convertSlotted(text, slottedData, BufferPool.getPageSize(), 3, TYPES, ',');
+        TupleDesc td = new TupleDesc(TYPES);
+        HeapFile fixed = new HeapFile(fixedData, td);
+        HeapFile slotted = new SlottedHeapFile(slottedData, td);
+        Database.getCatalog().addTable(fixed, SystemTestUtil.getUUID());
+        Database.getCatalog().addTable(slotted, SystemTestUtil.getUUID());
+
+        // warm up the JIT on both read paths
+        scanTime(fixed);
+        scanTime(slotted);
+        double fixedMs = Double.MAX_VALUE;
+        double slottedMs = Double.MAX_VALUE;
+        for (int run = 0; run < RUNS; run++) {
+            fixedMs = Math.min(fixedMs, scanTime(fixed));
+            slottedMs = Math.min(slottedMs, scanTime(slotted));
+        }
+        System.out.println(String.format(
+                "SlottedScanTest: HeapFile %d pages %.1f ms, SlottedHeapFile %d pages %.1f ms",
+                fixed.numPages(), fixedMs, slotted.numPages(), slottedMs));
+        assertTrue(slotted.numPages() * 3 < fixed.numPages());
+    }
+
+    private static File tempData(String prefix) throws Exception {
+        File f = File.createTempFile(prefix, ".dat");
+        f.deleteOnExit();
+        FreeSpaceMap.sideFile(f).deleteOnExit();
+        ZoneMap.sideFile(f).deleteOnExit();
+        return f;
+    }
+
+    private static String word(Random r, int min, int max) {
+        int len = min + r.nextInt(max - min + 1);
+        StringBuilder sb = new StringBuilder(len);
+        for (int i = 0; i < len; i++) {
+            sb.append((char) ('a' + r.nextInt(26)));
+        }
+        return sb.toString();
+    }
+
+    /** @return milliseconds of a scan starting from an empty pool */
+    private static double scanTime(HeapFile table) throws Exception {
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        TransactionId tid = new TransactionId();
+        long start = System.nanoTime();
+        DbFileIterator it = table.iterator(tid);
+        it.open();
+        int count = 0;
+        while (it.hasNext()) {
+            it.next().getField(2);
+            count++;
+        }
+        it.close();
+        long elapsed = System.nanoTime() - start;
+        Database.getBufferPool().transactionComplete(tid);
+        assertEquals(ROWS, count);
+        return elapsed / 1e6;
+    }
+
+    /** Make test compatible with older version of ant. */
+    public static junit.framework.Test suite() {
+        return new junit.framework.JUnit4TestAdapter(SlottedScanTest.class);
+    }
+}
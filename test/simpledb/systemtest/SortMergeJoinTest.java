@@ -0,0 +1,69 @@
+package simpledb.systemtest;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import simpledb.*;
+
+/**
+ * Joins two tables on a range comparison, once with the nested-loop Join
+ * and once with a SortMergeJoin, which must return the same number of
+ * rows while comparing only the pairs it returns.
+ */
+public class SortMergeJoinTest extends SimpleDbTestBase {
+    private static final int ROWS1 = 2000;
+    private static final int ROWS2 = 5000;
+    private static final int COLUMNS = 2;
+
+    @Test public void testRangeJoin() throws Exception {
+        ArrayList<ArrayList<Integer>> t1 = new ArrayList<ArrayList<Integer>>();
+        HeapFile table1 = SystemTestUtil.createRandomHeapFile(COLUMNS, ROWS1, 1000000, null, t1);
+        ArrayList<ArrayList<Integer>> t2 = new ArrayList<ArrayList<Integer>>();
+        HeapFile table2 = SystemTestUtil.createRandomHeapFile(COLUMNS, ROWS2, 1000000, null, t2);
+
+        // pairs where the key of table1 is greater than that of table2
+        int[] keys2 = new int[ROWS2];
+        for (int i = 0; i < ROWS2; i++) {
+            keys2[i] = t2.get(i).get(0);
+        }
+        Arrays.sort(keys2);
+        long expected = 0;
+        for (ArrayList<Integer> t : t1) {
+            int lo = 0;
+            int hi = ROWS2;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (keys2[mid] < t.get(0)) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            expected += lo;
+        }
+
+        TransactionId tid = new TransactionId();
+        JoinPredicate p = new JoinPredicate(0, Predicate.Op.GREATER_THAN, 0);
+        long nested = SystemTestUtil.timePlan(new Join(p,
+                new SeqScan(tid, table1.getId(), "a"),
+                new SeqScan(tid, table2.getId(), "b")), expected);
+        long merged = SystemTestUtil.timePlan(new SortMergeJoin(p,
+                new SeqScan(tid, table1.getId(), "a"),
+                new SeqScan(tid, table2.getId(), "b")), expected);
+        Database.getBufferPool().transactionComplete(tid);
+
+        System.out.println(String.format(
+                "SortMergeJoinTest: %d rows from %d x %d on >, Join %.1f ms, "
+                + "SortMergeJoin %.1f ms",
+                expected, ROWS1, ROWS2, nested / 1e6, merged / 1e6));
+    }
+
+    /** Make test compatible with older version of ant. */
+    public static junit.framework.Test suite() {
+        return new junit.framework.JUnit4TestAdapter(SortMergeJoinTest.class);
+    }
+}
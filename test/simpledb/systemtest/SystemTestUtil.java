@@ -81,6 +81,8 @@ public class SystemTestUtil {
         // Convert the tuples list to a heap file and open it
         File temp = File.createTempFile("table", ".dat");
         temp.deleteOnExit();
+        FreeSpaceMap.sideFile(temp).deleteOnExit();
+        ZoneMap.sideFile(temp).deleteOnExit();
         HeapFileEncoder.convert(tuples, temp, BufferPool.getPageSize(), columns);
         return temp;
     }
@@ -146,6 +148,40 @@ public class SystemTestUtil {
         }
     }
 
+    /**
+     * Runs a plan to the end and checks it returns the expected number of
+     * tuples.
+     *
+     * @return the nanoseconds taken
+     */
+    public static long timePlan(OpIterator plan, long expected) throws Exception {
+        return timePlan(plan, expected, null);
+    }
+
+    /**
+     * Runs a plan to the end, adding the tuples it returns to out if it is
+     * not null, and checks it returns the expected number of tuples.
+     *
+     * @return the nanoseconds taken
+     */
+    public static long timePlan(OpIterator plan, long expected, List<Tuple> out)
+            throws Exception {
+        long start = System.nanoTime();
+        plan.open();
+        long n = 0;
+        while (plan.hasNext()) {
+            Tuple t = plan.next();
+            if (out != null) {
+                out.add(t);
+            }
+            n++;
+        }
+        plan.close();
+        long elapsed = System.nanoTime() - start;
+        Assert.assertEquals(expected, n);
+        return elapsed;
+    }
+
     /**
      * Returns number of bytes of RAM used by JVM after calling System.gc many times.
      * @return amount of RAM (in bytes) used by JVM
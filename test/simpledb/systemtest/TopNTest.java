@@ -0,0 +1,59 @@
+package simpledb.systemtest;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import simpledb.*;
+
+/**
+ * Asks for the ten largest keys of a large table, once by sorting the
+ * whole table with an OrderBy and taking its first tuples, and once with a
+ * TopN, which reads the table in one pass holding only ten tuples.
+ */
+public class TopNTest extends SimpleDbTestBase {
+    private static final int ROWS = 200000;
+    private static final int COLUMNS = 2;
+    private static final int N = 10;
+
+    @Test public void testTopN() throws Exception {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        HeapFile table = SystemTestUtil.createRandomHeapFile(COLUMNS, ROWS, 1000000, null, tuples);
+        int[] keys = new int[ROWS];
+        for (int i = 0; i < ROWS; i++) {
+            keys[i] = tuples.get(i).get(0);
+        }
+        Arrays.sort(keys);
+        int[] expected = new int[N];
+        for (int i = 0; i < N; i++) {
+            expected[i] = keys[ROWS - 1 - i];
+        }
+
+        TransactionId tid = new TransactionId();
+        // warm the buffer pool so both runs read from memory
+        SystemTestUtil.timePlan(new Limit(new SeqScan(tid, table.getId(), "t"), ROWS), ROWS);
+        ArrayList<Tuple> sortedTop = new ArrayList<Tuple>();
+        long sorted = SystemTestUtil.timePlan(new Limit(new OrderBy(0, false,
+                new SeqScan(tid, table.getId(), "t")), N), N, sortedTop);
+        ArrayList<Tuple> top = new ArrayList<Tuple>();
+        long topN = SystemTestUtil.timePlan(
+                new TopN(0, false, new SeqScan(tid, table.getId(), "t"), N), N, top);
+        for (int i = 0; i < N; i++) {
+            assertEquals(expected[i], ((IntField) sortedTop.get(i).getField(0)).getValue());
+            assertEquals(expected[i], ((IntField) top.get(i).getField(0)).getValue());
+        }
+        Database.getBufferPool().transactionComplete(tid);
+
+        System.out.println(String.format(
+                "TopNTest: top %d of %d rows, OrderBy and Limit %.1f ms, TopN %.1f ms",
+                N, ROWS, sorted / 1e6, topN / 1e6));
+    }
+
+    /** Make test compatible with older version of ant. */
+    public static junit.framework.Test suite() {
+        return new junit.framework.JUnit4TestAdapter(TopNTest.class);
+    }
+}
@@ -0,0 +1,110 @@
+package simpledb.systemtest;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.util.HashMap;
+import java.util.Random;
+
+import org.junit.Test;
+
+import simpledb.*;
+
+/**
+ * Stores a venues-like table of (id, name, year, type) rows inserted in
+ * year order, and runs a query selecting the last few years through the
+ * planner, which hands the filter's predicate down to the scan, and
+ * through a Filter over a plain SeqScan. Both must return the same rows;
+ * the planned query must read only the pages holding those years.
+ */
+public class ZoneMapScanTest extends SimpleDbTestBase {
+    private static final int ROWS = 200000;
+    private static final int FIRST_YEAR = 1950;
+    private static final int YEARS = 70;
+    private static final int FROM_YEAR = 2015;
+
+    @Test public void testRangeSkipsPages() throws Exception {
+        File text = File.createTempFile("venues", ".txt");
+        text.deleteOnExit();
+        Random r = new Random(444);
+        FileWriter w = new FileWriter(text);
+        int expected = 0;
+        for (int i = 0; i < ROWS; i++) {
+            int year = FIRST_YEAR + (int) ((long) i * YEARS / ROWS);
+            if (year >= FROM_YEAR) {
+                expected++;
+            }
+            w.write(i + ",venue" + r.nextInt(10000) + "," + year + "," + r.nextInt(3) + "\n");
+        }
+        w.close();
+
+        File data = File.createTempFile("venues", ".dat");
+        data.deleteOnExit();
+        FreeSpaceMap.sideFile(data).deleteOnExit();
+        ZoneMap.sideFile(data).deleteOnExit();
+        Type[] types = new Type[]{Type.INT_TYPE, Type.STRING_TYPE, Type.INT_TYPE, Type.INT_TYPE};
+        int[] widths = new int[]{0, 16, 0, 0};
+        HeapFileEncoder.convert(text, data, BufferPool.getPageSize(), 4, types, widths, ',');
+        TupleDesc td = new TupleDesc(types, new String[]{"id", "name", "year", "type"}, widths);
+        HeapFile hf = new HeapFile(data, td);
+        String name = SystemTestUtil.getUUID();
+        Database.getCatalog().addTable(hf, name);
+
+        HashMap<String, TableStats> stats = new HashMap<String, TableStats>();
+        stats.put(name, new TableStats(hf.getId(), 1000));
+
+        TransactionId tid = new TransactionId();
+        LogicalPlan lp = new LogicalPlan();
+        lp.addScan(hf.getId(), "v");
+        lp.addFilter("v.year", Predicate.Op.GREATER_THAN_OR_EQ, String.valueOf(FROM_YEAR));
+        lp.addProjectField("v.id", null);
+        OpIterator planned = lp.physicalPlan(tid, stats, false);
+
+        OpIterator plain = new Filter(
+                new Predicate(2, Predicate.Op.GREATER_THAN_OR_EQ, new IntField(FROM_YEAR)),
+                new SeqScan(tid, hf.getId(), "v"));
+
+        long[] full = run(plain, expected);
+        // the first scan with the predicate reads every page, and so every zone
+        assertEquals(full[0], run(planned, expected)[0]);
+        long[] skipping = run(planned, expected);
+        Database.getBufferPool().transactionComplete(tid);
+
+        int pages = hf.numPages();
+        int perPage = BufferPool.getPageSize() * 8 / (td.getSize() * 8 + 1);
+        int qualifying = pages - (ROWS - expected) / perPage;
+        System.out.println(String.format(
+                "ZoneMapScanTest: %d of %d rows, Filter over SeqScan %d pages %.1f ms, "
+                + "with zone maps %d pages %.1f ms",
+                expected, ROWS, full[0], full[1] / 1e6, skipping[0], skipping[1] / 1e6));
+        assertEquals(pages, full[0]);
+        assertEquals(qualifying, skipping[0]);
+    }
+
+    /**
+     * Runs a plan from an empty pool and checks it returns the expected
+     * number of rows.
+     *
+     * @return the pages read and the nanoseconds taken
+     */
+    private static long[] run(OpIterator plan, int expected) throws Exception {
+        BufferPool bp = Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        long start = System.nanoTime();
+        plan.open();
+        int n = 0;
+        while (plan.hasNext()) {
+            plan.next();
+            n++;
+        }
+        plan.close();
+        long elapsed = System.nanoTime() - start;
+        assertEquals(expected, n);
+        return new long[]{bp.getMissCount() + bp.getPrefetchCount(), elapsed};
+    }
+
+    /** Make test compatible with older version of ant. */
+    public static junit.framework.Test suite() {
+        return new junit.framework.JUnit4TestAdapter(ZoneMapScanTest.class);
+    }
+}